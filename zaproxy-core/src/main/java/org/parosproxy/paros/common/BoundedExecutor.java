@@ -0,0 +1,284 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.common;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An executor that runs at most a given number of tasks at the same time, reusing its threads.
+ * <p>
+ * The submission of a task blocks while all the threads are busy (back-pressure), until one of the running tasks
+ * completes or the executor is cancelled. Unlike {@link ThreadPool} there's no need to poll for a free thread.
+ * </p>
+ * <p>
+ * The running tasks are not interrupted when the executor is cancelled, the tasks are expected to check, on their own,
+ * whether or not they should stop.
+ * </p>
+ *
+ * @see #execute(Runnable)
+ * @see #cancel()
+ */
+public class BoundedExecutor {
+
+    private static final int THREAD_KEEP_ALIVE = 30;
+
+    private final int maxTasks;
+    private final ThreadPoolExecutor executor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition taskCompleted = lock.newCondition();
+    private int runningTasks;
+    private int taskLimit;
+    private boolean cancelled;
+
+    private final AtomicLong completedTasks = new AtomicLong();
+
+    /**
+     * Constructs a {@code BoundedExecutor} that runs at most the given number of tasks at the same time.
+     *
+     * @param maxTasks the maximum number of tasks running at the same time
+     * @param threadsBaseName the base name of the threads, might be {@code null}
+     * @throws IllegalArgumentException if {@code maxTasks} is not greater than zero
+     */
+    public BoundedExecutor(int maxTasks, String threadsBaseName) {
+        if (maxTasks <= 0) {
+            throw new IllegalArgumentException("Parameter maxTasks must be greater than zero.");
+        }
+        this.maxTasks = maxTasks;
+        this.taskLimit = maxTasks;
+
+        executor = new ThreadPoolExecutor(
+                maxTasks,
+                maxTasks,
+                THREAD_KEEP_ALIVE,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new DaemonThreadFactory(threadsBaseName));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Executes the given task, waiting for a free thread if all are busy.
+     *
+     * @param task the task to execute
+     * @return {@code true} if the task was submitted for execution, {@code false} if the executor was cancelled
+     * @throws InterruptedException if interrupted while waiting for a free thread
+     */
+    public boolean execute(final Runnable task) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (runningTasks >= taskLimit && !cancelled) {
+                taskCompleted.await();
+            }
+            if (cancelled) {
+                return false;
+            }
+            runningTasks++;
+        } finally {
+            lock.unlock();
+        }
+        return submit(task);
+    }
+
+    /**
+     * Executes the given task, if there's a free thread, without waiting.
+     *
+     * @param task the task to execute
+     * @return {@code true} if the task was submitted for execution, {@code false} if all the threads are busy or the
+     *         executor was cancelled
+     * @see #execute(Runnable)
+     */
+    public boolean tryExecute(final Runnable task) {
+        lock.lock();
+        try {
+            if (runningTasks >= taskLimit || cancelled) {
+                return false;
+            }
+            runningTasks++;
+        } finally {
+            lock.unlock();
+        }
+        return submit(task);
+    }
+
+    private boolean submit(final Runnable task) {
+        try {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        completedTasks.incrementAndGet();
+                        taskDone();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            taskDone();
+            return false;
+        }
+        return true;
+    }
+
+    private void taskDone() {
+        lock.lock();
+        try {
+            runningTasks--;
+            taskCompleted.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until all the running tasks complete.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitAllTasksComplete() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (runningTasks > 0) {
+                taskCompleted.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits, at most the given time, until all the running tasks complete.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the {@code timeout}
+     * @return {@code true} if all the tasks completed, {@code false} if the time elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitAllTasksComplete(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (runningTasks > 0) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = taskCompleted.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tells whether or not all the submitted tasks completed.
+     *
+     * @return {@code true} if there are no running tasks, {@code false} otherwise
+     */
+    public boolean isAllTasksComplete() {
+        lock.lock();
+        try {
+            return runningTasks == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the number of tasks that can run at the same time, at most the maximum number of tasks set when constructed.
+     * <p>
+     * If lowered, the running tasks are allowed to complete, no new tasks are started while above the new limit.
+     * </p>
+     *
+     * @param taskLimit the number of tasks that can run at the same time
+     * @throws IllegalArgumentException if {@code taskLimit} is not greater than zero
+     * @see #getTaskLimit()
+     */
+    public void setTaskLimit(int taskLimit) {
+        if (taskLimit <= 0) {
+            throw new IllegalArgumentException("Parameter taskLimit must be greater than zero.");
+        }
+        lock.lock();
+        try {
+            this.taskLimit = Math.min(taskLimit, maxTasks);
+            taskCompleted.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of tasks that can run at the same time.
+     *
+     * @return the number of tasks that can run at the same time
+     * @see #setTaskLimit(int)
+     */
+    public int getTaskLimit() {
+        lock.lock();
+        try {
+            return taskLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of tasks completed.
+     *
+     * @return the number of tasks completed
+     */
+    public long getCompletedTaskCount() {
+        return completedTasks.get();
+    }
+
+    /**
+     * Cancels the executor, no more tasks are accepted and the threads waiting to submit a task are released. The running
+     * tasks are allowed to complete.
+     *
+     * @see #shutdown()
+     */
+    public void cancel() {
+        lock.lock();
+        try {
+            cancelled = true;
+            taskCompleted.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cancels the executor and releases its threads once the running tasks complete.
+     *
+     * @see #cancel()
+     */
+    public void shutdown() {
+        cancel();
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.common;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@code ThreadFactory} that creates daemon threads, named with a base name followed by a sequential number.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger threadNumber = new AtomicInteger(0);
+    private final String threadsBaseName;
+    private final int priority;
+
+    /**
+     * Constructs a {@code DaemonThreadFactory} that creates threads with normal priority.
+     *
+     * @param threadsBaseName the base name of the threads, might be {@code null}
+     */
+    public DaemonThreadFactory(String threadsBaseName) {
+        this(threadsBaseName, Thread.NORM_PRIORITY);
+    }
+
+    /**
+     * Constructs a {@code DaemonThreadFactory} that creates threads with the given priority.
+     *
+     * @param threadsBaseName the base name of the threads, might be {@code null}
+     * @param priority the priority of the threads
+     */
+    public DaemonThreadFactory(String threadsBaseName, int priority) {
+        this.threadsBaseName = threadsBaseName;
+        this.priority = priority;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread t = new Thread(r);
+        if (threadsBaseName != null) {
+            t.setName(threadsBaseName + threadNumber.getAndIncrement());
+        }
+        t.setDaemon(true);
+        t.setPriority(priority);
+        return t;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ * 
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0 
+ *   
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ */
+package org.parosproxy.paros.core.proxy;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serialises the notification of the proxy listeners, while allowing the messages to be sent and received concurrently.
+ * <p>
+ * The request notifications of a sequence are done one at a time, in the order the proxy threads arrive. Each request
+ * gets a ticket and the corresponding response notification is done only after all the responses of the previous
+ * tickets were notified (or the messages completed without response notification), which keeps a deterministic order
+ * of the messages notified to the listeners (and persisted to the history).
+ * </p>
+ * <p>
+ * The messages are serialised in a single (global) sequence or in a sequence per host.
+ * </p>
+ * 
+ * @see ProxyServer#isSerialize()
+ */
+class MessageSequencer {
+
+    private static final String GLOBAL_SEQUENCE_KEY = "";
+
+    private final Map<String, Sequence> sequences = new HashMap<>();
+
+    /**
+     * Acquires the sequence with the given key, creating it if needed.
+     * <p>
+     * The sequence must be released once no longer in use.
+     * </p>
+     * 
+     * @param key the key of the sequence, usually the host, {@code null} for the global sequence
+     * @return the sequence, never {@code null}
+     * @see #release(Sequence)
+     */
+    synchronized Sequence acquire(String key) {
+        String sequenceKey = key == null ? GLOBAL_SEQUENCE_KEY : key;
+        Sequence sequence = sequences.get(sequenceKey);
+        if (sequence == null) {
+            sequence = new Sequence(sequenceKey);
+            sequences.put(sequenceKey, sequence);
+        }
+        sequence.users++;
+        return sequence;
+    }
+
+    /**
+     * Releases the given sequence, previously acquired. Sequences no longer in use are discarded.
+     * 
+     * @param sequence the sequence to release
+     * @see #acquire(String)
+     */
+    synchronized void release(Sequence sequence) {
+        sequence.users--;
+        if (sequence.users == 0) {
+            sequences.remove(sequence.key);
+        }
+    }
+
+    static class Sequence {
+
+        private final String key;
+        private int users;
+
+        private final ReentrantLock requestLock = new ReentrantLock(true);
+        private long nextTicket;
+
+        private final ReentrantLock responseLock = new ReentrantLock();
+        private final Condition turnChanged = responseLock.newCondition();
+        private final Set<Long> completedTickets = new HashSet<>();
+        private long nextResponseTicket;
+
+        private Sequence(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Waits for the turn to notify the request and returns the ticket of the message.
+         * <p>
+         * The turn must be released with {@link #releaseRequestTurn()} and the ticket completed with
+         * {@link #complete(long)}.
+         * </p>
+         * 
+         * @return the ticket of the message
+         */
+        long acquireRequestTurn() {
+            requestLock.lock();
+            return nextTicket++;
+        }
+
+        /**
+         * Releases the turn to notify a request, allowing the next request to be notified.
+         */
+        void releaseRequestTurn() {
+            requestLock.unlock();
+        }
+
+        /**
+         * Waits until all the messages with previous tickets are completed. Does nothing if already its turn.
+         * 
+         * @param ticket the ticket of the message
+         */
+        void awaitResponseTurn(long ticket) {
+            responseLock.lock();
+            try {
+                while (nextResponseTicket != ticket) {
+                    turnChanged.awaitUninterruptibly();
+                }
+            } finally {
+                responseLock.unlock();
+            }
+        }
+
+        /**
+         * Completes the message with the given ticket, allowing the next messages to notify the response.
+         * 
+         * @param ticket the ticket of the message
+         */
+        void complete(long ticket) {
+            responseLock.lock();
+            try {
+                completedTickets.add(Long.valueOf(ticket));
+                while (completedTickets.remove(Long.valueOf(nextResponseTicket))) {
+                    nextResponseTicket++;
+                }
+                turnChanged.signalAll();
+            } finally {
+                responseLock.unlock();
+            }
+        }
+    }
+}
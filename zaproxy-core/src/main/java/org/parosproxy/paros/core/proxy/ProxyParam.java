@@ -29,13 +29,21 @@
 // ZAP: 2014/03/06 Issue 1063: Add option to decode all gzipped content
 // ZAP: 2014/03/23 Issue 968: Allow to choose the enabled SSL/TLS protocols
 // ZAP: 2014/03/23 Issue 1017: Proxy set to 0.0.0.0 causes incorrect PAC file to be generated
+// ZAP: 2015/06/02 Added options for the NIO engine (selector based accept and bounded worker pool)
+// ZAP: 2015/06/09 Added options for streaming large responses
+// ZAP: 2015/06/16 Added option to serialise the messages per host
+// ZAP: 2015/07/30 Documented the connection limit of the NIO engine
+// ZAP: 2015/07/31 Validate the streaming thresholds
 
 package org.parosproxy.paros.core.proxy;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.log4j.Logger;
@@ -81,6 +89,79 @@ public class ProxyParam extends AbstractParam {
      */
     private static final String ALWAYS_DECODE_GZIP = "proxy.decodeGzip";
 
+    /**
+     * The configuration key for the option that controls whether the proxy
+     * should use the NIO engine (selector based accept with a bounded pool of
+     * worker threads) or a new thread per connection.
+     */
+    private static final String NIO_ENGINE = PROXY_BASE_KEY + ".nioEngine";
+
+    /**
+     * The configuration key for the number of worker threads used by the NIO
+     * engine.
+     */
+    private static final String NIO_ENGINE_WORKER_THREADS = PROXY_BASE_KEY + ".nioEngineWorkerThreads";
+
+    /**
+     * The default number of worker threads used by the NIO engine.
+     */
+    public static final int DEFAULT_NIO_ENGINE_WORKER_THREADS = 200;
+
+    /**
+     * The configuration key for the option that controls whether the proxy,
+     * when serialising the messages, should serialise them per host or
+     * globally.
+     */
+    private static final String SERIALIZE_PER_HOST = PROXY_BASE_KEY + ".serializePerHost";
+
+    private static final String STREAMING_BASE_KEY = PROXY_BASE_KEY + ".streaming";
+
+    /**
+     * The configuration key for the option that controls whether the proxy
+     * should stream large responses to the client, as they are read, instead
+     * of reading them fully before forwarding.
+     */
+    private static final String STREAMING_ENABLED = STREAMING_BASE_KEY + ".enabled";
+
+    /**
+     * The configuration key for the minimum content length, in bytes, of the
+     * responses that are streamed.
+     */
+    private static final String STREAMING_MIN_CONTENT_LENGTH = STREAMING_BASE_KEY + ".minContentLength";
+
+    /**
+     * The configuration key for the content types of the responses that are
+     * always streamed.
+     */
+    private static final String STREAMING_CONTENT_TYPES = STREAMING_BASE_KEY + ".contentTypes";
+
+    /**
+     * The configuration key for the maximum number of bytes of a streamed
+     * response body that are kept in the message.
+     */
+    private static final String STREAMING_MAX_BUFFERED_BODY_SIZE = STREAMING_BASE_KEY + ".maxBufferedBodySize";
+
+    /**
+     * The default minimum content length of the responses that are streamed,
+     * 10 MiB.
+     */
+    public static final int DEFAULT_STREAMING_MIN_CONTENT_LENGTH = 10 * 1024 * 1024;
+
+    /**
+     * The default content types of the responses that are always streamed.
+     */
+    private static final List<String> DEFAULT_STREAMING_CONTENT_TYPES = Collections.unmodifiableList(Arrays.asList(
+            "application/octet-stream",
+            "application/zip",
+            "video/",
+            "audio/"));
+
+    /**
+     * The default maximum number of bytes of a streamed response body that are
+     * kept in the message, 256 KiB.
+     */
+    public static final int DEFAULT_STREAMING_MAX_BUFFERED_BODY_SIZE = 256 * 1024;
+
     private String proxyIp = "localhost";
     private int proxyPort = 8080;
     private int proxySSLPort = 8443;
@@ -106,6 +187,24 @@ public class ProxyParam extends AbstractParam {
      */
     private boolean alwaysDecodeGzip = true;
 
+    /**
+     * The option that controls whether the proxy should use the NIO engine or
+     * a new thread per connection.
+     */
+    private boolean nioEngine;
+
+    /**
+     * The number of worker threads used by the NIO engine.
+     */
+    private int nioEngineWorkerThreads = DEFAULT_NIO_ENGINE_WORKER_THREADS;
+
+    private boolean serializePerHost;
+
+    private boolean streamingEnabled;
+    private int streamingMinContentLength = DEFAULT_STREAMING_MIN_CONTENT_LENGTH;
+    private List<String> streamingContentTypes = DEFAULT_STREAMING_CONTENT_TYPES;
+    private int streamingMaxBufferedBodySize = DEFAULT_STREAMING_MAX_BUFFERED_BODY_SIZE;
+
     private String[] securityProtocolsEnabled;
 
     public ProxyParam() {
@@ -144,6 +243,31 @@ public class ProxyParam extends AbstractParam {
         modifyAcceptEncodingHeader = getConfig().getBoolean(MODIFY_ACCEPT_ENCODING_HEADER, true);
         alwaysDecodeGzip = getConfig().getBoolean(ALWAYS_DECODE_GZIP, true);
 
+        nioEngine = getConfig().getBoolean(NIO_ENGINE, false);
+        nioEngineWorkerThreads = getConfig().getInt(NIO_ENGINE_WORKER_THREADS, DEFAULT_NIO_ENGINE_WORKER_THREADS);
+        if (nioEngineWorkerThreads <= 0) {
+            nioEngineWorkerThreads = DEFAULT_NIO_ENGINE_WORKER_THREADS;
+        }
+
+        serializePerHost = getConfig().getBoolean(SERIALIZE_PER_HOST, false);
+
+        streamingEnabled = getConfig().getBoolean(STREAMING_ENABLED, false);
+        streamingMinContentLength = getConfig().getInt(STREAMING_MIN_CONTENT_LENGTH, DEFAULT_STREAMING_MIN_CONTENT_LENGTH);
+        if (streamingMinContentLength <= 0) {
+            streamingMinContentLength = DEFAULT_STREAMING_MIN_CONTENT_LENGTH;
+        }
+        if (getConfig().containsKey(STREAMING_CONTENT_TYPES)) {
+            streamingContentTypes = normaliseContentTypes(getConfig().getList(STREAMING_CONTENT_TYPES));
+        } else {
+            streamingContentTypes = DEFAULT_STREAMING_CONTENT_TYPES;
+        }
+        streamingMaxBufferedBodySize = getConfig().getInt(
+                STREAMING_MAX_BUFFERED_BODY_SIZE,
+                DEFAULT_STREAMING_MAX_BUFFERED_BODY_SIZE);
+        if (streamingMaxBufferedBodySize <= 0) {
+            streamingMaxBufferedBodySize = DEFAULT_STREAMING_MAX_BUFFERED_BODY_SIZE;
+        }
+
         loadSecurityProtocolsEnabled();
     }
 
@@ -281,6 +405,227 @@ public class ProxyParam extends AbstractParam {
         getConfig().setProperty(ALWAYS_DECODE_GZIP, Boolean.valueOf(alwaysDecodeGzip));
 	}
     
+    /**
+     * Tells whether the proxy should use the NIO engine, that is, accept the
+     * connections with a selector and process them with a bounded pool of
+     * worker threads, instead of creating a new thread per connection.
+     * <p>
+     * Changes take effect when the proxy is (re)started.
+     * </p>
+     *
+     * @return {@code true} if the proxy should use the NIO engine, {@code false} otherwise
+     * @see #getNioEngineWorkerThreads()
+     */
+    public boolean isNioEngine() {
+        return nioEngine;
+    }
+
+    /**
+     * Sets whether the proxy should use the NIO engine or a new thread per
+     * connection.
+     *
+     * @param nioEngine {@code true} if the proxy should use the NIO engine,
+     * {@code false} otherwise
+     */
+    public void setNioEngine(boolean nioEngine) {
+        this.nioEngine = nioEngine;
+        getConfig().setProperty(NIO_ENGINE, Boolean.valueOf(nioEngine));
+    }
+
+    /**
+     * Returns the maximum number of worker threads that process the
+     * connections accepted by the NIO engine.
+     * <p>
+     * Each worker thread processes one client connection, for as long as
+     * the connection is kept open (including persistent connections and
+     * tunnels, for example, of WebSockets), so this is also the maximum
+     * number of client connections processed at the same time. Connections
+     * accepted while all the worker threads are busy are queued until a
+     * worker thread is free.
+     * </p>
+     * <p>
+     * Changes take effect when the proxy is (re)started.
+     * </p>
+     *
+     * @return the number of worker threads, always greater than zero
+     * @see #isNioEngine()
+     */
+    public int getNioEngineWorkerThreads() {
+        return nioEngineWorkerThreads;
+    }
+
+    /**
+     * Sets the maximum number of worker threads that process the connections
+     * accepted by the NIO engine, that is, the maximum number of client
+     * connections processed at the same time.
+     *
+     * @param nioEngineWorkerThreads the number of worker threads
+     * @throws IllegalArgumentException if {@code nioEngineWorkerThreads} is not
+     * greater than zero.
+     */
+    public void setNioEngineWorkerThreads(int nioEngineWorkerThreads) {
+        if (nioEngineWorkerThreads <= 0) {
+            throw new IllegalArgumentException("Parameter nioEngineWorkerThreads must be greater than zero.");
+        }
+        this.nioEngineWorkerThreads = nioEngineWorkerThreads;
+        getConfig().setProperty(NIO_ENGINE_WORKER_THREADS, Integer.valueOf(nioEngineWorkerThreads));
+    }
+    
+    /**
+     * Tells whether the proxy, when serialising the messages (for example,
+     * while stepping through break points), should serialise them per host
+     * instead of globally.
+     * <p>
+     * Only the notification of the listeners is serialised, the messages are
+     * always sent and received concurrently.
+     * </p>
+     *
+     * @return {@code true} if the messages should be serialised per host,
+     * {@code false} if globally
+     * @see ProxyServer#isSerialize()
+     */
+    public boolean isSerializePerHost() {
+        return serializePerHost;
+    }
+
+    /**
+     * Sets whether the proxy, when serialising the messages, should serialise
+     * them per host instead of globally.
+     *
+     * @param serializePerHost {@code true} if the messages should be
+     * serialised per host, {@code false} if globally
+     */
+    public void setSerializePerHost(boolean serializePerHost) {
+        this.serializePerHost = serializePerHost;
+        getConfig().setProperty(SERIALIZE_PER_HOST, Boolean.valueOf(serializePerHost));
+    }
+
+    /**
+     * Tells whether the proxy should stream large responses to the client, as
+     * they are read from the server, instead of reading them fully before
+     * forwarding.
+     * <p>
+     * The streamed responses are notified to the listeners after being
+     * forwarded, with just the first bytes of the body (as defined by
+     * {@link #getStreamingMaxBufferedBodySize()}), so they can not be modified
+     * nor dropped.
+     * </p>
+     *
+     * @return {@code true} if the proxy should stream large responses,
+     * {@code false} otherwise
+     * @see #getStreamingMinContentLength()
+     * @see #getStreamingContentTypes()
+     */
+    public boolean isStreamingEnabled() {
+        return streamingEnabled;
+    }
+
+    /**
+     * Sets whether the proxy should stream large responses to the client.
+     *
+     * @param streamingEnabled {@code true} if the proxy should stream large
+     * responses, {@code false} otherwise
+     */
+    public void setStreamingEnabled(boolean streamingEnabled) {
+        this.streamingEnabled = streamingEnabled;
+        getConfig().setProperty(STREAMING_ENABLED, Boolean.valueOf(streamingEnabled));
+    }
+
+    /**
+     * Returns the minimum content length, in bytes, of the responses that are
+     * streamed.
+     *
+     * @return the minimum content length of the responses that are streamed
+     */
+    public int getStreamingMinContentLength() {
+        return streamingMinContentLength;
+    }
+
+    /**
+     * Sets the minimum content length, in bytes, of the responses that are
+     * streamed.
+     *
+     * @param streamingMinContentLength the minimum content length
+     * @throws IllegalArgumentException if {@code streamingMinContentLength}
+     * is not greater than zero
+     */
+    public void setStreamingMinContentLength(int streamingMinContentLength) {
+        if (streamingMinContentLength <= 0) {
+            throw new IllegalArgumentException("Parameter streamingMinContentLength must be greater than zero.");
+        }
+        this.streamingMinContentLength = streamingMinContentLength;
+        getConfig().setProperty(STREAMING_MIN_CONTENT_LENGTH, Integer.valueOf(streamingMinContentLength));
+    }
+
+    /**
+     * Returns the content types (or its prefixes, for example, {@code video/})
+     * of the responses that are always streamed, regardless of its length.
+     *
+     * @return an unmodifiable list with the content types, in lower case,
+     * never {@code null}
+     */
+    public List<String> getStreamingContentTypes() {
+        return streamingContentTypes;
+    }
+
+    /**
+     * Sets the content types (or its prefixes) of the responses that are
+     * always streamed.
+     *
+     * @param contentTypes the content types, {@code null} or empty to not
+     * stream based on the content type
+     */
+    public void setStreamingContentTypes(List<String> contentTypes) {
+        if (contentTypes == null) {
+            this.streamingContentTypes = Collections.emptyList();
+        } else {
+            this.streamingContentTypes = normaliseContentTypes(contentTypes);
+        }
+        getConfig().setProperty(STREAMING_CONTENT_TYPES, new ArrayList<>(streamingContentTypes));
+    }
+
+    /**
+     * Returns the maximum number of bytes of a streamed response body that are
+     * kept in the message, for the listeners and history.
+     * <p>
+     * The messages whose response body is longer are flagged as truncated
+     * (and tagged when persisted), they are not passively nor actively
+     * scanned.
+     * </p>
+     *
+     * @return the maximum number of bytes kept
+     */
+    public int getStreamingMaxBufferedBodySize() {
+        return streamingMaxBufferedBodySize;
+    }
+
+    /**
+     * Sets the maximum number of bytes of a streamed response body that are
+     * kept in the message.
+     *
+     * @param streamingMaxBufferedBodySize the maximum number of bytes kept
+     * @throws IllegalArgumentException if {@code streamingMaxBufferedBodySize}
+     * is not greater than zero
+     */
+    public void setStreamingMaxBufferedBodySize(int streamingMaxBufferedBodySize) {
+        if (streamingMaxBufferedBodySize <= 0) {
+            throw new IllegalArgumentException("Parameter streamingMaxBufferedBodySize must be greater than zero.");
+        }
+        this.streamingMaxBufferedBodySize = streamingMaxBufferedBodySize;
+        getConfig().setProperty(STREAMING_MAX_BUFFERED_BODY_SIZE, Integer.valueOf(streamingMaxBufferedBodySize));
+    }
+
+    private static List<String> normaliseContentTypes(List<?> contentTypes) {
+        List<String> types = new ArrayList<>(contentTypes.size());
+        for (Object type : contentTypes) {
+            String trimmedType = type.toString().trim();
+            if (!trimmedType.isEmpty()) {
+                types.add(trimmedType.toLowerCase(Locale.ROOT));
+            }
+        }
+        return Collections.unmodifiableList(types);
+    }
+    
     /**
      * Returns the security protocols enabled (SSL/TLS) for outgoing connections.
      * 
@@ -29,25 +29,39 @@
 // ZAP: 2014/01/22 Add the possibility to bound the proxy to all interfaces if null IP address has been set
 // ZAP: 2014/03/23 Issue 1022: Proxy - Allow to override a proxied message
 // ZAP: 2014/08/14 Issue 1312: Misleading error message when unable to bind the local proxy to specified address
+// ZAP: 2015/06/02 Added the NIO engine, selector based accept with a bounded pool of worker threads
 package org.parosproxy.paros.core.proxy;
 
 import java.io.IOException;
 import java.net.BindException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import org.apache.commons.httpclient.URI;
 import org.apache.log4j.Logger;
 import org.parosproxy.paros.Constant;
+import org.parosproxy.paros.common.DaemonThreadFactory;
 import org.parosproxy.paros.network.ConnectionParam;
 import org.parosproxy.paros.network.HttpUtil;
 import org.parosproxy.paros.view.View;
@@ -57,6 +71,14 @@ public class ProxyServer implements Runnable {
 
     protected Thread thread = null;
     protected static final int PORT_TIME_OUT = 0;
+    /**
+     * The time, in milliseconds, that the NIO engine waits for connections before checking if the server is still running.
+     */
+    private static final int NIO_SELECT_TIME_OUT = 1000;
+    /**
+     * The time, in seconds, that an idle worker thread of the NIO engine is kept alive.
+     */
+    private static final int NIO_WORKER_KEEP_ALIVE = 60;
     protected ServerSocket proxySocket = null;
     protected boolean isProxyRunning = false;
     protected ProxyParam proxyParam = new ProxyParam();
@@ -70,6 +92,9 @@ public class ProxyServer implements Runnable {
     protected boolean enableCacheProcessing = false;
     protected Vector<CacheProcessingItem> cacheProcessingList = new Vector<>();
     private List<Pattern> excludeUrls = null;
+    // ZAP: The worker threads of the NIO engine, null if not in use.
+    private ExecutorService workerPool = null;
+    private volatile Selector acceptSelector = null;
     private static Logger log = Logger.getLogger(ProxyServer.class);
 
     /**
@@ -177,6 +202,10 @@ public class ProxyServer implements Runnable {
             return -1;
         }
 
+        if (proxyParam.isNioEngine()) {
+            workerPool = createWorkerPool(proxyParam.getNioEngineWorkerThreads());
+        }
+
         thread.start();
 
         return proxySocket.getLocalPort();
@@ -210,6 +239,11 @@ public class ProxyServer implements Runnable {
         isProxyRunning = false;
         HttpUtil.closeServerSocket(proxySocket);
 
+        Selector selector = acceptSelector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+
         try {
             thread.join();   //(PORT_TIME_OUT);
             
@@ -217,6 +251,7 @@ public class ProxyServer implements Runnable {
         }
 
         proxySocket = null;
+        shutdownWorkerPool();
 
         return true;
     }
@@ -224,6 +259,13 @@ public class ProxyServer implements Runnable {
     @Override
     public void run() {
 
+        // ZAP: Use a selector if the server socket was created through a channel (NIO engine).
+        ServerSocketChannel serverChannel = proxySocket.getChannel();
+        if (serverChannel != null) {
+            acceptWithSelector(serverChannel);
+            return;
+        }
+
         Socket clientSocket;
         ProxyThread process;
 
@@ -231,21 +273,125 @@ public class ProxyServer implements Runnable {
             try {
                 clientSocket = proxySocket.accept();
                 process = createProxyProcess(clientSocket);
-                process.start();
+                dispatch(process);
                 
             } catch (SocketTimeoutException e) {
                 // nothing, socket time reached only.
             } catch (IOException e) {
                 // unknown IO exception - continue but with delay to avoid eating up CPU time if continue
-                try {
-                    Thread.sleep(100);
-                    
-                } catch (InterruptedException e1) {
+                pauseAfterAcceptError();
+            }
+
+        }
+
+    }
+
+    /**
+     * Accepts the connections using a {@code Selector} and dispatches them to the worker threads, until the server is
+     * stopped.
+     * <p>
+     * All pending connections are accepted each time the selector reports the server channel as acceptable, instead of
+     * one connection per {@code accept()} call.
+     * </p>
+     * 
+     * @param serverChannel the channel of the server socket
+     * @see #dispatch(ProxyThread)
+     */
+    private void acceptWithSelector(ServerSocketChannel serverChannel) {
+        try (Selector selector = Selector.open()) {
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            acceptSelector = selector;
+
+            while (isProxyRunning) {
+                if (selector.select(NIO_SELECT_TIME_OUT) == 0) {
+                    continue;
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+
+                    if (!key.isValid() || !key.isAcceptable()) {
+                        continue;
+                    }
+
+                    try {
+                        SocketChannel clientChannel;
+                        while ((clientChannel = serverChannel.accept()) != null) {
+                            // The ProxyThread uses the (blocking) streams of the socket.
+                            clientChannel.configureBlocking(true);
+                            dispatch(createProxyProcess(clientChannel.socket()));
+                        }
+                    } catch (ClosedChannelException e) {
+                        // server stopped.
+                    } catch (IOException e) {
+                        pauseAfterAcceptError();
+                    }
                 }
             }
+        } catch (ClosedSelectorException | ClosedChannelException e) {
+            // server stopped.
+        } catch (IOException e) {
+            if (isProxyRunning) {
+                log.error("Failed to accept connections with the NIO engine: ", e);
+            }
+        } finally {
+            acceptSelector = null;
+        }
+    }
 
+    /**
+     * Dispatches the given process to a worker thread, if the NIO engine is in use, or starts it in a new thread
+     * otherwise.
+     * <p>
+     * If all the worker threads are busy the connection waits, queued, until a worker thread is free.
+     * </p>
+     * 
+     * @param process the process that will handle the accepted connection
+     */
+    private void dispatch(ProxyThread process) {
+        if (workerPool != null) {
+            workerPool.execute(process);
+        } else {
+            process.start();
         }
+    }
 
+    private static void pauseAfterAcceptError() {
+        try {
+            Thread.sleep(100);
+            
+        } catch (InterruptedException e1) {
+        }
+    }
+
+    /**
+     * Creates the pool of worker threads of the NIO engine, the connections are queued while all the threads are busy.
+     *
+     * @param workerThreads the maximum number of worker threads
+     * @return the pool of worker threads
+     * @see #dispatch(ProxyThread)
+     */
+    private static ExecutorService createWorkerPool(int workerThreads) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                workerThreads,
+                workerThreads,
+                NIO_WORKER_KEEP_ALIVE,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new DaemonThreadFactory("ZAP-ProxyWorker-", Thread.NORM_PRIORITY - 1));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private void shutdownWorkerPool() {
+        if (workerPool != null) {
+            // Connections already accepted are still processed.
+            workerPool.shutdown();
+            workerPool = null;
+        }
     }
 
     protected ServerSocket createServerSocket(String ip, int port) throws UnknownHostException, IOException {
@@ -258,6 +404,18 @@ public class ProxyServer implements Runnable {
             addr = InetAddress.getByName(ip);
         }
         
+        // ZAP: Create the server socket through a channel, to accept the connections with a selector.
+        if (proxyParam.isNioEngine()) {
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            try {
+                channel.socket().bind(new InetSocketAddress(addr, port), 400);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            return channel.socket();
+        }
+
         ServerSocket socket = new ServerSocket(port, 400, addr);
 
         return socket;
@@ -52,24 +52,24 @@
 // ZAP: 2014/04/17 Issue 1156: Proxy gzip decoder doesn't update content length in response headers
 // ZAP: 2014/05/01 Issue 1156: Proxy gzip decoder removes newlines in decoded response
 // ZAP: 2014/05/01 Issue 1168: Add support for deflate encoded responses
+// ZAP: 2015/06/02 Allow the process to be run by a worker thread of the proxy server (NIO engine).
+// ZAP: 2015/06/09 Stream large responses to the client, if enabled.
+// ZAP: 2015/06/16 Serialise only the notification of the listeners, instead of the whole round trip.
+// ZAP: 2015/06/23 Decode the responses with HttpContentDecoders.
 
 package org.parosproxy.paros.core.proxy;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.util.List;
+import java.util.Locale;
 import java.util.Vector;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
 
 import org.apache.commons.httpclient.HttpException;
 import org.apache.log4j.Logger;
@@ -82,13 +82,16 @@ import org.parosproxy.paros.network.HttpMalformedHeaderException;
 import org.parosproxy.paros.network.HttpMessage;
 import org.parosproxy.paros.network.HttpOutputStream;
 import org.parosproxy.paros.network.HttpRequestHeader;
+import org.parosproxy.paros.network.HttpResponseHeader;
 import org.parosproxy.paros.network.HttpSender;
 import org.parosproxy.paros.network.HttpUtil;
 import org.parosproxy.paros.security.MissingRootCertificateException;
 import org.zaproxy.zap.PersistentConnectionListener;
 import org.zaproxy.zap.ZapGetMethod;
 import org.zaproxy.zap.extension.api.API;
+import org.zaproxy.zap.network.HttpContentDecoders;
 import org.zaproxy.zap.network.HttpRequestBody;
+import org.zaproxy.zap.network.HttpResponseStreamHandler;
 
 
 class ProxyThread implements Runnable {
@@ -115,12 +118,11 @@ class ProxyThread implements Runnable {
 	protected ProxyThread originProcess = this;
 	
 	private HttpSender 		httpSender = null;
-	private Object semaphore = this;
 	
 	// ZAP: New attribute to allow for skipping disconnect
 	private boolean keepSocketOpen = false;
 	
-	private static Object semaphoreSingleton = new Object();
+	private static final MessageSequencer messageSequencer = new MessageSequencer();
 	private static int id = 1;
     
     private static Vector<Thread> proxyThreadList = new Vector<>();
@@ -139,13 +141,12 @@ class ProxyThread implements Runnable {
 			// ZAP: Log exceptions
 			log.warn(e.getMessage(), e);
 		}
+	}
 
+	public void start() {
 		thread = new Thread(this, "ZAP-ProxyThread-" + id++); // ZAP: Set the name of the thread.
 		thread.setDaemon(true);
 		thread.setPriority(Thread.NORM_PRIORITY-1);
-	}
-
-	public void start() {
 		thread.start();
         
 	}
@@ -185,7 +186,9 @@ class ProxyThread implements Runnable {
 
 	@Override
 	public void run() {
-        proxyThreadList.add(thread);
+        // ZAP: Track the current thread, the process might be run by a worker of the proxy server.
+        Thread currentThread = Thread.currentThread();
+        proxyThreadList.add(currentThread);
 		boolean isSecure = this instanceof ProxyThreadSSL;
 		HttpRequestHeader firstHeader = null;
 		
@@ -247,7 +250,7 @@ class ProxyThread implements Runnable {
 		} catch (IOException e) {
 		    log.debug("IOException: ", e);
 		} finally {
-            proxyThreadList.remove(thread);
+            proxyThreadList.remove(currentThread);
 
             // ZAP: do only close if flag is false
             if (!keepSocketOpen) {
@@ -339,60 +342,98 @@ class ProxyThread implements Runnable {
           
 //            System.out.println("send required: " + msg.getRequestHeader().getURI().toString());
             
+			// ZAP: Serialise just the notification of the listeners, not the whole round trip.
+			MessageSequencer.Sequence sequence = null;
+			long ticket = -1;
 			if (parentServer.isSerialize()) {
-			    semaphore = semaphoreSingleton;
-			} else {
-			    semaphore = this;
+			    sequence = messageSequencer.acquire(getSequenceKey(msg));
+			    ticket = sequence.acquireRequestTurn();
 			}
 			
 			boolean send = true;
-			synchronized (semaphore) {
-			    
-			    if (notifyOverrideListenersRequestSend(msg)) {
-			        send = false;
-			    } else if (! notifyListenerRequestSend(msg)) {
-		        	// One of the listeners has told us to drop the request
-			    	return;
+			boolean streamed = false;
+			try {
+			    try {
+			        if (notifyOverrideListenersRequestSend(msg)) {
+			            send = false;
+			        } else if (! notifyListenerRequestSend(msg)) {
+			            // One of the listeners has told us to drop the request
+			            return;
+			        }
+			    } finally {
+			        if (sequence != null) {
+			            sequence.releaseRequestTurn();
+			        }
 			    }
 			    
-			    
 			    try {
 //					bug occur where response cannot be processed by various listener
 //			        first so streaming feature was disabled		        
 //					getHttpSender().sendAndReceive(msg, httpOut, buffer);
 			        if (send) {
-                        getHttpSender().sendAndReceive(msg);
-
-						decodeResponseIfNeeded(msg);
-
-			             if (!notifyOverrideListenersResponseReceived(msg)) {
-                            if (!notifyListenerResponseReceive(msg)) {
-                                // One of the listeners has told us to drop the response
-                                return;
-                            }
-                        }
+			            if (isStreamingAllowed(msg)) {
+			                ResponseStreamHandler streamHandler = new ResponseStreamHandler();
+			                try {
+			                    getHttpSender().sendAndReceive(msg, streamHandler);
+			                } finally {
+			                    streamed = streamHandler.isStreamed();
+			                }
+			            } else {
+			                getHttpSender().sendAndReceive(msg);
+			            }
+
+			            awaitResponseTurn(sequence, ticket);
+
+			            if (streamed) {
+			                // The response was already forwarded, the listeners can no longer change nor drop it.
+			                notifyListenerResponseReceive(msg);
+			            } else {
+			                decodeResponseIfNeeded(msg);
+
+			                if (!notifyOverrideListenersResponseReceived(msg)) {
+			                    if (!notifyListenerResponseReceive(msg)) {
+			                        // One of the listeners has told us to drop the response
+			                        return;
+			                    }
+			                }
+			            }
 			        }
 		        
-			        writeHttpResponse(msg, httpOut);
+			        if (!streamed) {
+			            writeHttpResponse(msg, httpOut);
+			        }
 			        
 //			        notifyWrittenToForwardProxy();
 			    } catch (HttpException e) {
 //			    	System.out.println("HttpException");
 			    	throw e;
 			    } catch (SocketTimeoutException e) {
+			        if (streamed) {
+			            // Part of the response was already forwarded, just close the connection.
+			            throw e;
+			        }
 			        setErrorResponse(msg, GATEWAY_TIMEOUT_RESPONSE_STATUS, e);
 
 			        writeHttpResponse(msg, httpOut);
 			    } catch (IOException e) {
+			        if (streamed) {
+			            throw e;
+			        }
 			    	setErrorResponse(msg, BAD_GATEWAY_RESPONSE_STATUS, e);
 			    	
+			        awaitResponseTurn(sequence, ticket);
 			        notifyListenerResponseReceive(msg);
 
 			        writeHttpResponse(msg, httpOut);
 
 			        //throw e;
 			    }
-			}	// release semaphore
+			} finally {
+			    if (sequence != null) {
+			        sequence.complete(ticket);
+			        messageSequencer.release(sequence);
+			    }
+			}
 			
 			ZapGetMethod method = (ZapGetMethod) msg.getUserObject();			
 			keepSocketOpen = notifyPersistentConnectionListener(msg, inSocket, method);
@@ -404,42 +445,104 @@ class ProxyThread implements Runnable {
 		
     }
 
-	private FilterInputStream buildStreamDecoder(String encoding, ByteArrayInputStream bais) throws IOException {
-		if (encoding.equalsIgnoreCase(HttpHeader.DEFLATE)) {
-			return new InflaterInputStream(bais, new Inflater(true));
-		} else {
-			return new GZIPInputStream(bais);
+	/**
+	 * Gets the key of the sequence used to serialise the notification of the given message, the host and port if
+	 * serialising per host, {@code null} otherwise (global sequence).
+	 */
+	private String getSequenceKey(HttpMessage msg) {
+		if (!proxyParam.isSerializePerHost()) {
+			return null;
 		}
+		HttpRequestHeader requestHeader = msg.getRequestHeader();
+		return requestHeader.getHostName() + ":" + requestHeader.getHostPort();
 	}
 
-	private void decodeResponseIfNeeded(HttpMessage msg) {
-		String encoding = msg.getResponseHeader().getHeader(HttpHeader.CONTENT_ENCODING);
-		if (proxyParam.isAlwaysDecodeGzip() && encoding != null && !encoding.equalsIgnoreCase(HttpHeader.IDENTITY)) {
-			encoding = Pattern.compile("^x-", Pattern.CASE_INSENSITIVE).matcher(encoding).replaceAll("");
-			if (!encoding.equalsIgnoreCase(HttpHeader.DEFLATE) && !encoding.equalsIgnoreCase(HttpHeader.GZIP)) {
-				log.warn("Unsupported content encoding method: " + encoding);
-				return;
+	private static void awaitResponseTurn(MessageSequencer.Sequence sequence, long ticket) {
+		if (sequence != null) {
+			sequence.awaitResponseTurn(ticket);
+		}
+	}
+
+	/**
+	 * Tells whether or not the response of the given message may be streamed, that is, the streaming is enabled and the
+	 * request is not a HEAD request.
+	 */
+	private boolean isStreamingAllowed(HttpMessage msg) {
+		return proxyParam.isStreamingEnabled()
+				&& !HttpRequestHeader.HEAD.equalsIgnoreCase(msg.getRequestHeader().getMethod());
+	}
+
+	/**
+	 * Tells whether or not the response, whose header was just received, should be streamed, based on its content length
+	 * and content type.
+	 */
+	private boolean isStreamResponse(HttpResponseHeader responseHeader) {
+		if (responseHeader.getContentLength() >= proxyParam.getStreamingMinContentLength()) {
+			return true;
+		}
+
+		String contentType = responseHeader.getHeader(HttpHeader.CONTENT_TYPE);
+		if (contentType == null) {
+			return false;
+		}
+		contentType = contentType.trim().toLowerCase(Locale.ROOT);
+		for (String streamedContentType : proxyParam.getStreamingContentTypes()) {
+			if (contentType.startsWith(streamedContentType)) {
+				return true;
 			}
-            // Uncompress content
-            try (ByteArrayInputStream bais = new ByteArrayInputStream(msg.getResponseBody().getBytes());
-                 FilterInputStream fis = buildStreamDecoder(encoding, bais);
-				 BufferedInputStream bis = new BufferedInputStream(fis);
-				 ByteArrayOutputStream out = new ByteArrayOutputStream();) {
-				int readLength;
-				byte[] readBuffer = new byte[1024];
-				while ((readLength = bis.read(readBuffer, 0,1024)) != -1) {
-					out.write(readBuffer, 0, readLength);
-				}
-				msg.setResponseBody(out.toByteArray());
-				msg.getResponseHeader().setHeader(HttpHeader.CONTENT_ENCODING, null);
-				if (msg.getResponseHeader().getHeader(HttpHeader.CONTENT_LENGTH) != null) {
-					msg.getResponseHeader().setHeader(HttpHeader.CONTENT_LENGTH, Integer.toString(out.size()));
-				}
-			} catch (IOException e) {
-				log.error("Unable to uncompress gzip content: " + e.getMessage(), e);
+		}
+		return false;
+	}
+
+	/**
+	 * A {@code HttpResponseStreamHandler} that forwards the response header and streams the response body to the client,
+	 * if the response should be streamed.
+	 * 
+	 * @see ProxyThread#isStreamResponse(HttpResponseHeader)
+	 */
+	private class ResponseStreamHandler implements HttpResponseStreamHandler {
+
+		private boolean streamed;
+
+		@Override
+		public OutputStream onResponseHeaderReceived(HttpMessage msg) throws IOException {
+			HttpResponseHeader responseHeader = msg.getResponseHeader();
+			if (!isStreamResponse(responseHeader)) {
+				return null;
 			}
-        }
-    }
+
+			if (responseHeader.getContentLength() < 0) {
+				// The body is no longer chunked, the end of the body is signalled by closing the connection.
+				responseHeader.setHeader(HttpHeader.CONNECTION, HttpHeader._CLOSE);
+			}
+
+			streamed = true;
+			httpOut.write(responseHeader);
+			httpOut.flush();
+			return httpOut;
+		}
+
+		@Override
+		public int getMaxBufferedBodySize() {
+			return proxyParam.getStreamingMaxBufferedBodySize();
+		}
+
+		boolean isStreamed() {
+			return streamed;
+		}
+	}
+
+	private void decodeResponseIfNeeded(HttpMessage msg) {
+		if (!proxyParam.isAlwaysDecodeGzip()) {
+			return;
+		}
+		// ZAP: Use the shared decoders, which decode directly from/to byte arrays using pooled inflaters.
+		try {
+			HttpContentDecoders.decodeResponseBody(msg);
+		} catch (IOException e) {
+			log.error("Unable to uncompress gzip content: " + e.getMessage(), e);
+		}
+	}
 
 	private boolean isConnectionClose(HttpMessage msg) {
 		
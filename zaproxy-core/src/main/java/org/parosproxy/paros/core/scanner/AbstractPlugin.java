@@ -41,6 +41,10 @@
 // ZAP: 2014/05/15 Issue 1196: AbstractPlugin.bingo incorrectly sets evidence to attack
 // ZAP: 2014/05/23 Issue 1209: Reliability becomes Confidence and add levels
 // ZAP: 2014/07/07 Issue 389: Enable technology scope for scanners
+// ZAP: 2015/07/08 Added sendAndReceiveAsync, to send messages without blocking the plugin
+// ZAP: 2015/07/27 Delay the messages through the parent, to respect the request rate of the scan
+// ZAP: 2015/07/31 Allow to choose whether or not to follow redirections in sendAndReceiveAsync and send the messages
+// with the threads of the host
 
 package org.parosproxy.paros.core.scanner;
 
@@ -51,6 +55,9 @@ import java.net.URLEncoder;
 import java.security.InvalidParameterException;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -63,6 +70,7 @@ import org.parosproxy.paros.network.HttpHeader;
 import org.parosproxy.paros.network.HttpMessage;
 import org.zaproxy.zap.extension.anticsrf.AntiCsrfToken;
 import org.zaproxy.zap.extension.anticsrf.ExtensionAntiCSRF;
+import org.zaproxy.zap.network.HttpSenderCallback;
 import org.zaproxy.zap.model.Tech;
 import org.zaproxy.zap.model.TechSet;
 
@@ -189,7 +197,70 @@ public abstract class AbstractPlugin implements Plugin, Comparable<Object> {
      * @throws IOException
      */
     protected void sendAndReceive(HttpMessage msg, boolean isFollowRedirect, boolean handleAntiCSRF) throws HttpException, IOException {
+        prepareMessage(msg, handleAntiCSRF);
 
+        parent.getHttpSender().sendAndReceive(msg, isFollowRedirect);
+        // ZAP: Notify parent
+        parent.notifyNewMessage(msg);
+    }
+
+    /**
+     * Sends and receives the given message asynchronously, following redirections.
+     *
+     * @param msg the message to be sent
+     * @param callback the callback notified once the message is sent, might be {@code null}
+     * @return a {@code Future} that completes with the given message once the response is received
+     * @see #sendAndReceiveAsync(HttpMessage, boolean, HttpSenderCallback)
+     */
+    protected Future<HttpMessage> sendAndReceiveAsync(HttpMessage msg, HttpSenderCallback callback) {
+        return sendAndReceiveAsync(msg, true, callback);
+    }
+
+    /**
+     * Sends and receives the given message asynchronously. The message is prepared as with
+     * {@link #sendAndReceive(HttpMessage, boolean, boolean)} (including the anti-CSRF tokens and delay, which are handled
+     * by the calling thread) and the parent is notified once the response is received.
+     * <p>
+     * Allows to keep many requests in flight from the scanning thread. The messages are sent with the threads of the host
+     * being scanned, so they count towards the threads of the scan, if none is free the message is sent by the calling
+     * thread. The plugin should wait for all the returned {@code Future}s before returning from {@link #scan()}.
+     * </p>
+     *
+     * @param msg the message to be sent
+     * @param isFollowRedirect {@code true} if redirections should be followed, {@code false} otherwise
+     * @param callback the callback notified once the message is sent, might be {@code null}
+     * @return a {@code Future} that completes with the given message once the response is received
+     */
+    protected Future<HttpMessage> sendAndReceiveAsync(
+            final HttpMessage msg,
+            final boolean isFollowRedirect,
+            final HttpSenderCallback callback) {
+        prepareMessage(msg, true);
+
+        FutureTask<HttpMessage> task = new FutureTask<>(new Callable<HttpMessage>() {
+
+            @Override
+            public HttpMessage call() throws IOException {
+                try {
+                    parent.getHttpSender().sendAndReceive(msg, isFollowRedirect);
+                } catch (IOException e) {
+                    if (callback != null) {
+                        callback.sendFailed(msg, e);
+                    }
+                    throw e;
+                }
+                parent.notifyNewMessage(msg);
+                if (callback != null) {
+                    callback.responseReceived(msg);
+                }
+                return msg;
+            }
+        });
+        parent.executeAsync(task);
+        return task;
+    }
+
+    private void prepareMessage(HttpMessage msg, boolean handleAntiCSRF) {
         if (parent.handleAntiCsrfTokens() && handleAntiCSRF) {
             if (extAntiCSRF == null) {
                 extAntiCSRF = (ExtensionAntiCSRF) Control.getSingleton().getExtensionLoader().getExtension(ExtensionAntiCSRF.NAME);
@@ -212,17 +283,12 @@ public abstract class AbstractPlugin implements Plugin, Comparable<Object> {
         msg.getRequestHeader().setHeader(HttpHeader.IF_NONE_MATCH, null);
         msg.getRequestHeader().setContentLength(msg.getRequestBody().length());
 
-        if (this.getDelayInMs() > 0) {
-            try {
-                Thread.sleep(this.getDelayInMs());
-            } catch (InterruptedException e) {
-                // Ignore
-            }
+        try {
+            // Also waits while the request rate of the host or scan is above its maximum
+            parent.waitToSendMessage(this.getDelayInMs());
+        } catch (InterruptedException e) {
+            // Ignore
         }
-
-        parent.getHttpSender().sendAndReceive(msg, isFollowRedirect);
-        // ZAP: Notify parent
-        parent.notifyNewMessage(msg);
     }
 
     private void regenerateAntiCsrfToken(HttpMessage msg, AntiCsrfToken antiCsrfToken) {
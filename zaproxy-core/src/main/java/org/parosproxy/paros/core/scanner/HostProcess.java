@@ -43,18 +43,28 @@
 // ZAP: 2014/06/26 Added the possibility to evaluate the current plugin/process progress
 // ZAP: 2014/07/07 Issue 389: Enable technology scope for scanners
 // ZAP: 2014/08/14 Issue 1291: 407 Proxy Authentication Required while active scanning
+// ZAP: 2015/07/06 Use a BoundedExecutor to run the tests, instead of polling the ThreadPool
+// ZAP: 2015/07/22 Cache the messages of the nodes, to read them from the database once per scan
+// ZAP: 2015/07/24 Allow to overlap the plugins, instead of waiting for all the tests of a plugin to complete
+// ZAP: 2015/07/27 Share the threads and govern the request rate with the other hosts of the scan
+// ZAP: 2015/07/30 Acquire the thread of the scan before submitting the test and size the executor from it
+// ZAP: 2015/07/30 Do not scan the messages whose response body was truncated
+// ZAP: 2015/07/31 Allow to run the asynchronous messages of the plugins with the threads of the host
 
 package org.parosproxy.paros.core.scanner;
 
 import java.text.DecimalFormat;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
-import org.parosproxy.paros.common.ThreadPool;
+import org.parosproxy.paros.common.BoundedExecutor;
 import org.parosproxy.paros.model.HistoryReference;
 import org.parosproxy.paros.model.SiteNode;
 import org.parosproxy.paros.network.ConnectionParam;
@@ -73,7 +83,17 @@ public class HostProcess implements Runnable {
     private PluginFactory pluginFactory = null;
     private ScannerParam scannerParam = null;
     private HttpSender httpSender = null;
-    private ThreadPool threadPool = null;
+    private BoundedExecutor threadPool = null;
+    private ScanRateGovernor rateGovernor = null;
+    private ScanRateGovernor.HostGovernor hostGovernor = null;
+
+    /**
+     * The thread waiting for a thread of the scan, if any, interrupted when this host process is stopped.
+     * <p>
+     * Access synchronised with {@code waitingThreadLock}.
+     */
+    private Thread waitingThread;
+    private final Object waitingThreadLock = new Object();
     private Scanner parentScanner = null;
     private String hostAndPort = "";
     private Analyser analyser = null;
@@ -83,13 +103,24 @@ public class HostProcess implements Runnable {
 
     // time related 
     // ZAP: changed to Integer because the pluginId is int
-    private final Map<Integer, Long> mapPluginStartTime = new HashMap<>();
-    private final Set<Integer> listPluginIdSkipped = new HashSet<>();
+    // ZAP: concurrent, the plugins might be completed by the scanning threads
+    private final Map<Integer, Long> mapPluginStartTime = new ConcurrentHashMap<>();
+    private final Set<Integer> listPluginIdSkipped = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
     private long hostProcessStartTime = 0;
 
     // ZAP: progress related
     private int nodeInScopeCount = -1;
-    private final Map<Integer, Integer> mapPluginProgress = new HashMap<>();
+    private final Map<Integer, Integer> mapPluginProgress = new ConcurrentHashMap<>();
+    private final MessageCache messageCache = new MessageCache();
+
+    /**
+     * The number of plugins completed, used to wake up the main thread when waiting for the dependencies of the pending
+     * plugins to complete.
+     * <p>
+     * Also the monitor used to wait for and notify the completion of the plugins.
+     * </p>
+     */
+    private final AtomicInteger pluginsCompletedCount = new AtomicInteger();
     
     /**
      * Intantiate a new HostProcess service
@@ -123,7 +154,11 @@ public class HostProcess implements Runnable {
             maxNumberOfThreads = scannerParam.getThreadPerHost();
         }
         
-        threadPool = new ThreadPool(maxNumberOfThreads, "ZAP-ActiveScanner-");
+        rateGovernor = parentScanner.getRateGovernor();
+        // No more threads than the scan has, the tests wait for a thread of the scan before being submitted
+        maxNumberOfThreads = Math.max(1, Math.min(maxNumberOfThreads, rateGovernor.getMaxThreads()));
+        threadPool = new BoundedExecutor(maxNumberOfThreads, "ZAP-ActiveScanner-");
+        hostGovernor = rateGovernor.createHostGovernor(hostAndPort, threadPool, maxNumberOfThreads);
     }
 
     /**
@@ -141,6 +176,13 @@ public class HostProcess implements Runnable {
     public void stop() {
         isStop = true;
         getAnalyser().stop();
+        // Release the thread, if waiting to run a test
+        threadPool.cancel();
+        synchronized (waitingThreadLock) {
+            if (waitingThread != null) {
+                waitingThread.interrupt();
+            }
+        }
     }
 
     /**
@@ -160,6 +202,7 @@ public class HostProcess implements Runnable {
         Plugin plugin;
         
         while (!isStop() && pluginFactory.existPluginToRun()) {
+            int completedCount = pluginsCompletedCount.get();
             plugin = pluginFactory.nextPlugin();
             
             if (plugin != null) {
@@ -171,11 +214,13 @@ public class HostProcess implements Runnable {
             
             } else {
                 // waiting for dependency - no test ready yet
-                Util.sleep(1000);
+                waitPluginCompleted(completedCount, 1000);
             }
         }
         
-        threadPool.waitAllThreadComplete(300000);
+        waitAllTestsComplete(300000);
+        threadPool.shutdown();
+        messageCache.clear();
         notifyHostProgress(null);
         notifyHostComplete();
         getHttpSender().shutdown();
@@ -189,24 +234,61 @@ public class HostProcess implements Runnable {
         mapPluginProgress.put(plugin.getId(), 0);
         
         if (plugin instanceof AbstractHostPlugin) {
-            if (!scanSingleNode(plugin, startNode)) {
+            if (!scanSingleNode(plugin, startNode, null)) {
                 // Mark the plugin as as completed if it was not run so the scan process can continue as expected.
                 // The plugin might not be run if the startNode: is not in scope, is explicitly excluded, ...
                 pluginCompleted(plugin);
             }
             
         } else if (plugin instanceof AbstractAppPlugin) {
-            traverse(plugin, startNode, true);
-            threadPool.waitAllThreadComplete(600000);
-            pluginCompleted(plugin);
+            if (scannerParam.isOverlapPlugins()) {
+                // Do not wait for the tests to complete, the tests of the next plugins are queued right away, the plugin
+                // is completed by the thread that completes its last test.
+                PluginTests tests = new PluginTests(plugin);
+                traverse(plugin, startNode, true, tests);
+                tests.testCompleted();
+            } else {
+                traverse(plugin, startNode, true, null);
+                waitAllTestsComplete(600000);
+                pluginCompleted(plugin);
+            }
+        }
+    }
+
+    /**
+     * Waits until a plugin is completed, if none was completed since the count was obtained, or until the timeout elapses.
+     *
+     * @param completedCount the number of plugins completed when the caller checked for a plugin to run
+     * @param timeoutInMillis the maximum time to wait, in milliseconds
+     */
+    private void waitPluginCompleted(int completedCount, long timeoutInMillis) {
+        synchronized (pluginsCompletedCount) {
+            if (pluginsCompletedCount.get() != completedCount) {
+                return;
+            }
+            try {
+                pluginsCompletedCount.wait(timeoutInMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void waitAllTestsComplete(long timeoutInMillis) {
+        try {
+            if (!threadPool.awaitAllTasksComplete(timeoutInMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("Timeout while waiting for the tests of host " + hostAndPort + " to complete.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private void traverse(Plugin plugin, SiteNode node) {
-        this.traverse(plugin, node, false);
+    private void traverse(Plugin plugin, SiteNode node, PluginTests tests) {
+        this.traverse(plugin, node, false, tests);
     }
 
-    private void traverse(Plugin plugin, SiteNode node, boolean incRelatedSiblings) {
+    private void traverse(Plugin plugin, SiteNode node, boolean incRelatedSiblings, PluginTests tests) {
         if (node == null || plugin == null) {
             return;
         }
@@ -216,7 +298,7 @@ public class HostProcess implements Runnable {
         Set<SiteNode> parentNodes = new HashSet<>();
         parentNodes.add(node);
 
-        scanSingleNode(plugin, node);
+        scanSingleNode(plugin, node, tests);
 
         if (incRelatedSiblings) {
             // Also match siblings with the same hierarchic name
@@ -249,7 +331,7 @@ public class HostProcess implements Runnable {
                     }
 
                     try {
-                        traverse(plugin, (SiteNode) pNode.getChildAt(i));
+                        traverse(plugin, (SiteNode) pNode.getChildAt(i), tests);
                         
                     } catch (Exception e) {
                         log.error(e.getMessage(), e);
@@ -268,10 +350,10 @@ public class HostProcess implements Runnable {
      *
      * @param plugin
      * @param node. If node == null, run for server level plugin
+     * @param tests the tests of the plugin, to track when the test completes, might be {@code null}
      * @return {@code true} if the {@code plugin} was run, {@code false} otherwise.
      */
-    private boolean scanSingleNode(Plugin plugin, SiteNode node) {
-        Thread thread;
+    private boolean scanSingleNode(Plugin plugin, SiteNode node, PluginTests tests) {
         Plugin test;
         HttpMessage msg;
         
@@ -295,8 +377,13 @@ public class HostProcess implements Runnable {
                 log.debug("scanSingleNode node not in scope");
                 return false;
             }
+
+            if (node.getHistoryReference().getTags().contains(HistoryReference.TAG_RESPONSE_TRUNCATED)) {
+                log.debug("Ignoring node with truncated response body: " + node.getNodeName());
+                return false;
+            }
             
-            msg = node.getHistoryReference().getHttpMessage();
+            msg = messageCache.getHttpMessage(node.getHistoryReference());
 
             if (msg == null) {
                 // Likely to be a temporary node
@@ -324,15 +411,134 @@ public class HostProcess implements Runnable {
             return false;
         }
 
-        do {
-            thread = threadPool.getFreeThreadAndRun(test);
-            if (thread == null) {
-                Util.sleep(200);
+        boolean executed = false;
+        if (acquireThread()) {
+            Runnable task = governed((tests != null) ? tests.track(test) : test);
+            try {
+                // Waits for a free thread, returns false if the scan was stopped in the meantime
+                executed = threadPool.execute(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            
-        } while (thread == null);
+            if (!executed) {
+                rateGovernor.releaseThread();
+            }
+        }
+        if (!executed && tests != null) {
+            tests.testCompleted();
+        }
+        return executed;
+    }
 
-        return true;
+    /**
+     * Acquires a thread from the budget shared by all the hosts of the scan, waiting until one is released or this host
+     * process is stopped.
+     *
+     * @return {@code true} if the thread was acquired, {@code false} if the host process was stopped
+     * @see #governed(Runnable)
+     */
+    private boolean acquireThread() {
+        synchronized (waitingThreadLock) {
+            if (isStop()) {
+                return false;
+            }
+            waitingThread = Thread.currentThread();
+        }
+        try {
+            rateGovernor.acquireThread();
+            return true;
+        } catch (InterruptedException e) {
+            if (!isStop()) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        } finally {
+            synchronized (waitingThreadLock) {
+                waitingThread = null;
+            }
+        }
+    }
+
+    /**
+     * Returns a task that runs the given task and then releases the thread, acquired with {@link #acquireThread()}, to the
+     * budget shared by all the hosts of the scan.
+     *
+     * @param task the task to run
+     * @return the task that runs the given task and releases the thread
+     */
+    private Runnable governed(final Runnable task) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    rateGovernor.releaseThread();
+                }
+            }
+        };
+    }
+
+    /**
+     * Runs the given task, which sends a message asynchronously, with a free thread of the host and of the scan or, if
+     * none is free, in the calling thread. The asynchronous messages are bounded by the same threads as the tests, the
+     * calling thread (a test) already holds one of those threads so it does not wait for a free thread, which could never
+     * become free if all the tests are sending messages asynchronously.
+     *
+     * @param task the task that sends the message
+     */
+    void executeAsync(Runnable task) {
+        if (!isStop() && rateGovernor.tryAcquireThread()) {
+            if (threadPool.tryExecute(governed(task))) {
+                return;
+            }
+            rateGovernor.releaseThread();
+        }
+        task.run();
+    }
+
+    /**
+     * Waits until a message can be sent to the host, for the given delay and while the request rate of the host or the
+     * scan is above its maximum.
+     *
+     * @param delayInMs the delay before sending the message, in milliseconds
+     * @throws InterruptedException if interrupted while waiting
+     * @see ScannerParam#getMaxRequestsPerSecond()
+     * @see ScannerParam#getMaxRequestsPerSecondPerHost()
+     */
+    void waitToSendMessage(int delayInMs) throws InterruptedException {
+        hostGovernor.waitToSend(delayInMs);
+    }
+
+    /**
+     * Gets the host and port being scanned.
+     *
+     * @return the host and port, for example, {@code example.com:443}
+     */
+    public String getHostAndPort() {
+        return hostAndPort;
+    }
+
+    /**
+     * Gets the number of times that the message of a node was obtained from the message cache, instead of being read from
+     * the database.
+     *
+     * @return the number of message cache hits
+     * @see #getMessageCacheMisses()
+     */
+    public long getMessageCacheHits() {
+        return messageCache.getHits();
+    }
+
+    /**
+     * Gets the number of times that the message of a node had to be read from the database.
+     *
+     * @return the number of message cache misses
+     * @see #getMessageCacheHits()
+     */
+    public long getMessageCacheMisses() {
+        return messageCache.getMisses();
     }
 
     /**
@@ -451,12 +657,16 @@ public class HostProcess implements Runnable {
     private void notifyHostComplete() {
         long diffTimeMillis = System.currentTimeMillis() - hostProcessStartTime;
         String diffTimeString = decimalFormat.format(diffTimeMillis / 1000.0) + "s";
-        log.info("completed host " + hostAndPort + " in " + diffTimeString);
+        long testCount = threadPool.getCompletedTaskCount();
+        String testRateString = diffTimeMillis > 0 ? decimalFormat.format(testCount * 1000.0 / diffTimeMillis) : "0";
+        log.info("completed host " + hostAndPort + " in " + diffTimeString + " with " + testCount + " tests ("
+                + testRateString + " tests/s)");
         parentScanner.notifyHostComplete(hostAndPort);
     }
 
     // ZAP: notify parent
     public void notifyNewMessage(HttpMessage msg) {
+        hostGovernor.responseReceived(msg.getTimeElapsedMillis());
         parentScanner.notifyNewMessage(msg);
     }
 
@@ -533,6 +743,11 @@ public class HostProcess implements Runnable {
                 
         // ZAP: update progress as finished
         mapPluginProgress.put(plugin.getId(), nodeInScopeCount);
+
+        synchronized (pluginsCompletedCount) {
+            pluginsCompletedCount.incrementAndGet();
+            pluginsCompletedCount.notifyAll();
+        }
     }
 
     /**
@@ -582,4 +797,52 @@ public class HostProcess implements Runnable {
 		this.techSet = techSet;
 	}
 
+    /**
+     * The tests of a plugin being run while overlapping the plugins, completes the plugin once all its tests and the
+     * traversal of the nodes are completed.
+     * <p>
+     * The traversal counts as a pending test, to not complete the plugin while its tests are still being queued.
+     * </p>
+     *
+     * @see ScannerParam#isOverlapPlugins()
+     */
+    private class PluginTests {
+
+        private final Plugin plugin;
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        PluginTests(Plugin plugin) {
+            this.plugin = plugin;
+        }
+
+        /**
+         * Tracks the given test, returning a task that runs the test and notifies its completion.
+         * <p>
+         * If the task returned is not run, the {@link #testCompleted()} must be called.
+         * </p>
+         *
+         * @param test the test of the plugin
+         * @return the task that runs the test
+         */
+        Runnable track(final Plugin test) {
+            pending.incrementAndGet();
+            return new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        test.run();
+                    } finally {
+                        testCompleted();
+                    }
+                }
+            };
+        }
+
+        void testCompleted() {
+            if (pending.decrementAndGet() == 0) {
+                pluginCompleted(plugin);
+            }
+        }
+    }
 }
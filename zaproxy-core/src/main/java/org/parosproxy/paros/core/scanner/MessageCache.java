@@ -0,0 +1,172 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.core.scanner;
+
+import java.lang.ref.SoftReference;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.parosproxy.paros.model.HistoryReference;
+import org.parosproxy.paros.network.HttpMalformedHeaderException;
+import org.parosproxy.paros.network.HttpMessage;
+
+/**
+ * A cache of the messages of the nodes being scanned, keyed by history ID, so that the message of a node is read from the
+ * database once, instead of once per plugin.
+ * <p>
+ * The cache is bounded by the (approximate) size of the messages, evicting the least recently used, and keeps the messages
+ * through soft references, so they can be reclaimed if the memory is low.
+ * </p>
+ * <p>
+ * The messages returned are shared, they must not be modified (the plugins clone the message when initialised).
+ * </p>
+ *
+ * @see HostProcess#getMessageCacheHits()
+ * @see HostProcess#getMessageCacheMisses()
+ */
+class MessageCache {
+
+    private static final long MAX_SIZE_IN_BYTES = Math.min(64 * 1024 * 1024, Runtime.getRuntime().maxMemory() / 32);
+
+    private final long maxSizeInBytes;
+
+    private final LinkedHashMap<Integer, CachedMessage> messages;
+    private long sizeInBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    MessageCache() {
+        this(MAX_SIZE_IN_BYTES);
+    }
+
+    /**
+     * Constructs a {@code MessageCache} with the given maximum size.
+     *
+     * @param maxSizeInBytes the maximum (approximate) size of the messages cached, in bytes
+     */
+    MessageCache(long maxSizeInBytes) {
+        this.maxSizeInBytes = maxSizeInBytes;
+        // Access order, to evict the least recently used.
+        this.messages = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Gets the message of the given history reference, from the cache if available, otherwise from the database.
+     *
+     * @param historyReference the history reference of the message
+     * @return the message
+     * @throws HttpMalformedHeaderException if the message read from the database is malformed
+     * @throws SQLException if an error occurred while reading the message from the database
+     */
+    HttpMessage getHttpMessage(HistoryReference historyReference) throws HttpMalformedHeaderException, SQLException {
+        Integer historyId = Integer.valueOf(historyReference.getHistoryId());
+        synchronized (this) {
+            CachedMessage cachedMessage = messages.get(historyId);
+            if (cachedMessage != null) {
+                HttpMessage msg = cachedMessage.get();
+                if (msg != null) {
+                    hits.incrementAndGet();
+                    return msg;
+                }
+                // Reclaimed by the GC.
+                messages.remove(historyId);
+                sizeInBytes -= cachedMessage.getSize();
+            }
+        }
+        misses.incrementAndGet();
+
+        HttpMessage msg = historyReference.getHttpMessage();
+        if (msg != null) {
+            put(historyId, msg);
+        }
+        return msg;
+    }
+
+    private synchronized void put(Integer historyId, HttpMessage msg) {
+        long size = estimateSize(msg);
+        if (size > maxSizeInBytes) {
+            return;
+        }
+
+        CachedMessage previous = messages.put(historyId, new CachedMessage(msg, size));
+        if (previous != null) {
+            sizeInBytes -= previous.getSize();
+        }
+        sizeInBytes += size;
+
+        Iterator<Map.Entry<Integer, CachedMessage>> it = messages.entrySet().iterator();
+        while (sizeInBytes > maxSizeInBytes && it.hasNext()) {
+            CachedMessage eldest = it.next().getValue();
+            it.remove();
+            sizeInBytes -= eldest.getSize();
+        }
+    }
+
+    private static long estimateSize(HttpMessage msg) {
+        return msg.getRequestHeader().getHeadersAsString().length()
+                + msg.getRequestBody().length()
+                + msg.getResponseHeader().getHeadersAsString().length()
+                + msg.getResponseBody().length();
+    }
+
+    /**
+     * Removes all the messages from the cache.
+     */
+    synchronized void clear() {
+        messages.clear();
+        sizeInBytes = 0;
+    }
+
+    /**
+     * Gets the number of messages obtained from the cache.
+     *
+     * @return the number of hits
+     */
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of messages that had to be read from the database.
+     *
+     * @return the number of misses
+     */
+    long getMisses() {
+        return misses.get();
+    }
+
+    private static class CachedMessage extends SoftReference<HttpMessage> {
+
+        private final long size;
+
+        CachedMessage(HttpMessage msg, long size) {
+            super(msg);
+            this.size = size;
+        }
+
+        long getSize() {
+            return size;
+        }
+    }
+}
@@ -33,6 +33,8 @@
 // ZAP: 2014/02/12 Issue 1030: Load and save scan policies
 // ZAP: 2014/02/21 Issue 1043: Custom active scan dialog
 // ZAP: 2014/05/20 Issue 377: Unfulfilled dependencies hang the active scan
+// ZAP: 2015/07/24 Synchronise isRunning, the plugins might be completed concurrently
+// ZAP: 2015/07/31 Return a copy of the running plugins
 
 package org.parosproxy.paros.core.scanner;
 
@@ -469,7 +471,7 @@ public class PluginFactory {
         plugin.setTimeFinished();
     }
 
-    boolean isRunning(Plugin plugin) {
+    synchronized boolean isRunning(Plugin plugin) {
         return listRunning.contains(plugin);
     }
 
@@ -485,8 +487,15 @@ public class PluginFactory {
         return this.listPending;
     }
 
-    List<Plugin> getRunning() {
-        return this.listRunning;
+    /**
+     * Gets the plugins running.
+     * <p>
+     * The plugins might be started and completed concurrently, so a copy is returned.
+     * 
+     * @return a copy of the list of plugins running
+     */
+    synchronized List<Plugin> getRunning() {
+        return new ArrayList<>(this.listRunning);
     }
 
     List<Plugin> getCompleted() {
@@ -0,0 +1,268 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.core.scanner;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.parosproxy.paros.common.BoundedExecutor;
+
+/**
+ * Governs the threads and the request rate of all the hosts of a scan.
+ * <p>
+ * The tests of all the hosts share a budget of threads (a permit is acquired before each test is submitted to the executor
+ * of its host), and the requests are paced to not exceed the maximum number of
+ * requests per second, per host and for the whole scan. Optionally, the number of threads of each host is adapted to its
+ * response times, reduced when the response times rise and increased again when they return to normal.
+ * </p>
+ *
+ * @see ScannerParam#getMaxThreadsPerScan()
+ * @see ScannerParam#getMaxRequestsPerSecond()
+ * @see ScannerParam#getMaxRequestsPerSecondPerHost()
+ * @see ScannerParam#getAdaptiveThreads()
+ */
+class ScanRateGovernor {
+
+    private static final Logger logger = Logger.getLogger(ScanRateGovernor.class);
+
+    private final ScannerParam scannerParam;
+    private final int maxThreads;
+    private final Semaphore threads;
+    private final RequestPacer requestPacer;
+
+    /**
+     * Constructs a {@code ScanRateGovernor} with the limits of the given options.
+     *
+     * @param scannerParam the options of the scan
+     */
+    ScanRateGovernor(ScannerParam scannerParam) {
+        this.scannerParam = scannerParam;
+
+        int maxThreads = scannerParam.getMaxThreadsPerScan();
+        if (maxThreads <= 0) {
+            maxThreads = Math.max(1, scannerParam.getHostPerScan()) * Math.max(1, scannerParam.getThreadPerHost());
+        }
+        this.maxThreads = maxThreads;
+        this.threads = new Semaphore(maxThreads);
+        this.requestPacer = new RequestPacer(scannerParam.getMaxRequestsPerSecond());
+    }
+
+    /**
+     * Creates the governor of the given host, whose tests are run by the given executor.
+     *
+     * @param hostAndPort the host and port being scanned
+     * @param executor the executor of the tests of the host
+     * @param maxThreads the maximum number of threads of the host
+     * @return the governor of the host
+     */
+    HostGovernor createHostGovernor(String hostAndPort, BoundedExecutor executor, int maxThreads) {
+        return new HostGovernor(hostAndPort, executor, maxThreads);
+    }
+
+    /**
+     * Gets the maximum number of threads of the scan, shared by all the hosts.
+     * <p>
+     * The executors of the hosts should not have more threads than this, the extra threads would never run a test.
+     * </p>
+     *
+     * @return the maximum number of threads of the scan
+     */
+    int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Acquires a thread from the budget of the scan, waiting until one is released.
+     * <p>
+     * Should be called before submitting a test to the executor of the host, the thread being waiting should be interrupted
+     * if the host process is stopped.
+     * </p>
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @see #releaseThread()
+     */
+    void acquireThread() throws InterruptedException {
+        threads.acquire();
+    }
+
+    /**
+     * Acquires a thread, if one is available, without waiting.
+     *
+     * @return {@code true} if the thread was acquired, {@code false} otherwise
+     * @see #releaseThread()
+     */
+    boolean tryAcquireThread() {
+        return threads.tryAcquire();
+    }
+
+    /**
+     * Releases a thread, previously acquired with {@link #acquireThread()} or {@link #tryAcquireThread()}.
+     */
+    void releaseThread() {
+        threads.release();
+    }
+
+    /**
+     * The governor of the requests and threads of a host.
+     */
+    class HostGovernor {
+
+        /**
+         * The weight of the latest response time in the average response time.
+         */
+        private static final double RESPONSE_TIME_WEIGHT = 0.1;
+
+        /**
+         * The number of responses received between adjustments of the number of threads.
+         */
+        private static final int RESPONSES_PER_ADJUSTMENT = 20;
+
+        /**
+         * The time, in milliseconds, allowed above the baseline before the response times are considered to be rising,
+         * so that fast hosts are not penalised by small variations.
+         */
+        private static final long RESPONSE_TIME_TOLERANCE_IN_MS = 50;
+
+        private final String hostAndPort;
+        private final BoundedExecutor executor;
+        private final int maxThreads;
+        private final RequestPacer requestPacer;
+
+        private double averageResponseTime = -1;
+        private double baselineResponseTime = -1;
+        private int responsesReceived;
+        private int currentThreads;
+
+        private HostGovernor(String hostAndPort, BoundedExecutor executor, int maxThreads) {
+            this.hostAndPort = hostAndPort;
+            this.executor = executor;
+            this.maxThreads = maxThreads;
+            this.currentThreads = maxThreads;
+            this.requestPacer = new RequestPacer(scannerParam.getMaxRequestsPerSecondPerHost());
+        }
+
+        /**
+         * Waits until a request can be sent to the host, for the given delay and while the request rate of the host or the
+         * scan is above its maximum.
+         * <p>
+         * Should be called by the tests, which hold a thread of the scan. The thread is released while waiting and acquired
+         * again before returning.
+         * </p>
+         *
+         * @param delayInMs the delay before sending the request, in milliseconds
+         * @throws InterruptedException if interrupted while waiting
+         */
+        void waitToSend(int delayInMs) throws InterruptedException {
+            long earliestTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayInMs));
+            long requestTime = Math.max(
+                    requestPacer.reserve(earliestTime),
+                    ScanRateGovernor.this.requestPacer.reserve(earliestTime));
+            long waitTime = requestTime - System.nanoTime();
+            if (waitTime <= 0) {
+                return;
+            }
+
+            // The thread is not running a test while waiting, let other hosts use it.
+            threads.release();
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitTime);
+            } finally {
+                // Always reacquired, it's released once the test finishes.
+                threads.acquireUninterruptibly();
+            }
+        }
+
+        /**
+         * Notifies that a response was received from the host, to adapt the number of threads, if enabled.
+         *
+         * @param responseTimeInMs the time, in milliseconds, that the host took to respond
+         */
+        void responseReceived(long responseTimeInMs) {
+            if (!scannerParam.getAdaptiveThreads() || maxThreads <= 1) {
+                return;
+            }
+
+            int threads;
+            synchronized (this) {
+                if (averageResponseTime < 0) {
+                    averageResponseTime = responseTimeInMs;
+                } else {
+                    averageResponseTime += RESPONSE_TIME_WEIGHT * (responseTimeInMs - averageResponseTime);
+                }
+                responsesReceived++;
+                if (responsesReceived % RESPONSES_PER_ADJUSTMENT != 0) {
+                    return;
+                }
+
+                if (baselineResponseTime < 0 || averageResponseTime < baselineResponseTime) {
+                    baselineResponseTime = averageResponseTime;
+                }
+
+                threads = currentThreads;
+                if (averageResponseTime > 2 * baselineResponseTime + RESPONSE_TIME_TOLERANCE_IN_MS) {
+                    threads = Math.max(1, currentThreads / 2);
+                } else if (averageResponseTime < 1.5 * baselineResponseTime + RESPONSE_TIME_TOLERANCE_IN_MS) {
+                    threads = Math.min(maxThreads, currentThreads + 1);
+                }
+                if (threads == currentThreads) {
+                    return;
+                }
+                currentThreads = threads;
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Changing the threads of host " + hostAndPort + " to " + threads + " (average response time "
+                        + Math.round(averageResponseTime) + "ms, baseline " + Math.round(baselineResponseTime) + "ms)");
+            }
+            executor.setTaskLimit(threads);
+        }
+    }
+
+    /**
+     * Paces the requests to not exceed a given number of requests per second, by spacing them evenly.
+     */
+    private static class RequestPacer {
+
+        private final long intervalInNanos;
+        private long nextRequestTime;
+
+        RequestPacer(int maxRequestsPerSecond) {
+            this.intervalInNanos = maxRequestsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxRequestsPerSecond : 0;
+            this.nextRequestTime = System.nanoTime();
+        }
+
+        /**
+         * Reserves the time of the next request, not before the given time.
+         *
+         * @param earliestTime the earliest time of the request, as given by {@code System.nanoTime()}
+         * @return the time when the request can be sent, as given by {@code System.nanoTime()}
+         */
+        synchronized long reserve(long earliestTime) {
+            if (intervalInNanos == 0) {
+                return earliestTime;
+            }
+
+            long requestTime = nextRequestTime - earliestTime > 0 ? nextRequestTime : earliestTime;
+            nextRequestTime = requestTime + intervalInNanos;
+            return requestTime;
+        }
+    }
+}
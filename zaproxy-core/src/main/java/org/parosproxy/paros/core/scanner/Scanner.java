@@ -31,6 +31,11 @@
 // messages in scope if multiple domains available
 // ZAP: 2014/06/23 Issue 1242: Active scanner might use outdated policy settings
 // ZAP: 2014/07/07 Issue 389: Enable technology scope for scanners
+// ZAP: 2015/07/06 Use a BoundedExecutor to run the host processes, instead of polling the ThreadPool
+// ZAP: 2015/07/27 Govern the threads and request rate of all the hosts
+// ZAP: 2015/07/30 Create the rate governor just when the scan is started
+// ZAP: 2015/07/31 Create the rate governor also when scanning a node without starting the scan
+// ZAP: 2015/07/31 Create the BoundedExecutor when the scan is started, so that the scanner can be started again
 
 package org.parosproxy.paros.core.scanner;
 
@@ -41,7 +46,7 @@ import java.util.Vector;
 import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
-import org.parosproxy.paros.common.ThreadPool;
+import org.parosproxy.paros.common.BoundedExecutor;
 import org.parosproxy.paros.control.Control;
 import org.parosproxy.paros.model.Model;
 import org.parosproxy.paros.model.SiteNode;
@@ -63,7 +68,7 @@ public class Scanner implements Runnable {
 	private PluginFactory pluginFactory = null;
 	//private HttpSender httpSender = null;
 	private boolean isStop = false;
-	private ThreadPool pool = null;
+	private volatile BoundedExecutor pool = null;
 	private SiteNode startNode = null;
 	private long startTimeMillis = 0;
     private List<Pattern> excludeUrls = null;
@@ -76,13 +81,13 @@ public class Scanner implements Runnable {
 	private boolean pause = false;
 	
 	private List<HostProcess> hostProcesses = new ArrayList<>();
+	private ScanRateGovernor rateGovernor = null;
 
     public Scanner(ScannerParam scannerParam, ConnectionParam param, PluginFactory pluginFactory) {
 	    this.connectionParam = param;
 	    this.scannerParam = scannerParam;
 	    this.pluginFactory = pluginFactory;
 	    //httpSender = new HttpSender(param);
-	    pool = new ThreadPool(scannerParam.getHostPerScan());
     }
     
     
@@ -91,6 +96,10 @@ public class Scanner implements Runnable {
         log.info("scanner started");
         startTimeMillis = System.currentTimeMillis();
         this.startNode = startNode;
+        synchronized (this) {
+            rateGovernor = new ScanRateGovernor(scannerParam);
+            pool = createPool();
+        }
         Thread thread = new Thread(this);
         thread.setPriority(Thread.NORM_PRIORITY-2);
         thread.start();
@@ -100,7 +109,40 @@ public class Scanner implements Runnable {
         log.info("scanner stopped");
 
         isStop = true;
-        
+        // Release the scan thread, if waiting to start a host process
+        BoundedExecutor currentPool = pool;
+        if (currentPool != null) {
+            currentPool.cancel();
+        }
+    }
+
+    /**
+     * Creates the executor of the host processes, with the hosts per scan as the maximum number of hosts scanned at the
+     * same time.
+     * 
+     * @return the executor of the host processes
+     * @see ScannerParam#getHostPerScan()
+     */
+    private BoundedExecutor createPool() {
+        int hostPerScan = scannerParam.getHostPerScan();
+        if (hostPerScan <= 0) {
+            log.warn("Invalid number of hosts per scan: " + hostPerScan + ", scanning one host at a time.");
+            hostPerScan = 1;
+        }
+        return new BoundedExecutor(hostPerScan, "ZAP-HostProcess-");
+    }
+
+    /**
+     * Gets the executor of the host processes, created when the scan is started (or, if not started, when first needed).
+     * 
+     * @return the executor of the host processes, never {@code null}
+     */
+    private synchronized BoundedExecutor getPool() {
+        if (pool == null) {
+            // Not started, scanning just the given node
+            pool = createPool();
+        }
+        return pool;
     }
     
 	public void addScannerListener(ScannerListener listener) {
@@ -118,14 +160,19 @@ public class Scanner implements Runnable {
 //	    while (pool.isAllThreadComplete()) {
 //	        Util.sleep(4000);
 //	    }
-	    pool.waitAllThreadComplete(0);
+	    BoundedExecutor currentPool = getPool();
+	    try {
+	        currentPool.awaitAllTasksComplete();
+	    } catch (InterruptedException e) {
+	        Thread.currentThread().interrupt();
+	    }
+	    currentPool.shutdown();
 	    notifyScannerComplete();
 	}
 	
 	public void scan(SiteNode node) {
 
 	    HostProcess hostProcess = null;
-	    Thread thread = null;
 	    
 	    if (node.isRoot()) {
 	        for (int i=0; i<node.getChildCount() && !isStop(); i++) {
@@ -136,12 +183,8 @@ public class Scanner implements Runnable {
 	            hostProcess.setUser(this.user);
 	            hostProcess.setTechSet(this.techSet);
 	            this.hostProcesses.add(hostProcess);
-	            do { 
-	                thread = pool.getFreeThreadAndRun(hostProcess);
-	                if (thread == null) Util.sleep(500);
-	            } while (thread == null && !isStop());
-	            if (thread != null) {
-		            notifyHostNewScan(hostAndPort, hostProcess);
+	            if (!startHostProcess(hostAndPort, hostProcess)) {
+	                break;
 	            }
 	        }
 	    } else {
@@ -152,12 +195,32 @@ public class Scanner implements Runnable {
             hostProcess.setUser(this.user);
             hostProcess.setTechSet(this.techSet);
             this.hostProcesses.add(hostProcess);
-            thread = pool.getFreeThreadAndRun(hostProcess);
-            notifyHostNewScan(hostAndPort, hostProcess);
+            startHostProcess(hostAndPort, hostProcess);
 	        
 	    }
 	     
 	}
+
+	/**
+	 * Starts the given host process, waiting for a free thread if the maximum number of hosts are already being scanned.
+	 * 
+	 * @param hostAndPort the host and port being scanned
+	 * @param hostProcess the host process to start
+	 * @return {@code true} if the host process was started, {@code false} if the scanner was stopped (or interrupted)
+	 */
+	private boolean startHostProcess(String hostAndPort, HostProcess hostProcess) {
+	    try {
+	        if (!getPool().execute(hostProcess)) {
+	            return false;
+	        }
+	    } catch (InterruptedException e) {
+	        log.warn("Interrupted while waiting to scan the host " + hostAndPort);
+	        Thread.currentThread().interrupt();
+	        return false;
+	    }
+	    notifyHostNewScan(hostAndPort, hostProcess);
+	    return true;
+	}
 	
 	public boolean isStop() {
 	    
@@ -302,6 +365,21 @@ public class Scanner implements Runnable {
 		return this.scanChildren;
 	}
 	
+	/**
+	 * Gets the governor of the threads and request rate shared by all the hosts of the scan, created when the scan is
+	 * started (or, if not started, when first needed).
+	 * 
+	 * @return the rate governor, never {@code null}
+	 * @see #start(SiteNode)
+	 */
+	synchronized ScanRateGovernor getRateGovernor() {
+		if (rateGovernor == null) {
+			// Not started, scanning just the given node
+			rateGovernor = new ScanRateGovernor(scannerParam);
+		}
+		return rateGovernor;
+	}
+
 	public List<HostProcess> getHostProcesses() {
 		return this.hostProcesses;
 	}
@@ -34,6 +34,8 @@
 // ZAP: 2014/02/13 Added HTTP parameter exclusion configuration on Active Scanning
 // ZAP: 2014/03/23 Issue 1076: Change active scanner to not delete the temporary messages generated
 // ZAP: 2014/05/13 Issue 1193: Scan URL path elements - turn off by default
+// ZAP: 2015/07/24 Added option to overlap the plugins
+// ZAP: 2015/07/27 Added options to limit the threads and request rate of the scan
 
 package org.parosproxy.paros.core.scanner;
 
@@ -55,6 +57,11 @@ public class ScannerParam extends AbstractParam {
     // ZAP: Added support for delayInMs
     private static final String DELAY_IN_MS = "scanner.delayInMs";
     private static final String HANDLE_ANTI_CSRF_TOKENS = "scanner.antiCSFR";
+    private static final String OVERLAP_PLUGINS = "scanner.overlapPlugins";
+    private static final String MAX_THREADS_PER_SCAN = "scanner.maxThreadsPerScan";
+    private static final String MAX_REQUESTS_PER_SECOND = "scanner.maxRequestsPerSecond";
+    private static final String MAX_REQUESTS_PER_SECOND_PER_HOST = "scanner.maxRequestsPerSecondPerHost";
+    private static final String ADAPTIVE_THREADS = "scanner.adaptiveThreads";
     private static final String LEVEL = "scanner.level";
     private static final String STRENGTH = "scanner.strength";
     private static final String MAX_RESULTS_LIST = "scanner.maxResults";
@@ -89,6 +96,14 @@ public class ScannerParam extends AbstractParam {
     // Defaults for initial configuration
     public static final int TARGET_INJECTABLE_DEFAULT = TARGET_QUERYSTRING | TARGET_POSTDATA | TARGET_COOKIE | TARGET_HTTPHEADERS | TARGET_URLPATH;
     public static final int TARGET_ENABLED_RPC_DEFAULT = RPC_MULTIPART | RPC_XML | RPC_JSON | RPC_GWT | RPC_ODATA | RPC_DWR;
+
+    /**
+     * The default maximum number of threads used to scan all the hosts of a scan, zero, limited only by the hosts per scan
+     * and the threads per host.
+     * 
+     * @see #getMaxThreadsPerScan()
+     */
+    public static final int MAX_THREADS_PER_SCAN_DEFAULT = 0;
         
     // Internal variables
     private int hostPerScan = 2;
@@ -96,6 +111,11 @@ public class ScannerParam extends AbstractParam {
     private int delayInMs = 0;
     private int maxResultsToList = 1000;
     private boolean handleAntiCSRFTokens = false;
+    private boolean overlapPlugins = false;
+    private int maxThreadsPerScan = MAX_THREADS_PER_SCAN_DEFAULT;
+    private int maxRequestsPerSecond = 0;
+    private int maxRequestsPerSecondPerHost = 0;
+    private boolean adaptiveThreads = false;
     private Plugin.AlertThreshold alertThreshold = AlertThreshold.MEDIUM;
     private Plugin.AttackStrength attackStrength = AttackStrength.MEDIUM;
     
@@ -137,6 +157,26 @@ public class ScannerParam extends AbstractParam {
             this.handleAntiCSRFTokens = getConfig().getBoolean(HANDLE_ANTI_CSRF_TOKENS, false);
         } catch (Exception e) {}
         
+        try {
+            this.overlapPlugins = getConfig().getBoolean(OVERLAP_PLUGINS, false);
+        } catch (Exception e) {}
+        
+        try {
+            this.maxThreadsPerScan = getConfig().getInt(MAX_THREADS_PER_SCAN, MAX_THREADS_PER_SCAN_DEFAULT);
+        } catch (Exception e) {}
+        
+        try {
+            this.maxRequestsPerSecond = getConfig().getInt(MAX_REQUESTS_PER_SECOND, 0);
+        } catch (Exception e) {}
+        
+        try {
+            this.maxRequestsPerSecondPerHost = getConfig().getInt(MAX_REQUESTS_PER_SECOND_PER_HOST, 0);
+        } catch (Exception e) {}
+        
+        try {
+            this.adaptiveThreads = getConfig().getBoolean(ADAPTIVE_THREADS, false);
+        } catch (Exception e) {}
+        
         try {
             this.alertThreshold = AlertThreshold.valueOf(getConfig().getString(LEVEL, AlertThreshold.MEDIUM.name()));
         } catch (Exception e) {}
@@ -341,6 +381,128 @@ public class ScannerParam extends AbstractParam {
         getConfig().setProperty(HANDLE_ANTI_CSRF_TOKENS, handleAntiCSRFTokens);
     }
 
+    /**
+     * Tells whether or not the plugins are run concurrently, as soon as their dependencies are completed, instead of one
+     * at a time.
+     *
+     * @return {@code true} if the plugins are overlapped, {@code false} otherwise
+     * @see #setOverlapPlugins(boolean)
+     */
+    public boolean isOverlapPlugins() {
+        return overlapPlugins;
+    }
+
+    /**
+     * Sets whether or not the plugins are run concurrently, as soon as their dependencies are completed, instead of one at
+     * a time.
+     * <p>
+     * When overlapped, the tests of the plugins share the threads of the host, so the threads are not left idle while
+     * waiting for the last tests of a plugin to complete.
+     * </p>
+     *
+     * @param overlapPlugins {@code true} if the plugins should be overlapped, {@code false} otherwise
+     * @see #getThreadPerHost()
+     */
+    public void setOverlapPlugins(boolean overlapPlugins) {
+        this.overlapPlugins = overlapPlugins;
+        getConfig().setProperty(OVERLAP_PLUGINS, overlapPlugins);
+    }
+
+    /**
+     * Gets the maximum number of threads used to scan all the hosts of a scan.
+     * <p>
+     * Default is {@value #MAX_THREADS_PER_SCAN_DEFAULT}, no limit other than the hosts per scan times the threads per
+     * host. When set (through the configuration file or the API), the hosts scanned at the same time wait for a free
+     * thread, even if the threads per host would allow more.
+     * </p>
+     *
+     * @return the maximum number of threads, or zero if limited only by the hosts per scan and the threads per host
+     * @see #setMaxThreadsPerScan(int)
+     */
+    public int getMaxThreadsPerScan() {
+        return maxThreadsPerScan;
+    }
+
+    /**
+     * Sets the maximum number of threads used to scan all the hosts of a scan, shared by the hosts being scanned.
+     *
+     * @param maxThreadsPerScan the maximum number of threads, or zero to be limited only by the hosts per scan and the
+     *            threads per host
+     * @see #getHostPerScan()
+     * @see #getThreadPerHost()
+     */
+    public void setMaxThreadsPerScan(int maxThreadsPerScan) {
+        this.maxThreadsPerScan = maxThreadsPerScan;
+        getConfig().setProperty(MAX_THREADS_PER_SCAN, Integer.toString(maxThreadsPerScan));
+    }
+
+    /**
+     * Gets the maximum number of requests per second sent to all the hosts of a scan.
+     *
+     * @return the maximum number of requests per second, or zero if not limited
+     * @see #setMaxRequestsPerSecond(int)
+     */
+    public int getMaxRequestsPerSecond() {
+        return maxRequestsPerSecond;
+    }
+
+    /**
+     * Sets the maximum number of requests per second sent to all the hosts of a scan.
+     *
+     * @param maxRequestsPerSecond the maximum number of requests per second, or zero for no limit
+     * @see #setMaxRequestsPerSecondPerHost(int)
+     */
+    public void setMaxRequestsPerSecond(int maxRequestsPerSecond) {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        getConfig().setProperty(MAX_REQUESTS_PER_SECOND, Integer.toString(maxRequestsPerSecond));
+    }
+
+    /**
+     * Gets the maximum number of requests per second sent to each host.
+     *
+     * @return the maximum number of requests per second, or zero if not limited
+     * @see #setMaxRequestsPerSecondPerHost(int)
+     */
+    public int getMaxRequestsPerSecondPerHost() {
+        return maxRequestsPerSecondPerHost;
+    }
+
+    /**
+     * Sets the maximum number of requests per second sent to each host.
+     *
+     * @param maxRequestsPerSecondPerHost the maximum number of requests per second, or zero for no limit
+     * @see #setMaxRequestsPerSecond(int)
+     */
+    public void setMaxRequestsPerSecondPerHost(int maxRequestsPerSecondPerHost) {
+        this.maxRequestsPerSecondPerHost = maxRequestsPerSecondPerHost;
+        getConfig().setProperty(MAX_REQUESTS_PER_SECOND_PER_HOST, Integer.toString(maxRequestsPerSecondPerHost));
+    }
+
+    /**
+     * Tells whether or not the number of threads used to scan a host is adapted to the response times of the host.
+     *
+     * @return {@code true} if the number of threads is adapted, {@code false} otherwise
+     * @see #setAdaptiveThreads(boolean)
+     */
+    public boolean getAdaptiveThreads() {
+        return adaptiveThreads;
+    }
+
+    /**
+     * Sets whether or not the number of threads used to scan a host is adapted to the response times of the host.
+     * <p>
+     * If adapted, the number of threads is reduced when the response times rise, and increased again, up to the threads
+     * per host, when they return to normal.
+     * </p>
+     *
+     * @param adaptiveThreads {@code true} if the number of threads should be adapted, {@code false} otherwise
+     * @see #getThreadPerHost()
+     */
+    public void setAdaptiveThreads(boolean adaptiveThreads) {
+        this.adaptiveThreads = adaptiveThreads;
+        getConfig().setProperty(ADAPTIVE_THREADS, adaptiveThreads);
+    }
+
     /**
      * 
      * @return 
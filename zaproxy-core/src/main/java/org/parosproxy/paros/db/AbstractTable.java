@@ -21,6 +21,8 @@
 // ZAP: 2012/04/23 Added @Override annotation to the appropriate method.
 // ZAP: 2013/03/03 Issue 546: Remove all template Javadoc comments
 // ZAP: 2013/05/02 Re-arranged all modifiers into Java coding standard order
+// ZAP: 2015/07/16 Added pool of read-only connections
+// ZAP: 2015/07/31 Allow to close the pool of read-only connections
 
 package org.parosproxy.paros.db;
 
@@ -29,8 +31,15 @@ import java.sql.SQLException;
 
  public abstract class AbstractTable implements DatabaseListener {
 
+    /**
+     * The maximum number of read-only connections of each table.
+     */
+    private static final int MAX_READ_CONNECTIONS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
     private Connection connection = null;
     private DatabaseServer server = null;
+    private final Object readConnectionPoolLock = new Object();
+    private ReadConnectionPool readConnectionPool = null;
     
     /**
      * 
@@ -42,8 +51,22 @@ import java.sql.SQLException;
     public void databaseOpen(DatabaseServer server) throws SQLException {
         this.server = server;
         connection = null;
+        closeReadConnectionPool();
         reconnect(getConnection());
     }
+
+    /**
+     * Closes the pool of read-only connections, if any, for example, before closing the database. The connections still in
+     * use are closed once released.
+     */
+    void closeReadConnectionPool() {
+        synchronized (readConnectionPoolLock) {
+            if (readConnectionPool != null) {
+                readConnectionPool.close();
+                readConnectionPool = null;
+            }
+        }
+    }
     
     protected Connection getConnection() throws SQLException {
         if (connection == null) {
@@ -52,6 +75,21 @@ import java.sql.SQLException;
         return connection;
     }
     
+    /**
+     * Gets the pool of read-only connections, to do reads concurrently with other reads and with the writes, which are
+     * done through the connection of the table.
+     *
+     * @return the pool of read-only connections
+     */
+    ReadConnectionPool getReadConnectionPool() {
+        synchronized (readConnectionPoolLock) {
+            if (readConnectionPool == null) {
+                readConnectionPool = new ReadConnectionPool(server, MAX_READ_CONNECTIONS);
+            }
+            return readConnectionPool;
+        }
+    }
+
     protected abstract void reconnect(Connection connection) throws SQLException;
 
 }
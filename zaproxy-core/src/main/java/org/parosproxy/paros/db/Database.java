@@ -31,6 +31,8 @@
 // ZAP: 2012/07/16 Removed unused setters.
 // ZAP: 2012/10/02 Issue 385: Added support for Contexts
 // ZAP: 2013/03/03 Issue 546: Remove all template Javadoc comments
+// ZAP: 2015/07/14 Write the pending history records before closing
+// ZAP: 2015/07/31 Close the pools of read-only connections of the tables before closing
 
 package org.parosproxy.paros.db;
 
@@ -209,6 +211,9 @@ public class Database {
 		log.debug("close");
 	    if (databaseServer == null) return;
 	    
+	    // ZAP: Write the history records still queued.
+	    getTableHistory().flushPendingWrites();
+
 	    try {
 	        // ZAP: Added if block.
 	        if (cleanup) {
@@ -216,6 +221,13 @@ public class Database {
     	        getTableHistory().deleteTemporary();
 	        }
 
+	        // ZAP: Close the read-only connections of the tables.
+	        for (DatabaseListener listener : listenerList) {
+	            if (listener instanceof AbstractTable) {
+	                ((AbstractTable) listener).closeReadConnectionPool();
+	            }
+	        }
+
 	        // shutdown
 	        getDatabaseServer().shutdown(compact);
 	        // ZAP: Changed to catch SQLException instead of Exception.
@@ -22,6 +22,8 @@
 // getNewConnection().
 // ZAP: 2012/08/16 SHUTDOWN COMPACT old databases.
 // ZAP: 2013/03/03 Issue 546: Remove all template Javadoc comments
+// ZAP: 2015/07/16 Use multi-version concurrency control (MVCC)
+// ZAP: 2015/07/31 Set the MVCC just if not yet set and fail if not possible
 
 package org.parosproxy.paros.db;
 
@@ -32,7 +34,9 @@ import java.io.InputStream;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Properties;
 
 import org.apache.log4j.Logger;
@@ -106,6 +110,34 @@ public class DatabaseServer {
 	    	shutdown(true);
             mConn = DriverManager.getConnection(mUrl, mUser, mPassword);
         }
+
+        // ZAP: Use MVCC, so that the reads (done through other connections) are not blocked by the writes.
+        setMvccTransactionControl();
+    }
+
+    /**
+     * Sets the transaction control of the database to multi-version concurrency control (MVCC), if not already set. The
+     * setting is persisted in the database, so it's set just once per database.
+     * <p>
+     * The MVCC is required by the pools of read-only connections of the tables, otherwise the reads would be blocked by the
+     * writes (or block them).
+     * </p>
+     *
+     * @throws SQLException if an error occurred while setting the transaction control
+     * @see ReadConnectionPool
+     */
+    private void setMvccTransactionControl() throws SQLException {
+        try (Statement stmt = mConn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT PROPERTY_VALUE FROM INFORMATION_SCHEMA.SYSTEM_PROPERTIES "
+                    + "WHERE PROPERTY_NAME = 'hsqldb.tx'")) {
+                if (rs.next() && "MVCC".equalsIgnoreCase(rs.getString(1))) {
+                    return;
+                }
+            }
+            stmt.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+        } catch (SQLException e) {
+            throw new SQLException("Failed to set the transaction control of the database to MVCC: " + e.getMessage(), e);
+        }
     }
     
     
@@ -0,0 +1,187 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A pool of read-only connections, to allow the reads of a table to run concurrently, with each other and with the writes,
+ * which are done through the connection of the table.
+ * <p>
+ * The connections are created as needed, up to the given maximum, and keep the statements prepared through them, to be
+ * reused by later reads.
+ * </p>
+ * <p>
+ * Relies on the database using multi-version concurrency control (MVCC), so that reads are not blocked by the writes.
+ * </p>
+ *
+ * @see AbstractTable#getReadConnectionPool()
+ */
+class ReadConnectionPool {
+
+    private static final Logger logger = Logger.getLogger(ReadConnectionPool.class);
+
+    private final DatabaseServer server;
+    private final int maxConnections;
+    private final LinkedBlockingQueue<ReadConnection> idleConnections;
+    private int connectionsCreated;
+    private boolean closed;
+
+    /**
+     * Constructs a {@code ReadConnectionPool} with the given maximum number of connections.
+     *
+     * @param server the server used to create the connections
+     * @param maxConnections the maximum number of connections
+     * @throws IllegalArgumentException if {@code maxConnections} is not greater than zero
+     */
+    ReadConnectionPool(DatabaseServer server, int maxConnections) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("Parameter maxConnections must be greater than zero.");
+        }
+        this.server = server;
+        this.maxConnections = maxConnections;
+        this.idleConnections = new LinkedBlockingQueue<>(maxConnections);
+    }
+
+    /**
+     * Gets a connection from the pool, creating one if none is idle and the maximum was not reached, otherwise waits for
+     * a connection to be released.
+     * <p>
+     * The connection must be released, once no longer needed.
+     * </p>
+     *
+     * @return the connection
+     * @throws SQLException if the pool was closed, if an error occurred while creating the connection or if interrupted
+     *             while waiting for a connection
+     * @see #release(ReadConnection)
+     */
+    ReadConnection borrow() throws SQLException {
+        ReadConnection connection = idleConnections.poll();
+        if (connection != null) {
+            return connection;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                throw new SQLException("The read connection pool is closed.");
+            }
+            if (connectionsCreated < maxConnections) {
+                Connection conn = server.getNewConnection();
+                conn.setReadOnly(true);
+                connectionsCreated++;
+                return new ReadConnection(conn);
+            }
+        }
+
+        try {
+            return idleConnections.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a read connection.", e);
+        }
+    }
+
+    /**
+     * Releases the given connection, obtained with {@link #borrow()}, back to the pool.
+     *
+     * @param connection the connection to release
+     */
+    void release(ReadConnection connection) {
+        synchronized (this) {
+            if (closed) {
+                connection.close();
+                return;
+            }
+        }
+        idleConnections.offer(connection);
+    }
+
+    /**
+     * Closes the idle connections and the ones released afterwards.
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        ReadConnection connection;
+        while ((connection = idleConnections.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * A read-only connection, with its prepared statements.
+     */
+    static class ReadConnection {
+
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+
+        private ReadConnection(Connection connection) {
+            this.connection = connection;
+            this.statements = new HashMap<>();
+        }
+
+        /**
+         * Gets the connection.
+         *
+         * @return the connection
+         */
+        Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Gets a statement prepared with the given SQL, reusing the one previously prepared, if any.
+         * <p>
+         * The statement must not be closed.
+         * </p>
+         *
+         * @param sql the SQL of the statement
+         * @return the prepared statement
+         * @throws SQLException if an error occurred while preparing the statement
+         */
+        PreparedStatement prepareStatement(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        private void close() {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug(e.getMessage(), e);
+                }
+            }
+        }
+    }
+}
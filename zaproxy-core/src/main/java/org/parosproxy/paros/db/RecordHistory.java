@@ -23,6 +23,7 @@
 // ZAP: 2013/03/03 Issue 546: Remove all template Javadoc comments
 // ZAP: 2013/09/26 Issue 716: ZAP flags its own HTTP responses
 // ZAP: 2013/11/16 Issue 869: Differentiate proxied requests from (ZAP) user requests
+// ZAP: 2015/07/28 Allow to create without the response body, just with its length
 
 
 package org.parosproxy.paros.db;
@@ -38,6 +39,7 @@ public class RecordHistory {
     private long sessionId = 0;
 	private int historyType = HistoryReference.TYPE_PROXIED;
 	private HttpMessage httpMessage = null;
+	private int responseBodyLength = -1;
 	
 	public RecordHistory() {
 	    httpMessage = new HttpMessage();	
@@ -61,6 +63,17 @@ public class RecordHistory {
         httpMessage.setNote(note);
         httpMessage.setResponseFromTargetHost(responseFromTargetHost);
 	}
+
+	/**
+	 * Constructs a {@code RecordHistory} without the response body, just with its length, for example, to build the Sites
+	 * tree without reading all the response bodies.
+	 * 
+	 * @see #getResponseBodyLength()
+	 */
+	public RecordHistory(int historyId, int historyType, long sessionId, long timeSentMillis, int timeElapsedMillis, String reqHeader, byte[] reqBody, String resHeader, int resBodyLength, String note, boolean responseFromTargetHost) throws HttpMalformedHeaderException {
+		this(historyId, historyType, sessionId, timeSentMillis, timeElapsedMillis, reqHeader, reqBody, resHeader, new byte[0], null, note, responseFromTargetHost);
+		this.responseBodyLength = resBodyLength;
+	}
 	
 	/**
 	 * @return Returns the id.
@@ -78,6 +91,18 @@ public class RecordHistory {
 	public HttpMessage getHttpMessage() {
 		return httpMessage;
 	}
+
+	/**
+	 * Gets the length of the response body, which might not be in the message if the record was created without it.
+	 * 
+	 * @return the length of the response body
+	 */
+	public int getResponseBodyLength() {
+		if (responseBodyLength >= 0) {
+			return responseBodyLength;
+		}
+		return httpMessage.getResponseBody().length();
+	}
 	/**
 	 * @param historyId The id to set.
 	 */
@@ -31,6 +31,8 @@
 // ZAP: 2014/06/16 Issue 990: Allow to delete alerts through the API
 // ZAP: 2014/08/14 Issue 1283: SQLDataException: data exception: string data,
 // right truncation while writing an alert to DB
+// ZAP: 2015/07/16 Read through pooled read-only connections, concurrently with the writes
+// ZAP: 2015/07/28 Added method to get the alerts of a range of source history IDs
 
 package org.parosproxy.paros.db;
 
@@ -70,7 +72,6 @@ public class TableAlert extends AbstractTable {
 	private static final String HISTORYID	= "HISTORYID";
 	private static final String SOURCEHISTORYID	= "SOURCEHISTORYID";
 
-    private PreparedStatement psRead = null;
     private PreparedStatement psInsert = null;
     private CallableStatement psGetIdLastInsert = null;
 
@@ -81,7 +82,6 @@ public class TableAlert extends AbstractTable {
     private PreparedStatement psUpdate = null;
     private PreparedStatement psUpdateHistoryIds = null;
 
-    private PreparedStatement psGetAlertsForHistoryId = null;
 
     public TableAlert() {
     }
@@ -91,7 +91,6 @@ public class TableAlert extends AbstractTable {
         // ZAP: Changed to call the method updateTable(Connection).
         updateTable(conn);
         
-        psRead = conn.prepareStatement("SELECT TOP 1 * FROM " + TABLE_NAME + " WHERE " + ALERTID + " = ?");
         
         psInsert = conn.prepareStatement("INSERT INTO " + TABLE_NAME + " ("
                 + SCANID + "," + PLUGINID + "," + ALERT + "," + RISK + "," + RELIABILITY + "," + DESCRIPTION + ","
@@ -126,9 +125,6 @@ public class TableAlert extends AbstractTable {
                 SOURCEHISTORYID + " = ? " + 
                 "WHERE " + ALERTID + " = ?");
 
-        psGetAlertsForHistoryId = conn.prepareStatement(
-                "SELECT * FROM " + TABLE_NAME + " WHERE " + SOURCEHISTORYID + " = ?");
-
     }
     
     // ZAP: Added the method.
@@ -157,11 +153,18 @@ public class TableAlert extends AbstractTable {
         
     }
 
-    public synchronized RecordAlert read(int alertId) throws SQLException {
-        psRead.setInt(1, alertId);
-        try (ResultSet rs = psRead.executeQuery()) {
-            RecordAlert ra = build(rs);
-            return ra;
+    public RecordAlert read(int alertId) throws SQLException {
+        ReadConnectionPool.ReadConnection readConnection = getReadConnectionPool().borrow();
+        try {
+            PreparedStatement psRead = readConnection.prepareStatement("SELECT TOP 1 * FROM " + TABLE_NAME + " WHERE "
+                    + ALERTID + " = ?");
+            psRead.setInt(1, alertId);
+            try (ResultSet rs = psRead.executeQuery()) {
+                RecordAlert ra = build(rs);
+                return ra;
+            }
+        } finally {
+            getReadConnectionPool().release(readConnection);
         }
     }
     
@@ -319,18 +322,55 @@ public class TableAlert extends AbstractTable {
     public List<RecordAlert> getAlertsBySourceHistoryId(int historyId) throws SQLException {
 
         List<RecordAlert> result = new ArrayList<>();
-        psGetAlertsForHistoryId.setLong(1, historyId);
-        try (ResultSet rs = psGetAlertsForHistoryId.executeQuery()) {
-            RecordAlert ra = build(rs);
-            while (ra != null) {
-                result.add(ra);
-                ra = build(rs);
+        ReadConnectionPool.ReadConnection readConnection = getReadConnectionPool().borrow();
+        try {
+            PreparedStatement psGetAlertsForHistoryId = readConnection.prepareStatement("SELECT * FROM " + TABLE_NAME
+                    + " WHERE " + SOURCEHISTORYID + " = ?");
+            psGetAlertsForHistoryId.setLong(1, historyId);
+            try (ResultSet rs = psGetAlertsForHistoryId.executeQuery()) {
+                RecordAlert ra = build(rs);
+                while (ra != null) {
+                    result.add(ra);
+                    ra = build(rs);
+                }
             }
+        } finally {
+            getReadConnectionPool().release(readConnection);
         }
         
         return result;
     }
 
+    /**
+     * Gets the alerts whose source history IDs are in the given range, ordered by source history ID, for example, to load
+     * the alerts of several history records at once.
+     * 
+     * @param fromHistoryId the first source history ID, inclusive
+     * @param toHistoryId the last source history ID, inclusive
+     * @return the alerts, never {@code null}
+     * @throws SQLException if an error occurred while reading the alerts
+     */
+    public List<RecordAlert> getAlertsBySourceHistoryIdRange(int fromHistoryId, int toHistoryId) throws SQLException {
+        List<RecordAlert> result = new ArrayList<>();
+        ReadConnectionPool.ReadConnection readConnection = getReadConnectionPool().borrow();
+        try {
+            PreparedStatement psGetAlerts = readConnection.prepareStatement("SELECT * FROM " + TABLE_NAME + " WHERE "
+                    + SOURCEHISTORYID + " BETWEEN ? AND ? ORDER BY " + SOURCEHISTORYID + ", " + ALERTID);
+            psGetAlerts.setInt(1, fromHistoryId);
+            psGetAlerts.setInt(2, toHistoryId);
+            try (ResultSet rs = psGetAlerts.executeQuery()) {
+                RecordAlert ra = build(rs);
+                while (ra != null) {
+                    result.add(ra);
+                    ra = build(rs);
+                }
+            }
+        } finally {
+            getReadConnectionPool().release(readConnection);
+        }
+        return result;
+    }
+
     // ZAP: Added getAlertList
     public Vector<Integer> getAlertList() throws SQLException {
         try (PreparedStatement psReadScan = getConnection().prepareStatement("SELECT " + ALERTID + " FROM " + TABLE_NAME)) {
@@ -32,24 +32,34 @@
 // ZAP: 2014/03/23 Issue 1091: CoreAPI - Do not get the IDs of temporary history records
 // ZAP: 2014/03/27 Issue 1072: Allow the request and response body sizes to be user-specifiable as far as possible
 // ZAP: 2014/08/14 Issue 1310: Allow to set history types as temporary
+// ZAP: 2015/07/14 Added write-behind mode, history records written in batches by a background thread
+// ZAP: 2015/07/16 Read through pooled read-only connections, concurrently with the writes
+// ZAP: 2015/07/28 Added method to read the records for the Sites tree, without the response bodies
+// ZAP: 2015/07/30 Retry the failed write-behind batches row by row
+// ZAP: 2015/07/31 Assign the IDs in both write modes and flush just the records pending when called
+// ZAP: 2015/07/31 Allow to prefilter the records searched with getHistoryList(long, int, String, boolean)
 
 package org.parosproxy.paros.db;
 
 import java.nio.charset.Charset;
 import java.sql.Array;
-import java.sql.CallableStatement;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.Vector;
-import java.util.regex.Matcher;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang.ArrayUtils;
@@ -97,17 +107,14 @@ public class TableHistory extends AbstractTable {
      */
     private static Set<Integer> temporaryHistoryTypes = Collections.synchronizedSet(new HashSet<Integer>());
 
-    private PreparedStatement psRead = null;
-    private PreparedStatement psInsert = null;
-    private CallableStatement psGetIdLastInsert = null;
+    private PreparedStatement psInsertWithId = null;
     private PreparedStatement psDelete = null;
     private PreparedStatement psDeleteTemp = null;
-    private PreparedStatement psContainsURI = null;
     //private PreparedStatement psAlterTable = null;
 //    private PreparedStatement psUpdateTag = null;
     private PreparedStatement psUpdateNote = null;
     
-    private int lastInsertedIndex;
+    private volatile int lastInsertedIndex;
     
     private static boolean isExistStatusCode = false;
 
@@ -116,6 +123,30 @@ public class TableHistory extends AbstractTable {
 
     private boolean bodiesAsBytes; 
 
+    /**
+     * The maximum number of records waiting to be written, when reached the writes block until some are written.
+     */
+    private static final int MAX_PENDING_WRITES = 1000;
+
+    /**
+     * Whether or not the records are written in batches, by the {@code writerThread}.
+     */
+    private volatile boolean writeBehind;
+    private volatile int writeBatchSize;
+
+    /**
+     * The records not yet written, by history ID, to serve the reads of those records.
+     */
+    private final ConcurrentSkipListMap<Integer, PendingRecord> pendingRecords = new ConcurrentSkipListMap<>();
+    private final LinkedBlockingQueue<PendingRecord> writeQueue = new LinkedBlockingQueue<>(MAX_PENDING_WRITES);
+    private final Object idLock = new Object();
+    private final Object flushLock = new Object();
+    private Thread writerThread;
+
+    private final List<WriteFailureListener> writeFailureListeners = new CopyOnWriteArrayList<>();
+
+    private volatile SearchPrefilter searchPrefilter;
+
     static {
         temporaryHistoryTypes.add(Integer.valueOf(HistoryReference.TYPE_TEMPORARY));
     }
@@ -136,6 +167,8 @@ public class TableHistory extends AbstractTable {
     	dbparams.load(Constant.getInstance().FILE_CONFIG);
     	this.configuredrequestbodysize = dbparams.getRequestBodySize();
     	this.configuredresponsebodysize = dbparams.getResponseBodySize();
+    	this.writeBehind = dbparams.isHistoryWriteBehind();
+    	this.writeBatchSize = dbparams.getHistoryWriteBatchSize();
     	    	
         bodiesAsBytes = true;
 
@@ -143,58 +176,46 @@ public class TableHistory extends AbstractTable {
         
         isExistStatusCode = DbUtils.hasColumn(conn, TABLE_NAME, STATUSCODE);
         
-        psRead = conn.prepareStatement("SELECT TOP 1 * FROM HISTORY WHERE " + HISTORYID + " = ?");
         // updatable recordset does not work in hsqldb jdbc impelementation!
         //psWrite = mConn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
         psDelete = conn.prepareStatement("DELETE FROM HISTORY WHERE " + HISTORYID + " = ?");
         psDeleteTemp = conn.prepareStatement("DELETE FROM HISTORY WHERE " + HISTTYPE + " IN ( UNNEST(?) )");
-        psContainsURI = conn.prepareStatement("SELECT TOP 1 HISTORYID FROM HISTORY WHERE URI = ? AND  METHOD = ? AND REQBODY = ? AND SESSIONID = ? AND HISTTYPE = ?");
 
         
         // ZAP: Added support for the tag when creating a history record
+        String insertColumns;
+        String insertValues;
         if (isExistStatusCode) {
-            psInsert = conn.prepareStatement("INSERT INTO HISTORY ("
-                    + SESSIONID + "," + HISTTYPE + "," + TIMESENTMILLIS + "," + 
+            insertColumns = SESSIONID + "," + HISTTYPE + "," + TIMESENTMILLIS + "," + 
                     TIMEELAPSEDMILLIS + "," + METHOD + "," + URI + "," + REQHEADER + "," + 
                     REQBODY + "," + RESHEADER + "," + RESBODY + "," + TAG + ", " + STATUSCODE + "," + NOTE + ", " +
-                    RESPONSE_FROM_TARGET_HOST
-                    + ") VALUES (?, ? ,?, ?, ?, ?, ?, ? ,? , ?, ?, ?, ?, ?)");
+                    RESPONSE_FROM_TARGET_HOST;
+            insertValues = "?, ? ,?, ?, ?, ?, ?, ? ,? , ?, ?, ?, ?, ?";
         } else {
-            psInsert = conn.prepareStatement("INSERT INTO HISTORY ("
-                    + SESSIONID + "," + HISTTYPE + "," + TIMESENTMILLIS + "," + 
+            insertColumns = SESSIONID + "," + HISTTYPE + "," + TIMESENTMILLIS + "," + 
                     TIMEELAPSEDMILLIS + "," + METHOD + "," + URI + "," + REQHEADER + "," + 
                     REQBODY + "," + RESHEADER + "," + RESBODY + "," + TAG + "," + NOTE + ", " +
-                    RESPONSE_FROM_TARGET_HOST
-                    + ") VALUES (?, ? ,?, ?, ?, ?, ?, ? ,? , ? , ?, ?, ?)");
-            
+                    RESPONSE_FROM_TARGET_HOST;
+            insertValues = "?, ? ,?, ?, ?, ?, ?, ? ,? , ? , ?, ?, ?";
         }
-        psGetIdLastInsert = conn.prepareCall("CALL IDENTITY();");
+        // The IDs are assigned before the records are written (in both modes, immediate and write-behind)
+        psInsertWithId = conn.prepareStatement("INSERT INTO HISTORY (" + HISTORYID + "," + insertColumns + ") VALUES (?, "
+                + insertValues + ")");
         
 //        psUpdateTag = conn.prepareStatement("UPDATE HISTORY SET TAG = ? WHERE HISTORYID = ?");
 
        	psUpdateNote = conn.prepareStatement("UPDATE HISTORY SET NOTE = ? WHERE HISTORYID = ?");
         
         int currentIndex = 0;
-        PreparedStatement stmt = null;
-        try {
-            stmt = conn.prepareStatement("SELECT TOP 1 HISTORYID FROM HISTORY ORDER BY HISTORYID DESC");
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    currentIndex = rs.getInt(1);
-                }
-            }
-        } finally {
-            if (stmt != null) {
-                try {
-                    stmt.close();
-                } catch(SQLException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug(e.getMessage(), e);
-                    }
-                }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT MAX(" + HISTORYID + ") FROM HISTORY");
+                ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                currentIndex = rs.getInt(1);
             }
         }
-        lastInsertedIndex = currentIndex;
+        synchronized (idLock) {
+            lastInsertedIndex = currentIndex;
+        }
     }
     
     // ZAP: Added the method.
@@ -252,18 +273,47 @@ public class TableHistory extends AbstractTable {
         
     }
     
-	public synchronized RecordHistory read(int historyId) throws HttpMalformedHeaderException, SQLException {
-	    psRead.setInt(1, historyId);
-		psRead.execute();
-		RecordHistory result = null;
-		try (ResultSet rs = psRead.getResultSet()) {
-			result = build(rs);
+	public RecordHistory read(int historyId) throws HttpMalformedHeaderException, SQLException {
+		PendingRecord pendingRecord = pendingRecords.get(Integer.valueOf(historyId));
+		if (pendingRecord != null) {
+			return pendingRecord.toRecordHistory();
 		}
+		return readFromDb(historyId);
+	}
 
-		return result;
+	private RecordHistory readFromDb(int historyId) throws HttpMalformedHeaderException, SQLException {
+		ReadConnectionPool.ReadConnection readConnection = getReadConnectionPool().borrow();
+		try {
+			PreparedStatement psRead = readConnection.prepareStatement("SELECT TOP 1 * FROM HISTORY WHERE " + HISTORYID + " = ?");
+			psRead.setInt(1, historyId);
+			psRead.execute();
+			RecordHistory result = null;
+			try (ResultSet rs = psRead.getResultSet()) {
+				result = build(rs);
+			}
+
+			return result;
+		} finally {
+			getReadConnectionPool().release(readConnection);
+		}
 	}
 	
-	public synchronized RecordHistory write(long sessionId, int histType, HttpMessage msg) throws HttpMalformedHeaderException, SQLException {
+	/**
+	 * Writes a history record with the given message.
+	 * <p>
+	 * In write-behind mode the record is assigned its ID and queued, to be written in a batch by a background thread, the
+	 * record is available to {@link #read(int)} (and the other methods of this class) right away.
+	 * </p>
+	 * 
+	 * @param sessionId the ID of the session
+	 * @param histType the type of the record
+	 * @param msg the message of the record
+	 * @return the record written
+	 * @throws HttpMalformedHeaderException if an error occurred while creating the message of the record
+	 * @throws SQLException if an error occurred while writing the record, or if the bodies are longer than allowed
+	 * @see DatabaseParam#isHistoryWriteBehind()
+	 */
+	public RecordHistory write(long sessionId, int histType, HttpMessage msg) throws HttpMalformedHeaderException, SQLException {
 	    
 	    String reqHeader = "";
 	    byte[] reqBody = new byte[0];
@@ -288,6 +338,10 @@ public class TableHistory extends AbstractTable {
 	    }
 	    
 	    //return write(sessionId, histType, msg.getTimeSentMillis(), msg.getTimeElapsedMillis(), method, uri, statusCode, reqHeader, reqBody, resHeader, resBody, msg.getTag());
+	    if (writeBehind) {
+	        return writeBehind(new PendingRecord(sessionId, histType, msg.getTimeSentMillis(), msg.getTimeElapsedMillis(), method,
+	                uri, statusCode, reqHeader, reqBody, resHeader, resBody, null, note, msg.isResponseFromTargetHost()));
+	    }
 	    return write(sessionId, histType, msg.getTimeSentMillis(), msg.getTimeElapsedMillis(), method, uri, statusCode, reqHeader, reqBody, resHeader, resBody, null, note, msg.isResponseFromTargetHost());
 	    
 	}
@@ -296,6 +350,41 @@ public class TableHistory extends AbstractTable {
 	        String method, String uri, int statusCode,
 	        String reqHeader, byte[] reqBody, String resHeader, byte[] resBody, String tag, String note, boolean responseFromTargetHost) throws HttpMalformedHeaderException, SQLException {
 
+		validateBodiesLength(reqBody, resBody);
+
+		int id = nextHistoryId();
+		psInsertWithId.setInt(1, id);
+	    setInsertParameters(psInsertWithId, 2, new PendingRecord(sessionId, histType, timeSentMillis, timeElapsedMillis, method, uri,
+	            statusCode, reqHeader, reqBody, resHeader, resBody, tag, note, responseFromTargetHost));
+        
+        psInsertWithId.executeUpdate();
+				
+		/*
+        String sql = "INSERT INTO HISTORY ("
+        		+ REQHEADER + "," + REQBODY + "," + RESHEADER + "," + RESBODY +
+				") VALUES ('"+ reqHeader + "','" + reqBody + "','" + resHeader + "','" + resBody + "'); CALL IDENTITY();";
+		Statement stmt = mConn.createStatement();
+		stmt.executeQuery(sql);
+		ResultSet rs = stmt.getResultSet();
+		*/
+		
+		return read(id);
+	}
+
+	/**
+	 * Assigns the ID of a new history record, the IDs are assigned by this class (not by the identity column of the table),
+	 * in both write modes, so that the records can be returned before being written, in write-behind mode.
+	 * 
+	 * @return the ID of the new history record
+	 */
+	private int nextHistoryId() {
+		synchronized (idLock) {
+			lastInsertedIndex++;
+			return lastInsertedIndex;
+		}
+	}
+	
+	private void validateBodiesLength(byte[] reqBody, byte[] resBody) throws SQLException {
 		//ZAP: Allow the request and response body sizes to be user-specifiable as far as possible
 		if (reqBody.length > this.configuredrequestbodysize) {
 			throw new SQLException("The actual Request Body length "+ reqBody.length + " is greater than the configured request body length "+ this.configuredrequestbodysize);
@@ -303,61 +392,256 @@ public class TableHistory extends AbstractTable {
 		if (resBody.length > this.configuredresponsebodysize) {
 			throw new SQLException("The actual Response Body length "+ resBody.length + " is greater than the configured response body length "+ this.configuredresponsebodysize);
 		}
+	}
 
-	    psInsert.setLong(1, sessionId);
-	    psInsert.setInt(2, histType);
-	    psInsert.setLong(3, timeSentMillis);
-	    psInsert.setInt(4, timeElapsedMillis);
-	    psInsert.setString(5, method);
-	    psInsert.setString(6, uri);        
-	    psInsert.setString(7, reqHeader);
+	private void setInsertParameters(PreparedStatement ps, int firstIdx, PendingRecord record) throws SQLException {
+	    int currentIdx = firstIdx;
+	    ps.setLong(currentIdx++, record.sessionId);
+	    ps.setInt(currentIdx++, record.histType);
+	    ps.setLong(currentIdx++, record.timeSentMillis);
+	    ps.setInt(currentIdx++, record.timeElapsedMillis);
+	    ps.setString(currentIdx++, record.method);
+	    ps.setString(currentIdx++, record.uri);
+	    ps.setString(currentIdx++, record.reqHeader);
         if (bodiesAsBytes) {
-            psInsert.setBytes(8, reqBody);
+            ps.setBytes(currentIdx++, record.reqBody);
         } else {
-            psInsert.setString(8, new String(reqBody, Charset.forName("US-ASCII")));
+            ps.setString(currentIdx++, new String(record.reqBody, Charset.forName("US-ASCII")));
         }
-        psInsert.setString(9, resHeader);
+        ps.setString(currentIdx++, record.resHeader);
         if (bodiesAsBytes) {
-            psInsert.setBytes(10, resBody);
+            ps.setBytes(currentIdx++, record.resBody);
         } else {
-            psInsert.setString(10, new String(resBody, Charset.forName("US-ASCII")));
+            ps.setString(currentIdx++, new String(record.resBody, Charset.forName("US-ASCII")));
         }
-	    psInsert.setString(11, tag);
+	    ps.setString(currentIdx++, record.tag);
 
-	    // ZAP: Added the statement.
-	    int currentIdx = 12;
-	    
         if (isExistStatusCode) {
-            psInsert.setInt(currentIdx, statusCode);
-            // ZAP: Added the statement.
-            ++currentIdx;
+            ps.setInt(currentIdx++, record.statusCode);
         }
         
-        // ZAP: Added the statement.
-        psInsert.setString(currentIdx, note);
-        ++currentIdx;
-        
-        psInsert.setBoolean(currentIdx, responseFromTargetHost);
-        
-        psInsert.executeUpdate();
-				
-		/*
-        String sql = "INSERT INTO HISTORY ("
-        		+ REQHEADER + "," + REQBODY + "," + RESHEADER + "," + RESBODY +
-				") VALUES ('"+ reqHeader + "','" + reqBody + "','" + resHeader + "','" + resBody + "'); CALL IDENTITY();";
-		Statement stmt = mConn.createStatement();
-		stmt.executeQuery(sql);
-		ResultSet rs = stmt.getResultSet();
-		*/
-		
-		try (ResultSet rs = psGetIdLastInsert.executeQuery()) {
-			rs.next();
-			int id = rs.getInt(1);
-            lastInsertedIndex = id;
-			return read(id);
+        ps.setString(currentIdx++, record.note);
+        ps.setBoolean(currentIdx, record.responseFromTargetHost);
+	}
+
+	private RecordHistory writeBehind(PendingRecord record) throws HttpMalformedHeaderException, SQLException {
+		validateBodiesLength(record.reqBody, record.resBody);
+
+		synchronized (idLock) {
+			// Added while holding the lock, so that the records pending up to a given ID are known, when flushing.
+			record.historyId = nextHistoryId();
+			pendingRecords.put(Integer.valueOf(record.historyId), record);
+		}
+
+		startWriterThread();
+		try {
+			writeQueue.put(record);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			// Not queued, write it now.
+			writeBatch(Collections.singletonList(record));
 		}
+		return record.toRecordHistory();
 	}
-	
+
+	private synchronized void startWriterThread() {
+		if (writerThread != null) {
+			return;
+		}
+
+		writerThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				List<PendingRecord> batch = new ArrayList<>();
+				while (true) {
+					try {
+						batch.add(writeQueue.take());
+					} catch (InterruptedException e) {
+						return;
+					}
+					writeQueue.drainTo(batch, writeBatchSize - 1);
+					try {
+						writeBatch(batch);
+					} catch (SQLException e) {
+						// Already reported, per record.
+					}
+					batch.clear();
+				}
+			}
+		}, "ZAP-HistoryWriter");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	private void writeBatch(List<PendingRecord> batch) throws SQLException {
+		try {
+			synchronized (this) {
+				int written = 0;
+				try {
+					for (PendingRecord record : batch) {
+						psInsertWithId.setInt(1, record.historyId);
+						setInsertParameters(psInsertWithId, 2, record);
+						psInsertWithId.addBatch();
+					}
+					psInsertWithId.executeBatch();
+					return;
+				} catch (BatchUpdateException e) {
+					// The records before the failed one were written.
+					written = countWritten(e.getUpdateCounts());
+					log.warn("Failed to write a batch of history records, retrying one by one: " + e.getMessage());
+				} catch (SQLException e) {
+					log.warn("Failed to write a batch of history records, retrying one by one: " + e.getMessage());
+				}
+				psInsertWithId.clearBatch();
+
+				SQLException lastException = null;
+				for (PendingRecord record : batch.subList(written, batch.size())) {
+					try {
+						psInsertWithId.setInt(1, record.historyId);
+						setInsertParameters(psInsertWithId, 2, record);
+						psInsertWithId.executeUpdate();
+					} catch (SQLException e) {
+						lastException = e;
+						writeFailed(record, e);
+					}
+				}
+				if (lastException != null) {
+					throw lastException;
+				}
+			}
+		} finally {
+			for (PendingRecord record : batch) {
+				pendingRecords.remove(Integer.valueOf(record.historyId));
+			}
+			synchronized (flushLock) {
+				flushLock.notifyAll();
+			}
+		}
+	}
+
+	private static int countWritten(int[] updateCounts) {
+		if (updateCounts == null) {
+			return 0;
+		}
+		int written = 0;
+		for (int updateCount : updateCounts) {
+			if (updateCount == Statement.EXECUTE_FAILED) {
+				break;
+			}
+			written++;
+		}
+		return written;
+	}
+
+	private void writeFailed(PendingRecord record, SQLException e) {
+		log.error("Failed to write the history record " + record.historyId + " (" + record.method + " " + record.uri + "): "
+				+ e.getMessage(), e);
+		for (WriteFailureListener listener : writeFailureListeners) {
+			try {
+				listener.writeFailed(record.historyId, e);
+			} catch (Exception ex) {
+				log.error("An error occurred while notifying a write failure listener: " + ex.getMessage(), ex);
+			}
+		}
+	}
+
+	/**
+	 * Adds the given listener, notified when a history record, queued in write-behind mode, fails to be written.
+	 * 
+	 * @param listener the listener to add
+	 * @see #removeWriteFailureListener(WriteFailureListener)
+	 * @see DatabaseParam#isHistoryWriteBehind()
+	 */
+	public void addWriteFailureListener(WriteFailureListener listener) {
+		writeFailureListeners.add(listener);
+	}
+
+	/**
+	 * Removes the given listener.
+	 * 
+	 * @param listener the listener to remove
+	 * @see #addWriteFailureListener(WriteFailureListener)
+	 */
+	public void removeWriteFailureListener(WriteFailureListener listener) {
+		writeFailureListeners.remove(listener);
+	}
+
+	/**
+	 * A listener of the history records that fail to be written, in write-behind mode, after being returned to the
+	 * callers (with their IDs already assigned).
+	 */
+	public interface WriteFailureListener {
+
+		/**
+		 * Called when the history record with the given ID failed to be written, the record no longer exists.
+		 * 
+		 * @param historyId the ID of the history record
+		 * @param cause the exception that caused the failure
+		 */
+		void writeFailed(int historyId, SQLException cause);
+	}
+
+	/**
+	 * Sets the prefilter of the records searched with {@link #getHistoryList(long, int, String, boolean)}.
+	 * 
+	 * @param prefilter the prefilter, or {@code null} to search all the records
+	 */
+	public void setSearchPrefilter(SearchPrefilter prefilter) {
+		this.searchPrefilter = prefilter;
+	}
+
+	/**
+	 * A prefilter of the history records searched with a regular expression, used to skip (without reading) the records
+	 * that are known to not match it.
+	 * 
+	 * @see TableHistory#setSearchPrefilter(SearchPrefilter)
+	 */
+	public interface SearchPrefilter {
+
+		/**
+		 * Gets the IDs of the history records, of the given session, that do not match the given regular expression,
+		 * compiled with {@code Pattern.CASE_INSENSITIVE} (and without {@code Pattern.UNICODE_CASE}), in the request or
+		 * response header or body.
+		 * 
+		 * @param sessionId the ID of the session
+		 * @param regex the regular expression
+		 * @return the IDs of the records that do not match, or {@code null} if not known
+		 */
+		BitSet getExcludedHistoryIds(long sessionId, String regex);
+	}
+
+	/**
+	 * Waits until the records queued, in write-behind mode, up to the time of the call, are written. The records queued
+	 * while waiting are not waited for, so that the callers are not starved by a continuous flow of new records.
+	 * <p>
+	 * Called before querying or changing the written records, so that the pending records are also taken into account.
+	 * </p>
+	 * 
+	 * @see DatabaseParam#isHistoryWriteBehind()
+	 */
+	public void flushPendingWrites() {
+		int highWaterId;
+		synchronized (idLock) {
+			highWaterId = lastInsertedIndex;
+		}
+		synchronized (flushLock) {
+			while (isPendingUpTo(highWaterId)) {
+				try {
+					flushLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	private boolean isPendingUpTo(int historyId) {
+		Map.Entry<Integer, PendingRecord> first = pendingRecords.firstEntry();
+		return first != null && first.getKey().intValue() <= historyId;
+	}
+
 	private RecordHistory build(ResultSet rs) throws HttpMalformedHeaderException, SQLException {
 		RecordHistory history = null;
 		try {
@@ -395,6 +679,78 @@ public class TableHistory extends AbstractTable {
 	
 	}
 	
+    /**
+     * Reads the history records of the given session and history types, with IDs in the given range, ordered by ID, with
+     * just the data needed to build the Sites tree.
+     * <p>
+     * The response bodies are not read, just their length.
+     * </p>
+     *
+     * @param sessionId the ID of session of the history records
+     * @param fromHistoryId the first history ID, inclusive
+     * @param toHistoryId the last history ID, inclusive
+     * @param histTypes the history types of the history records that should be returned
+     * @return the history records, never {@code null}
+     * @throws HttpMalformedHeaderException if the message of a record is malformed
+     * @throws SQLException if an error occurred while reading the history records
+     * @see RecordHistory#getResponseBodyLength()
+     */
+    public List<RecordHistory> readForSitesTree(long sessionId, int fromHistoryId, int toHistoryId, int... histTypes)
+            throws HttpMalformedHeaderException, SQLException {
+        flushPendingWrites();
+        StringBuilder strBuilder = new StringBuilder(350);
+        strBuilder.append("SELECT ").append(HISTORYID).append(", ").append(HISTTYPE).append(", ").append(SESSIONID);
+        strBuilder.append(", ").append(TIMESENTMILLIS).append(", ").append(TIMEELAPSEDMILLIS);
+        strBuilder.append(", ").append(REQHEADER).append(", ").append(REQBODY).append(", ").append(RESHEADER);
+        strBuilder.append(", ").append(bodiesAsBytes ? "OCTET_LENGTH(" : "CHAR_LENGTH(").append(RESBODY).append(") AS RESBODYLENGTH");
+        strBuilder.append(", ").append(NOTE).append(", ").append(RESPONSE_FROM_TARGET_HOST);
+        strBuilder.append(" FROM ").append(TABLE_NAME).append(" WHERE ").append(SESSIONID).append(" = ?");
+        strBuilder.append(" AND ").append(HISTORYID).append(" BETWEEN ? AND ?");
+        boolean hasHistTypes = histTypes != null && histTypes.length > 0;
+        if (hasHistTypes) {
+            strBuilder.append(" AND ").append(HISTTYPE).append(" IN ( UNNEST(?) )");
+        }
+        strBuilder.append(" ORDER BY ").append(HISTORYID);
+
+        ReadConnectionPool.ReadConnection readConnection = getReadConnectionPool().borrow();
+        try {
+            PreparedStatement psRead = readConnection.prepareStatement(strBuilder.toString());
+            psRead.setLong(1, sessionId);
+            psRead.setInt(2, fromHistoryId);
+            psRead.setInt(3, toHistoryId);
+            if (hasHistTypes) {
+                Array arrayHistTypes = readConnection.getConnection().createArrayOf("INTEGER", ArrayUtils.toObject(histTypes));
+                psRead.setArray(4, arrayHistTypes);
+            }
+            try (ResultSet rs = psRead.executeQuery()) {
+                List<RecordHistory> records = new ArrayList<>();
+                while (rs.next()) {
+                    byte[] reqBody;
+                    if (bodiesAsBytes) {
+                        reqBody = rs.getBytes(REQBODY);
+                    } else {
+                        reqBody = rs.getString(REQBODY).getBytes();
+                    }
+                    records.add(new RecordHistory(
+                            rs.getInt(HISTORYID),
+                            rs.getInt(HISTTYPE),
+                            rs.getLong(SESSIONID),
+                            rs.getLong(TIMESENTMILLIS),
+                            rs.getInt(TIMEELAPSEDMILLIS),
+                            rs.getString(REQHEADER),
+                            reqBody,
+                            rs.getString(RESHEADER),
+                            rs.getInt("RESBODYLENGTH"),
+                            rs.getString(NOTE),
+                            rs.getBoolean(RESPONSE_FROM_TARGET_HOST)));
+                }
+                return records;
+            }
+        } finally {
+            getReadConnectionPool().release(readConnection);
+        }
+    }
+
     /**
      * Gets all the history record IDs of the given session.
      *
@@ -420,6 +776,7 @@ public class TableHistory extends AbstractTable {
      * @see #getHistoryIdsExceptOfHistType(long, int...)
      */
     public List<Integer> getHistoryIdsOfHistType(long sessionId, int... histTypes) throws SQLException {
+        flushPendingWrites();
         boolean hasHistTypes = histTypes != null && histTypes.length > 0;
         int strLength = hasHistTypes ? 97 : 68;
         StringBuilder strBuilder = new StringBuilder(strLength);
@@ -430,11 +787,12 @@ public class TableHistory extends AbstractTable {
         }
         strBuilder.append(" ORDER BY ").append(HISTORYID);
 
-        try (PreparedStatement psReadSession = getConnection().prepareStatement(strBuilder.toString())) {
-
+        ReadConnectionPool.ReadConnection readConnection = getReadConnectionPool().borrow();
+        try {
+            PreparedStatement psReadSession = readConnection.prepareStatement(strBuilder.toString());
             psReadSession.setLong(1, sessionId);
             if (hasHistTypes) {
-                Array arrayHistTypes = getConnection().createArrayOf("INTEGER", ArrayUtils.toObject(histTypes));
+                Array arrayHistTypes = readConnection.getConnection().createArrayOf("INTEGER", ArrayUtils.toObject(histTypes));
                 psReadSession.setArray(2, arrayHistTypes);
             }
             try (ResultSet rs = psReadSession.executeQuery()) {
@@ -446,6 +804,8 @@ public class TableHistory extends AbstractTable {
 
                 return ids;
             }
+        } finally {
+            getReadConnectionPool().release(readConnection);
         }
     }
 
@@ -460,6 +820,7 @@ public class TableHistory extends AbstractTable {
      * @see #getHistoryIdsOfHistType(long, int...)
      */
     public List<Integer> getHistoryIdsExceptOfHistType(long sessionId, int... histTypes) throws SQLException {
+        flushPendingWrites();
         boolean hasHistTypes = histTypes != null && histTypes.length > 0;
         int strLength = hasHistTypes ? 102 : 68;
         StringBuilder sb = new StringBuilder(strLength);
@@ -470,11 +831,12 @@ public class TableHistory extends AbstractTable {
         }
         sb.append(" ORDER BY ").append(HISTORYID);
 
-        try (PreparedStatement psReadSession = getConnection().prepareStatement(sb.toString())) {
-
+        ReadConnectionPool.ReadConnection readConnection = getReadConnectionPool().borrow();
+        try {
+            PreparedStatement psReadSession = readConnection.prepareStatement(sb.toString());
             psReadSession.setLong(1, sessionId);
             if (hasHistTypes) {
-                Array arrayHistTypes = getConnection().createArrayOf("INTEGER", ArrayUtils.toObject(histTypes));
+                Array arrayHistTypes = readConnection.getConnection().createArrayOf("INTEGER", ArrayUtils.toObject(histTypes));
                 psReadSession.setArray(2, arrayHistTypes);
             }
             try (ResultSet rs = psReadSession.executeQuery()) {
@@ -486,6 +848,8 @@ public class TableHistory extends AbstractTable {
 
                 return ids;
             }
+        } finally {
+            getReadConnectionPool().release(readConnection);
         }
     }
 
@@ -511,74 +875,68 @@ public class TableHistory extends AbstractTable {
 	}
 
 	public List<Integer> getHistoryList(long sessionId, int histType, String filter, boolean isRequest) throws SQLException {
-        PreparedStatement psReadSearch = getConnection().prepareStatement("SELECT * FROM HISTORY WHERE " + SESSIONID + " = ? AND " + HISTTYPE + " = ? ORDER BY " + HISTORYID);
-	    ResultSet rs = null;
-		Vector<Integer> v = new Vector<>();
-		try {
-
-		    Pattern pattern = Pattern.compile(filter, Pattern.MULTILINE| Pattern.CASE_INSENSITIVE);
-			Matcher matcher = null;
-	
-			psReadSearch.setLong(1, sessionId);
-			psReadSearch.setInt(2, histType);
-			rs = psReadSearch.executeQuery();
-			while (rs.next()) {
-			    if (isRequest) {
-			        matcher = pattern.matcher(rs.getString(REQHEADER));
-			        if (matcher.find()) {
-			            // ZAP: Changed to use the method Integer.valueOf.
-			            v.add(Integer.valueOf(rs.getInt(HISTORYID)));
-			            continue;
-			        }
-			        matcher = pattern.matcher(rs.getString(REQBODY));
-			        if (matcher.find()) {
-			            // ZAP: Changed to use the method Integer.valueOf.
-			            v.add(Integer.valueOf(rs.getInt(HISTORYID)));
-			            continue;
-			        }
-			    } else {
-			        matcher = pattern.matcher(rs.getString(RESHEADER));
-			        if (matcher.find()) {
-			            // ZAP: Changed to use the method Integer.valueOf.
-			            v.add(Integer.valueOf(rs.getInt(HISTORYID)));
-			            continue;
-			        }
-			        matcher = pattern.matcher(rs.getString(RESBODY));
-			        if (matcher.find()) {
-			            // ZAP: Changed to use the method Integer.valueOf.
-			            v.add(Integer.valueOf(rs.getInt(HISTORYID)));
-			            continue;
-			        }
-			    }
-			    
-			}
-		} finally {
-			if (rs != null) {
-				try {
-					rs.close();
-				} catch (Exception e) {
-					// Ignore
-				}
-			}
-		    psReadSearch.close();
-		}
+	    Pattern pattern = Pattern.compile(filter, Pattern.MULTILINE| Pattern.CASE_INSENSITIVE);
+	    SearchPrefilter prefilter = searchPrefilter;
+	    BitSet excludedIds = (prefilter != null) ? prefilter.getExcludedHistoryIds(sessionId, filter) : null;
 
-	    return v;
+	    List<Integer> historyIds = new ArrayList<>();
+	    // Also flushes the pending writes
+	    for (Integer historyId : getHistoryIdsOfHistType(sessionId, histType)) {
+	        if (excludedIds != null && excludedIds.get(historyId.intValue())) {
+	            continue;
+	        }
+	        HttpMessage msg;
+	        try {
+	            RecordHistory recordHistory = read(historyId.intValue());
+	            if (recordHistory == null) {
+	                continue;
+	            }
+	            msg = recordHistory.getHttpMessage();
+	        } catch (HttpMalformedHeaderException e) {
+	            log.warn("Failed to read the history record " + historyId + ": " + e.getMessage(), e);
+	            continue;
+	        }
+	        boolean found;
+	        if (isRequest) {
+	            found = pattern.matcher(msg.getRequestHeader().toString()).find()
+	                    || pattern.matcher(msg.getRequestBody().toString()).find();
+	        } else {
+	            found = pattern.matcher(msg.getResponseHeader().toString()).find()
+	                    || pattern.matcher(msg.getResponseBody().toString()).find();
+	        }
+	        if (found) {
+	            historyIds.add(historyId);
+	        }
+	    }
+	    return historyIds;
 	}
 	
 	public void deleteHistorySession(long sessionId) throws SQLException {
+		flushPendingWrites();
         try (Statement stmt = getConnection().createStatement()) {
         	stmt.executeUpdate("DELETE FROM HISTORY WHERE " + SESSIONID + " = " + sessionId);
 		}
 	}
 	
 	public void deleteHistoryType(long sessionId, int historyType) throws SQLException {
+		flushPendingWrites();
         try (Statement stmt = getConnection().createStatement()) {
         	stmt.executeUpdate("DELETE FROM HISTORY WHERE " + SESSIONID + " = " + sessionId + " AND " + HISTTYPE + " = " + historyType);
 		}
 	}
 
 	public void delete(int historyId) throws SQLException {
+		PendingRecord pendingRecord = pendingRecords.get(Integer.valueOf(historyId));
+		if (pendingRecord != null && writeQueue.remove(pendingRecord)) {
+			// Not yet written, no longer needs to be.
+			pendingRecords.remove(Integer.valueOf(historyId));
+			synchronized (flushLock) {
+				flushLock.notifyAll();
+			}
+			return;
+		}
+		flushPendingWrites();
+
 		psDelete.setInt(1, historyId);
 		psDelete.executeUpdate();
 		
@@ -622,6 +980,8 @@ public class TableHistory extends AbstractTable {
             throw new IllegalArgumentException("Parameter batchSize must be greater than zero.");
         }
 
+        flushPendingWrites();
+
         int count = 0;
         for (Integer id : ids) {
             psDelete.setInt(1, id.intValue());
@@ -678,6 +1038,7 @@ public class TableHistory extends AbstractTable {
      * @see HistoryReference#TYPE_TEMPORARY
      */
     public void deleteTemporary() throws SQLException {
+        flushPendingWrites();
         Integer[] ids = new Integer[temporaryHistoryTypes.size()];
         ids = temporaryHistoryTypes.toArray(ids);
         Array arrayHistTypes = getConnection().createArrayOf("INTEGER", ArrayUtils.toObject(ArrayUtils.toPrimitive(ids)));
@@ -686,27 +1047,45 @@ public class TableHistory extends AbstractTable {
     }
 	
 	public boolean containsURI(long sessionId, int historyType, String method, String uri, byte[] body) throws SQLException {
-	    psContainsURI.setString(1, uri);
-        psContainsURI.setString(2, method);
-        
-        if (bodiesAsBytes) {
-            psContainsURI.setBytes(3, body);
-        } else {
-            psContainsURI.setString(3, new String(body));
-        }
-        
-	    psContainsURI.setLong(4, sessionId);
-	    psContainsURI.setInt(5, historyType);
-	    try (ResultSet rs = psContainsURI.executeQuery()) {
-		    if (rs.next()) {
-		        return true;
-		    }
+		flushPendingWrites();
+		ReadConnectionPool.ReadConnection readConnection = getReadConnectionPool().borrow();
+		try {
+		    PreparedStatement psContainsURI = readConnection.prepareStatement("SELECT TOP 1 HISTORYID FROM HISTORY WHERE URI = ? AND  METHOD = ? AND REQBODY = ? AND SESSIONID = ? AND HISTTYPE = ?");
+		    psContainsURI.setString(1, uri);
+	        psContainsURI.setString(2, method);
+	        
+	        if (bodiesAsBytes) {
+	            psContainsURI.setBytes(3, body);
+	        } else {
+	            psContainsURI.setString(3, new String(body));
+	        }
+	        
+		    psContainsURI.setLong(4, sessionId);
+		    psContainsURI.setInt(5, historyType);
+		    try (ResultSet rs = psContainsURI.executeQuery()) {
+			    if (rs.next()) {
+			        return true;
+			    }
+			}
+		    return false;
+		} finally {
+			getReadConnectionPool().release(readConnection);
 		}
-	    return false;
 	    
 	}
     
     public RecordHistory getHistoryCache(HistoryReference ref, HttpMessage reqMsg) throws SQLException , HttpMalformedHeaderException {
+        flushPendingWrites();
+        ReadConnectionPool.ReadConnection readConnection = getReadConnectionPool().borrow();
+        try {
+            return getHistoryCache(readConnection.getConnection(), ref, reqMsg);
+        } finally {
+            getReadConnectionPool().release(readConnection);
+        }
+    }
+
+    private RecordHistory getHistoryCache(Connection conn, HistoryReference ref, HttpMessage reqMsg) throws SQLException,
+            HttpMalformedHeaderException {
 
         //  get the cache from provided reference.
         //  naturally, the obtained cache should be AFTER AND NEARBY to the given reference.
@@ -717,12 +1096,12 @@ public class TableHistory extends AbstractTable {
         PreparedStatement psReadCache = null;
         
         if (isExistStatusCode) {
-//          psReadCache = getConnection().prepareStatement("SELECT TOP 1 * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND " + HISTORYID + " >= ? AND " + HISTORYID + " <= ? AND SESSIONID = ? AND (HISTTYPE = " + HistoryReference.TYPE_MANUAL + " OR HISTTYPE = " + HistoryReference.TYPE_HIDDEN + ") AND STATUSCODE != 304");
-            psReadCache = getConnection().prepareStatement("SELECT TOP 1 * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND " + HISTORYID + " >= ? AND " + HISTORYID + " <= ? AND SESSIONID = ? AND STATUSCODE != 304");
+//          psReadCache = conn.prepareStatement("SELECT TOP 1 * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND " + HISTORYID + " >= ? AND " + HISTORYID + " <= ? AND SESSIONID = ? AND (HISTTYPE = " + HistoryReference.TYPE_MANUAL + " OR HISTTYPE = " + HistoryReference.TYPE_HIDDEN + ") AND STATUSCODE != 304");
+            psReadCache = conn.prepareStatement("SELECT TOP 1 * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND " + HISTORYID + " >= ? AND " + HISTORYID + " <= ? AND SESSIONID = ? AND STATUSCODE != 304");
 
         } else {
-//          psReadCache = getConnection().prepareStatement("SELECT * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND " + HISTORYID + " >= ? AND " + HISTORYID + " <= ? AND SESSIONID = ? AND (HISTTYPE = " + HistoryReference.TYPE_MANUAL + " OR HISTTYPE = " + HistoryReference.TYPE_HIDDEN + ")");
-            psReadCache = getConnection().prepareStatement("SELECT * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND " + HISTORYID + " >= ? AND " + HISTORYID + " <= ? AND SESSIONID = ?)");            
+//          psReadCache = conn.prepareStatement("SELECT * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND " + HISTORYID + " >= ? AND " + HISTORYID + " <= ? AND SESSIONID = ? AND (HISTTYPE = " + HistoryReference.TYPE_MANUAL + " OR HISTTYPE = " + HistoryReference.TYPE_HIDDEN + ")");
+            psReadCache = conn.prepareStatement("SELECT * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND " + HISTORYID + " >= ? AND " + HISTORYID + " <= ? AND SESSIONID = ?)");            
             
         }
         psReadCache.setString(1, reqMsg.getRequestHeader().getURI().toString());
@@ -767,12 +1146,12 @@ public class TableHistory extends AbstractTable {
         // lookup from cache BEFORE the given reference
 
         if (isExistStatusCode) {
-//            psReadCache = getConnection().prepareStatement("SELECT TOP 1 * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND SESSIONID = ? AND STATUSCODE != 304 AND (HISTTYPE = " + HistoryReference.TYPE_MANUAL + " OR HISTTYPE = " + HistoryReference.TYPE_HIDDEN  + ")");
-            psReadCache = getConnection().prepareStatement("SELECT TOP 1 * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND SESSIONID = ? AND STATUSCODE != 304");
+//            psReadCache = conn.prepareStatement("SELECT TOP 1 * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND SESSIONID = ? AND STATUSCODE != 304 AND (HISTTYPE = " + HistoryReference.TYPE_MANUAL + " OR HISTTYPE = " + HistoryReference.TYPE_HIDDEN  + ")");
+            psReadCache = conn.prepareStatement("SELECT TOP 1 * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND SESSIONID = ? AND STATUSCODE != 304");
 
         } else {
-//            psReadCache = getConnection().prepareStatement("SELECT * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND SESSIONID = ? AND (HISTTYPE = " + HistoryReference.TYPE_MANUAL + " OR HISTTYPE = " + HistoryReference.TYPE_HIDDEN  + ")");
-            psReadCache = getConnection().prepareStatement("SELECT * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND SESSIONID = ?");
+//            psReadCache = conn.prepareStatement("SELECT * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND SESSIONID = ? AND (HISTTYPE = " + HistoryReference.TYPE_MANUAL + " OR HISTTYPE = " + HistoryReference.TYPE_HIDDEN  + ")");
+            psReadCache = conn.prepareStatement("SELECT * FROM HISTORY WHERE URI = ? AND METHOD = ? AND REQBODY = ? AND SESSIONID = ?");
 
         }
         psReadCache.setString(1, reqMsg.getRequestHeader().getURI().toString());
@@ -813,13 +1192,73 @@ public class TableHistory extends AbstractTable {
     }
     
     public void updateNote(int historyId, String note) throws SQLException {
+        flushPendingWrites();
         psUpdateNote.setString(1, note);
         psUpdateNote.setInt(2, historyId);
         psUpdateNote.execute();
     }
 
     public int lastIndex () {
-        return lastInsertedIndex;
+        synchronized (idLock) {
+            return lastInsertedIndex;
+        }
+    }
+
+    /**
+     * A history record waiting to be written, in write-behind mode.
+     */
+    private static final class PendingRecord {
+
+        private int historyId;
+        private final long sessionId;
+        private final int histType;
+        private final long timeSentMillis;
+        private final int timeElapsedMillis;
+        private final String method;
+        private final String uri;
+        private final int statusCode;
+        private final String reqHeader;
+        private final byte[] reqBody;
+        private final String resHeader;
+        private final byte[] resBody;
+        private final String tag;
+        private final String note;
+        private final boolean responseFromTargetHost;
+
+        private PendingRecord(long sessionId, int histType, long timeSentMillis, int timeElapsedMillis, String method,
+                String uri, int statusCode, String reqHeader, byte[] reqBody, String resHeader, byte[] resBody, String tag,
+                String note, boolean responseFromTargetHost) {
+            this.sessionId = sessionId;
+            this.histType = histType;
+            this.timeSentMillis = timeSentMillis;
+            this.timeElapsedMillis = timeElapsedMillis;
+            this.method = method;
+            this.uri = uri;
+            this.statusCode = statusCode;
+            this.reqHeader = reqHeader;
+            this.reqBody = reqBody;
+            this.resHeader = resHeader;
+            this.resBody = resBody;
+            this.tag = tag;
+            this.note = note;
+            this.responseFromTargetHost = responseFromTargetHost;
+        }
+
+        private RecordHistory toRecordHistory() throws HttpMalformedHeaderException {
+            return new RecordHistory(
+                    historyId,
+                    histType,
+                    sessionId,
+                    timeSentMillis,
+                    timeElapsedMillis,
+                    reqHeader,
+                    reqBody,
+                    resHeader,
+                    resBody,
+                    tag,
+                    note,
+                    responseFromTargetHost);
+        }
     }
 
 }
@@ -109,6 +109,34 @@ public class TableTag extends AbstractTable {
     	return result;
     }
         
+    /**
+     * Gets the tags of the history records with IDs in the given range, ordered by history ID, for example, to load the tags
+     * of several history records at once.
+     * 
+     * @param fromHistoryId the first history ID, inclusive
+     * @param toHistoryId the last history ID, inclusive
+     * @return the tags, never {@code null}
+     * @throws SQLException if an error occurred while reading the tags
+     */
+    public List<RecordTag> getTagsForHistoryIdRange(long fromHistoryId, long toHistoryId) throws SQLException {
+        List<RecordTag> result = new ArrayList<>();
+        ReadConnectionPool.ReadConnection readConnection = getReadConnectionPool().borrow();
+        try {
+            PreparedStatement psGetTags = readConnection.prepareStatement("SELECT * FROM " + TABLE_NAME + " WHERE "
+                    + HISTORYID + " BETWEEN ? AND ? ORDER BY " + HISTORYID + ", " + TAGID);
+            psGetTags.setLong(1, fromHistoryId);
+            psGetTags.setLong(2, toHistoryId);
+            try (ResultSet rs = psGetTags.executeQuery()) {
+                while (rs.next()) {
+                    result.add(new RecordTag(rs.getLong(TAGID), rs.getLong(HISTORYID), rs.getString(TAG)));
+                }
+            }
+        } finally {
+            getReadConnectionPool().release(readConnection);
+        }
+        return result;
+    }
+
     public List<String> getAllTags () throws SQLException {
     	List<String> result = new ArrayList<>();
     	try (ResultSet rs = psGetAllTags.executeQuery()) {
@@ -55,11 +55,13 @@
 // ZAP: 2014/04/10 Issue 1042: Having significant issues opening a previous session
 // ZAP: 2014/05/20 Issue 1206: "History" tab is not cleared when a new session is created 
 // through the API with ZAP in GUI mode
+// ZAP: 2015/07/31 Remove and report the history records that failed to be written (write-behind)
 
 package org.parosproxy.paros.extension.history;
 
 import java.awt.EventQueue;
 import java.sql.SQLException;
+import java.text.MessageFormat;
 import java.util.Hashtable;
 import java.util.List;
 
@@ -70,6 +72,7 @@ import org.apache.log4j.Logger;
 import org.parosproxy.paros.Constant;
 import org.parosproxy.paros.control.Control.Mode;
 import org.parosproxy.paros.core.scanner.Alert;
+import org.parosproxy.paros.db.TableHistory;
 import org.parosproxy.paros.extension.ExtensionAdaptor;
 import org.parosproxy.paros.extension.ExtensionHook;
 import org.parosproxy.paros.extension.ExtensionHookView;
@@ -199,6 +202,9 @@ public class ExtensionHistory extends ExtensionAdaptor implements SessionChanged
 	    super.hook(extensionHook);
         extensionHook.addSessionListener(this);
         extensionHook.addProxyListener(getProxyListenerLog());
+        if (getModel().getDb() != null && getModel().getDb().getTableHistory() != null) {
+            getModel().getDb().getTableHistory().addWriteFailureListener(new HistoryWriteFailureListener());
+        }
 
 	    if (getView() != null) {
 		    ExtensionHookView pv = extensionHook.getHookView();
@@ -684,4 +690,33 @@ public class ExtensionHistory extends ExtensionAdaptor implements SessionChanged
 	public void sessionModeChanged(Mode mode) {
 		// Ignore
 	}
-}
\ No newline at end of file
+
+	/**
+	 * A {@code WriteFailureListener} that removes the history records that failed to be written (in write-behind mode) from
+	 * the history list, and reports the failure in the output panel.
+	 */
+	private class HistoryWriteFailureListener implements TableHistory.WriteFailureListener {
+
+		@Override
+		public void writeFailed(final int historyId, SQLException cause) {
+			final String message = MessageFormat.format(
+					Constant.messages.getString("history.writeFailed"),
+					Integer.valueOf(historyId),
+					cause.getMessage());
+			if (!View.isInitialised()) {
+				historyIdToRef.remove(Integer.valueOf(historyId));
+				return;
+			}
+
+			EventQueue.invokeLater(new Runnable() {
+
+				@Override
+				public void run() {
+					historyTableModel.removeEntry(historyId);
+					historyIdToRef.remove(Integer.valueOf(historyId));
+					getView().getOutputPanel().append(message + "\n");
+				}
+			});
+		}
+	}
+}
@@ -16,6 +16,9 @@
  * limitations under the License. 
  */
 // ZAP: 2014/03/27 Issue 1072: Allow the request and response body sizes to be user-specifiable as far as possible
+// ZAP: 2015/07/14 Added history write-behind options
+// ZAP: 2015/07/30 Disabled the history write-behind by default
+// ZAP: 2015/07/31 Enabled the history write-behind by default, again
 
 package org.parosproxy.paros.extension.option;
 
@@ -29,6 +32,8 @@ import org.parosproxy.paros.common.AbstractParam;
  * <li>Compact - allows the database to be compacted on exit.</li>
  * <li>Request Body Size - the size of the request body in the 'History' database table.</li>
  * <li>Response Body Size - the size of the response body in the 'History' database table.</li>
+ * <li>History Write-Behind - allows the history records to be written in batches, by a background thread.</li>
+ * <li>History Write Batch Size - the maximum number of history records written in a single batch.</li>
  * </ul>
  * </p>
  */
@@ -53,6 +58,16 @@ public class DatabaseParam extends AbstractParam {
      * The configuration key for the response body size.
      */
     private static final String PARAM_RESPONSE_BODY_SIZE = PARAM_BASE_KEY + ".response.bodysize";
+
+    /**
+     * The configuration key for the history write-behind option.
+     */
+    private static final String PARAM_HISTORY_WRITE_BEHIND = PARAM_BASE_KEY + ".history.writeBehind";
+
+    /**
+     * The configuration key for the history write batch size.
+     */
+    private static final String PARAM_HISTORY_WRITE_BATCH_SIZE = PARAM_BASE_KEY + ".history.writeBatchSize";
     
     /**
      * The compact option, whether the database should be compacted on exit.
@@ -76,12 +91,29 @@ public class DatabaseParam extends AbstractParam {
      */    
     private int responsebodysize;
 
+    /**
+     * The history write-behind option, whether the history records should be written in batches, by a background thread.
+     * Default is {@code true}, the records that fail to be written are reported to the
+     * {@link org.parosproxy.paros.db.TableHistory.WriteFailureListener}s, after being returned to the callers.
+     * 
+     * @see org.parosproxy.paros.db.TableHistory#write(long, int, org.parosproxy.paros.network.HttpMessage)
+     */
+    private boolean historyWriteBehind;
+
+    /**
+     * The maximum number of history records written in a single batch.
+     * Default is 100.
+     */
+    private int historyWriteBatchSize;
+
     public DatabaseParam() {
         super();
         
         compactDatabase = false;
         requestbodysize = 16777216;
 		responsebodysize = 16777216;
+        historyWriteBehind = true;
+        historyWriteBatchSize = 100;
     }
 
     /**
@@ -92,6 +124,8 @@ public class DatabaseParam extends AbstractParam {
      * <li>Compact - allows the database to be compacted on exit.</li>
      * <li>Request Body Size - the size of the request body in the 'History' database table.</li>
      * <li>Response Body Size - the size of the response body in the 'History' database table.</li>
+     * <li>History Write-Behind - allows the history records to be written in batches, by a background thread.</li>
+     * <li>History Write Batch Size - the maximum number of history records written in a single batch.</li>
      * </ul>
      * </p>
      */
@@ -100,6 +134,8 @@ public class DatabaseParam extends AbstractParam {
         compactDatabase = getConfig().getBoolean(PARAM_COMPACT_DATABASE, compactDatabase);
         requestbodysize = getConfig().getInt(PARAM_REQUEST_BODY_SIZE, requestbodysize);
         responsebodysize = getConfig().getInt(PARAM_RESPONSE_BODY_SIZE, responsebodysize);
+        historyWriteBehind = getConfig().getBoolean(PARAM_HISTORY_WRITE_BEHIND, historyWriteBehind);
+        historyWriteBatchSize = Math.max(1, getConfig().getInt(PARAM_HISTORY_WRITE_BATCH_SIZE, historyWriteBatchSize));
     }
 
     /**
@@ -165,4 +201,57 @@ public class DatabaseParam extends AbstractParam {
         getConfig().setProperty(PARAM_RESPONSE_BODY_SIZE, Integer.valueOf(responsebodysize));
     }
 
+    /**
+     * Tells whether the history records should be written in batches, by a background thread, or immediately, by the
+     * thread that creates them.
+     * 
+     * @return {@code true} if the history records should be written in batches, {@code false} otherwise
+     * @see #setHistoryWriteBehind(boolean)
+     */
+    public boolean isHistoryWriteBehind() {
+        return historyWriteBehind;
+    }
+
+    /**
+     * Sets whether the history records should be written in batches, by a background thread, or immediately, by the
+     * thread that creates them.
+     * <p>
+     * Takes effect when the database is (re)opened.
+     * </p>
+     * 
+     * @param historyWriteBehind {@code true} if the history records should be written in batches, {@code false} otherwise
+     * @see #isHistoryWriteBehind()
+     */
+    public void setHistoryWriteBehind(boolean historyWriteBehind) {
+        this.historyWriteBehind = historyWriteBehind;
+        getConfig().setProperty(PARAM_HISTORY_WRITE_BEHIND, Boolean.valueOf(historyWriteBehind));
+    }
+
+    /**
+     * Gets the maximum number of history records written in a single batch.
+     * 
+     * @return the maximum number of history records written in a single batch
+     * @see #isHistoryWriteBehind()
+     */
+    public int getHistoryWriteBatchSize() {
+        return historyWriteBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of history records written in a single batch.
+     * <p>
+     * Takes effect when the database is (re)opened.
+     * </p>
+     * 
+     * @param historyWriteBatchSize the maximum number of history records written in a single batch
+     * @throws IllegalArgumentException if {@code historyWriteBatchSize} is not greater than zero
+     */
+    public void setHistoryWriteBatchSize(int historyWriteBatchSize) {
+        if (historyWriteBatchSize <= 0) {
+            throw new IllegalArgumentException("Parameter historyWriteBatchSize must be greater than zero.");
+        }
+        this.historyWriteBatchSize = historyWriteBatchSize;
+        getConfig().setProperty(PARAM_HISTORY_WRITE_BATCH_SIZE, Integer.valueOf(historyWriteBatchSize));
+    }
+
 }
@@ -37,6 +37,9 @@
 // ZAP: 2014/06/10 Added TYPE_ACCESS_CONTROL
 // ZAP: 2014/06/16 Issue 990: Allow to delete alerts through the API
 // ZAP: 2014/08/14 Issue 1311: Differentiate temporary internal messages from temporary scanner messages
+// ZAP: 2015/06/30 Notify the HistoryReferenceWriteListeners when a new history reference is written
+// ZAP: 2015/07/28 Allow to create from a record and tags already read
+// ZAP: 2015/07/30 Tag the messages whose response body was truncated
 
 package org.parosproxy.paros.model;
 
@@ -45,6 +48,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.httpclient.URI;
 import org.apache.log4j.Logger;
@@ -109,12 +113,22 @@ public class HistoryReference {
      */
     public static final int TYPE_SCANNER_TEMPORARY = 14;
 
+    /**
+     * The tag of the messages whose response body was truncated (for example, streamed to the client), which are not
+     * scanned.
+     * 
+     * @see HttpMessage#isResponseBodyTruncated()
+     */
+    public static final String TAG_RESPONSE_TRUNCATED = "ResponseTruncated";
+
    private static java.text.DecimalFormat decimalFormat = new java.text.DecimalFormat("##0.###");
 	private static TableHistory staticTableHistory = null;
 	// ZAP: Support for multiple tags
 	private static TableTag staticTableTag = null;
 	// ZAP: Support for loading alerts from db
 	private static TableAlert staticTableAlert = null;
+	// ZAP: Support for listeners of new history references
+	private static final List<HistoryReferenceWriteListener> writeListeners = new CopyOnWriteArrayList<>();
 	
 	private int historyId = 0;
 	private int historyType = TYPE_PROXIED;
@@ -161,6 +175,23 @@ public class HistoryReference {
 		
 		build(history.getSessionId(), history.getHistoryId(), history.getHistoryType(), msg);
 	}
+
+	/**
+	 * Constructs a {@code HistoryReference} with the given record and tags, already read from the database, for example,
+	 * in bulk while loading a session.
+	 * <p>
+	 * The record might not contain the response body, just its length.
+	 * 
+	 * @param history the record of the history reference
+	 * @param tags the tags of the history reference
+	 * @see RecordHistory#getResponseBodyLength()
+	 */
+	public HistoryReference(RecordHistory history, List<String> tags) {
+		this.icons =  new ArrayList<>();
+		this.clearIfManual = new ArrayList<>();
+		this.tags.addAll(tags);
+		build(history.getSessionId(), history.getHistoryId(), history.getHistoryType(), history.getHttpMessage(), history.getResponseBodyLength());
+	}
 	
 	public HistoryReference(Session session, int historyType, HttpMessage msg) throws HttpMalformedHeaderException, SQLException {
 		
@@ -175,12 +206,17 @@ public class HistoryReference {
 		for (RecordTag rtag : rtags) {
 			this.tags.add(rtag.getTag());
 		}
+		if (msg.isResponseBodyTruncated() && !this.tags.contains(TAG_RESPONSE_TRUNCATED)) {
+			addTag(TAG_RESPONSE_TRUNCATED);
+		}
 		
 		// ZAP: Support for loading the alerts from the db
 		List<RecordAlert> alerts = staticTableAlert.getAlertsBySourceHistoryId(historyId);
 		for (RecordAlert alert: alerts) {
 			this.addAlert(new Alert(alert, this));
 		}
+
+		notifyWriteListeners(this, msg);
 	}
 	
 	
@@ -214,6 +250,10 @@ public class HistoryReference {
 	
 	
 	private void build(long sessionId, int historyId, int historyType, HttpMessage msg) {
+		build(sessionId, historyId, historyType, msg, msg.getResponseBody().length());
+	}
+
+	private void build(long sessionId, int historyId, int historyType, HttpMessage msg, int responseBodyLength) {
 	    this.sessionId = sessionId;
 	    this.historyId = historyId;
 		this.historyType = historyType;
@@ -224,7 +264,7 @@ public class HistoryReference {
 		msg.setHistoryRef(this);
 		
 		// Cache info commonly used so that we dont need to keep reading the HttpMessage from the db. 
-		httpMessageCachedData = new HttpMessageCachedData(msg);
+		httpMessageCachedData = new HttpMessageCachedData(msg, responseBodyLength);
 	}
 	
 	public static void setTableHistory(TableHistory tableHistory) {
@@ -236,6 +276,38 @@ public class HistoryReference {
 	public static void setTableAlert(TableAlert tableAlert) {
 		staticTableAlert = tableAlert;
 	}
+
+	/**
+	 * Adds the given listener, to be notified when a new history reference is written to the database.
+	 * 
+	 * @param listener the listener that will be added
+	 * @throws IllegalArgumentException if the given listener is {@code null}
+	 */
+	public static void addWriteListener(HistoryReferenceWriteListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("Parameter listener must not be null.");
+		}
+		writeListeners.add(listener);
+	}
+
+	/**
+	 * Removes the given listener.
+	 * 
+	 * @param listener the listener that will be removed
+	 */
+	public static void removeWriteListener(HistoryReferenceWriteListener listener) {
+		writeListeners.remove(listener);
+	}
+
+	private static void notifyWriteListeners(HistoryReference historyReference, HttpMessage msg) {
+		for (HistoryReferenceWriteListener listener : writeListeners) {
+			try {
+				listener.historyReferenceWritten(historyReference, msg);
+			} catch (Exception e) {
+				log.error(e.getMessage(), e);
+			}
+		}
+	}
 	/**
 	 * @return Returns the historyId.
 	 */
@@ -0,0 +1,40 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.model;
+
+import org.parosproxy.paros.network.HttpMessage;
+
+/**
+ * A listener that is notified when a new {@code HistoryReference} is written to the database.
+ *
+ * @see HistoryReference#addWriteListener(HistoryReferenceWriteListener)
+ */
+public interface HistoryReferenceWriteListener {
+
+    /**
+     * Called after the given history reference (and its message) was written to the database.
+     * <p>
+     * The method is called by the thread that created the history reference, so implementations should return as soon
+     * as possible (for example, by queueing the work to be done in other thread). The message must not be modified.
+     * </p>
+     *
+     * @param historyReference the history reference that was written
+     * @param msg the message of the history reference
+     */
+    void historyReferenceWritten(HistoryReference historyReference, HttpMessage msg);
+}
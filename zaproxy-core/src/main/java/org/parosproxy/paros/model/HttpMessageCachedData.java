@@ -40,6 +40,17 @@ public class HttpMessageCachedData {
     private WeakReference<String> wrRequestBody;
 
     public HttpMessageCachedData(HttpMessage msg) {
+        this(msg, msg.getResponseBody().length());
+    }
+
+    /**
+     * Constructs a {@code HttpMessageCachedData} with the given message and length of the response body, for messages
+     * created without the response body.
+     *
+     * @param msg the message
+     * @param responseBodyLength the length of the response body
+     */
+    public HttpMessageCachedData(HttpMessage msg, int responseBodyLength) {
         this.method = msg.getRequestHeader().getMethod();
         this.uri = msg.getRequestHeader().getURI();
         this.statusCode = msg.getResponseHeader().getStatusCode();
@@ -50,7 +61,7 @@ public class HttpMessageCachedData {
         this.requestHeaderLength = msg.getRequestHeader().toString().length();
         this.requestBodyLength = msg.getRequestBody().length();
         this.responseHeaderLength = msg.getResponseHeader().toString().length();
-        this.responseBodyLength = msg.getResponseBody().length();
+        this.responseBodyLength = responseBodyLength;
         this.wrRequestBody = new WeakReference<>(msg.getRequestBody().toString());
     }
 
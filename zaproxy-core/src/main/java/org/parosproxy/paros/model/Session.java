@@ -45,6 +45,8 @@
 // ZAP: 2014/05/26 Added listeners for contexts changed events.
 // ZAP: 2014/06/10 Added helper method for removing data for context and type
 // ZAP: 2014/07/15 Issue 1265: Context import and export
+// ZAP: 2015/07/28 Load the Sites tree in parallel chunks, off the EDT
+// ZAP: 2015/07/30 Match the scope with the compiled regexs of all contexts and cache the verdicts in the nodes
 
 package org.parosproxy.paros.model;
 
@@ -76,6 +78,7 @@ import java.security.InvalidParameterException;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 
@@ -107,6 +110,13 @@ public class Session extends FileXML {
     private List<Context> contexts = new ArrayList<>();
     private int nextContextIndex = 1;
 
+    /**
+     * The generations of the compiled scope, also used to tell whether or not the scope verdicts cached in the nodes are
+     * up to date.
+     */
+    private final AtomicLong scopeGenerations = new AtomicLong();
+    private volatile CompiledScope compiledScope;
+
 	// parameters in XML
 	private long sessionId = 0;
 	private String sessionName = "";
@@ -232,11 +242,6 @@ public class Session extends FileXML {
 		SiteNode newRoot = new SiteNode(siteTree, -1, Constant.messages.getString("tab.sites"));
 		siteTree.setRoot(newRoot);
 
-		// update history reference
-		List<Integer> list = model.getDb().getTableHistory().getHistoryIdsOfHistType(
-			getSessionId(), HistoryReference.TYPE_PROXIED, HistoryReference.TYPE_ZAP_USER);
-		HistoryReference historyRef = null;
-
 		discardContexts();
 		
 	    // Load the session urls
@@ -250,78 +255,32 @@ public class Session extends FileXML {
 	    		sessionUrlListToStingList(model.getDb().getTableSessionUrl().getUrlsForType(RecordSessionUrl.TYPE_EXCLUDE_FROM_SPIDER)));
 	    
 	    
-		for (int i=0; i<list.size(); i++) {
-			// ZAP: Removed unnecessary cast.
-			int historyId = list.get(i).intValue();
-
-			try {
-				historyRef = new HistoryReference(historyId);
-
-				if (View.isInitialised()) {
-					final HistoryReference hRef = historyRef;
-					final HttpMessage msg = historyRef.getHttpMessage();
-					EventQueue.invokeAndWait(new Runnable() {
-
-						@Override
-						public void run() {
-							SiteNode sn = getSiteTree().addPath(hRef, msg);
-							if (sn != null) {
-								sn.setIncludedInScope(isIncludedInScope(sn), false);
-								sn.setExcludedFromScope(isExcludedFromScope(sn), false);
-							}
-						}
-					});
-				} else {
-					SiteNode sn = getSiteTree().addPath(historyRef);
-					if (sn != null) {
-						sn.setIncludedInScope(this.isIncludedInScope(sn), false);
-						sn.setExcludedFromScope(this.isExcludedFromScope(sn), false);
-					}
-				}
-				// ZAP: Load alerts from db
-				historyRef.loadAlerts();
-
-				if (i % 100 == 99) Thread.yield();
-			} catch (Exception e) {
-            	// ZAP: Log exceptions
-            	log.warn(e.getMessage(), e);
-			}
-			
-		}
-		
-		// update siteTree reference
-		list = model.getDb().getTableHistory().getHistoryIdsOfHistType(getSessionId(), HistoryReference.TYPE_SPIDER);
-		
-		for (int i=0; i<list.size(); i++) {
-			// ZAP: Removed unnecessary cast.
-			int historyId = list.get(i).intValue();
-
-			try {
-				historyRef = new HistoryReference(historyId);
-
-				if (View.isInitialised()) {
-					final HistoryReference hRef = historyRef;
-					final HttpMessage msg = historyRef.getHttpMessage();
-					EventQueue.invokeAndWait(new Runnable() {
-
-						@Override
-						public void run() {
-							getSiteTree().addPath(hRef, msg);
-						}
-					});
-				} else {
-					getSiteTree().addPath(historyRef);
-				}
+		// ZAP: Build the Sites tree off the EDT, under a root not yet in the tree, and then set it at once
+		long startTime = System.currentTimeMillis();
+		final SiteNode loadedRoot = new SiteNode(siteTree, -1, Constant.messages.getString("tab.sites"));
+		SiteTreeLoader siteTreeLoader = new SiteTreeLoader(this, model.getDb());
+		int messagesLoaded = siteTreeLoader.load(
+				loadedRoot,
+				true,
+				HistoryReference.TYPE_PROXIED,
+				HistoryReference.TYPE_ZAP_USER);
+		messagesLoaded += siteTreeLoader.load(loadedRoot, false, HistoryReference.TYPE_SPIDER);
+		long loadedTime = System.currentTimeMillis();
 
-				if (i % 100 == 99) Thread.yield();
+		if (View.isInitialised()) {
+			EventQueue.invokeAndWait(new Runnable() {
 
-			} catch (Exception e) {
-            	// ZAP: Log exceptions
-            	log.warn(e.getMessage(), e);
-			}
-			
-			
+				@Override
+				public void run() {
+					siteTree.setRoot(loadedRoot);
+				}
+			});
+		} else {
+			siteTree.setRoot(loadedRoot);
 		}
+		log.info("Loaded " + messagesLoaded + " messages into the Sites tree in " + (loadedTime - startTime)
+				+ " ms, set in the tree in " + (System.currentTimeMillis() - loadedTime) + " ms");
+
 	    List<RecordContext> contextData = model.getDb().getTableContext().getAllData();
 	    for (RecordContext data : contextData) {
 	    	Context ctx = this.getContext(data.getContextId());
@@ -653,12 +612,7 @@ public class Session extends FileXML {
 			// Strip off any parameters
 			url = url.substring(0, url.indexOf("?"));
 		}
-		for (Context context : contexts) {
-			if (context.isInScope() && context.isIncluded(url)) {
-				return true;
-			}
-		}
-		return false;
+		return getCompiledScope().isIncluded(url);
 	}
 
 	protected boolean isExcludedFromScope(SiteNode sn) {
@@ -676,12 +630,7 @@ public class Session extends FileXML {
 			// Strip off any parameters
 			url = url.substring(0, url.indexOf("?"));
 		}
-		for (Context context : contexts) {
-			if (context.isInScope() && context.isExcluded(url)) {
-				return true;
-			}
-		}
-		return false;
+		return getCompiledScope().isExcluded(url);
 	}
 
 	public boolean isInScope(HistoryReference href) {
@@ -699,24 +648,58 @@ public class Session extends FileXML {
 		return false;
 	}
 	
+	/**
+	 * Tells whether or not the given node is in scope.
+	 * <p>
+	 * The verdict is cached in the node until the scope changes.
+	 * </p>
+	 * 
+	 * @param sn the node to check
+	 * @return {@code true} if the node is in scope, {@code false} otherwise
+	 */
 	public boolean isInScope(SiteNode sn) {
 		if (sn == null) {
 			return false;
 		}
-		return isInScope(sn.getHierarchicNodeName());
+		CompiledScope scope = getCompiledScope();
+		long verdict = sn.getScopeVerdict();
+		if ((verdict >>> 1) == scope.getGeneration()) {
+			return (verdict & 1) != 0;
+		}
+		boolean inScope = isInScope(scope, sn.getHierarchicNodeName());
+		sn.setScopeVerdict((scope.getGeneration() << 1) | (inScope ? 1 : 0));
+		return inScope;
 	}
 	
 	public boolean isInScope(String url) {
+		return isInScope(getCompiledScope(), url);
+	}
+
+	private static boolean isInScope(CompiledScope scope, String url) {
 		if (url.indexOf("?") > 0) {
 			// String off any parameters
 			url = url.substring(0, url.indexOf("?"));
 		}
-		if (! this.isIncludedInScope(url)) {
+		if (! scope.isIncluded(url)) {
 			// Not explicitly included
 			return false;
 		}
 		// Check to see if its explicitly excluded
-		return ! this.isExcludedFromScope(url);
+		return ! scope.isExcluded(url);
+	}
+
+	/**
+	 * Gets the scope compiled from the contexts in scope, compiling it again if any of the contexts changed.
+	 * 
+	 * @return the compiled scope
+	 */
+	private CompiledScope getCompiledScope() {
+		CompiledScope scope = compiledScope;
+		if (scope == null || !scope.isUpToDate(contexts)) {
+			scope = new CompiledScope(scopeGenerations.incrementAndGet(), contexts);
+			compiledScope = scope;
+		}
+		return scope;
 	}
 
 	/**
@@ -1281,6 +1264,78 @@ public class Session extends FileXML {
 		contextsChangedListeners.remove(l);
 	}
 	
+	/**
+	 * The scope compiled from the include and exclude regexs of all the contexts in scope, merged in a single matcher each.
+	 * <p>
+	 * It's up to date while the contexts, their scope state and their matchers remain the same (the contexts replace their
+	 * matchers when their regexs change).
+	 * </p>
+	 */
+	private static class CompiledScope {
+
+		private final long generation;
+
+		private final Context[] contexts;
+		private final boolean[] inScope;
+		private final UrlMatcher[] includeMatchers;
+		private final UrlMatcher[] excludeMatchers;
+
+		private final UrlMatcher includeMatcher;
+		private final UrlMatcher excludeMatcher;
+
+		CompiledScope(long generation, List<Context> contexts) {
+			this.generation = generation;
+
+			this.contexts = contexts.toArray(new Context[contexts.size()]);
+			this.inScope = new boolean[this.contexts.length];
+			this.includeMatchers = new UrlMatcher[this.contexts.length];
+			this.excludeMatchers = new UrlMatcher[this.contexts.length];
+
+			List<UrlMatcher> scopeIncludeMatchers = new ArrayList<>(this.contexts.length);
+			List<UrlMatcher> scopeExcludeMatchers = new ArrayList<>(this.contexts.length);
+			for (int i = 0; i < this.contexts.length; i++) {
+				Context context = this.contexts[i];
+				inScope[i] = context.isInScope();
+				includeMatchers[i] = context.getIncludeMatcher();
+				excludeMatchers[i] = context.getExcludeMatcher();
+				if (inScope[i]) {
+					scopeIncludeMatchers.add(includeMatchers[i]);
+					scopeExcludeMatchers.add(excludeMatchers[i]);
+				}
+			}
+			this.includeMatcher = UrlMatcher.merge(scopeIncludeMatchers);
+			this.excludeMatcher = UrlMatcher.merge(scopeExcludeMatchers);
+		}
+
+		long getGeneration() {
+			return generation;
+		}
+
+		boolean isUpToDate(List<Context> currentContexts) {
+			if (currentContexts.size() != contexts.length) {
+				return false;
+			}
+			for (int i = 0; i < contexts.length; i++) {
+				Context context = currentContexts.get(i);
+				if (context != contexts[i]
+						|| context.isInScope() != inScope[i]
+						|| context.getIncludeMatcher() != includeMatchers[i]
+						|| context.getExcludeMatcher() != excludeMatchers[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		boolean isIncluded(String url) {
+			return includeMatcher.matches(url);
+		}
+
+		boolean isExcluded(String url) {
+			return excludeMatcher.matches(url);
+		}
+	}
+
 	/**
 	 * Listener notified whenever the registered list of contexts changes.
 	 */
@@ -36,20 +36,26 @@
 // ZAP: 2014/04/10 Initialise the root SiteNode with a reference to SiteMap
 // ZAP: 2014/04/10 Allow to delete history ID to SiteNode map entries
 // ZAP: 2014/06/16 Issue 1227: Active scanner sends GET requests with content in request body
+// ZAP: 2015/07/28 Allow to build a tree not yet in the model, off the EDT, when loading a session
+// ZAP: 2015/07/29 Find the child nodes through the index of SiteNode and guard the tree with a read/write lock
+// ZAP: 2015/07/31 Find the insert position by iterating the child nodes, as before, and share the lock with SiteNode
 
 package org.parosproxy.paros.model;
 
 import java.awt.EventQueue;
 import java.sql.SQLException;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.MutableTreeNode;
 import javax.swing.tree.TreeNode;
 
 import org.apache.commons.httpclient.URI;
@@ -68,10 +74,18 @@ public class SiteMap extends DefaultTreeModel {
 
 	private static final long serialVersionUID = 2311091007687218751L;
 	
-	private static Map<Integer, SiteNode> hrefMap = new HashMap<>();
+	private static Map<Integer, SiteNode> hrefMap = new ConcurrentHashMap<>();
 
 	private Model model = null;
 
+	/**
+	 * The lock of the tree, the nodes are found with the read lock, so that they can be found concurrently, and added or
+	 * removed with the write lock.
+	 * 
+	 * @see #getLock()
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
     // ZAP: Added log
     private static Logger log = Logger.getLogger(SiteMap.class);
     
@@ -79,7 +93,7 @@ public class SiteMap extends DefaultTreeModel {
         SiteMap siteMap = new SiteMap(null, model);
         SiteNode root = new SiteNode(siteMap, -1, Constant.messages.getString("tab.sites"));
         siteMap.setRoot(root);
-        hrefMap = new HashMap<>();
+        hrefMap = new ConcurrentHashMap<>();
         return siteMap;
     }
     
@@ -93,13 +107,14 @@ public class SiteMap extends DefaultTreeModel {
      * @param msg
      * @return	null = not found
      */
-    public synchronized HttpMessage pollPath(HttpMessage msg) {
+    public HttpMessage pollPath(HttpMessage msg) {
         SiteNode resultNode = null;
         URI uri = msg.getRequestHeader().getURI();
         
         SiteNode parent = (SiteNode) getRoot();
         String folder;
         
+        lock.readLock().lock();
         try {
             String host = getHostName(uri);
             
@@ -126,6 +141,8 @@ public class SiteMap extends DefaultTreeModel {
         } catch (URIException e) {
             // ZAP: Added error
             log.error(e.getMessage(), e);
+        } finally {
+            lock.readLock().unlock();
         }
         
         if (resultNode == null || resultNode.getHistoryReference() == null) {
@@ -147,7 +164,7 @@ public class SiteMap extends DefaultTreeModel {
     }
 
     
-    public synchronized SiteNode findNode(HttpMessage msg, boolean matchStructural) {
+    public SiteNode findNode(HttpMessage msg, boolean matchStructural) {
     	if (msg == null || msg.getRequestHeader() == null) {
     		return null;
     	}
@@ -157,6 +174,7 @@ public class SiteMap extends DefaultTreeModel {
         SiteNode parent = (SiteNode) getRoot();
         String folder = "";
         
+        lock.readLock().lock();
         try {
             
         	String host = getHostName(uri);
@@ -188,12 +206,14 @@ public class SiteMap extends DefaultTreeModel {
             }
         } catch (URIException e) {
             log.error(e.getMessage(), e);
+        } finally {
+            lock.readLock().unlock();
         }
         
         return resultNode;
     }
 
-    public synchronized SiteNode findNode(URI uri) {
+    public SiteNode findNode(URI uri) {
     	// Look for 'structural' nodes first
     	SiteNode node = this.findNode(uri, null, null);
     	if (node != null) {
@@ -202,10 +222,11 @@ public class SiteMap extends DefaultTreeModel {
     	return this.findNode(uri, "GET", null);
     }
     
-    public synchronized SiteNode findNode(URI uri, String method, String postData) {
+    public SiteNode findNode(URI uri, String method, String postData) {
         SiteNode resultNode = null;
         String folder = "";
         
+        lock.readLock().lock();
         try {
         	String host = getHostName(uri);
             
@@ -233,6 +254,8 @@ public class SiteMap extends DefaultTreeModel {
             }
         } catch (URIException e) {
             log.error(e.getMessage(), e);
+        } finally {
+            lock.readLock().unlock();
         }
         
         return resultNode;
@@ -244,7 +267,7 @@ public class SiteMap extends DefaultTreeModel {
      * Note that this method must only be called on the EventDispatchThread
      * @param ref
      */
-    public synchronized SiteNode addPath(HistoryReference ref) {
+    public SiteNode addPath(HistoryReference ref) {
 
         HttpMessage msg = null;
         try {
@@ -272,14 +295,30 @@ public class SiteMap extends DefaultTreeModel {
     		// Adding to the site tree on GUI ('initial') threads causes problems
     		log.error("SiteMap.addPath not on EDT " + Thread.currentThread().getName(), new Exception());
     	}
-        
+        return addPath((SiteNode) getRoot(), ref, msg);
+    }
+
+    /**
+     * Adds the HistoryReference with the corresponding HttpMessage under the given root node.
+     * <p>
+     * If the root node is not (yet) the root of this model the nodes are added without notifying the listeners of the
+     * model, which allows to build the tree off the EventDispatchThread, for example, when loading a session, and then set
+     * the root with {@link #setRoot(TreeNode)} on the EventDispatchThread.
+     * 
+     * @param root the root node
+     * @param ref the history reference
+     * @param msg the message of the history reference
+     * @return the leaf node, might be {@code null}
+     */
+    SiteNode addPath(SiteNode root, HistoryReference ref, HttpMessage msg) {
         URI uri = msg.getRequestHeader().getURI();
         log.debug("addPath " + uri.toString());
         
-        SiteNode parent = (SiteNode) getRoot();
+        SiteNode parent = root;
         SiteNode leaf = null;
         String folder = "";
         
+        lock.writeLock().lock();
         try {
             
         	String host = getHostName(uri);
@@ -309,14 +348,29 @@ public class SiteMap extends DefaultTreeModel {
         } catch (Exception e) {
             // ZAP: Added error
             log.error("Exception adding " + uri.toString() + " " + e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
         }
         
-        if (hrefMap.get(ref.getHistoryId()) == null) {
+        if (leaf != null && hrefMap.get(ref.getHistoryId()) == null) {
             hrefMap.put(ref.getHistoryId(), leaf);
         }
 
         return leaf;
     }
+
+    /**
+     * Inserts the given node, notifying the listeners of the model only if the parent is already in the model.
+     * 
+     * @see #addPath(SiteNode, HistoryReference, HttpMessage)
+     */
+    private void insertNode(SiteNode node, SiteNode parent, int pos) {
+        if (parent.getRoot() == getRoot()) {
+            insertNodeInto(node, parent, pos);
+        } else {
+            parent.insert(node, pos);
+        }
+    }
     
     private SiteNode findAndAddChild(SiteNode parent, String nodeName, HistoryReference baseRef, HttpMessage baseMsg) throws URIException, HttpMalformedHeaderException, NullPointerException, SQLException {
     	// ZAP: Added debug
@@ -331,14 +385,8 @@ public class SiteMap extends DefaultTreeModel {
         		newNode = new SiteNode(this, baseRef.getHistoryType(), nodeName);
         	}
             
-            int pos = parent.getChildCount();
-            for (int i=0; i< parent.getChildCount(); i++) {
-            	if (((SiteNode)parent.getChildAt(i)).isParentOf(nodeName)) {
-                    pos = i;
-                    break;
-                }
-            }
-            insertNodeInto(newNode, parent, pos);
+            int pos = getInsertPosition(parent, nodeName);
+            insertNode(newNode, parent, pos);
 
             result = newNode;
             result.setHistoryReference(createReference(result, baseRef, baseMsg));
@@ -360,13 +408,46 @@ public class SiteMap extends DefaultTreeModel {
     	// ZAP: Added debug
     	log.debug("findChild " + parent.getNodeName() + " / " + nodeName);
     	
-        for (int i=0; i<parent.getChildCount(); i++) {
-            SiteNode child = (SiteNode) parent.getChildAt(i);
-            if (child.getNodeName().equals(nodeName)) {
-                return child;
+        return parent.findChild(nodeName);
+    }
+
+    /**
+     * Gets the position where a child node with the given name should be inserted, before the first child node that
+     * {@link SiteNode#isParentOf(String) is parent of} the name.
+     * <p>
+     * The child nodes are not necessarily sorted by their names (the leaves are positioned by the name of the path
+     * segment, not by their own name), so all the child nodes are iterated.
+     * 
+     * @param parent the parent node
+     * @param nodeName the name of the child node
+     * @return the position of the child node
+     */
+    private static int getInsertPosition(SiteNode parent, String nodeName) {
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            if (((SiteNode) parent.getChildAt(i)).isParentOf(nodeName)) {
+                return i;
             }
         }
-        return null;
+        return parent.getChildCount();
+    }
+
+    /**
+     * Gets the lock of the tree, also used by the {@code SiteNode}s when changed.
+     * 
+     * @return the lock of the tree
+     */
+    ReadWriteLock getLock() {
+        return lock;
+    }
+
+    @Override
+    public void removeNodeFromParent(MutableTreeNode node) {
+        lock.writeLock().lock();
+        try {
+            super.removeNodeFromParent(node);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
     
     private SiteNode findAndAddLeaf(SiteNode parent, String nodeName, HistoryReference ref, HttpMessage msg) {
@@ -386,19 +467,13 @@ public class SiteMap extends DefaultTreeModel {
             
             hrefMap.put(ref.getHistoryId(), node);
             
-            int pos = parent.getChildCount();
-            for (int i=0; i< parent.getChildCount(); i++) {
-            	if (((SiteNode)parent.getChildAt(i)).isParentOf(nodeName)) {
-                    pos = i;
-                    break;
-                }
-            }
+            int pos = getInsertPosition(parent, nodeName);
             // ZAP: cope with getSiteNode() returning null
             if (ref.getSiteNode() == null) {
             	ref.setSiteNode(node);
             }
 
-            insertNodeInto(node, parent, pos);
+            insertNode(node, parent, pos);
             
             // Check if its in or out of scope - has to be done after the node is entered into the tree
             node.setIncludedInScope(model.getSession().isIncludedInScope(node), true);
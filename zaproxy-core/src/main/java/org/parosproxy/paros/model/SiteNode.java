@@ -41,6 +41,10 @@
 // ZAP: 2014/06/16 Fixed an issue in SiteNode#setHistoryReference(HistoryReference) that led
 // to multiple occurrences of same HistoryReference(s) in the pastHistoryList.
 // ZAP: 2014/06/16 Issue 990: Allow to delete alerts through the API
+// ZAP: 2015/07/28 Do not notify the changes of nodes not in the tree
+// ZAP: 2015/07/29 Index the child nodes by name
+// ZAP: 2015/07/30 Cache the scope verdict of the node
+// ZAP: 2015/07/31 Change the child nodes and the history reference with the write lock of the tree
 
 
 package org.parosproxy.paros.model;
@@ -48,7 +52,11 @@ package org.parosproxy.paros.model;
 import java.awt.EventQueue;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.MutableTreeNode;
@@ -74,8 +82,36 @@ public class SiteNode extends DefaultMutableTreeNode {
 	private ArrayList<Boolean> clearIfManual = null;
 
     private static Logger log = Logger.getLogger(SiteNode.class);
+
+    /**
+     * The lock used by the nodes not created for a {@code SiteMap}.
+     * 
+     * @see #getTreeWriteLock()
+     */
+    private static final Lock NO_TREE_LOCK = new ReentrantLock();
     private boolean isIncludedInScope = false;
     private boolean isExcludedFromScope = false;
+
+    /**
+     * The child nodes, by name, created when the first child is inserted.
+     * 
+     * @see #findChild(String)
+     */
+    private volatile Map<String, SiteNode> childrenByName;
+
+    /**
+     * Flag that indicates that more than one child node was inserted with the same name, in which case the index has to be
+     * updated with the remaining child when the indexed one is removed.
+     */
+    private boolean duplicatedChildNames;
+
+    /**
+     * The scope verdict cached by the session, the generation of the scope (shifted left by one) with the verdict in the
+     * lowest bit, or zero if none.
+     * 
+     * @see Session#isInScope(SiteNode)
+     */
+    private volatile long scopeVerdict;
 	
     public SiteNode(SiteMap siteMap, int type, String nodeName) {
         super();
@@ -200,7 +236,16 @@ public class SiteNode extends DefaultMutableTreeNode {
      * @param historyReference
      */
     public void setHistoryReference(HistoryReference historyReference) {
-    	
+        Lock writeLock = getTreeWriteLock();
+        writeLock.lock();
+        try {
+            setHistoryReferenceImpl(historyReference);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void setHistoryReferenceImpl(HistoryReference historyReference) {
         if (getHistoryReference() != null) {
 //            if (getHistoryReference().getHistoryType() == HistoryReference.TYPE_SPIDER) {
 //                getHistoryReference().delete();
@@ -241,7 +286,8 @@ public class SiteNode extends DefaultMutableTreeNode {
     }    
     
     private void nodeChanged() {
-    	if (this.siteMap == null) {
+    	// Not (yet) in the tree, for example, while loading a session
+    	if (this.siteMap == null || this.getRoot() != this.siteMap.getRoot()) {
     		return;
     	}
         if (EventQueue.isDispatchThread()) {
@@ -420,6 +466,14 @@ public class SiteNode extends DefaultMutableTreeNode {
 		return true;
 	}
 
+	long getScopeVerdict() {
+		return scopeVerdict;
+	}
+
+	void setScopeVerdict(long scopeVerdict) {
+		this.scopeVerdict = scopeVerdict;
+	}
+
 	public boolean isIncludedInScope() {
 		return isIncludedInScope;
 	}
@@ -464,4 +518,104 @@ public class SiteNode extends DefaultMutableTreeNode {
 		}
 		super.setParent(newParent);
 	}
+
+	/**
+	 * Gets the child node with the given name, without iterating through all the child nodes.
+	 * 
+	 * @param nodeName the name of the child node
+	 * @return the child node, or {@code null} if there's no child with the given name
+	 * @see #getNodeName()
+	 */
+	public SiteNode findChild(String nodeName) {
+		Map<String, SiteNode> index = childrenByName;
+		if (index == null || nodeName == null) {
+			return null;
+		}
+		return index.get(nodeName);
+	}
+
+	/**
+	 * Gets the write lock of the tree, held while the child nodes or the history reference are changed, so that the nodes
+	 * are not changed while being found.
+	 * <p>
+	 * The changes done through the methods of {@code DefaultMutableTreeNode} (for example, {@code add},
+	 * {@code removeFromParent} or {@code removeAllChildren}) go through {@link #insert(MutableTreeNode, int)} and
+	 * {@link #remove(int)}, which hold the lock.
+	 * 
+	 * @return the write lock of the tree, or a lock shared by the nodes not created for a tree
+	 */
+	private Lock getTreeWriteLock() {
+		if (siteMap == null) {
+			return NO_TREE_LOCK;
+		}
+		return siteMap.getLock().writeLock();
+	}
+
+	@Override
+	public void insert(MutableTreeNode newChild, int childIndex) {
+		Lock writeLock = getTreeWriteLock();
+		writeLock.lock();
+		try {
+			insertImpl(newChild, childIndex);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private void insertImpl(MutableTreeNode newChild, int childIndex) {
+		super.insert(newChild, childIndex);
+		if (!(newChild instanceof SiteNode)) {
+			return;
+		}
+		String childName = ((SiteNode) newChild).getNodeName();
+		if (childName == null) {
+			return;
+		}
+		if (childrenByName == null) {
+			childrenByName = new ConcurrentHashMap<>();
+		}
+		SiteNode indexedChild = childrenByName.get(childName);
+		if (indexedChild == null) {
+			childrenByName.put(childName, (SiteNode) newChild);
+		} else if (indexedChild != newChild) {
+			duplicatedChildNames = true;
+			// Keep the first, as found when iterating through the child nodes
+			if (getIndex(newChild) < getIndex(indexedChild)) {
+				childrenByName.put(childName, (SiteNode) newChild);
+			}
+		}
+	}
+
+	@Override
+	public void remove(int childIndex) {
+		Lock writeLock = getTreeWriteLock();
+		writeLock.lock();
+		try {
+			removeImpl(childIndex);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private void removeImpl(int childIndex) {
+		Object child = getChildAt(childIndex);
+		super.remove(childIndex);
+		if (!(child instanceof SiteNode) || childrenByName == null) {
+			return;
+		}
+		String childName = ((SiteNode) child).getNodeName();
+		if (childName == null || childrenByName.get(childName) != child) {
+			return;
+		}
+		childrenByName.remove(childName);
+		if (duplicatedChildNames) {
+			for (int i = 0; i < getChildCount(); i++) {
+				Object otherChild = getChildAt(i);
+				if (otherChild instanceof SiteNode && childName.equals(((SiteNode) otherChild).getNodeName())) {
+					childrenByName.put(childName, (SiteNode) otherChild);
+					break;
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,313 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.model;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.parosproxy.paros.core.scanner.Alert;
+import org.parosproxy.paros.db.Database;
+import org.parosproxy.paros.db.RecordAlert;
+import org.parosproxy.paros.db.RecordHistory;
+import org.parosproxy.paros.db.RecordTag;
+import org.parosproxy.paros.network.HttpMessage;
+
+/**
+ * Loads the messages of a session into the Sites tree.
+ * <p>
+ * The messages are read in chunks of consecutive history IDs, each with one query for the messages (without the response
+ * bodies), one for the tags and one for the alerts. The chunks are read and prepared (the {@code HistoryReference}s and
+ * {@code Alert}s created) in parallel, while the nodes are added in the order of the history IDs, under a root node that is
+ * not yet in the tree, so that it's built off the EventDispatchThread, without notifying the listeners of the tree.
+ * </p>
+ * <p>
+ * If a chunk fails to be read its messages are read again one at a time, so that just the messages that can not be read
+ * are not loaded.
+ * </p>
+ *
+ * @see SiteMap#addPath(SiteNode, HistoryReference, HttpMessage)
+ */
+class SiteTreeLoader {
+
+    private static final Logger logger = Logger.getLogger(SiteTreeLoader.class);
+
+    /**
+     * The (maximum) number of messages read at once.
+     */
+    private static final int CHUNK_SIZE = 500;
+
+    private static final int MAX_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * The maximum number of chunks being read or waiting to be added to the tree, per thread.
+     */
+    private static final int MAX_PENDING_CHUNKS_PER_THREAD = 2;
+
+    private final Session session;
+    private final Database db;
+
+    SiteTreeLoader(Session session, Database db) {
+        this.session = session;
+        this.db = db;
+    }
+
+    /**
+     * Loads the messages with the given history types under the given root node.
+     *
+     * @param root the root node, not yet in the tree
+     * @param setScopeAndAlerts {@code true} if the scope state of the nodes should be set and the alerts of the messages
+     *            loaded, {@code false} otherwise
+     * @param histTypes the history types of the messages
+     * @return the number of messages loaded
+     * @throws SQLException if an error occurred while reading the history IDs of the messages
+     * @throws InterruptedException if interrupted while waiting for the messages
+     */
+    int load(SiteNode root, boolean setScopeAndAlerts, int... histTypes) throws SQLException, InterruptedException {
+        List<Integer> historyIds = db.getTableHistory().getHistoryIdsOfHistType(session.getSessionId(), histTypes);
+        if (historyIds.isEmpty()) {
+            return 0;
+        }
+
+        SiteMap siteTree = session.getSiteTree();
+        int threads = Math.min(MAX_THREADS, (historyIds.size() + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new SiteTreeLoaderThreadFactory());
+        int count = 0;
+        try {
+            Deque<PendingChunk> pendingChunks = new ArrayDeque<>();
+            int next = 0;
+            while (next < historyIds.size() || !pendingChunks.isEmpty()) {
+                while (next < historyIds.size() && pendingChunks.size() < threads * MAX_PENDING_CHUNKS_PER_THREAD) {
+                    int end = Math.min(next + CHUNK_SIZE, historyIds.size());
+                    pendingChunks.add(new PendingChunk(historyIds.subList(next, end), executor.submit(new ChunkReader(
+                            historyIds.get(next).intValue(),
+                            historyIds.get(end - 1).intValue(),
+                            setScopeAndAlerts,
+                            histTypes))));
+                    next = end;
+                }
+
+                PendingChunk pendingChunk = pendingChunks.poll();
+                List<LoadedMessage> chunk;
+                try {
+                    chunk = pendingChunk.getResult().get();
+                } catch (ExecutionException e) {
+                    logger.warn("Failed to load messages " + pendingChunk.getHistoryIds().get(0) + " to "
+                            + pendingChunk.getHistoryIds().get(pendingChunk.getHistoryIds().size() - 1)
+                            + ", loading them one at a time: " + e.getCause().getMessage(), e.getCause());
+                    chunk = readOneByOne(pendingChunk.getHistoryIds(), setScopeAndAlerts);
+                }
+
+                for (LoadedMessage loadedMessage : chunk) {
+                    HistoryReference ref = loadedMessage.getHistoryReference();
+                    SiteNode sn = siteTree.addPath(root, ref, loadedMessage.getHttpMessage());
+                    if (setScopeAndAlerts) {
+                        if (sn != null) {
+                            sn.setIncludedInScope(session.isIncludedInScope(sn), false);
+                            sn.setExcludedFromScope(session.isExcludedFromScope(sn), false);
+                        }
+                        for (Alert alert : loadedMessage.getAlerts()) {
+                            ref.addAlert(alert);
+                        }
+                    }
+                }
+                count += chunk.size();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return count;
+    }
+
+    /**
+     * Reads and prepares the messages with the given history IDs, one at a time, skipping the messages that fail to be
+     * read.
+     *
+     * @param historyIds the history IDs of the messages
+     * @param loadAlerts {@code true} if the alerts of the messages should be read, {@code false} otherwise
+     * @return the messages read
+     */
+    private List<LoadedMessage> readOneByOne(List<Integer> historyIds, boolean loadAlerts) {
+        List<LoadedMessage> loadedMessages = new ArrayList<>(historyIds.size());
+        for (Integer historyId : historyIds) {
+            try {
+                HistoryReference ref = new HistoryReference(historyId.intValue());
+                List<Alert> refAlerts = Collections.emptyList();
+                if (loadAlerts) {
+                    List<RecordAlert> recordAlerts = db.getTableAlert().getAlertsBySourceHistoryId(historyId.intValue());
+                    refAlerts = new ArrayList<>(recordAlerts.size());
+                    for (RecordAlert recordAlert : recordAlerts) {
+                        refAlerts.add(new Alert(recordAlert, ref));
+                    }
+                }
+                loadedMessages.add(new LoadedMessage(ref, ref.getHttpMessage(), refAlerts));
+            } catch (Exception e) {
+                logger.warn("Failed to load message " + historyId + ": " + e.getMessage(), e);
+            }
+        }
+        return loadedMessages;
+    }
+
+    /**
+     * A chunk being read, with its history IDs.
+     */
+    private static class PendingChunk {
+
+        private final List<Integer> historyIds;
+        private final Future<List<LoadedMessage>> result;
+
+        PendingChunk(List<Integer> historyIds, Future<List<LoadedMessage>> result) {
+            this.historyIds = historyIds;
+            this.result = result;
+        }
+
+        List<Integer> getHistoryIds() {
+            return historyIds;
+        }
+
+        Future<List<LoadedMessage>> getResult() {
+            return result;
+        }
+    }
+
+    /**
+     * Reads and prepares the messages of a chunk of history IDs.
+     */
+    private class ChunkReader implements Callable<List<LoadedMessage>> {
+
+        private final int fromHistoryId;
+        private final int toHistoryId;
+        private final boolean loadAlerts;
+        private final int[] histTypes;
+
+        ChunkReader(int fromHistoryId, int toHistoryId, boolean loadAlerts, int[] histTypes) {
+            this.fromHistoryId = fromHistoryId;
+            this.toHistoryId = toHistoryId;
+            this.loadAlerts = loadAlerts;
+            this.histTypes = histTypes;
+        }
+
+        @Override
+        public List<LoadedMessage> call() throws Exception {
+            List<RecordHistory> records = db.getTableHistory().readForSitesTree(
+                    session.getSessionId(),
+                    fromHistoryId,
+                    toHistoryId,
+                    histTypes);
+
+            Map<Long, List<String>> tags = new HashMap<>();
+            for (RecordTag recordTag : db.getTableTag().getTagsForHistoryIdRange(fromHistoryId, toHistoryId)) {
+                Long historyId = Long.valueOf(recordTag.getHistoryId());
+                List<String> historyTags = tags.get(historyId);
+                if (historyTags == null) {
+                    historyTags = new ArrayList<>(1);
+                    tags.put(historyId, historyTags);
+                }
+                historyTags.add(recordTag.getTag());
+            }
+
+            Map<Integer, List<RecordAlert>> alerts = new HashMap<>();
+            if (loadAlerts) {
+                for (RecordAlert recordAlert : db.getTableAlert().getAlertsBySourceHistoryIdRange(fromHistoryId, toHistoryId)) {
+                    Integer historyId = Integer.valueOf(recordAlert.getSourceHistoryId());
+                    List<RecordAlert> historyAlerts = alerts.get(historyId);
+                    if (historyAlerts == null) {
+                        historyAlerts = new ArrayList<>(1);
+                        alerts.put(historyId, historyAlerts);
+                    }
+                    historyAlerts.add(recordAlert);
+                }
+            }
+
+            List<LoadedMessage> loadedMessages = new ArrayList<>(records.size());
+            for (RecordHistory record : records) {
+                List<String> historyTags = tags.get(Long.valueOf(record.getHistoryId()));
+                HistoryReference ref = new HistoryReference(
+                        record,
+                        historyTags != null ? historyTags : Collections.<String> emptyList());
+
+                List<Alert> refAlerts = Collections.emptyList();
+                List<RecordAlert> recordAlerts = alerts.get(Integer.valueOf(record.getHistoryId()));
+                if (recordAlerts != null) {
+                    refAlerts = new ArrayList<>(recordAlerts.size());
+                    for (RecordAlert recordAlert : recordAlerts) {
+                        refAlerts.add(new Alert(recordAlert, ref));
+                    }
+                }
+                loadedMessages.add(new LoadedMessage(ref, record.getHttpMessage(), refAlerts));
+            }
+            return loadedMessages;
+        }
+    }
+
+    /**
+     * A message read, with its {@code HistoryReference} and alerts.
+     */
+    private static class LoadedMessage {
+
+        private final HistoryReference historyReference;
+        private final HttpMessage httpMessage;
+        private final List<Alert> alerts;
+
+        LoadedMessage(HistoryReference historyReference, HttpMessage httpMessage, List<Alert> alerts) {
+            this.historyReference = historyReference;
+            this.httpMessage = httpMessage;
+            this.alerts = alerts;
+        }
+
+        HistoryReference getHistoryReference() {
+            return historyReference;
+        }
+
+        HttpMessage getHttpMessage() {
+            return httpMessage;
+        }
+
+        List<Alert> getAlerts() {
+            return alerts;
+        }
+    }
+
+    private static class SiteTreeLoaderThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "ZAP-SiteTreeLoader-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        }
+    }
+}
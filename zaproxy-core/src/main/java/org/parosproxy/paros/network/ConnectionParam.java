@@ -34,6 +34,7 @@
 // ZAP: 2014/03/23 Issue 968: Allow to choose the enabled SSL/TLS protocols
 // ZAP: 2014/03/23 Issue 1100: Annotate option methods that shouldn't be exposed in the ZAP API
 // ZAP: 2041/08/14 Issue 1305: Outgoing proxy is disabled when updating from old versions
+// ZAP: 2015/07/10 Added options for the shared connection pool (connections per host, total and idle timeout)
 
 package org.parosproxy.paros.network;
 
@@ -94,6 +95,25 @@ public class ConnectionParam extends AbstractParam {
     
     private static final String CONFIRM_REMOVE_AUTH_KEY = CONNECTION_BASE_KEY + ".confirmRemoveAuth";
 
+    private static final String MAX_CONNECTIONS_PER_HOST_KEY = CONNECTION_BASE_KEY + ".maxConnectionsPerHost";
+    private static final String MAX_TOTAL_CONNECTIONS_KEY = CONNECTION_BASE_KEY + ".maxTotalConnections";
+    private static final String IDLE_CONNECTION_TIMEOUT_IN_SECS_KEY = CONNECTION_BASE_KEY + ".idleConnectionTimeoutInSecs";
+
+    /**
+     * The default maximum number of connections, per host, kept in the shared connection pool.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 50;
+
+    /**
+     * The default maximum number of connections, to all hosts, kept in the shared connection pool.
+     */
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 2000;
+
+    /**
+     * The default time, in seconds, after which an idle connection is closed.
+     */
+    public static final int DEFAULT_IDLE_CONNECTION_TIMEOUT_IN_SECS = 5;
+
     private boolean useProxyChain;
 	private String proxyChainName = "";
 	private int proxyChainPort = 8080;
@@ -119,6 +139,10 @@ public class ConnectionParam extends AbstractParam {
 	
 	private boolean confirmRemoveAuth = true;
 
+	private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	private int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+	private int idleConnectionTimeoutInSecs = DEFAULT_IDLE_CONNECTION_TIMEOUT_IN_SECS;
+
 	/**
      * @return Returns the httpStateEnabled.
      */
@@ -207,6 +231,28 @@ public class ConnectionParam extends AbstractParam {
             log.error("Error while loading the option singleCookieRequestHeader: " + e.getMessage(), e);
         }
 
+        try {
+            this.maxConnectionsPerHost = Math.max(
+                    1,
+                    getConfig().getInt(MAX_CONNECTIONS_PER_HOST_KEY, DEFAULT_MAX_CONNECTIONS_PER_HOST));
+        } catch (ConversionException e) {
+            log.error("Error while loading the option maxConnectionsPerHost: " + e.getMessage(), e);
+        }
+
+        try {
+            this.maxTotalConnections = Math.max(1, getConfig().getInt(MAX_TOTAL_CONNECTIONS_KEY, DEFAULT_MAX_TOTAL_CONNECTIONS));
+        } catch (ConversionException e) {
+            log.error("Error while loading the option maxTotalConnections: " + e.getMessage(), e);
+        }
+
+        try {
+            this.idleConnectionTimeoutInSecs = Math.max(
+                    0,
+                    getConfig().getInt(IDLE_CONNECTION_TIMEOUT_IN_SECS_KEY, DEFAULT_IDLE_CONNECTION_TIMEOUT_IN_SECS));
+        } catch (ConversionException e) {
+            log.error("Error while loading the option idleConnectionTimeoutInSecs: " + e.getMessage(), e);
+        }
+
         loadSecurityProtocolsEnabled();
 	}
 	
@@ -616,6 +662,90 @@ public class ConnectionParam extends AbstractParam {
 		getConfig().setProperty(SINGLE_COOKIE_REQUEST_HEADER, Boolean.valueOf(singleCookieRequestHeader));
 	}
 
+    /**
+     * Gets the maximum number of connections, per host, kept in the connection pool shared by all the {@code HttpSender}s.
+     *
+     * @return the maximum number of connections per host
+     * @see #DEFAULT_MAX_CONNECTIONS_PER_HOST
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * Sets the maximum number of connections, per host, kept in the connection pool shared by all the {@code HttpSender}s.
+     * <p>
+     * Takes effect on the next {@code HttpSender} created.
+     * </p>
+     *
+     * @param maxConnectionsPerHost the maximum number of connections per host
+     * @throws IllegalArgumentException if {@code maxConnectionsPerHost} is not greater than zero
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        if (maxConnectionsPerHost <= 0) {
+            throw new IllegalArgumentException("Parameter maxConnectionsPerHost must be greater than zero.");
+        }
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        getConfig().setProperty(MAX_CONNECTIONS_PER_HOST_KEY, Integer.valueOf(maxConnectionsPerHost));
+    }
+
+    /**
+     * Gets the maximum number of connections, to all hosts, kept in the connection pool shared by all the
+     * {@code HttpSender}s.
+     *
+     * @return the maximum number of connections
+     * @see #DEFAULT_MAX_TOTAL_CONNECTIONS
+     */
+    public int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
+    /**
+     * Sets the maximum number of connections, to all hosts, kept in the connection pool shared by all the
+     * {@code HttpSender}s.
+     * <p>
+     * Takes effect on the next {@code HttpSender} created.
+     * </p>
+     *
+     * @param maxTotalConnections the maximum number of connections
+     * @throws IllegalArgumentException if {@code maxTotalConnections} is not greater than zero
+     */
+    public void setMaxTotalConnections(int maxTotalConnections) {
+        if (maxTotalConnections <= 0) {
+            throw new IllegalArgumentException("Parameter maxTotalConnections must be greater than zero.");
+        }
+        this.maxTotalConnections = maxTotalConnections;
+        getConfig().setProperty(MAX_TOTAL_CONNECTIONS_KEY, Integer.valueOf(maxTotalConnections));
+    }
+
+    /**
+     * Gets the time, in seconds, after which an idle connection of the shared connection pool is closed.
+     *
+     * @return the idle timeout, in seconds
+     * @see #DEFAULT_IDLE_CONNECTION_TIMEOUT_IN_SECS
+     */
+    public int getIdleConnectionTimeoutInSecs() {
+        return idleConnectionTimeoutInSecs;
+    }
+
+    /**
+     * Sets the time, in seconds, after which an idle connection of the shared connection pool is closed. Zero closes the
+     * connections as soon as they are found idle.
+     * <p>
+     * Takes effect on the next {@code HttpSender} created.
+     * </p>
+     *
+     * @param idleConnectionTimeoutInSecs the idle timeout, in seconds
+     * @throws IllegalArgumentException if {@code idleConnectionTimeoutInSecs} is negative
+     */
+    public void setIdleConnectionTimeoutInSecs(int idleConnectionTimeoutInSecs) {
+        if (idleConnectionTimeoutInSecs < 0) {
+            throw new IllegalArgumentException("Parameter idleConnectionTimeoutInSecs must not be negative.");
+        }
+        this.idleConnectionTimeoutInSecs = idleConnectionTimeoutInSecs;
+        getConfig().setProperty(IDLE_CONNECTION_TIMEOUT_IN_SECS_KEY, Integer.valueOf(idleConnectionTimeoutInSecs));
+    }
+
     /**
      * Returns the domains excluded from the outgoing proxy.
      *
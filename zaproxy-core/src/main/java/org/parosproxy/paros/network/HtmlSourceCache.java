@@ -0,0 +1,149 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.network;
+
+import java.lang.ref.SoftReference;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.htmlparser.jericho.Source;
+
+/**
+ * A cache of the parsed (Jericho) {@code Source}s of the responses of the HTTP messages.
+ * <p>
+ * The {@code Source}s are created lazily and kept with the {@code HttpMessage}, softly referenced, so they can be reclaimed
+ * if the memory is needed. The cached {@code Source}s are discarded if the response header or body changes. Responses
+ * longer than {@link #MAX_CACHED_LENGTH} characters are parsed but not cached.
+ * </p>
+ * <p>
+ * <strong>Note:</strong> The {@code Source}s returned are shared, they must not be modified (for example, with
+ * {@code fullSequentialParse()}) and, as the {@code HttpMessage}, must not be accessed concurrently.
+ * </p>
+ */
+public final class HtmlSourceCache {
+
+    /**
+     * The maximum length, in characters, of the content of the {@code Source}s that are cached.
+     */
+    public static final int MAX_CACHED_LENGTH = 8 * 1024 * 1024;
+
+    private static final AtomicLong parseCount = new AtomicLong();
+    private static final AtomicLong reuseCount = new AtomicLong();
+
+    private HtmlSourceCache() {
+    }
+
+    /**
+     * Gets the {@code Source} of the response header and body of the given message.
+     *
+     * @param msg the message whose response will be parsed
+     * @return the {@code Source} of the response header and body
+     */
+    public static Source getResponseSource(HttpMessage msg) {
+        String header = msg.getResponseHeader().toString();
+        String body = msg.getResponseBody().toString();
+        if (header.length() + body.length() > MAX_CACHED_LENGTH) {
+            parseCount.incrementAndGet();
+            return new Source(header + body);
+        }
+
+        CachedSources cachedSources = getCachedSources(msg, header, body);
+        if (cachedSources.responseSource == null) {
+            parseCount.incrementAndGet();
+            cachedSources.responseSource = new Source(header + body);
+        } else {
+            reuseCount.incrementAndGet();
+        }
+        return cachedSources.responseSource;
+    }
+
+    /**
+     * Gets the {@code Source} of the response body of the given message.
+     *
+     * @param msg the message whose response body will be parsed
+     * @return the {@code Source} of the response body
+     */
+    public static Source getResponseBodySource(HttpMessage msg) {
+        String header = msg.getResponseHeader().toString();
+        String body = msg.getResponseBody().toString();
+        if (body.length() > MAX_CACHED_LENGTH) {
+            parseCount.incrementAndGet();
+            return new Source(body);
+        }
+
+        CachedSources cachedSources = getCachedSources(msg, header, body);
+        if (cachedSources.bodySource == null) {
+            parseCount.incrementAndGet();
+            cachedSources.bodySource = new Source(body);
+        } else {
+            reuseCount.incrementAndGet();
+        }
+        return cachedSources.bodySource;
+    }
+
+    private static CachedSources getCachedSources(HttpMessage msg, String header, String body) {
+        SoftReference<CachedSources> reference = msg.getCachedSources();
+        CachedSources cachedSources = (reference != null) ? reference.get() : null;
+        // The body string is cached by the HttpBody while not changed, no need to compare the (possibly long) contents.
+        if (cachedSources == null || cachedSources.body != body || !cachedSources.header.equals(header)) {
+            cachedSources = new CachedSources(header, body);
+            msg.setCachedSources(new SoftReference<>(cachedSources));
+        }
+        return cachedSources;
+    }
+
+    /**
+     * Gets the number of responses parsed, through this class.
+     *
+     * @return the number of responses parsed
+     */
+    public static long getParseCount() {
+        return parseCount.get();
+    }
+
+    /**
+     * Gets the number of times that a cached {@code Source} was reused, that is, the number of parses avoided.
+     *
+     * @return the number of parses avoided
+     */
+    public static long getReuseCount() {
+        return reuseCount.get();
+    }
+
+    /**
+     * Resets the parse and reuse counters.
+     */
+    public static void resetCounters() {
+        parseCount.set(0);
+        reuseCount.set(0);
+    }
+
+    static final class CachedSources {
+
+        private final String header;
+        private final String body;
+        private Source responseSource;
+        private Source bodySource;
+
+        private CachedSources(String header, String body) {
+            this.header = header;
+            this.body = body;
+        }
+    }
+}
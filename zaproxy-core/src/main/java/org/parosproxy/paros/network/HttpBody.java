@@ -20,6 +20,8 @@
  * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
  */
 // ZAP: 2012/03/15 Changed to use byte[] instead of StringBuffer.
+// ZAP: 2015/07/20 Added copy constructor, sharing the bytes of the body until changed
+// ZAP: 2015/07/31 Documented that the bytes returned by getBytes() might be shared, made the shared flag volatile
 
 package org.parosproxy.paros.network;
 
@@ -42,6 +44,15 @@ public abstract class HttpBody {
     private String cachedString;
 	private String charset = DEFAULT_CHARSET;
 	protected boolean isChangedCharset;
+
+	/**
+	 * Flag that indicates whether or not the array of bytes of the body is shared with other body, in which case it's copied
+	 * before being changed in place.
+	 * <p>
+	 * Volatile as the copies might be changed by other threads (for example, the scanners).
+	 * </p>
+	 */
+	private volatile boolean shared;
     
 	public HttpBody() {
 		body = new byte[0];
@@ -71,6 +82,28 @@ public abstract class HttpBody {
 		setBody(data);
 	}
 
+	/**
+	 * Constructs a HttpBody with the same contents as the given body.
+	 * <p>
+	 * The array of bytes is shared by both bodies, and copied only when one of them is changed in place.
+	 * </p>
+	 * <p>
+	 * The array returned by {@link #getBytes()} is not copied, so it must not be modified by the callers, the change would
+	 * be seen by all the bodies sharing it.
+	 * </p>
+	 * 
+	 * @param body the body to copy
+	 */
+	protected HttpBody(HttpBody body) {
+		body.shared = true;
+		this.shared = true;
+		this.body = body.body;
+		this.pos = body.pos;
+		this.cachedString = body.cachedString;
+		this.charset = body.charset;
+		this.isChangedCharset = body.isChangedCharset;
+	}
+
 	public void setBody(byte[] buf) {
 		if (buf == null) {
 			return;
@@ -79,6 +112,7 @@ public abstract class HttpBody {
 		
 		body = new byte[buf.length];
 		System.arraycopy(buf, 0, body, 0, buf.length);
+		shared = false;
 		
 		pos = body.length;
 	}
@@ -96,6 +130,7 @@ public abstract class HttpBody {
 		
 		try {
 			body = data.getBytes(charset);
+			shared = false;
 		} catch (UnsupportedEncodingException e) {
 			log.error(e.getMessage(), e);
 		}
@@ -118,8 +153,13 @@ public abstract class HttpBody {
 			System.arraycopy(body, 0, newBody, 0, body.length);
 			System.arraycopy(buf, 0, newBody, body.length, len);
 			body = newBody;
+			shared = false;
 			pos = body.length;
 		} else {
+			if (shared) {
+				body = Arrays.copyOf(body, body.length);
+				shared = false;
+			}
 			System.arraycopy(buf, 0, body, pos, len);
 			pos += len;
 		}
@@ -197,6 +237,11 @@ public abstract class HttpBody {
 	 * 
 	 * The returned array of bytes mustn't be modified.
 	 * Is returned a reference instead of a copy to avoid more memory allocations.
+	 * <p>
+	 * The array might be shared with other bodies, created with the copy constructor (for example, by
+	 * {@link HttpMessage#cloneAll()}), a change would also change the contents of those bodies. To change the body use
+	 * {@link #setBody(byte[])} or {@link #append(byte[])}, which copy the array if shared.
+	 * </p>
 	 * 
 	 * @return a reference to the content of this body as <code>byte[]</code>.
 	 */
@@ -226,6 +271,7 @@ public abstract class HttpBody {
 			byte[] newBody = new byte[length];
 			System.arraycopy(body, 0, newBody, 0, length);
 			body = newBody;
+			shared = false;
 			
 			cachedString = null;
 		}
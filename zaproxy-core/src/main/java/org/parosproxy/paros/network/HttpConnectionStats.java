@@ -0,0 +1,85 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.network;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The statistics of the connections obtained from the shared connection pool by the {@code HttpSender}s of an initiator.
+ *
+ * @see HttpSender#getConnectionStats()
+ */
+public class HttpConnectionStats {
+
+    private final int initiator;
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong connectionsReused = new AtomicLong();
+    private final AtomicLong waitTime = new AtomicLong();
+
+    HttpConnectionStats(int initiator) {
+        this.initiator = initiator;
+    }
+
+    void connectionObtained(boolean reused, long waitTimeNanos) {
+        if (reused) {
+            connectionsReused.incrementAndGet();
+        } else {
+            connectionsOpened.incrementAndGet();
+        }
+        waitTime.addAndGet(waitTimeNanos);
+    }
+
+    /**
+     * Gets the initiator of the {@code HttpSender}s, for example, {@link HttpSender#PROXY_INITIATOR}.
+     *
+     * @return the initiator
+     */
+    public int getInitiator() {
+        return initiator;
+    }
+
+    /**
+     * Gets the number of new connections, that is, connections that had to be opened.
+     *
+     * @return the number of new connections
+     */
+    public long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    /**
+     * Gets the number of connections reused (kept alive) from previous requests.
+     *
+     * @return the number of connections reused
+     */
+    public long getConnectionsReused() {
+        return connectionsReused.get();
+    }
+
+    /**
+     * Gets the total time spent waiting for a connection from the pool, in milliseconds.
+     *
+     * @return the total wait time in milliseconds
+     */
+    public long getWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(waitTime.get());
+    }
+}
@@ -31,11 +31,13 @@
 // ZAP: 2013/09/02 Resolved header value setting on setHeader() which manage wrongly the "-" char
 // ZAP: 2013/11/16 Issue 867: HttpMessage#getFormParams should return an empty TreeSet if
 // the request body is not "x-www-form-urlencoded"
+// ZAP: 2015/07/20 Added copy constructor, to copy the header without parsing it again
 package org.parosproxy.paros.network;
 
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -133,6 +135,24 @@ public abstract class HttpHeader implements java.io.Serializable {
         setMessage(data);
     }
 
+    /**
+     * Constructs a HttpHeader with the same contents as the given header, without parsing it again.
+     *
+     * @param header the header to copy
+     */
+    protected HttpHeader(HttpHeader header) {
+        mStartLine = header.mStartLine;
+        mMsgHeader = header.mMsgHeader;
+        mMalformedHeader = header.mMalformedHeader;
+        mHeaderFields = new Hashtable<>();
+        for (Map.Entry<String, Vector<String>> entry : header.mHeaderFields.entrySet()) {
+            mHeaderFields.put(entry.getKey(), new Vector<>(entry.getValue()));
+        }
+        mContentLength = header.mContentLength;
+        mLineDelimiter = header.mLineDelimiter;
+        mVersion = header.mVersion;
+    }
+
     /**
      * Inititialization.
      */
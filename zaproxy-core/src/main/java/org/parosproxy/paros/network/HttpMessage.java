@@ -41,9 +41,13 @@
 // ZAP: 2014/03/28 Issue 1127: 	Allow scripts to generate breaks
 // ZAP: 2014/06/16 Issue 1217: Table format does not display information when charset is
 // present in Content-Type header
+// ZAP: 2015/07/02 Keep the parsed sources of the response (HtmlSourceCache)
+// ZAP: 2015/07/20 Clone the headers and bodies without parsing the headers again
+// ZAP: 2015/07/30 Added flag to indicate that the response body was truncated
 
 package org.parosproxy.paros.network;
 
+import java.lang.ref.SoftReference;
 import java.net.HttpCookie;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -101,6 +105,18 @@ public class HttpMessage implements Message {
      */
     private boolean responseFromTargetHost = false;
 
+    /**
+     * Flag that indicates if the response body has just the first bytes of the body received, for example, if streamed.
+     * <p>
+     * Default is {@code false}.
+     */
+    private boolean responseBodyTruncated = false;
+
+    /**
+     * The parsed sources of the response, managed by {@code HtmlSourceCache}.
+     */
+    private SoftReference<HtmlSourceCache.CachedSources> cachedSources;
+
 
     public HistoryReference getHistoryRef() {
 		return historyRef;
@@ -637,29 +653,42 @@ public class HttpMessage implements Message {
         this.userObject = userObject;
     }
     
+    /**
+     * Clones the request and response of this message.
+     * <p>
+     * The headers are copied without being parsed again and the bodies share their bytes until changed.
+     * </p>
+     *
+     * @return the new message
+     * @see #cloneRequest()
+     */
     public HttpMessage cloneAll() {
         HttpMessage newMsg = cloneRequest();
         
         if (!this.getResponseHeader().isEmpty()) {
-            try {
-                newMsg.getResponseHeader().setMessage(this.getResponseHeader().toString());
-            } catch (HttpMalformedHeaderException e) {
-            }
-            newMsg.setResponseBody(this.getResponseBody().getBytes());
+            newMsg.mResHeader = new HttpResponseHeader(this.getResponseHeader());
+            newMsg.mResBody = new HttpResponseBody(this.getResponseBody());
+            newMsg.mResBody.setCharset(newMsg.mResHeader.getCharset());
+            newMsg.responseBodyTruncated = this.responseBodyTruncated;
         }
 
         return newMsg;
     }
     
+    /**
+     * Clones the request of this message.
+     * <p>
+     * The header is copied without being parsed again and the body shares its bytes until changed.
+     * </p>
+     *
+     * @return the new message, with just the request
+     */
     public HttpMessage cloneRequest() {
         HttpMessage newMsg = new HttpMessage();
         if (!this.getRequestHeader().isEmpty()) {
-            try {
-                newMsg.getRequestHeader().setMessage(this.getRequestHeader().toString());
-            } catch (HttpMalformedHeaderException e) {
-                log.error(e.getMessage(), e);
-            }
-            newMsg.setRequestBody(this.getRequestBody().getBytes());
+            newMsg.mReqHeader = new HttpRequestHeader(this.getRequestHeader());
+            newMsg.mReqBody = new HttpRequestBody(this.getRequestBody());
+            newMsg.mReqBody.setCharset(newMsg.mReqHeader.getCharset());
         }
         return newMsg;
     }
@@ -922,4 +951,35 @@ public class HttpMessage implements Message {
     public void setResponseFromTargetHost(final boolean responseFromTargetHost) {
         this.responseFromTargetHost = responseFromTargetHost;
     }
-}
\ No newline at end of file
+
+    /**
+     * Tells whether or not the response body has just the first bytes of the body received, in which case the
+     * {@code Content-Length} header (if any) does not match the length of the body.
+     * <p>
+     * The messages with truncated responses are tagged when persisted and are not scanned.
+     * </p>
+     * 
+     * @return {@code true} if the response body was truncated, {@code false} otherwise.
+     * @see org.parosproxy.paros.model.HistoryReference#TAG_RESPONSE_TRUNCATED
+     */
+    public boolean isResponseBodyTruncated() {
+        return responseBodyTruncated;
+    }
+
+    /**
+     * Sets if the response body has just the first bytes of the body received.
+     * 
+     * @param responseBodyTruncated {@code true} if the response body was truncated, {@code false} otherwise.
+     */
+    public void setResponseBodyTruncated(boolean responseBodyTruncated) {
+        this.responseBodyTruncated = responseBodyTruncated;
+    }
+
+    SoftReference<HtmlSourceCache.CachedSources> getCachedSources() {
+        return cachedSources;
+    }
+
+    void setCachedSources(SoftReference<HtmlSourceCache.CachedSources> cachedSources) {
+        this.cachedSources = cachedSources;
+    }
+}
@@ -38,6 +38,7 @@
 // ZAP: 2013/04/14 Issue 596: Rename the method HttpRequestHeader.getSecure to isSecure
 // ZAP: 2013/05/02 Re-arranged all modifiers into Java coding standard order
 // ZAP: 2013/12/09 Set Content-type only in case of POST or PUT HTTP methods
+// ZAP: 2015/07/20 Added copy constructor, to copy the header without parsing it again
 //
 package org.parosproxy.paros.network;
 
@@ -133,6 +134,36 @@ public class HttpRequestHeader extends HttpHeader {
         setMessage(data);
     }
 
+    /**
+     * Constructs a request header with the same contents as the given header, without parsing it again.
+     * <p>
+     * The URI is also copied, so changes to the URI of one header do not affect the other.
+     * </p>
+     *
+     * @param header the header to copy
+     */
+    public HttpRequestHeader(HttpRequestHeader header) {
+        super(header);
+
+        mMethod = header.mMethod;
+        mUri = copyURI(header.mUri);
+        mHostName = header.mHostName;
+        mIsSecure = header.mIsSecure;
+        setHostPort(header.mHostPort);
+    }
+
+    private static URI copyURI(URI uri) {
+        if (uri == null) {
+            return null;
+        }
+        try {
+            return (URI) uri.clone();
+        } catch (CloneNotSupportedException e) {
+            // Does not happen, URI is Cloneable.
+            throw new IllegalStateException(e);
+        }
+    }
+
     @Override
     public void clear() {
         super.clear();
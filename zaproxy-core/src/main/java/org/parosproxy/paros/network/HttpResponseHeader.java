@@ -28,6 +28,7 @@
 // ZAP: 2013/03/08 Improved parse error reporting
 // ZAP: 2014/02/21 i1046: The getHttpCookies() method in the HttpResponseHeader does not properly set the domain
 // ZAP: 2014/04/09 i1145: Cookie parsing error if a comma is used
+// ZAP: 2015/07/20 Added copy constructor, to copy the header without parsing it again
 
 package org.parosproxy.paros.network;
 
@@ -74,6 +75,19 @@ public class HttpResponseHeader extends HttpHeader {
         setMessage(data);
     }
 
+    /**
+     * Constructs a response header with the same contents as the given header, without parsing it again.
+     *
+     * @param header the header to copy
+     */
+    public HttpResponseHeader(HttpResponseHeader header) {
+        super(header);
+
+        mStatusCodeString = header.mStatusCodeString;
+        mStatusCode = header.mStatusCode;
+        mReasonPhrase = header.mReasonPhrase;
+    }
+
     @Override
     public void clear() {
         super.clear();
@@ -47,24 +47,41 @@
 // and enhance the usability of some options
 // ZAP: 2014/03/29 Issue 1132: 	HttpSender ignores the "Send single cookie request header" option
 // ZAP: 2014/08/14 Issue 1291: 407 Proxy Authentication Required while active scanning
+// ZAP: 2015/06/09 Added support for streaming the response body (HttpResponseStreamHandler)
+// ZAP: 2015/07/08 Added asynchronous sending of messages (sendAsync)
+// ZAP: 2015/07/10 Use a connection pool shared by all the senders, with connection statistics per initiator
+// ZAP: 2015/07/30 Flag the message if the streamed response body was truncated
+// ZAP: 2015/07/31 Use own connection pools for authenticated requests and configure the shared pool just once
+// ZAP: 2015/07/31 Reauthentication also when sending a message with a HttpResponseStreamHandler
 
 package org.parosproxy.paros.network;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpMethodDirector;
-import org.apache.commons.httpclient.HttpState;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.HttpState;
 import org.apache.commons.httpclient.NTCredentials;
 import org.apache.commons.httpclient.URI;
 import org.apache.commons.httpclient.auth.AuthPolicy;
@@ -77,6 +94,8 @@ import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
 import org.apache.log4j.Logger;
 import org.zaproxy.zap.ZapGetMethod;
 import org.zaproxy.zap.ZapHttpConnectionManager;
+import org.zaproxy.zap.network.HttpResponseStreamHandler;
+import org.zaproxy.zap.network.HttpSenderCallback;
 import org.zaproxy.zap.network.HttpSenderListener;
 import org.zaproxy.zap.network.ZapNTLMScheme;
 import org.zaproxy.zap.users.User;
@@ -94,6 +113,17 @@ public class HttpSender {
 
 	private static Logger log = Logger.getLogger(HttpSender.class);
 
+	private static final int STREAM_BUFFER_SIZE = 8192;
+
+	/**
+	 * The default maximum number of messages sent asynchronously at the same time, per {@code HttpSender}.
+	 * 
+	 * @see #setMaxAsyncRequests(int)
+	 */
+	public static final int DEFAULT_MAX_ASYNC_REQUESTS = 20;
+
+	private static final int ASYNC_THREAD_KEEP_ALIVE = 30;
+
 	private static ProtocolSocketFactory sslFactory = null;
 	private static Protocol protocol = null;
 
@@ -118,16 +148,58 @@ public class HttpSender {
 	}
 
 	private static HttpMethodHelper helper = new HttpMethodHelper();
+
+	private static final SharedHttpConnectionManager sharedConnManager = new SharedHttpConnectionManager();
+	private static boolean sharedConnManagerConfigured = false;
+
+	/**
+	 * The maximum number of connection pools kept per sender for the requests sent with a custom {@code HttpState}, the
+	 * pool least recently used is shut down when exceeded.
+	 */
+	private static final int MAX_STATE_CONN_MANAGERS = 16;
+
 	private static String userAgent = "";
 
 	private HttpClient client = null;
 	private HttpClient clientViaProxy = null;
 	private ConnectionParam param = null;
-	private MultiThreadedHttpConnectionManager httpConnManager = null;
-	private MultiThreadedHttpConnectionManager httpConnManagerProxy = null;
 	private boolean followRedirect = false;
 	private boolean allowState = false;
 	private int initiator = -1;
+	private int maxAsyncRequests = DEFAULT_MAX_ASYNC_REQUESTS;
+	private ThreadPoolExecutor asyncExecutor = null;
+
+	/**
+	 * The connection manager used, instead of the shared one, when the sender authenticates with the credentials set in
+	 * the options (hosts or proxy chain), might be {@code null}.
+	 * <p>
+	 * Connection-oriented authentication schemes (e.g. NTLM) authenticate the connection, not the request, so the
+	 * connections must not be reused by other senders.
+	 */
+	private MultiThreadedHttpConnectionManager authConnManager = null;
+
+	/**
+	 * The connection managers of the requests sent with a custom {@code HttpState} (e.g. as a {@code User}), one per
+	 * state, so that the (authenticated) connections are not reused with other states or by other senders.
+	 * <p>
+	 * Access must be synchronised on the map itself.
+	 */
+	private final Map<HttpState, MultiThreadedHttpConnectionManager> stateConnManagers = new LinkedHashMap<HttpState, MultiThreadedHttpConnectionManager>(
+			16,
+			0.75f,
+			true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<HttpState, MultiThreadedHttpConnectionManager> eldest) {
+			if (size() > MAX_STATE_CONN_MANAGERS) {
+				eldest.getValue().shutdown();
+				return true;
+			}
+			return false;
+		}
+	};
 
 	/*
 	 * public HttpSender(ConnectionParam connectionParam, boolean allowState) { this
@@ -139,6 +211,10 @@ public class HttpSender {
 		this.allowState = allowState;
 		this.initiator = initiator;
 
+		configureSharedConnManager(param);
+		if (!param.getListAuthEnabled().isEmpty() || (param.isUseProxyChain() && param.isUseProxyChainAuth())) {
+			authConnManager = createConnManager();
+		}
 		client = createHttpClient();
 		clientViaProxy = createHttpClientViaProxy();
 		
@@ -173,11 +249,45 @@ public class HttpSender {
 		}
 	}
 
+	/**
+	 * Configures the connection pool shared by all the senders, with the options of the first sender created. The options
+	 * are not changed afterwards, otherwise each sender would override the options of the others.
+	 */
+	private static synchronized void configureSharedConnManager(ConnectionParam connectionParam) {
+		if (!sharedConnManagerConfigured) {
+			sharedConnManager.setOptions(connectionParam);
+			sharedConnManagerConfigured = true;
+		}
+	}
+
+	private MultiThreadedHttpConnectionManager createConnManager() {
+		MultiThreadedHttpConnectionManager connManager = new MultiThreadedHttpConnectionManager();
+		connManager.getParams().setSoTimeout(param.getTimeoutInSecs() * 1000);
+		connManager.getParams().setStaleCheckingEnabled(true);
+		connManager.getParams().setDefaultMaxConnectionsPerHost(param.getMaxConnectionsPerHost());
+		connManager.getParams().setMaxTotalConnections(param.getMaxTotalConnections());
+		return connManager;
+	}
+
+	private MultiThreadedHttpConnectionManager getStateConnManager(HttpState state) {
+		synchronized (stateConnManagers) {
+			MultiThreadedHttpConnectionManager connManager = stateConnManagers.get(state);
+			if (connManager == null) {
+				connManager = createConnManager();
+				stateConnManagers.put(state, connManager);
+			}
+			return connManager;
+		}
+	}
+
 	private HttpClient createHttpClient() {
 
-		httpConnManager = new MultiThreadedHttpConnectionManager();
-		setCommonManagerParams(httpConnManager);
-		return new HttpClient(httpConnManager);
+		HttpClient httpClient = new HttpClient(authConnManager != null ? authConnManager : sharedConnManager);
+		// ZAP: set timeout
+		httpClient.getParams().setSoTimeout(param.getTimeoutInSecs() * 1000);
+		// Fail instead of waiting indefinitely, the pool has a limited number of connections per host
+		httpClient.getParams().setConnectionManagerTimeout(param.getTimeoutInSecs() * 1000L);
+		return httpClient;
 	}
 
 	private HttpClient createHttpClientViaProxy() {
@@ -186,9 +296,7 @@ public class HttpSender {
 			return createHttpClient();
 		}
 
-		httpConnManagerProxy = new MultiThreadedHttpConnectionManager();
-		setCommonManagerParams(httpConnManagerProxy);
-		HttpClient clientProxy = new HttpClient(httpConnManagerProxy);
+		HttpClient clientProxy = createHttpClient();
 		clientProxy.getHostConfiguration().setProxy(param.getProxyChainName(), param.getProxyChainPort());
 
 		if (param.isUseProxyChainAuth()) {
@@ -218,6 +326,7 @@ public class HttpSender {
 		method.setDoAuthentication(true);
 
 		HttpClient requestClient;
+		boolean isUpgradeClient = false;
 		if (param.isUseProxy(hostName)) {
 			requestClient = clientViaProxy;
 		} else {
@@ -232,29 +341,74 @@ public class HttpSender {
 				// Unless upgrade, when using another client that allows us to expose the socket
 				// connection.
 				requestClient = new HttpClient(new ZapHttpConnectionManager());
+				isUpgradeClient = true;
 			}
 		}
 
-		// ZAP: Check if a custom state is being used
-		if (state != null) {
-			// Make sure cookies are enabled and restore the cookie policy afterwards
-			String originalCookiePolicy = requestClient.getParams().getCookiePolicy();
-			requestClient.getParams().setCookiePolicy(CookiePolicy.BROWSER_COMPATIBILITY);
-			responseCode = requestClient.executeMethod(null, method, state);
-			requestClient.getParams().setCookiePolicy(originalCookiePolicy);
-		} else
-			responseCode = requestClient.executeMethod(method);
+		SharedHttpConnectionManager.setCurrentInitiator(Integer.valueOf(initiator));
+		try {
+			// ZAP: Check if a custom state is being used
+			if (state != null) {
+				// Make sure cookies are enabled and restore the cookie policy afterwards
+				String originalCookiePolicy = requestClient.getParams().getCookiePolicy();
+				requestClient.getParams().setCookiePolicy(CookiePolicy.BROWSER_COMPATIBILITY);
+				if (!isUpgradeClient) {
+					// Do not reuse the connections of other states, they might be authenticated
+					HttpClient stateClient = new HttpClient(requestClient.getParams(), getStateConnManager(state));
+					stateClient.setHostConfiguration(requestClient.getHostConfiguration());
+					requestClient = stateClient;
+				}
+				responseCode = requestClient.executeMethod(null, method, state);
+				requestClient.getParams().setCookiePolicy(originalCookiePolicy);
+			} else
+				responseCode = requestClient.executeMethod(method);
+		} finally {
+			SharedHttpConnectionManager.setCurrentInitiator(null);
+		}
 
 		return responseCode;
 	}
 
 	public void shutdown() {
-		if (httpConnManager != null) {
-			httpConnManager.shutdown();
+		synchronized (this) {
+			if (asyncExecutor != null) {
+				// The messages already submitted are still sent.
+				asyncExecutor.shutdown();
+				asyncExecutor = null;
+			}
 		}
-		if (httpConnManagerProxy != null) {
-			httpConnManagerProxy.shutdown();
+		if (authConnManager != null) {
+			authConnManager.shutdown();
 		}
+		synchronized (stateConnManagers) {
+			for (MultiThreadedHttpConnectionManager connManager : stateConnManagers.values()) {
+				connManager.shutdown();
+			}
+			stateConnManagers.clear();
+		}
+		// The connections in the shared pool are kept for other senders, the idle ones are eventually closed.
+	}
+
+	/**
+	 * Gets the statistics of the connections obtained from the connection pool shared by all the {@code HttpSender}s, per
+	 * initiator.
+	 * 
+	 * @return the statistics of the connections, per initiator, never {@code null}
+	 * @see #getConnectionsEvicted()
+	 */
+	public static List<HttpConnectionStats> getConnectionStats() {
+		return sharedConnManager.getStats();
+	}
+
+	/**
+	 * Gets the number of idle connections closed and removed from the connection pool shared by all the
+	 * {@code HttpSender}s.
+	 * 
+	 * @return the number of connections evicted
+	 * @see ConnectionParam#getIdleConnectionTimeoutInSecs()
+	 */
+	public static long getConnectionsEvicted() {
+		return sharedConnManager.getConnectionsEvicted();
 	}
 
 	// ZAP: Deprecating configuring HTTP Authentication through Options
@@ -358,6 +512,155 @@ public class HttpSender {
 		}
 	}
 
+	/**
+	 * Sends the request of the given message and reads the response, streaming the response body if the given handler
+	 * so decides.
+	 * <p>
+	 * The redirections are not followed. If the response body is streamed the message will contain just the first bytes
+	 * of the response body, as defined by {@link HttpResponseStreamHandler#getMaxBufferedBodySize()}.
+	 * </p>
+	 * <p>
+	 * The message is sent from the perspective of the user, if any, as with {@link #sendAndReceive(HttpMessage)}. In that
+	 * case the response body is not streamed, the whole response is needed to check whether or not the user is still
+	 * authenticated and, if not, to send the message again once reauthenticated.
+	 * </p>
+	 * 
+	 * @param msg the message to be sent
+	 * @param streamHandler the handler that decides whether or not the response body is streamed
+	 * @throws IOException if an error occurred while sending the request, reading the response or streaming the body
+	 * @see #sendAndReceive(HttpMessage)
+	 */
+	public void sendAndReceive(HttpMessage msg, HttpResponseStreamHandler streamHandler) throws IOException {
+		if (streamHandler == null) {
+			throw new IllegalArgumentException("Parameter streamHandler must not be null.");
+		}
+
+		log.debug("sendAndReceive " + msg.getRequestHeader().getMethod() + " "
+				+ msg.getRequestHeader().getURI() + " start (streamed)");
+		msg.setTimeSentMillis(System.currentTimeMillis());
+
+		try {
+			notifyRequestListeners(msg);
+
+			// ZAP: Reauthentication when sending a message from the perspective of a User
+			sendAuthenticated(msg, false, streamHandler);
+
+		} finally {
+			msg.setTimeElapsedMillis((int) (System.currentTimeMillis() - msg.getTimeSentMillis()));
+			log.debug("sendAndReceive " + msg.getRequestHeader().getMethod() + " "
+					+ msg.getRequestHeader().getURI() + " took " + msg.getTimeElapsedMillis());
+
+			notifyResponseListeners(msg);
+		}
+	}
+
+	/**
+	 * Sends the request of the given message and reads the response asynchronously, following redirections as set by
+	 * {@link #setFollowRedirect(boolean)}.
+	 * 
+	 * @param msg the message to be sent
+	 * @return a {@code Future} that completes with the given message once the response is received
+	 * @see #sendAsync(HttpMessage, boolean, HttpSenderCallback)
+	 */
+	public Future<HttpMessage> sendAsync(HttpMessage msg) {
+		return sendAsync(msg, followRedirect, null);
+	}
+
+	/**
+	 * Sends the request of the given message and reads the response asynchronously.
+	 * <p>
+	 * The message is sent as with {@link #sendAndReceive(HttpMessage, boolean)}, the {@code HttpSenderListener}s are
+	 * notified and the message is processed to match the user, if any. At most {@link #getMaxAsyncRequests()} messages are
+	 * sent at the same time, the remaining wait to be sent. The calling thread is not blocked, which allows to keep many
+	 * requests in flight from a single thread.
+	 * </p>
+	 * <p>
+	 * The message must not be accessed until the returned {@code Future} completes (or the callback is notified).
+	 * </p>
+	 * 
+	 * @param msg the message to be sent
+	 * @param isFollowRedirect {@code true} if redirections should be followed, {@code false} otherwise
+	 * @param callback the callback notified once the message is sent, might be {@code null}
+	 * @return a {@code Future} that completes with the given message once the response is received, or fails with the
+	 *         {@code IOException} thrown while sending
+	 * @throws IllegalArgumentException if the given message is {@code null}
+	 * @throws java.util.concurrent.RejectedExecutionException if this {@code HttpSender} was shutdown
+	 */
+	public Future<HttpMessage> sendAsync(final HttpMessage msg, final boolean isFollowRedirect,
+			final HttpSenderCallback callback) {
+		if (msg == null) {
+			throw new IllegalArgumentException("Parameter msg must not be null.");
+		}
+
+		return getAsyncExecutor().submit(new Callable<HttpMessage>() {
+
+			@Override
+			public HttpMessage call() throws IOException {
+				try {
+					sendAndReceive(msg, isFollowRedirect);
+				} catch (IOException e) {
+					if (callback != null) {
+						callback.sendFailed(msg, e);
+					}
+					throw e;
+				}
+				if (callback != null) {
+					callback.responseReceived(msg);
+				}
+				return msg;
+			}
+		});
+	}
+
+	private synchronized ThreadPoolExecutor getAsyncExecutor() {
+		if (asyncExecutor == null) {
+			asyncExecutor = new ThreadPoolExecutor(
+					maxAsyncRequests,
+					maxAsyncRequests,
+					ASYNC_THREAD_KEEP_ALIVE,
+					TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(),
+					new AsyncSenderThreadFactory());
+			asyncExecutor.allowCoreThreadTimeOut(true);
+		}
+		return asyncExecutor;
+	}
+
+	/**
+	 * Gets the maximum number of messages sent asynchronously at the same time.
+	 * 
+	 * @return the maximum number of messages sent asynchronously at the same time
+	 * @see #sendAsync(HttpMessage, boolean, HttpSenderCallback)
+	 */
+	public synchronized int getMaxAsyncRequests() {
+		return maxAsyncRequests;
+	}
+
+	/**
+	 * Sets the maximum number of messages sent asynchronously at the same time.
+	 * <p>
+	 * Default is {@value #DEFAULT_MAX_ASYNC_REQUESTS}.
+	 * </p>
+	 * 
+	 * @param maxAsyncRequests the maximum number of messages sent asynchronously at the same time
+	 * @throws IllegalArgumentException if {@code maxAsyncRequests} is not greater than zero
+	 */
+	public synchronized void setMaxAsyncRequests(int maxAsyncRequests) {
+		if (maxAsyncRequests <= 0) {
+			throw new IllegalArgumentException("Parameter maxAsyncRequests must be greater than zero.");
+		}
+		if (asyncExecutor != null) {
+			if (maxAsyncRequests > this.maxAsyncRequests) {
+				asyncExecutor.setMaximumPoolSize(maxAsyncRequests);
+				asyncExecutor.setCorePoolSize(maxAsyncRequests);
+			} else {
+				asyncExecutor.setCorePoolSize(maxAsyncRequests);
+				asyncExecutor.setMaximumPoolSize(maxAsyncRequests);
+			}
+		}
+		this.maxAsyncRequests = maxAsyncRequests;
+	}
+
 	private void notifyRequestListeners(HttpMessage msg) {
 		for (HttpSenderListener listener : listeners) {
 			try {
@@ -388,14 +691,22 @@ public class HttpSender {
 
 	// ZAP: Make sure a message that needs to be authenticated is authenticated
 	private void sendAuthenticated(HttpMessage msg, boolean isFollowRedirect) throws IOException {
+		sendAuthenticated(msg, isFollowRedirect, null);
+	}
+
+	private void sendAuthenticated(HttpMessage msg, boolean isFollowRedirect, HttpResponseStreamHandler streamHandler)
+			throws IOException {
 		// Modify the request message if a 'Requesting User' has been set
 		User forceUser = this.getUser(msg);
-		if (initiator != AUTHENTICATION_INITIATOR && forceUser != null)
+		if (initiator != AUTHENTICATION_INITIATOR && forceUser != null) {
 			forceUser.processMessageToMatchUser(msg);
+			// The whole response is needed to check the authentication and to be able to send it again
+			streamHandler = null;
+		}
 
 		log.debug("Sending message to: " + msg.getRequestHeader().getURI().toString());
 		// Send the message
-		send(msg, isFollowRedirect);
+		send(msg, isFollowRedirect, streamHandler);
 
 		// If there's a 'Requesting User', make sure the response corresponds to an authenticated
 		// session and, if not, attempt a reauthentication and try again
@@ -413,6 +724,11 @@ public class HttpSender {
 	}
 
 	private void send(HttpMessage msg, boolean isFollowRedirect) throws IOException {
+		send(msg, isFollowRedirect, null);
+	}
+
+	private void send(HttpMessage msg, boolean isFollowRedirect, HttpResponseStreamHandler streamHandler)
+			throws IOException {
 		HttpMethod method = null;
 		HttpResponseHeader resHeader = null;
 
@@ -425,11 +741,25 @@ public class HttpSender {
 			msg.setResponseHeader(resHeader);
 			msg.getResponseBody().setCharset(resHeader.getCharset());
 			msg.getResponseBody().setLength(0);
+			msg.setResponseBodyTruncated(false);
 
 			// ZAP: Do not read response body for Server-Sent Events stream
 			// ZAP: Moreover do not set content length to zero
 			if (!msg.isEventStream()) {
-				msg.getResponseBody().append(method.getResponseBody());
+				OutputStream out = null;
+				if (streamHandler != null) {
+					out = streamHandler.onResponseHeaderReceived(msg);
+				}
+
+				if (out == null) {
+					msg.getResponseBody().append(method.getResponseBody());
+				} else {
+					msg.setResponseBodyTruncated(streamResponseBody(
+							method,
+							out,
+							msg.getResponseBody(),
+							streamHandler.getMaxBufferedBodySize()));
+				}
 			}
 			msg.setResponseFromTargetHost(true);
 
@@ -444,6 +774,37 @@ public class HttpSender {
 		}
 	}
 
+	/**
+	 * Writes the response body of the given method to the given stream, as it is read, keeping up to
+	 * {@code maxBufferedSize} bytes in the given body.
+	 * 
+	 * @return {@code true} if the body was truncated, that is, not all bytes read were kept, {@code false} otherwise
+	 */
+	private static boolean streamResponseBody(HttpMethod method, OutputStream out, HttpBody body, int maxBufferedSize)
+			throws IOException {
+		InputStream in = method.getResponseBodyAsStream();
+		if (in == null) {
+			return false;
+		}
+
+		boolean truncated = false;
+		byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+		int len;
+		while ((len = in.read(buffer)) != -1) {
+			out.write(buffer, 0, len);
+
+			int remaining = maxBufferedSize - body.length();
+			if (remaining > 0) {
+				body.append(buffer, Math.min(remaining, len));
+			}
+			if (remaining < len) {
+				truncated = true;
+			}
+		}
+		out.flush();
+		return truncated;
+	}
+
 	private HttpMethod runMethod(HttpMessage msg, boolean isFollowRedirect) throws IOException {
 		HttpMethod method = null;
 		// no more retry
@@ -514,25 +875,6 @@ public class HttpSender {
 		HttpSender.userAgent = userAgent;
 	}
 
-	private void setCommonManagerParams(MultiThreadedHttpConnectionManager mgr) {
-		// ZAP: set timeout
-		mgr.getParams().setSoTimeout(this.param.getTimeoutInSecs() * 1000);
-		mgr.getParams().setStaleCheckingEnabled(true);
-
-		// Set to arbitrary large values to prevent locking
-		mgr.getParams().setDefaultMaxConnectionsPerHost(10000);
-		mgr.getParams().setMaxTotalConnections(200000);
-
-		// to use for HttpClient 3.0.1
-		// mgr.getParams().setDefaultMaxConnectionsPerHost((Constant.MAX_HOST_CONNECTION > 5) ? 15 :
-		// 3*Constant.MAX_HOST_CONNECTION);
-
-		// mgr.getParams().setMaxTotalConnections(mgr.getParams().getDefaultMaxConnectionsPerHost()*10);
-
-		// mgr.getParams().setConnectionTimeout(60000); // use default
-
-	}
-
 	/*
 	 * Send and receive a HttpMessage.
 	 * 
@@ -683,4 +1025,25 @@ public class HttpSender {
         client.getParams().setBooleanParameter(HttpMethodDirector.PARAM_REMOVE_USER_DEFINED_AUTH_HEADERS, removeHeaders);
         clientViaProxy.getParams().setBooleanParameter(HttpMethodDirector.PARAM_REMOVE_USER_DEFINED_AUTH_HEADERS, removeHeaders);
     }
+
+	private static class AsyncSenderThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger poolNumber = new AtomicInteger(1);
+		private final ThreadGroup group;
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+		private final String namePrefix;
+
+		AsyncSenderThreadFactory() {
+			SecurityManager s = System.getSecurityManager();
+			group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
+			namePrefix = "ZAP-HttpSender-Async-" + poolNumber.getAndIncrement() + "-thread-";
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(group, r, namePrefix + threadNumber.getAndIncrement(), 0);
+			t.setDaemon(true);
+			return t;
+		}
+	}
 }
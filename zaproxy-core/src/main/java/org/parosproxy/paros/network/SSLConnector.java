@@ -28,6 +28,7 @@
 // ZAP: 2014/07/17 Issue 704: ZAP Error: handshake alert: unrecognized_name
 // ZAP: 2014/08/14 Issue 1184: Improve support for IBM JDK
 // ZAP: 2014/08/14 Issue 1274: ZAP Error [javax.net.ssl.SSLException]: Unsupported record version SSLv2Hello
+// ZAP: 2015/07/28 Cache the tunnel SSL socket factories per hostname
 
 package org.parosproxy.paros.network;
 
@@ -140,6 +141,24 @@ public class SSLConnector implements SecureProtocolSocketFactory {
 	 */
 	private static long timeStampLastStaleCheck;
 
+	/**
+	 * The maximum number of tunnel SSL socket factories cached.
+	 * 
+	 * @see #tunnelSslSocketFactories
+	 */
+	private static final int MAX_CACHED_TUNNEL_SSL_SOCKET_FACTORIES = 256;
+
+	/**
+	 * A cache of the (fully initialised) tunnel SSL socket factories, to avoid initialising a new {@code SSLContext} on each
+	 * connection to the same host and to allow the resumption of the SSL sessions.
+	 * <p>
+	 * The {@code key} is the hostname and the {@code value} the {@code TunnelSslSocketFactoryCacheEntry}, evicting the least
+	 * recently used.
+	 * 
+	 * @see #getTunnelSSLSocketFactory(String)
+	 */
+	private static final LRUMap tunnelSslSocketFactories = new LRUMap(MAX_CACHED_TUNNEL_SSL_SOCKET_FACTORIES);
+
 	// server related socket factories
 	
 	// ZAP: removed ServerSocketFaktory
@@ -502,20 +521,31 @@ public class SSLConnector implements SecureProtocolSocketFactory {
 
 		//	KeyStore ks;
 		try {
+			SslCertificateService scs = CachedSslCertifificateServiceImpl.getService();
+			KeyStore ks = scs.createCertForHost(hostname);
+
+			synchronized (tunnelSslSocketFactories) {
+				TunnelSslSocketFactoryCacheEntry entry = (TunnelSslSocketFactoryCacheEntry) tunnelSslSocketFactories.get(hostname);
+				// The key store changes if the root CA changes
+				if (entry != null && entry.getKeyStore() == ks) {
+					return entry.getSslSocketFactory();
+				}
+			}
+
 			SSLContext ctx = SSLContext.getInstance(SSL);
 			// Normally "SunX509", "IbmX509"...
 			KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
 
-			SslCertificateService scs = CachedSslCertifificateServiceImpl.getService();
-			KeyStore ks = scs.createCertForHost(hostname);
-
 			kmf.init(ks, SslCertificateService.PASSPHRASE);
-			java.security.SecureRandom x = new java.security.SecureRandom();
-			x.setSeed(System.currentTimeMillis());
-			ctx.init(kmf.getKeyManagers(), null, x);
+			// Default (self-seeded) SecureRandom
+			ctx.init(kmf.getKeyManagers(), null, null);
 
 			SSLSocketFactory tunnelSSLFactory = createDecoratedServerSslSocketFactory(ctx.getSocketFactory());
 
+			synchronized (tunnelSslSocketFactories) {
+				tunnelSslSocketFactories.put(hostname, new TunnelSslSocketFactoryCacheEntry(ks, tunnelSSLFactory));
+			}
+
 			return tunnelSSLFactory;
 
         } catch (NoSuchAlgorithmException | KeyStoreException
@@ -528,6 +558,30 @@ public class SSLConnector implements SecureProtocolSocketFactory {
         }
 	}
 
+	/**
+	 * An entry of the cache of tunnel SSL socket factories, the factory and the key store it was initialised with.
+	 * 
+	 * @see SSLConnector#tunnelSslSocketFactories
+	 */
+	private static class TunnelSslSocketFactoryCacheEntry {
+
+		private final KeyStore keyStore;
+		private final SSLSocketFactory sslSocketFactory;
+
+		public TunnelSslSocketFactoryCacheEntry(KeyStore keyStore, SSLSocketFactory sslSocketFactory) {
+			this.keyStore = keyStore;
+			this.sslSocketFactory = sslSocketFactory;
+		}
+
+		public KeyStore getKeyStore() {
+			return keyStore;
+		}
+
+		public SSLSocketFactory getSslSocketFactory() {
+			return sslSocketFactory;
+		}
+	}
+
 	private static SSLSocketFactory createDecoratedServerSslSocketFactory(final SSLSocketFactory delegate) {
 		return new DecoratedSocketsSslSocketFactory(delegate, serverSslSocketsDecorator);
 	}
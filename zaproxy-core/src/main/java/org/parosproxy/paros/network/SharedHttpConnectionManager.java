@@ -0,0 +1,152 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.log4j.Logger;
+
+/**
+ * The connection manager shared by all the {@code HttpSender}s, which limits the connections per host and in total.
+ * <p>
+ * Instead of checking if a connection is stale before each request, the connections idle for longer than the configured
+ * time are closed by a background thread.
+ * </p>
+ * <p>
+ * Keeps statistics of the connections obtained, per initiator of the {@code HttpSender}s, and of the connections evicted.
+ * </p>
+ *
+ * @see ConnectionParam#getMaxConnectionsPerHost()
+ * @see ConnectionParam#getMaxTotalConnections()
+ * @see ConnectionParam#getIdleConnectionTimeoutInSecs()
+ */
+class SharedHttpConnectionManager extends MultiThreadedHttpConnectionManager {
+
+    private static final Logger logger = Logger.getLogger(SharedHttpConnectionManager.class);
+
+    private static final long EVICTION_INTERVAL_IN_MS = 1000;
+
+    private static final ThreadLocal<Integer> CURRENT_INITIATOR = new ThreadLocal<>();
+
+    private final ConcurrentHashMap<Integer, HttpConnectionStats> stats = new ConcurrentHashMap<>();
+    private final AtomicLong connectionsEvicted = new AtomicLong();
+
+    private volatile long idleConnectionTimeoutInMs;
+
+    SharedHttpConnectionManager() {
+        getParams().setStaleCheckingEnabled(false);
+
+        Thread evictionThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        Thread.sleep(EVICTION_INTERVAL_IN_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    evictIdleConnections();
+                }
+            }
+        }, "ZAP-IdleConnectionEvictor");
+        evictionThread.setDaemon(true);
+        evictionThread.start();
+    }
+
+    /**
+     * Applies the limits and idle timeout of the given options.
+     *
+     * @param param the connection options
+     */
+    void setOptions(ConnectionParam param) {
+        getParams().setSoTimeout(param.getTimeoutInSecs() * 1000);
+        getParams().setDefaultMaxConnectionsPerHost(param.getMaxConnectionsPerHost());
+        getParams().setMaxTotalConnections(param.getMaxTotalConnections());
+        idleConnectionTimeoutInMs = param.getIdleConnectionTimeoutInSecs() * 1000L;
+    }
+
+    private void evictIdleConnections() {
+        try {
+            int before = getConnectionsInPool();
+            closeIdleConnections(idleConnectionTimeoutInMs);
+            // The closed connections are kept in the pool, until deleted.
+            deleteClosedConnections();
+            int evicted = before - getConnectionsInPool();
+            if (evicted > 0) {
+                connectionsEvicted.addAndGet(evicted);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to evict the idle connections: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout)
+            throws ConnectionPoolTimeoutException {
+        long start = System.nanoTime();
+        HttpConnection connection = super.getConnectionWithTimeout(hostConfiguration, timeout);
+        Integer initiator = CURRENT_INITIATOR.get();
+        if (initiator != null) {
+            getStats(initiator).connectionObtained(connection.isOpen(), System.nanoTime() - start);
+        }
+        return connection;
+    }
+
+    private HttpConnectionStats getStats(Integer initiator) {
+        HttpConnectionStats initiatorStats = stats.get(initiator);
+        if (initiatorStats == null) {
+            initiatorStats = new HttpConnectionStats(initiator.intValue());
+            HttpConnectionStats previous = stats.putIfAbsent(initiator, initiatorStats);
+            if (previous != null) {
+                initiatorStats = previous;
+            }
+        }
+        return initiatorStats;
+    }
+
+    /**
+     * Sets the initiator of the requests sent by the current thread, used to keep the statistics per initiator.
+     *
+     * @param initiator the initiator, or {@code null} to clear it
+     */
+    static void setCurrentInitiator(Integer initiator) {
+        if (initiator == null) {
+            CURRENT_INITIATOR.remove();
+        } else {
+            CURRENT_INITIATOR.set(initiator);
+        }
+    }
+
+    List<HttpConnectionStats> getStats() {
+        return new ArrayList<>(stats.values());
+    }
+
+    long getConnectionsEvicted() {
+        return connectionsEvicted.get();
+    }
+}
@@ -28,41 +28,126 @@ import java.security.NoSuchProviderException;
 import java.security.SignatureException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * This is an in-memory cache implementation using {@link SslCertificateServiceImpl}.
- * It's not persisting certificates on hard disk.
- * This class is designed to be thread safe.
+ * It's not persisting certificates on hard disk, unless a persistent cache is set,
+ * in which case the certificates are loaded from and saved to it, as they are needed.
+ * This class is designed to be thread safe, the certificates of different hosts
+ * are created concurrently while the certificate of a host is created only once.
+ * The cache is cleared when the root CA is (re)initialised.
  *
  * @author MaWoKi
  */
 public final class CachedSslCertifificateServiceImpl implements SslCertificateService {
 
-	private static final SslCertificateService singleton = new CachedSslCertifificateServiceImpl();
+	private static final CachedSslCertifificateServiceImpl singleton = new CachedSslCertifificateServiceImpl();
 	private final SslCertificateService delegate;
 
+	private volatile FileSslCertificateCache persistentCache;
+	private volatile String rootCaFingerprint;
+
 	private CachedSslCertifificateServiceImpl() {
 		// avoid direct creating of instances
 		delegate = SslCertificateServiceImpl.getService();
 	}
 
-	private Map<String, KeyStore> cache = new HashMap<>();
+	private final ConcurrentMap<String, Future<KeyStore>> cache = new ConcurrentHashMap<>();
 
 	@Override
-	public synchronized KeyStore createCertForHost(String hostname)
+	public KeyStore createCertForHost(final String hostname)
+			throws NoSuchAlgorithmException, InvalidKeyException,
+			CertificateException, NoSuchProviderException, SignatureException,
+			KeyStoreException, IOException, UnrecoverableKeyException {
+		Future<KeyStore> future = this.cache.get(hostname);
+		if (future == null) {
+			FutureTask<KeyStore> task = new FutureTask<>(new Callable<KeyStore>() {
+
+				@Override
+				public KeyStore call() throws Exception {
+					return loadOrCreateCertForHost(hostname);
+				}
+			});
+			future = this.cache.putIfAbsent(hostname, task);
+			if (future == null) {
+				future = task;
+				task.run();
+			}
+		}
+
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while creating the certificate for " + hostname, e);
+		} catch (ExecutionException e) {
+			// Not cached, so that it's created again on next request
+			this.cache.remove(hostname, future);
+			throw rethrow(e.getCause());
+		}
+	}
+
+	private KeyStore loadOrCreateCertForHost(String hostname)
 			throws NoSuchAlgorithmException, InvalidKeyException,
 			CertificateException, NoSuchProviderException, SignatureException,
 			KeyStoreException, IOException, UnrecoverableKeyException {
-		if (this.cache.containsKey(hostname)) {
-			return this.cache.get(hostname);
+		final FileSslCertificateCache fileCache = this.persistentCache;
+		final String fingerprint = this.rootCaFingerprint;
+		if (fileCache == null || fingerprint == null) {
+			return delegate.createCertForHost(hostname);
+		}
+
+		KeyStore ks = fileCache.load(fingerprint, hostname);
+		if (ks == null) {
+			ks = delegate.createCertForHost(hostname);
+			fileCache.save(fingerprint, hostname, ks);
 		}
-		final KeyStore ks = delegate.createCertForHost(hostname);
-		this.cache.put(hostname, ks);
 		return ks;
 	}
 
+	private static IOException rethrow(Throwable cause)
+			throws NoSuchAlgorithmException, InvalidKeyException,
+			CertificateException, NoSuchProviderException, SignatureException,
+			KeyStoreException, IOException, UnrecoverableKeyException {
+		if (cause instanceof NoSuchAlgorithmException) {
+			throw (NoSuchAlgorithmException) cause;
+		}
+		if (cause instanceof InvalidKeyException) {
+			throw (InvalidKeyException) cause;
+		}
+		if (cause instanceof CertificateException) {
+			throw (CertificateException) cause;
+		}
+		if (cause instanceof NoSuchProviderException) {
+			throw (NoSuchProviderException) cause;
+		}
+		if (cause instanceof SignatureException) {
+			throw (SignatureException) cause;
+		}
+		if (cause instanceof KeyStoreException) {
+			throw (KeyStoreException) cause;
+		}
+		if (cause instanceof IOException) {
+			throw (IOException) cause;
+		}
+		if (cause instanceof UnrecoverableKeyException) {
+			throw (UnrecoverableKeyException) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new IOException(cause);
+	}
+
 	/**
 	 * @return return the current {@link SslCertificateService}
 	 */
@@ -70,10 +155,21 @@ public final class CachedSslCertifificateServiceImpl implements SslCertificateSe
 		return singleton;
 	}
 
+	/**
+	 * Sets the persistent cache of the certificates, used in addition to the in-memory cache.
+	 *
+	 * @param persistentCache the persistent cache, or {@code null} to not persist the certificates
+	 */
+	public static void setPersistentCache(FileSslCertificateCache persistentCache) {
+		singleton.persistentCache = persistentCache;
+	}
+
 	@Override
 	public void initializeRootCA(KeyStore keystore) throws KeyStoreException,
 			UnrecoverableKeyException, NoSuchAlgorithmException {
 		this.delegate.initializeRootCA(keystore);
+		this.rootCaFingerprint = keystore != null ? FileSslCertificateCache.getFingerprint(keystore) : null;
+		this.cache.clear();
 	}
 
 }
@@ -0,0 +1,218 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.security;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.zaproxy.zap.utils.OwnerOnlyFiles;
+
+/**
+ * A persistent cache of the certificates created for the hosts, that keeps the key stores in files, so that they are
+ * reused across restarts.
+ * <p>
+ * The key stores are saved in a directory per root CA, named with the fingerprint of the root CA, so that the certificates
+ * signed by other root CAs are not used. The key stores older than the given validity (or whose certificate is no longer
+ * valid) are not used, and are deleted.
+ * </p>
+ * <p>
+ * The key stores contain the private keys of the certificates, the directories and files created can be accessed just by
+ * the owner.
+ * </p>
+ * This class is designed to be thread safe.
+ *
+ * @see CachedSslCertifificateServiceImpl#setPersistentCache(FileSslCertificateCache)
+ */
+public class FileSslCertificateCache {
+
+	private static final Logger logger = Logger.getLogger(FileSslCertificateCache.class);
+
+	private static final String KEY_STORE_FILE_EXTENSION = ".jks";
+
+	private final File directory;
+	private final long validityInMs;
+
+	/**
+	 * Constructs a {@code FileSslCertificateCache} that keeps the key stores in the given directory, for the given number
+	 * of days.
+	 *
+	 * @param directory the directory where the key stores are saved
+	 * @param validityInDays the number of days that the key stores are used, after being created
+	 * @throws IllegalArgumentException if the {@code directory} is {@code null} or the {@code validityInDays} is not
+	 *             positive
+	 */
+	public FileSslCertificateCache(File directory, int validityInDays) {
+		if (directory == null) {
+			throw new IllegalArgumentException("Parameter directory must not be null.");
+		}
+		if (validityInDays <= 0) {
+			throw new IllegalArgumentException("Parameter validityInDays must be positive.");
+		}
+		this.directory = directory;
+		this.validityInMs = TimeUnit.DAYS.toMillis(validityInDays);
+	}
+
+	/**
+	 * Gets the fingerprint of the given root CA, used to identify the key stores signed by it.
+	 *
+	 * @param rootca the key store of the root CA
+	 * @return the fingerprint, in hexadecimal, or {@code null} if the key store has no certificate
+	 * @throws KeyStoreException if an error occurred while reading the certificate of the root CA
+	 */
+	static String getFingerprint(KeyStore rootca) throws KeyStoreException {
+		final Certificate cert = rootca.getCertificate(SslCertificateService.ZAPROXY_JKS_ALIAS);
+		if (cert == null) {
+			return null;
+		}
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-256").digest(cert.getEncoded());
+			final StringBuilder strBuilder = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				strBuilder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return strBuilder.toString();
+		} catch (GeneralSecurityException e) {
+			throw new KeyStoreException("Failed to create the fingerprint of the root CA.", e);
+		}
+	}
+
+	/**
+	 * Loads the key store of the given host, signed by the root CA with the given fingerprint.
+	 *
+	 * @param rootCaFingerprint the fingerprint of the root CA
+	 * @param hostname the name of the host
+	 * @return the key store, or {@code null} if not cached, expired or not readable
+	 */
+	public KeyStore load(String rootCaFingerprint, String hostname) {
+		final File file = getFile(rootCaFingerprint, hostname);
+		if (!file.isFile()) {
+			return null;
+		}
+		if (System.currentTimeMillis() - file.lastModified() > validityInMs) {
+			delete(file);
+			return null;
+		}
+
+		try (InputStream is = new FileInputStream(file)) {
+			final KeyStore ks = KeyStore.getInstance("JKS");
+			ks.load(is, SslCertificateService.PASSPHRASE);
+			final Certificate cert = ks.getCertificate(SslCertificateService.ZAPROXY_JKS_ALIAS);
+			if (!(cert instanceof X509Certificate)) {
+				delete(file);
+				return null;
+			}
+			((X509Certificate) cert).checkValidity(new Date());
+			return ks;
+		} catch (IOException | GeneralSecurityException e) {
+			logger.warn("Discarding the cached certificate of " + hostname + ": " + e.getMessage());
+			delete(file);
+			return null;
+		}
+	}
+
+	/**
+	 * Saves the key store of the given host, signed by the root CA with the given fingerprint.
+	 * <p>
+	 * Errors are logged, the certificate is just not cached.
+	 * </p>
+	 *
+	 * @param rootCaFingerprint the fingerprint of the root CA
+	 * @param hostname the name of the host
+	 * @param ks the key store of the host
+	 */
+	public void save(String rootCaFingerprint, String hostname, KeyStore ks) {
+		final File file = getFile(rootCaFingerprint, hostname);
+		final File dir = file.getParentFile();
+		try {
+			OwnerOnlyFiles.createDirectories(dir);
+		} catch (IOException e) {
+			logger.warn("Failed to create the directory of the cached certificates: " + dir.getAbsolutePath());
+			return;
+		}
+
+		// Written to a temporary file and renamed, to not leave a partially written file.
+		final File tempFile = new File(dir, file.getName() + ".tmp" + Thread.currentThread().getId());
+		delete(tempFile);
+		try {
+			OwnerOnlyFiles.createFile(tempFile);
+			try (OutputStream os = new FileOutputStream(tempFile)) {
+				ks.store(os, SslCertificateService.PASSPHRASE);
+			}
+		} catch (IOException | GeneralSecurityException e) {
+			logger.warn("Failed to cache the certificate of " + hostname + ": " + e.getMessage());
+			delete(tempFile);
+			return;
+		}
+		if (!tempFile.renameTo(file)) {
+			delete(file);
+			if (!tempFile.renameTo(file)) {
+				logger.warn("Failed to cache the certificate of " + hostname + " in " + file.getAbsolutePath());
+				delete(tempFile);
+			}
+		}
+	}
+
+	private File getFile(String rootCaFingerprint, String hostname) {
+		return new File(new File(directory, rootCaFingerprint), toFileName(hostname) + KEY_STORE_FILE_EXTENSION);
+	}
+
+	/**
+	 * Converts the given host name to a file name, escaping the characters that are not letters, digits, dots or hyphens
+	 * (for example, the colons of IPv6 addresses) with {@code _} followed by the hexadecimal value of each of its (UTF-8)
+	 * bytes, so that different host names have different file names.
+	 *
+	 * @param hostname the name of the host
+	 * @return the file name
+	 */
+	private static String toFileName(String hostname) {
+		final byte[] bytes = hostname.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+		final StringBuilder strBuilder = new StringBuilder(bytes.length);
+		for (byte b : bytes) {
+			char c = (char) (b & 0xFF);
+			if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '.' || c == '-') {
+				strBuilder.append(c);
+			} else {
+				strBuilder.append('_').append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+		}
+		return strBuilder.toString();
+	}
+
+	private static void delete(File file) {
+		if (file.exists() && !file.delete()) {
+			logger.debug("Failed to delete the file: " + file.getAbsolutePath());
+		}
+	}
+}
@@ -40,8 +40,11 @@ import java.security.cert.X509Certificate;
 import java.security.interfaces.RSAPrivateKey;
 import java.util.Date;
 import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.log4j.Logger;
 import org.bouncycastle.asn1.x500.X500NameBuilder;
 import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.asn1.x509.BasicConstraints;
@@ -68,6 +71,9 @@ import org.bouncycastle.x509.extension.SubjectKeyIdentifierStructure;
  * do have the same serial from the same CA, the browser gets crazy.
  * At least, Firefox v3.x does.
  *
+ * The key pairs of the certificates are pre-generated in a background thread, once the root CA is initialised, so that
+ * the first connection to a host does not have to wait for the generation of the key pair.
+ *
  * @author MaWoKi
  * @see org.bouncycastle.x509.examples.AttrCertExample how to manage CAs and stuff
  * @see CachedSslCertifificateServiceImpl for a cached SslCertificateService
@@ -80,6 +86,17 @@ public final class SslCertificateServiceImpl implements SslCertificateService {
 
 	private final AtomicLong serial;
 
+	/**
+	 * The number of key pairs pre-generated.
+	 */
+	private static final int KEY_PAIR_POOL_SIZE = 8;
+
+	private static final Logger logger = Logger.getLogger(SslCertificateServiceImpl.class);
+
+	private final BlockingQueue<KeyPair> keyPairPool = new LinkedBlockingQueue<>(KEY_PAIR_POOL_SIZE);
+	private final SecureRandom random = new SecureRandom();
+	private Thread keyPairGeneratorThread;
+
 	private static final SslCertificateService singleton = new SslCertificateServiceImpl();
 
 	private SslCertificateServiceImpl() {
@@ -105,7 +122,38 @@ public final class SslCertificateServiceImpl implements SslCertificateService {
 			this.caCert = (X509Certificate)keystore.getCertificate(ZAPROXY_JKS_ALIAS);
 			this.caPrivKey = (RSAPrivateKey) keystore.getKey(ZAPROXY_JKS_ALIAS, SslCertificateService.PASSPHRASE);
 			this.caPubKey = this.caCert.getPublicKey();
+			startKeyPairGenerator();
+		}
+	}
+
+	/**
+	 * Starts the thread that pre-generates the key pairs, if not already started.
+	 * <p>
+	 * The thread waits while the pool is full.
+	 * </p>
+	 */
+	private void startKeyPairGenerator() {
+		if (keyPairGeneratorThread != null) {
+			return;
 		}
+		keyPairGeneratorThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					while (!Thread.currentThread().isInterrupted()) {
+						keyPairPool.put(generateKeyPair());
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (NoSuchAlgorithmException e) {
+					logger.error("Failed to pre-generate the key pairs: " + e.getMessage(), e);
+				}
+			}
+		}, "ZAP-KeyPairGenerator");
+		keyPairGeneratorThread.setDaemon(true);
+		keyPairGeneratorThread.setPriority(Thread.MIN_PRIORITY);
+		keyPairGeneratorThread.start();
 	}
 
     @Override
@@ -162,7 +210,22 @@ public final class SslCertificateServiceImpl implements SslCertificateService {
     }
 
 	/**
-	 * Generates an 1024 bit RSA key pair using SHA1PRNG.
+	 * Gets a key pair, from the pre-generated ones if available, otherwise generates one.
+	 *
+	 * @return the key pair
+	 * @throws NoSuchAlgorithmException
+	 * @see #generateKeyPair()
+	 */
+	private KeyPair createKeyPair() throws NoSuchAlgorithmException {
+		final KeyPair keypair = keyPairPool.poll();
+		if (keypair != null) {
+			return keypair;
+		}
+		return generateKeyPair();
+	}
+
+	/**
+	 * Generates an 1024 bit RSA key pair.
 	 *
 	 * Thoughts: 2048 takes much longer time on older CPUs.
 	 * And for almost every client, 1024 is sufficient.
@@ -170,10 +233,9 @@ public final class SslCertificateServiceImpl implements SslCertificateService {
 	 * @return
 	 * @throws NoSuchAlgorithmException
 	 */
-	private KeyPair createKeyPair() throws NoSuchAlgorithmException {
+	private KeyPair generateKeyPair() throws NoSuchAlgorithmException {
 		final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
-		final SecureRandom random  = SecureRandom.getInstance("SHA1PRNG");
-		random.setSeed(Long.toString(System.currentTimeMillis()).getBytes());
+		// Self-seeded, a seed set before the first use would replace the seeding
 		keyGen.initialize(1024, random);
 		final KeyPair keypair = keyGen.generateKeyPair();
 		return keypair;
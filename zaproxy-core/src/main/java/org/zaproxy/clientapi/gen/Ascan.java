@@ -60,6 +60,13 @@ public class Ascan {
 		return api.callApi("ascan", "view", "policies", map);
 	}
 
+	public ApiResponse messageCacheStats(String scanid) throws ClientApiException {
+		Map<String, String> map = null;
+		map = new HashMap<String, String>();
+		map.put("scanId", scanid);
+		return api.callApi("ascan", "view", "messageCacheStats", map);
+	}
+
 	public ApiResponse optionExcludedParamList() throws ClientApiException {
 		Map<String, String> map = null;
 		return api.callApi("ascan", "view", "optionExcludedParamList", map);
@@ -90,6 +97,31 @@ public class Ascan {
 		return api.callApi("ascan", "view", "optionHandleAntiCSRFTokens", map);
 	}
 
+	public ApiResponse optionOverlapPlugins() throws ClientApiException {
+		Map<String, String> map = null;
+		return api.callApi("ascan", "view", "optionOverlapPlugins", map);
+	}
+
+	public ApiResponse optionMaxThreadsPerScan() throws ClientApiException {
+		Map<String, String> map = null;
+		return api.callApi("ascan", "view", "optionMaxThreadsPerScan", map);
+	}
+
+	public ApiResponse optionMaxRequestsPerSecond() throws ClientApiException {
+		Map<String, String> map = null;
+		return api.callApi("ascan", "view", "optionMaxRequestsPerSecond", map);
+	}
+
+	public ApiResponse optionMaxRequestsPerSecondPerHost() throws ClientApiException {
+		Map<String, String> map = null;
+		return api.callApi("ascan", "view", "optionMaxRequestsPerSecondPerHost", map);
+	}
+
+	public ApiResponse optionAdaptiveThreads() throws ClientApiException {
+		Map<String, String> map = null;
+		return api.callApi("ascan", "view", "optionAdaptiveThreads", map);
+	}
+
 	public ApiResponse optionAlertThreshold() throws ClientApiException {
 		Map<String, String> map = null;
 		return api.callApi("ascan", "view", "optionAlertThreshold", map);
@@ -303,6 +335,56 @@ public class Ascan {
 		return api.callApi("ascan", "action", "setOptionHandleAntiCSRFTokens", map);
 	}
 
+	public ApiResponse setOptionOverlapPlugins(String apikey, boolean bool) throws ClientApiException {
+		Map<String, String> map = null;
+		map = new HashMap<String, String>();
+		if (apikey != null) {
+			map.put("apikey", apikey);
+		}
+		map.put("Boolean", Boolean.toString(bool));
+		return api.callApi("ascan", "action", "setOptionOverlapPlugins", map);
+	}
+
+	public ApiResponse setOptionMaxThreadsPerScan(String apikey, int i) throws ClientApiException {
+		Map<String, String> map = null;
+		map = new HashMap<String, String>();
+		if (apikey != null) {
+			map.put("apikey", apikey);
+		}
+		map.put("Integer", Integer.toString(i));
+		return api.callApi("ascan", "action", "setOptionMaxThreadsPerScan", map);
+	}
+
+	public ApiResponse setOptionMaxRequestsPerSecond(String apikey, int i) throws ClientApiException {
+		Map<String, String> map = null;
+		map = new HashMap<String, String>();
+		if (apikey != null) {
+			map.put("apikey", apikey);
+		}
+		map.put("Integer", Integer.toString(i));
+		return api.callApi("ascan", "action", "setOptionMaxRequestsPerSecond", map);
+	}
+
+	public ApiResponse setOptionMaxRequestsPerSecondPerHost(String apikey, int i) throws ClientApiException {
+		Map<String, String> map = null;
+		map = new HashMap<String, String>();
+		if (apikey != null) {
+			map.put("apikey", apikey);
+		}
+		map.put("Integer", Integer.toString(i));
+		return api.callApi("ascan", "action", "setOptionMaxRequestsPerSecondPerHost", map);
+	}
+
+	public ApiResponse setOptionAdaptiveThreads(String apikey, boolean bool) throws ClientApiException {
+		Map<String, String> map = null;
+		map = new HashMap<String, String>();
+		if (apikey != null) {
+			map.put("apikey", apikey);
+		}
+		map.put("Boolean", Boolean.toString(bool));
+		return api.callApi("ascan", "action", "setOptionAdaptiveThreads", map);
+	}
+
 	public ApiResponse setOptionTargetParamsInjectable(String apikey, int i) throws ClientApiException {
 		Map<String, String> map = null;
 		map = new HashMap<String, String>();
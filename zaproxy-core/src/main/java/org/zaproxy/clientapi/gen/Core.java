@@ -114,6 +114,16 @@ public class Core {
 		return api.callApi("core", "view", "homeDirectory", map);
 	}
 
+	public ApiResponse connectionStats() throws ClientApiException {
+		Map<String, String> map = null;
+		return api.callApi("core", "view", "connectionStats", map);
+	}
+
+	public ApiResponse connectionsEvicted() throws ClientApiException {
+		Map<String, String> map = null;
+		return api.callApi("core", "view", "connectionsEvicted", map);
+	}
+
 	public ApiResponse optionHttpStateEnabled() throws ClientApiException {
 		Map<String, String> map = null;
 		return api.callApi("core", "view", "optionHttpStateEnabled", map);
@@ -189,6 +199,21 @@ public class Core {
 		return api.callApi("core", "view", "optionSingleCookieRequestHeader", map);
 	}
 
+	public ApiResponse optionMaxConnectionsPerHost() throws ClientApiException {
+		Map<String, String> map = null;
+		return api.callApi("core", "view", "optionMaxConnectionsPerHost", map);
+	}
+
+	public ApiResponse optionMaxTotalConnections() throws ClientApiException {
+		Map<String, String> map = null;
+		return api.callApi("core", "view", "optionMaxTotalConnections", map);
+	}
+
+	public ApiResponse optionIdleConnectionTimeoutInSecs() throws ClientApiException {
+		Map<String, String> map = null;
+		return api.callApi("core", "view", "optionIdleConnectionTimeoutInSecs", map);
+	}
+
 	public ApiResponse optionProxyExcludedDomains() throws ClientApiException {
 		Map<String, String> map = null;
 		return api.callApi("core", "view", "optionProxyExcludedDomains", map);
@@ -430,6 +455,36 @@ public class Core {
 		return api.callApi("core", "action", "setOptionSingleCookieRequestHeader", map);
 	}
 
+	public ApiResponse setOptionMaxConnectionsPerHost(String apikey, int i) throws ClientApiException {
+		Map<String, String> map = null;
+		map = new HashMap<String, String>();
+		if (apikey != null) {
+			map.put("apikey", apikey);
+		}
+		map.put("Integer", Integer.toString(i));
+		return api.callApi("core", "action", "setOptionMaxConnectionsPerHost", map);
+	}
+
+	public ApiResponse setOptionMaxTotalConnections(String apikey, int i) throws ClientApiException {
+		Map<String, String> map = null;
+		map = new HashMap<String, String>();
+		if (apikey != null) {
+			map.put("apikey", apikey);
+		}
+		map.put("Integer", Integer.toString(i));
+		return api.callApi("core", "action", "setOptionMaxTotalConnections", map);
+	}
+
+	public ApiResponse setOptionIdleConnectionTimeoutInSecs(String apikey, int i) throws ClientApiException {
+		Map<String, String> map = null;
+		map = new HashMap<String, String>();
+		if (apikey != null) {
+			map.put("apikey", apikey);
+		}
+		map.put("Integer", Integer.toString(i));
+		return api.callApi("core", "action", "setOptionIdleConnectionTimeoutInSecs", map);
+	}
+
 	public byte[] proxypac(String apikey) throws ClientApiException {
 		Map<String, String> map = null;
 		map = new HashMap<String, String>();
@@ -51,6 +51,14 @@ public class Pscan {
 		return api.callApi("pscan", "view", "scanners", map);
 	}
 
+	/**
+	 * The number of messages scanned and the time spent (in milliseconds) by each passive scanner
+	 */
+	public ApiResponse scannerStats() throws ClientApiException {
+		Map<String, String> map = null;
+		return api.callApi("pscan", "view", "scannerStats", map);
+	}
+
 	public ApiResponse setEnabled(String apikey, String enabled) throws ClientApiException {
 		Map<String, String> map = null;
 		map = new HashMap<String, String>();
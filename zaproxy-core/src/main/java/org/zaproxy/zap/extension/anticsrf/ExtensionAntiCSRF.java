@@ -50,6 +50,7 @@ import org.parosproxy.paros.model.HistoryReference;
 import org.parosproxy.paros.model.Model;
 import org.parosproxy.paros.model.Session;
 import org.parosproxy.paros.network.HtmlParameter;
+import org.parosproxy.paros.network.HtmlSourceCache;
 import org.parosproxy.paros.network.HttpMalformedHeaderException;
 import org.parosproxy.paros.network.HttpMessage;
 import org.zaproxy.zap.extension.api.API;
@@ -216,8 +217,7 @@ public class ExtensionAntiCSRF extends ExtensionAdaptor implements SessionChange
 	}
 	
 	public String getTokenValue(HttpMessage tokenMsg, String tokenName) {
-		String response = tokenMsg.getResponseHeader().toString() + tokenMsg.getResponseBody().toString();
-		Source source = new Source(response);
+		Source source = HtmlSourceCache.getResponseSource(tokenMsg);
 		List<Element> formElements = source.getAllElements(HTMLElementName.FORM);
 		
 		if (formElements != null && formElements.size() > 0) {
@@ -311,9 +311,7 @@ public class ExtensionAntiCSRF extends ExtensionAdaptor implements SessionChange
 				HistoryReference hRef = historyReferenceFactory.createHistoryReference(i.intValue());
 				if (filter.matches(hRef)) {
 					HttpMessage msg = hRef.getHttpMessage();
-					String response = msg.getResponseHeader().toString() + 
-						msg.getResponseBody().toString();
-					Source src = new Source(response);
+					Source src = HtmlSourceCache.getResponseSource(msg);
 
 					if (msg.isResponseFromTargetHost()) {
 					    antiCsrfDetectScanner.scanHttpResponseReceive(msg, hRef.getHistoryId(), src);
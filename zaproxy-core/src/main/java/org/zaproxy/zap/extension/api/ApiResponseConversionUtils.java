@@ -25,11 +25,11 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
 
 import org.apache.log4j.Logger;
 import org.parosproxy.paros.network.HttpHeader;
 import org.parosproxy.paros.network.HttpMessage;
+import org.zaproxy.zap.network.HttpContentDecoders;
 
 public class ApiResponseConversionUtils {
 
@@ -49,14 +49,15 @@ public class ApiResponseConversionUtils {
 
         if (HttpHeader.GZIP.equals(msg.getResponseHeader().getHeader(HttpHeader.CONTENT_ENCODING))) {
             // Uncompress gziped content
-            try (ByteArrayInputStream bais = new ByteArrayInputStream(msg.getResponseBody().getBytes());
-                 GZIPInputStream gis = new GZIPInputStream(bais);
-                 InputStreamReader isr = new InputStreamReader(gis);
-                 BufferedReader br = new BufferedReader(isr);) {
+            try {
+                byte[] decoded = HttpContentDecoders.decode(HttpHeader.GZIP, msg.getResponseBody().getBytes());
+                String charset = msg.getResponseBody().getCharset();
                 StringBuilder sb = new StringBuilder();
-                String line = null;
-                while ((line = br.readLine()) != null) {
-                    sb.append(line);
+                try (BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(decoded), charset))) {
+                    String line = null;
+                    while ((line = br.readLine()) != null) {
+                        sb.append(line);
+                    }
                 }
                 map.put("responseBody", sb.toString());
             } catch (IOException e) {
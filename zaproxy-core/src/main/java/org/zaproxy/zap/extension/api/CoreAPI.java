@@ -62,6 +62,8 @@ import org.parosproxy.paros.model.Model;
 import org.parosproxy.paros.model.Session;
 import org.parosproxy.paros.model.SessionListener;
 import org.parosproxy.paros.model.SiteNode;
+import org.parosproxy.paros.network.HtmlSourceCache;
+import org.parosproxy.paros.network.HttpConnectionStats;
 import org.parosproxy.paros.network.HttpHeader;
 import org.parosproxy.paros.network.HttpMalformedHeaderException;
 import org.parosproxy.paros.network.HttpMessage;
@@ -106,6 +108,9 @@ public class CoreAPI extends ApiImplementor implements SessionListener {
 	private static final String VIEW_VERSION = "version";
 	private static final String VIEW_EXCLUDED_FROM_PROXY = "excludedFromProxy";
 	private static final String VIEW_HOME_DIRECTORY = "homeDirectory";
+	private static final String VIEW_CONNECTION_STATS = "connectionStats";
+	private static final String VIEW_CONNECTIONS_EVICTED = "connectionsEvicted";
+	private static final String VIEW_HTML_SOURCE_STATS = "htmlSourceStats";
 
 	private static final String OTHER_PROXY_PAC = "proxy.pac";
 	private static final String OTHER_SET_PROXY = "setproxy";
@@ -161,6 +166,9 @@ public class CoreAPI extends ApiImplementor implements SessionListener {
 		this.addApiView(new ApiView(VIEW_VERSION));
 		this.addApiView(new ApiView(VIEW_EXCLUDED_FROM_PROXY));
 		this.addApiView(new ApiView(VIEW_HOME_DIRECTORY));
+		this.addApiView(new ApiView(VIEW_CONNECTION_STATS));
+		this.addApiView(new ApiView(VIEW_CONNECTIONS_EVICTED));
+		this.addApiView(new ApiView(VIEW_HTML_SOURCE_STATS));
 		
 		this.addApiOthers(new ApiOther(OTHER_PROXY_PAC, false));
 		this.addApiOthers(new ApiOther(OTHER_ROOT_CERT, false));
@@ -615,6 +623,24 @@ public class CoreAPI extends ApiImplementor implements SessionListener {
 			}
 		} else if (VIEW_HOME_DIRECTORY.equals(name)) {
 			result = new ApiResponseElement(name, Model.getSingleton().getOptionsParam().getUserDirectory().getAbsolutePath());
+		} else if (VIEW_CONNECTION_STATS.equals(name)) {
+			ApiResponseList statsList = new ApiResponseList(name);
+			for (HttpConnectionStats stats : HttpSender.getConnectionStats()) {
+				Map<String, String> map = new HashMap<>();
+				map.put("initiator", String.valueOf(stats.getInitiator()));
+				map.put("connectionsOpened", String.valueOf(stats.getConnectionsOpened()));
+				map.put("connectionsReused", String.valueOf(stats.getConnectionsReused()));
+				map.put("waitTime", String.valueOf(stats.getWaitTime()));
+				statsList.addItem(new ApiResponseSet("connectionStats", map));
+			}
+			result = statsList;
+		} else if (VIEW_CONNECTIONS_EVICTED.equals(name)) {
+			result = new ApiResponseElement(name, String.valueOf(HttpSender.getConnectionsEvicted()));
+		} else if (VIEW_HTML_SOURCE_STATS.equals(name)) {
+			Map<String, String> map = new HashMap<>();
+			map.put("parseCount", String.valueOf(HtmlSourceCache.getParseCount()));
+			map.put("reuseCount", String.valueOf(HtmlSourceCache.getReuseCount()));
+			result = new ApiResponseSet(name, map);
 		} else {
 			throw new ApiException(ApiException.Type.BAD_VIEW);
 		}
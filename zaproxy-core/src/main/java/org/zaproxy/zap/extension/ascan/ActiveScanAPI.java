@@ -97,6 +97,7 @@ public class ActiveScanAPI extends ApiImplementor {
 	private static final String VIEW_EXCLUDED_FROM_SCAN = "excludedFromScan";
 	private static final String VIEW_SCANNERS = "scanners";
 	private static final String VIEW_POLICIES = "policies";
+	private static final String VIEW_MESSAGE_CACHE_STATS = "messageCacheStats";
 
 	private static final String PARAM_URL = "url";
 	private static final String PARAM_REGEX = "regex";
@@ -198,6 +199,7 @@ public class ActiveScanAPI extends ApiImplementor {
 		this.addApiView(new ApiView(VIEW_EXCLUDED_FROM_SCAN));
 		this.addApiView(new ApiView(VIEW_SCANNERS, null, new String[] {PARAM_POLICY_ID}));
 		this.addApiView(new ApiView(VIEW_POLICIES));
+		this.addApiView(new ApiView(VIEW_MESSAGE_CACHE_STATS, null, new String[] { PARAM_SCAN_ID }));
 
 	}
 	
@@ -605,6 +607,20 @@ public class ActiveScanAPI extends ApiImplementor {
 				resultList.addItem(new ApiResponseSet("policy", map));
 			}
 
+			result = resultList;
+			break;
+		case VIEW_MESSAGE_CACHE_STATS:
+			resultList = new ApiResponseList(name);
+			activeScan = getActiveScan(params);
+			if (activeScan != null) {
+				for (HostProcess hostProcess : activeScan.getHostProcesses()) {
+					Map<String, String> map = new HashMap<>();
+					map.put("host", hostProcess.getHostAndPort());
+					map.put("hits", Long.toString(hostProcess.getMessageCacheHits()));
+					map.put("misses", Long.toString(hostProcess.getMessageCacheMisses()));
+					resultList.addItem(new ApiResponseSet("hostProcess", map));
+				}
+			}
 			result = resultList;
 			break;
 		default:
@@ -984,6 +1000,15 @@ public class ActiveScanAPI extends ApiImplementor {
 			return alerts;
 		}
 
+		/**
+		 * Returns the host processes of the scan.
+		 *
+		 * @return the host processes of the scan
+		 */
+		public List<HostProcess> getHostProcesses() {
+			return activeScan.getHostProcesses();
+		}
+
 		@Override
 		public void alertFound(Alert alert) {
 			extensionAlert.alertFound(alert, alert.getHistoryRef());
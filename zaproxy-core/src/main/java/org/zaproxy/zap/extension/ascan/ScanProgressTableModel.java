@@ -43,6 +43,7 @@ public class ScanProgressTableModel extends AbstractTableModel {
     private ScanProgressActionIcon focusedAction;
     private String totRequests;
     private String totTime;
+    private String messageCacheStats;
     private boolean completed;
 
     /**
@@ -74,8 +75,8 @@ public class ScanProgressTableModel extends AbstractTableModel {
             return 0;
         }
         
-        // Add other 3 rows for the final table values...
-        return values.size() + 3;
+        // Add other 4 rows for the final table values...
+        return values.size() + 4;
     }
 
     /**
@@ -150,8 +151,8 @@ public class ScanProgressTableModel extends AbstractTableModel {
                     return null;
             }
             
-        } else {
-            // Probably we're at the last line so we print out the total requests
+        } else if (row == (values.size() + 2)) {
+            // The third line after values should contains the total requests
             switch (col) {
                 case 0:
                     return Constant.messages.getString("ascan.progress.label.requests");                    
@@ -162,6 +163,19 @@ public class ScanProgressTableModel extends AbstractTableModel {
                 default:
                     return null;
             }
+            
+        } else {
+            // Probably we're at the last line so we print out the message cache hits/misses
+            switch (col) {
+                case 0:
+                    return Constant.messages.getString("ascan.progress.label.messageCache");
+                
+                case 1:
+                    return messageCacheStats;
+                
+                default:
+                    return null;
+            }
         }
     }
 
@@ -247,8 +261,14 @@ public class ScanProgressTableModel extends AbstractTableModel {
         // Set completed to true
         completed = true;
         
+        long messageCacheHits = 0;
+        long messageCacheMisses = 0;
+
         // Iterate all Host Processes
         for (HostProcess hp : scan.getHostProcesses()) {
+            messageCacheHits += hp.getMessageCacheHits();
+            messageCacheMisses += hp.getMessageCacheMisses();
+
             // Iterate all Plugins
             for (Plugin plugin : hp.getCompleted()) {
                 values.add(new ScanProgressItem(hp, plugin, ScanProgressItem.STATUS_COMPLETED));
@@ -270,6 +290,7 @@ public class ScanProgressTableModel extends AbstractTableModel {
         long elapsed = end.getTime() - scan.getTimeStarted().getTime();
         totTime = getElapsedTimeLabel(elapsed);
         totRequests = Integer.toString(scan.getTotalRequests());
+        messageCacheStats = messageCacheHits + " / " + messageCacheMisses;
                 
         this.fireTableDataChanged();        
     }
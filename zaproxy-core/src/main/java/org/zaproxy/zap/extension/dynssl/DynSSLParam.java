@@ -31,8 +31,21 @@ public class DynSSLParam extends AbstractParam {
 
 	/*default*/ static final String PARAM_ROOT_CA = "dynssl.param.rootca";
 
+	private static final String PARAM_PERSIST_CERTS = "dynssl.param.persistCerts";
+
+	private static final String PARAM_PERSISTED_CERTS_VALIDITY_IN_DAYS = "dynssl.param.persistedCertsValidityInDays";
+
+	/**
+	 * The default number of days that the persisted certificates are used.
+	 */
+	public static final int DEFAULT_PERSISTED_CERTS_VALIDITY_IN_DAYS = 30;
+
 	private KeyStore rootca = null;
 
+	private boolean persistCerts;
+
+	private int persistedCertsValidityInDays = DEFAULT_PERSISTED_CERTS_VALIDITY_IN_DAYS;
+
 	private final Logger logger = Logger.getLogger(DynSSLParam.class);
 
 	@Override
@@ -45,6 +58,23 @@ public class DynSSLParam extends AbstractParam {
 		} catch (final Exception e) {
 			logger.warn("Couldn't load Root CA parameter.", e);
 		}
+
+		try {
+			persistCerts = getConfig().getBoolean(PARAM_PERSIST_CERTS, false);
+		} catch (final Exception e) {
+			logger.error(e.getMessage(), e);
+		}
+
+		try {
+			persistedCertsValidityInDays = getConfig().getInt(
+					PARAM_PERSISTED_CERTS_VALIDITY_IN_DAYS,
+					DEFAULT_PERSISTED_CERTS_VALIDITY_IN_DAYS);
+			if (persistedCertsValidityInDays <= 0) {
+				persistedCertsValidityInDays = DEFAULT_PERSISTED_CERTS_VALIDITY_IN_DAYS;
+			}
+		} catch (final Exception e) {
+			logger.error(e.getMessage(), e);
+		}
 	}
 
 	/**
@@ -76,5 +106,47 @@ public class DynSSLParam extends AbstractParam {
 		}
 	}
 
-}
+	/**
+	 * Tells whether or not the certificates created for the hosts are persisted, to be reused across restarts.
+	 *
+	 * @return {@code true} if the certificates are persisted, {@code false} otherwise
+	 * @see #getPersistedCertsValidityInDays()
+	 */
+	public boolean isPersistCerts() {
+		return persistCerts;
+	}
 
+	/**
+	 * Sets whether or not the certificates created for the hosts are persisted, to be reused across restarts.
+	 *
+	 * @param persistCerts {@code true} if the certificates should be persisted, {@code false} otherwise
+	 */
+	public void setPersistCerts(boolean persistCerts) {
+		this.persistCerts = persistCerts;
+		getConfig().setProperty(PARAM_PERSIST_CERTS, Boolean.valueOf(persistCerts));
+	}
+
+	/**
+	 * Gets the number of days that the persisted certificates are used, after being created.
+	 *
+	 * @return the number of days, always positive
+	 */
+	public int getPersistedCertsValidityInDays() {
+		return persistedCertsValidityInDays;
+	}
+
+	/**
+	 * Sets the number of days that the persisted certificates are used, after being created.
+	 *
+	 * @param persistedCertsValidityInDays the number of days, must be positive
+	 * @throws IllegalArgumentException if the number of days is not positive
+	 */
+	public void setPersistedCertsValidityInDays(int persistedCertsValidityInDays) {
+		if (persistedCertsValidityInDays <= 0) {
+			throw new IllegalArgumentException("Parameter persistedCertsValidityInDays must be positive.");
+		}
+		this.persistedCertsValidityInDays = persistedCertsValidityInDays;
+		getConfig().setProperty(PARAM_PERSISTED_CERTS_VALIDITY_IN_DAYS, Integer.valueOf(persistedCertsValidityInDays));
+	}
+
+}
@@ -19,6 +19,7 @@
  */
 package org.zaproxy.zap.extension.dynssl;
 
+import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.KeyStore;
@@ -31,8 +32,9 @@ import org.apache.log4j.Logger;
 import org.parosproxy.paros.Constant;
 import org.parosproxy.paros.extension.ExtensionAdaptor;
 import org.parosproxy.paros.extension.ExtensionHook;
+import org.parosproxy.paros.security.CachedSslCertifificateServiceImpl;
+import org.parosproxy.paros.security.FileSslCertificateCache;
 import org.parosproxy.paros.security.SslCertificateService;
-import org.parosproxy.paros.security.SslCertificateServiceImpl;
 
 /**
  * Extension enables configuration for Root CA certificate
@@ -42,6 +44,13 @@ import org.parosproxy.paros.security.SslCertificateServiceImpl;
 public class ExtensionDynSSL extends ExtensionAdaptor {
 
 	public static final String EXTENSION_ID = "ExtensionDynSSL";
+
+	/**
+	 * The name of the directory, in the ZAP home directory, where the certificates of the hosts are persisted.
+	 * 
+	 * @see DynSSLParam#isPersistCerts()
+	 */
+	private static final String CERTS_CACHE_DIR = "dynssl";
 	
 	private DynSSLParam params;
 	private DynamicSSLPanel optionsPanel;
@@ -65,7 +74,12 @@ public class ExtensionDynSSL extends ExtensionAdaptor {
 
 	@Override
 	public void start() {
-	    final SslCertificateService service = SslCertificateServiceImpl.getService();
+	    if (getParams().isPersistCerts()) {
+	        CachedSslCertifificateServiceImpl.setPersistentCache(new FileSslCertificateCache(
+	                new File(Constant.getZapHome(), CERTS_CACHE_DIR),
+	                getParams().getPersistedCertsValidityInDays()));
+	    }
+	    final SslCertificateService service = CachedSslCertifificateServiceImpl.getService();
 	    try {
 			final KeyStore rootca = getParams().getRootca();
 			service.initializeRootCA(rootca);
@@ -115,7 +129,7 @@ public class ExtensionDynSSL extends ExtensionAdaptor {
 	}
 
 	public void setRootCa(KeyStore rootca) throws UnrecoverableKeyException, KeyStoreException, NoSuchAlgorithmException {
-		SslCertificateServiceImpl.getService().initializeRootCA(rootca);
+		CachedSslCertifificateServiceImpl.getService().initializeRootCA(rootca);
 	}
 	
 	public Certificate getRootCA() throws KeyStoreException {
@@ -21,11 +21,11 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.zip.GZIPInputStream;
 
 import org.parosproxy.paros.network.HttpHeader;
 import org.zaproxy.zap.extension.httppanel.view.impl.models.http.AbstractHttpStringHttpPanelViewModel;
 import org.zaproxy.zap.extension.httppanel.view.impl.models.http.HttpPanelViewModelUtils;
+import org.zaproxy.zap.network.HttpContentDecoders;
 
 public class ResponseBodyStringHttpPanelViewModel extends AbstractHttpStringHttpPanelViewModel {
 
@@ -38,19 +38,15 @@ public class ResponseBodyStringHttpPanelViewModel extends AbstractHttpStringHttp
 		if (HttpHeader.GZIP.equals(httpMessage.getResponseHeader().getHeader(HttpHeader.CONTENT_ENCODING))) {
 			// Uncompress gziped content
 			try {
-				ByteArrayInputStream bais = new ByteArrayInputStream(httpMessage.getResponseBody().getBytes());
-				GZIPInputStream gis = new GZIPInputStream(bais);
-				InputStreamReader isr = new InputStreamReader(gis);
-				BufferedReader br = new BufferedReader(isr);
+				byte[] decoded = HttpContentDecoders.decode(HttpHeader.GZIP, httpMessage.getResponseBody().getBytes());
+				String charset = httpMessage.getResponseBody().getCharset();
 				StringBuilder sb = new StringBuilder();
-				String line = null;
-				while ((line = br.readLine()) != null) {
-					sb.append(line);
+				try (BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(decoded), charset))) {
+					String line = null;
+					while ((line = br.readLine()) != null) {
+						sb.append(line);
+					}
 				}
-				br.close();
-				isr.close();
-				gis.close();
-				bais.close();
 				return sb.toString();
 			} catch (IOException e) {
 				//this.log.error(e.getMessage(), e);
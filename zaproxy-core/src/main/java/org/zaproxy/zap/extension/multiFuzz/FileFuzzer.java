@@ -26,16 +26,25 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import org.apache.log4j.Logger;
 
-public class FileFuzzer<P extends Payload> {
+/**
+ * The payloads of a fuzzer file, or of a list of payloads.
+ * <p>
+ * The payloads of a file are read as they are iterated, to not keep them in memory, unless the list is requested.
+ * </p>
+ *
+ * @param <P> the type of the payloads
+ */
+public class FileFuzzer<P extends Payload> implements PayloadSource<P> {
 	public static final String TYPE_SIG_BEG = "#<type=\"";
 	public static final String TYPE_SIG_END = "\">";
 	public static final String COMMENT = "#";
 	private String name = null;
 	private File file = null;
-	private ArrayList<P> payloads = new ArrayList<>();
+	private ArrayList<P> payloads;
 	private PayloadFactory<P> factory;
 	private int length;
 	private static Logger log = Logger.getLogger(FileFuzzer.class);
@@ -44,6 +53,7 @@ public class FileFuzzer<P extends Payload> {
 		this.file = null;
 		this.name = s;
 		this.factory = f;
+		this.payloads = new ArrayList<>();
 	}
 
 	public FileFuzzer(File file, PayloadFactory<P> f) {
@@ -61,7 +71,7 @@ public class FileFuzzer<P extends Payload> {
 					file)));
 			String line;
 			while ((line = in.readLine()) != null) {
-				if (!line.startsWith(COMMENT)) {
+				if (isPayload(line)) {
 					this.length++;
 				}
 			}
@@ -79,38 +89,44 @@ public class FileFuzzer<P extends Payload> {
 		}
 	}
 
+	private static boolean isPayload(String line) {
+		return line.trim().length() > 0 && !line.startsWith(COMMENT);
+	}
+
+	private static Payload.Type getType(String typeSignature) {
+		switch (typeSignature) {
+		case "FILE":
+			return Payload.Type.FILE;
+		case "REGEX":
+			return Payload.Type.REGEX;
+		case "SCRIPT":
+			return Payload.Type.SCRIPT;
+		default:
+			return Payload.Type.STRING;
+		}
+	}
+
 	private void read() {
+		payloads = new ArrayList<>();
 		BufferedReader in = null;
 		try {
 			in = new BufferedReader(new InputStreamReader(new FileInputStream(
 					file)));
 
 			String line = in.readLine();
+			if (line == null) {
+				return;
+			}
 			if (line.startsWith(TYPE_SIG_BEG) && line.endsWith(TYPE_SIG_END)) {
-				String type = line.substring(8, (line.length() - 2));
+				Payload.Type t = getType(line.substring(8, (line.length() - 2)));
 				do {
-					if (line.trim().length() > 0 && !line.startsWith(COMMENT)) {
-						Payload.Type t;
-						switch (type) {
-						case "FILE":
-							t = Payload.Type.FILE;
-							break;
-						case "REGEX":
-							t = Payload.Type.REGEX;
-							break;
-						case "SCRIPT":
-							t = Payload.Type.SCRIPT;
-							break;
-						default:
-							t = Payload.Type.STRING;
-							break;
-						}
+					if (isPayload(line)) {
 						payloads.add(factory.createPayload(t, line));
 					}
 				} while ((line = in.readLine()) != null);
 			} else {
 				do {
-					if (line.trim().length() > 0 && !line.startsWith(COMMENT)) {
+					if (isPayload(line)) {
 						payloads.add(factory.createPayload(line));
 					}
 				} while ((line = in.readLine()) != null);
@@ -137,10 +153,29 @@ public class FileFuzzer<P extends Payload> {
 	}
 
 	public Iterator<P> getIterator() {
-		if (payloads == null) {
-			read();
+		return iterator();
+	}
+
+	/**
+	 * Returns an iterator of the payloads, which reads the payloads from the file as they are iterated, if a file fuzzer
+	 * and the list of payloads was not requested.
+	 *
+	 * @see #getList()
+	 */
+	@Override
+	public Iterator<P> iterator() {
+		if (payloads != null) {
+			return payloads.iterator();
 		}
-		return payloads.iterator();
+		return new FilePayloadIterator();
+	}
+
+	@Override
+	public int size() {
+		if (payloads != null) {
+			return payloads.size();
+		}
+		return length;
 	}
 
 	public boolean hasNext() {
@@ -150,4 +185,76 @@ public class FileFuzzer<P extends Payload> {
 	public String getFileName() {
 		return this.name;
 	}
+
+	/**
+	 * An iterator that reads the payloads from the file, closing it once all read.
+	 */
+	private class FilePayloadIterator implements Iterator<P> {
+
+		private BufferedReader in;
+		private Payload.Type type;
+		private P next;
+
+		FilePayloadIterator() {
+			try {
+				in = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+				String line = in.readLine();
+				if (line != null && line.startsWith(TYPE_SIG_BEG) && line.endsWith(TYPE_SIG_END)) {
+					type = getType(line.substring(8, (line.length() - 2)));
+				}
+				next = createPayload(line);
+			} catch (IOException e) {
+				log.error(e.getMessage(), e);
+				close();
+			}
+		}
+
+		private P createPayload(String line) throws IOException {
+			while (line != null) {
+				if (isPayload(line)) {
+					return (type != null) ? factory.createPayload(type, line) : factory.createPayload(line);
+				}
+				line = in.readLine();
+			}
+			close();
+			return null;
+		}
+
+		private void close() {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					log.error(e.getMessage(), e);
+				}
+				in = null;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public P next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			P current = next;
+			try {
+				next = (in != null) ? createPayload(in.readLine()) : null;
+			} catch (IOException e) {
+				log.error(e.getMessage(), e);
+				next = null;
+				close();
+			}
+			return current;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
 }
@@ -20,10 +20,16 @@
 package org.zaproxy.zap.extension.multiFuzz;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
 import org.zaproxy.zap.extension.httppanel.Message;
 
 public class FuzzGap<M extends Message, L extends FuzzLocation<M>, P extends Payload> {
 	private ArrayList<P> payloads;
+	private ArrayList<SourceEntry<P>> payloadSources;
 	private L fuzzLoc;
 	private M msg;
 
@@ -31,6 +37,7 @@ public class FuzzGap<M extends Message, L extends FuzzLocation<M>, P extends Pay
 		fuzzLoc = loc;
 		this.msg = msg;
 		payloads = new ArrayList<>();
+		payloadSources = new ArrayList<>();
 	}
 
 	public String orig() {
@@ -63,4 +70,101 @@ public class FuzzGap<M extends Message, L extends FuzzLocation<M>, P extends Pay
 		return this.payloads;
 	}
 
+	/**
+	 * Adds a source of payloads, whose payloads are iterated, after the payloads of the gap, when fuzzing.
+	 *
+	 * @param source the source of payloads
+	 * @param length the length set to the payloads of the source, or -1 to keep their length
+	 * @see #payloadIterator()
+	 */
+	public void addPayloadSource(PayloadSource<P> source, int length) {
+		if (source != null) {
+			payloadSources.add(new SourceEntry<>(source, length));
+		}
+	}
+
+	/**
+	 * Gets the sources of payloads of the gap.
+	 *
+	 * @return an unmodifiable list with the sources of payloads
+	 */
+	public List<PayloadSource<P>> getPayloadSources() {
+		List<PayloadSource<P>> sources = new ArrayList<>(payloadSources.size());
+		for (SourceEntry<P> entry : payloadSources) {
+			sources.add(entry.source);
+		}
+		return Collections.unmodifiableList(sources);
+	}
+
+	/**
+	 * Gets the number of payloads of the gap, including the ones of the sources.
+	 *
+	 * @return the number of payloads
+	 */
+	public long getPayloadCount() {
+		long count = payloads.size();
+		for (SourceEntry<P> entry : payloadSources) {
+			count += entry.source.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Returns a new iterator of all the payloads of the gap, the payloads added to the gap followed by the ones of the
+	 * sources, which are obtained lazily.
+	 *
+	 * @return the iterator of the payloads
+	 */
+	public Iterator<P> payloadIterator() {
+		return new PayloadIterator();
+	}
+
+	private static class SourceEntry<P extends Payload> {
+
+		private final PayloadSource<P> source;
+		private final int length;
+
+		SourceEntry(PayloadSource<P> source, int length) {
+			this.source = source;
+			this.length = length;
+		}
+	}
+
+	private class PayloadIterator implements Iterator<P> {
+
+		private Iterator<P> current = payloads.iterator();
+		private int length = -1;
+		private int nextSource;
+
+		@Override
+		public boolean hasNext() {
+			while (!current.hasNext()) {
+				if (nextSource >= payloadSources.size()) {
+					return false;
+				}
+				SourceEntry<P> entry = payloadSources.get(nextSource++);
+				current = entry.source.iterator();
+				length = entry.length;
+			}
+			return true;
+		}
+
+		@Override
+		public P next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			P payload = current.next();
+			if (length != -1) {
+				payload.setLength(length);
+			}
+			return payload;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
 }
\ No newline at end of file
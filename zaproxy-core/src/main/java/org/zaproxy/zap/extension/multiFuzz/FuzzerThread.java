@@ -20,10 +20,13 @@
 package org.zaproxy.zap.extension.multiFuzz;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import javax.script.ScriptException;
@@ -40,6 +43,11 @@ public class FuzzerThread<PL extends Payload, M extends Message, L extends FuzzL
 
 	private static final Logger log = Logger.getLogger(FuzzerThread.class);
 
+	/**
+	 * The number of fuzz processes queued per thread, the generation of the combinations waits while the queue is full.
+	 */
+	private static final int QUEUED_PROCESSES_PER_THREAD = 2;
+
 	private List<FuzzerListener<Integer, R>> listenerList = new ArrayList<>();
 	private FuzzerListener<Integer, Boolean> handlerListener;
 	private ArrayList<G> gaps;
@@ -72,6 +80,8 @@ public class FuzzerThread<PL extends Payload, M extends Message, L extends FuzzL
 	}
 
 	public void stop() {
+		// Stop first, to not generate more combinations once the queue is released
+		isStop = true;
 		threadPool.shutdownNow();
 		try {
 			threadPool.awaitTermination(5, TimeUnit.SECONDS);
@@ -114,13 +124,14 @@ public class FuzzerThread<PL extends Payload, M extends Message, L extends FuzzL
 		log.info("fuzzer started");
 		this.fuzz(gaps);
 
-		while (threadPool.getCompletedTaskCount() < comb_count && !isStop) {
-			try {
-				Thread.sleep(100);
-			} catch (InterruptedException e) {
-				if (log.isDebugEnabled()) {
-					log.debug(e.getMessage());
-				}
+		threadPool.shutdown();
+		try {
+			while (!isStop && !threadPool.awaitTermination(1, TimeUnit.SECONDS)) {
+				// Wait for the queued processes to complete
+			}
+		} catch (InterruptedException e) {
+			if (log.isDebugEnabled()) {
+				log.debug(e.getMessage());
 			}
 		}
 
@@ -129,42 +140,88 @@ public class FuzzerThread<PL extends Payload, M extends Message, L extends FuzzL
 		isStop = true;
 	}
 
+	/**
+	 * Fuzzes all the combinations of the payloads of the given gaps.
+	 * <p>
+	 * The combinations are generated as needed, iterating the payloads of the gaps like an odometer (the last gap changes
+	 * the fastest), and the fuzz processes are queued in a bounded queue, so that the memory used does not depend on the
+	 * number of payloads or combinations.
+	 * </p>
+	 *
+	 * @param gaps the gaps to fuzz
+	 */
 	private void fuzz(ArrayList<G> gaps) {
-		int total = 1;
-		int[] lens = new int[gaps.size()];
-		int[] mod = new int[gaps.size()];
+		long total = gaps.isEmpty() ? 0 : 1;
 		for (G gap : gaps) {
-			total *= gap.getPayloads().size();
-		}
-
-		for (int i = 0; i < mod.length; i++) {
-			mod[i] = 1;
-			lens[i] = gaps.get(i).getPayloads().size();
-		}
-		for (int i = lens.length - 1; i >= 0; i--) {
-			for (int j = 0; j < i; j++) {
-				mod[j] *= lens[i];
+			total *= gap.getPayloadCount();
+			if (total > Integer.MAX_VALUE) {
+				log.warn("Too many fuzz combinations, only the first " + Integer.MAX_VALUE + " are fuzzed.");
+				total = Integer.MAX_VALUE;
 			}
 		}
-		comb_count = total;
-		int core = (total < threadCount) ? total : threadCount;
+
+		comb_count = (int) total;
+		int core = (comb_count < threadCount) ? comb_count : threadCount;
 		this.threadPool = new ThreadPoolExe(core, threadCount, 100,
-				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(threadCount * QUEUED_PROCESSES_PER_THREAD),
+				new RejectedExecutionHandler() {
+
+					@Override
+					public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+						if (executor.isShutdown()) {
+							return;
+						}
+						try {
+							// Wait for space in the queue
+							executor.getQueue().put(r);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
 		for (FuzzerListener<Integer, R> listener : listenerList) {
-			listener.notifyFuzzerStarted(total);
+			listener.notifyFuzzerStarted(comb_count);
 		}
-		log.info(total + " Fuzz Combinations");
-		for (int nr = 0; nr < total; nr++) {
-			HashMap<L, PL> subs = new HashMap<>();
-			for (int g = 0; g < gaps.size(); g++) {
-				L fl = gaps.get(g).getLocation();
-				PL sub = gaps.get(g).getPayloads().get((nr / mod[g]) % lens[g]);
-				subs.put(fl, sub);
+		log.info(comb_count + " Fuzz Combinations");
+		if (comb_count == 0) {
+			return;
+		}
+
+		List<Iterator<PL>> iterators = new ArrayList<>(gaps.size());
+		HashMap<L, PL> current = new HashMap<>();
+		for (G gap : gaps) {
+			Iterator<PL> it = gap.payloadIterator();
+			if (!it.hasNext()) {
+				return;
 			}
-			fuzz(subs, nr);
+			iterators.add(it);
+			current.put(gap.getLocation(), it.next());
+		}
+
+		for (int nr = 0; nr < comb_count; nr++) {
+			fuzz(new HashMap<L, PL>(current), nr);
 			if (isStop()) {
 				break;
 			}
+
+			// Advance to the next combination
+			for (int g = gaps.size() - 1; g >= 0; g--) {
+				G gap = gaps.get(g);
+				Iterator<PL> it = iterators.get(g);
+				if (it.hasNext()) {
+					current.put(gap.getLocation(), it.next());
+					break;
+				}
+				if (g == 0) {
+					return;
+				}
+				it = gap.payloadIterator();
+				if (!it.hasNext()) {
+					return;
+				}
+				iterators.set(g, it);
+				current.put(gap.getLocation(), it.next());
+			}
 		}
 	}
 
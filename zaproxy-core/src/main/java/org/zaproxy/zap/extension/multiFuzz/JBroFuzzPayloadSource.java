@@ -0,0 +1,74 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.multiFuzz;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.owasp.jbrofuzz.core.Fuzzer;
+
+/**
+ * A {@code PayloadSource} whose payloads are generated by a JBroFuzz {@code Fuzzer}.
+ * <p>
+ * The iterations share the {@code Fuzzer}, only one iteration must be in progress at a time.
+ * </p>
+ *
+ * @param <P> the type of the payloads
+ */
+public class JBroFuzzPayloadSource<P extends Payload> implements PayloadSource<P> {
+
+	private final Fuzzer fuzzer;
+	private final PayloadFactory<P> factory;
+
+	public JBroFuzzPayloadSource(Fuzzer fuzzer, PayloadFactory<P> factory) {
+		this.fuzzer = fuzzer;
+		this.factory = factory;
+	}
+
+	@Override
+	public int size() {
+		return (int) Math.min(fuzzer.getMaximumValue(), Integer.MAX_VALUE);
+	}
+
+	@Override
+	public Iterator<P> iterator() {
+		fuzzer.resetCurrentValue();
+		return new Iterator<P>() {
+
+			@Override
+			public boolean hasNext() {
+				return fuzzer.hasNext();
+			}
+
+			@Override
+			public P next() {
+				if (!fuzzer.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return factory.createPayload(fuzzer.next());
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.multiFuzz;
+
+/**
+ * A source of payloads that are iterated lazily, instead of being kept in memory.
+ * <p>
+ * Each call to {@link #iterator()} starts a new iteration, which must return the same payloads, in the same order, as
+ * they are iterated once per combination of the payloads of the other gaps.
+ * </p>
+ *
+ * @param <P> the type of the payloads
+ * @see FuzzGap#addPayloadSource(PayloadSource, int)
+ */
+public interface PayloadSource<P extends Payload> extends Iterable<P> {
+
+	/**
+	 * Gets the number of payloads of the source.
+	 *
+	 * @return the number of payloads
+	 */
+	int size();
+}
@@ -0,0 +1,93 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.multiFuzz;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A {@code PayloadSource} whose payloads are the strings generated from a regular expression, by the
+ * {@link RegExStringGenerator}.
+ * <p>
+ * The strings are generated when first needed (that is, when the fuzzer starts, not when the payload is added) and kept,
+ * as they are bounded by the limit of the regular expression payload.
+ * </p>
+ *
+ * @param <P> the type of the payloads
+ */
+public class RegexPayloadSource<P extends Payload> implements PayloadSource<P> {
+
+	private final String regex;
+	private final int depth;
+	private final int limit;
+	private final PayloadFactory<P> factory;
+
+	private List<String> strings;
+
+	/**
+	 * Constructs a {@code RegexPayloadSource}.
+	 *
+	 * @param regex the regular expression
+	 * @param depth the maximum length of the strings generated
+	 * @param limit the maximum number of strings generated
+	 * @param factory the factory used to create the payloads
+	 * @see RegExStringGenerator#regexExpansion(String, int, int)
+	 */
+	public RegexPayloadSource(String regex, int depth, int limit, PayloadFactory<P> factory) {
+		this.regex = regex;
+		this.depth = depth;
+		this.limit = limit;
+		this.factory = factory;
+	}
+
+	private synchronized List<String> getStrings() {
+		if (strings == null) {
+			strings = new RegExStringGenerator().regexExpansion(regex, depth, limit);
+		}
+		return strings;
+	}
+
+	@Override
+	public int size() {
+		return getStrings().size();
+	}
+
+	@Override
+	public Iterator<P> iterator() {
+		final Iterator<String> it = getStrings().iterator();
+		return new Iterator<P>() {
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public P next() {
+				return factory.createPayload(it.next());
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
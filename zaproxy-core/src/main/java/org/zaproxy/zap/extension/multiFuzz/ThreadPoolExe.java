@@ -20,6 +20,7 @@
 package org.zaproxy.zap.extension.multiFuzz;
 
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
@@ -38,6 +39,13 @@ public class ThreadPoolExe extends ThreadPoolExecutor {
 				 workQueue);
 	}
 
+	public ThreadPoolExe(int corePoolsize, int maximumPoolSize,
+			long keepAliveTime, TimeUnit unit,
+			BlockingQueue<Runnable> workQueue, RejectedExecutionHandler handler) {
+		super(corePoolsize, maximumPoolSize, keepAliveTime, unit,
+				 workQueue, handler);
+	}
+
 	@Override
 	protected void beforeExecute(Thread t, Runnable r) {
 		super.beforeExecute(t, r);
@@ -41,11 +41,13 @@ import org.zaproxy.zap.extension.multiFuzz.FileFuzzer;
 import org.zaproxy.zap.extension.multiFuzz.FuzzDialog;
 import org.zaproxy.zap.extension.multiFuzz.FuzzProcessFactory;
 import org.zaproxy.zap.extension.multiFuzz.FuzzerListener;
+import org.zaproxy.zap.extension.multiFuzz.JBroFuzzPayloadSource;
 import org.zaproxy.zap.extension.multiFuzz.Payload;
 import org.zaproxy.zap.extension.multiFuzz.PayloadDialog;
 import org.zaproxy.zap.extension.multiFuzz.PayloadFactory;
 import org.zaproxy.zap.extension.multiFuzz.PayloadScript;
-import org.zaproxy.zap.extension.multiFuzz.RegExStringGenerator;
+import org.zaproxy.zap.extension.multiFuzz.PayloadSource;
+import org.zaproxy.zap.extension.multiFuzz.RegexPayloadSource;
 import org.zaproxy.zap.extension.multiFuzz.SubComponent;
 import org.zaproxy.zap.extension.multiFuzz.Util;
 import org.zaproxy.zap.extension.script.ExtensionScript;
@@ -110,6 +112,14 @@ public class HttpFuzzDialog extends
 		return urlEncode;
 	}
 
+	private static ArrayList<HttpPayload> toList(PayloadSource<HttpPayload> source) {
+		ArrayList<HttpPayload> payloads = new ArrayList<>(source.size());
+		for (HttpPayload payload : source) {
+			payloads.add(payload);
+		}
+		return payloads;
+	}
+
 	private ArrayList<HttpPayload> getRecursive(ArrayList<HttpPayload> p, int l) {
 		ArrayList<HttpPayload> payloads = new ArrayList<>();
 		Stack<HttpPayload> base = new Stack<>();
@@ -288,22 +298,22 @@ public class HttpFuzzDialog extends
 					}
 				}
 				for (HttpPayload p : files) {
-					FileFuzzer<HttpPayload> fileFuzzer;
+					PayloadSource<HttpPayload> source;
 					String cat = p.getData().split(" --> ")[0];
 					String choice = p.getData().split(" --> ")[1];
 					try {
+						// The payloads are read/generated as needed while fuzzing
 						if (isCustomCategory(cat)) {
-							fileFuzzer = new FileFuzzer<>(new File(
+							source = new FileFuzzer<>(new File(
 									Constant.getInstance().FUZZER_CUSTOM_DIR
 											+ File.separator + choice),
 									getPayloadFactory());
 						} else if (isJBroFuzzCategory(cat)) {
-
-							fileFuzzer = convertToFileFuzzer(res
-									.getJBroFuzzer(choice));
-
+							source = new JBroFuzzPayloadSource<>(
+									res.getJBroFuzzer(choice),
+									getPayloadFactory());
 						} else {
-							fileFuzzer = new FileFuzzer<>(
+							source = new FileFuzzer<>(
 									res.getFuzzFile(cat, choice),
 									getPayloadFactory());
 						}
@@ -313,12 +323,9 @@ public class HttpFuzzDialog extends
 							if (p.getLength() != -1) {
 								l = p.getLength();
 							}
-							g.addPayloads(getRecursive(fileFuzzer.getList(), l));
+							g.addPayloads(getRecursive(toList(source), l));
 						} else {
-							for (HttpPayload pn : fileFuzzer.getList()) {
-								pn.setLength(p.getLength());
-								g.addPayload(pn);
-							}
+							g.addPayloadSource(source, p.getLength());
 						}
 						g.removePayload(p);
 					} catch (NoSuchFuzzerException e1) {
@@ -326,11 +333,9 @@ public class HttpFuzzDialog extends
 					}
 				}
 				for (HttpPayload p : regex) {
-					RegExStringGenerator gen = new RegExStringGenerator();
-					for (String exp : gen.regexExpansion(p.data, p.getLength(),
-							p.getLimit())) {
-						g.addPayload(getPayloadFactory().createPayload(exp));
-					}
+					g.addPayloadSource(new RegexPayloadSource<>(p.data,
+							p.getLength(), p.getLimit(), getPayloadFactory()),
+							-1);
 					g.removePayload(p);
 				}
 			}
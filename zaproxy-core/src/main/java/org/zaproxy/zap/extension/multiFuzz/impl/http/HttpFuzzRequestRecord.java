@@ -26,11 +26,21 @@ import javax.swing.ImageIcon;
 
 import org.apache.log4j.Logger;
 import org.parosproxy.paros.Constant;
+import org.parosproxy.paros.db.RecordHistory;
 import org.parosproxy.paros.model.HistoryReference;
+import org.parosproxy.paros.model.Model;
 import org.parosproxy.paros.network.HttpMalformedHeaderException;
 import org.parosproxy.paros.network.HttpMessage;
 import org.zaproxy.zap.utils.Pair;
 
+/**
+ * A fuzz result, with the summary of its message.
+ * <p>
+ * The message itself is not kept in memory, it's read from the session database when needed.
+ * </p>
+ *
+ * @see #getHttpMessage()
+ */
 public class HttpFuzzRequestRecord implements HttpFuzzRecord {
 	enum State {
 		SUCCESSFUL, REFLECTED, ERROR, ANTI_CRSF_TOKEN, CUSTOM
@@ -58,7 +68,13 @@ public class HttpFuzzRequestRecord implements HttpFuzzRecord {
 	private String custom;
 	private State state;
 	private ArrayList<String> payloads;
-	private HistoryReference historyReference;
+	private final int historyId;
+	private final String method;
+	private final String uri;
+	private final int rtt;
+	private final int size;
+	private final int statusCode;
+	private final String reason;
 	private boolean incl;
 
 	public HttpFuzzRequestRecord(String n, String custom, State s, ArrayList<String> pay,
@@ -67,12 +83,46 @@ public class HttpFuzzRequestRecord implements HttpFuzzRecord {
 		this.custom = custom;
 		this.state = s;
 		this.payloads = pay;
-		this.historyReference = history;
+		this.historyId = history.getHistoryId();
+		this.method = history.getMethod();
+		this.uri = history.getURI().toString();
+		this.rtt = history.getRtt();
+		this.size = history.getResponseBodyLength();
+		this.statusCode = history.getStatusCode();
+		this.reason = history.getReason();
 		this.incl = true;
 	}
 
+	/**
+	 * Gets the {@code HistoryReference} of the result, created (and the message read from the session database) on each
+	 * call.
+	 *
+	 * @return the {@code HistoryReference}, or {@code null} if an error occurred while reading it
+	 * @deprecated Use {@link #getHttpMessage()} instead, the {@code HistoryReference} is no longer kept in memory.
+	 */
+	@Deprecated
 	public HistoryReference getHistory() {
-		return historyReference;
+		try {
+			return new HistoryReference(historyId);
+		} catch (HttpMalformedHeaderException | SQLException e) {
+			logger.error("Failed to read the history reference " + historyId + ": " + e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the message of the result, read from the session database.
+	 *
+	 * @return the message, or {@code null} if no longer in the database
+	 * @throws HttpMalformedHeaderException if the message read is malformed
+	 * @throws SQLException if an error occurred while reading the message
+	 */
+	public HttpMessage getHttpMessage() throws HttpMalformedHeaderException, SQLException {
+		RecordHistory recordHistory = Model.getSingleton().getDb().getTableHistory().read(historyId);
+		if (recordHistory == null) {
+			return null;
+		}
+		return recordHistory.getHttpMessage();
 	}
 
 	@Override
@@ -82,56 +132,32 @@ public class HttpFuzzRequestRecord implements HttpFuzzRecord {
 
 	@Override
 	public String getMethod() {
-		HttpMessage msg = getHttpMessage(historyReference);
-		if (msg != null) {
-			return msg.getRequestHeader().getMethod();
-		}
-		return "";
+		return method;
 	}
 
 	@Override
 	public String getURI() {
-		HttpMessage msg = getHttpMessage(historyReference);
-		if (msg != null) {
-			return msg.getRequestHeader().getURI().toString();
-		}
-		return "";
+		return uri;
 	}
 
 	@Override
 	public int getRTT() {
-		HttpMessage msg = getHttpMessage(historyReference);
-		if (msg != null) {
-			return msg.getTimeElapsedMillis();
-		}
-		return -1;
+		return rtt;
 	}
 
 	@Override
 	public int getSize() {
-		HttpMessage msg = getHttpMessage(historyReference);
-		if (msg != null) {
-			return msg.getResponseBody().length();
-		}
-		return -1;
+		return size;
 	}
 
 	@Override
 	public int getState() {
-		HttpMessage msg = getHttpMessage(historyReference);
-		if (msg != null) {
-			return msg.getResponseHeader().getStatusCode();
-		}
-		return -1;
+		return statusCode;
 	}
 
 	@Override
 	public String getReason() {
-		HttpMessage msg = getHttpMessage(historyReference);
-		if (msg != null) {
-			return msg.getResponseHeader().getReasonPhrase();
-		}
-		return "";
+		return reason;
 	}
 
 	@Override
@@ -180,18 +206,6 @@ public class HttpFuzzRequestRecord implements HttpFuzzRecord {
 		incl = i;
 	}
 
-	private HttpMessage getHttpMessage(HistoryReference historyReference) {
-		HttpMessage msg = null;
-
-		try {
-			msg = historyReference.getHttpMessage();
-		} catch (HttpMalformedHeaderException | SQLException e) {
-			logger.error(e.getMessage(), e);
-		}
-
-		return msg;
-	}
-
 	@Override
 	public void setName(String s) {
 		this.name = s;
@@ -43,7 +43,6 @@ import org.jfree.data.category.DefaultCategoryDataset;
 import org.jfree.data.general.DefaultPieDataset;
 import org.jfree.ui.Align;
 import org.parosproxy.paros.Constant;
-import org.parosproxy.paros.model.HistoryReference;
 import org.parosproxy.paros.network.HttpMalformedHeaderException;
 import org.parosproxy.paros.view.View;
 import org.zaproxy.zap.extension.multiFuzz.FuzzComponent;
@@ -135,12 +134,10 @@ public class HttpFuzzResultDialog extends FuzzResultDialog {
 								}
 								final int row = table.getSelectedRow();
 								if (getEntry(row) instanceof HttpFuzzRequestRecord) {
-									final HistoryReference historyReference = ((HttpFuzzRequestRecord) getEntry(row))
-											.getHistory();
+									final HttpFuzzRequestRecord record = (HttpFuzzRequestRecord) getEntry(row);
 									try {
 										getMessageInspection().setMessage(
-												historyReference
-														.getHttpMessage());
+												record.getHttpMessage());
 									} catch (HttpMalformedHeaderException
 											| SQLException ex) {
 										logger.error(ex.getMessage(), ex);
@@ -230,7 +227,7 @@ public class HttpFuzzResultDialog extends FuzzResultDialog {
 				try {
 					comp = new HttpFuzzComponent(
 							((HttpFuzzRequestRecord) getEntry(row))
-									.getHistory().getHttpMessage());
+									.getHttpMessage());
 				} catch (HttpMalformedHeaderException | SQLException e) {
 					logger.equals(e.getMessage());
 				}
@@ -210,11 +210,10 @@ public class HttpFuzzerContentPanel implements FuzzerContentPanel {
 								final int row = fuzzResultTable
 										.getSelectedRow();
 								if (getEntry(row) instanceof HttpFuzzRequestRecord) {
-									final HistoryReference historyReference = ((HttpFuzzRequestRecord) getEntry(row))
-											.getHistory();
+									final HttpFuzzRequestRecord record = (HttpFuzzRequestRecord) getEntry(row);
 									try {
-										displayMessage(historyReference
-												.getHttpMessage());
+										// Loaded on demand, only the summary is kept in the table
+										displayMessage(record.getHttpMessage());
 									} catch (HttpMalformedHeaderException
 											| SQLException ex) {
 										logger.error(ex.getMessage(), ex);
@@ -310,16 +309,29 @@ public class HttpFuzzerContentPanel implements FuzzerContentPanel {
 	private void addFuzzResult(final String name, final String custom,
 							   final HttpFuzzRequestRecord.State state,
 							   final ArrayList<String> pay, final HttpMessage msg) {
+		// Persist the message in the calling (fuzzer) thread, so that only the record, with the summary of the
+		// message, is kept in memory while waiting to be added to the view
+		final HttpFuzzRequestRecord record;
+		try {
+			HistoryReference historyReference = new HistoryReference(Model
+					.getSingleton().getSession(),
+					HistoryReference.TYPE_TEMPORARY, msg);
+			record = new HttpFuzzRequestRecord(name, custom, state, pay,
+					historyReference);
+		} catch (HttpMalformedHeaderException | SQLException e) {
+			logger.error(e.getMessage(), e);
+			return;
+		}
 
 		if (EventQueue.isDispatchThread()) {
-			addFuzzResultToView(name, custom, state, pay, msg);
+			addFuzzResultToView(record);
 			return;
 		}
 		try {
 			EventQueue.invokeLater(new Runnable() {
 				@Override
 				public void run() {
-					addFuzzResultToView(name, custom, state, pay, msg);
+					addFuzzResultToView(record);
 				}
 			});
 		} catch (Exception e) {
@@ -327,21 +339,10 @@ public class HttpFuzzerContentPanel implements FuzzerContentPanel {
 		}
 	}
 
-	private void addFuzzResultToView(final String name, final String custom,
-									 final HttpFuzzRequestRecord.State state,
-									 final ArrayList<String> pay, final HttpMessage msg) {
-		try {
-			HistoryReference historyReference = new HistoryReference(Model
-					.getSingleton().getSession(),
-					HistoryReference.TYPE_TEMPORARY, msg);
-
-			resultsModel.addFuzzRecord(new HttpFuzzRequestRecord(name, custom,
-					state, pay, historyReference));
-			fuzzResultTable.updateUI();
-			fuzzResultTable.repaint();
-		} catch (HttpMalformedHeaderException | SQLException e) {
-			logger.error(e.getMessage(), e);
-		}
+	private void addFuzzResultToView(HttpFuzzRequestRecord record) {
+		resultsModel.addFuzzRecord(record);
+		fuzzResultTable.updateUI();
+		fuzzResultTable.repaint();
 	}
 
 	private void displayMessage(HttpMessage msg) {
@@ -390,9 +391,9 @@ public class HttpFuzzerContentPanel implements FuzzerContentPanel {
 				.getHistoryReferences().iterator();
 		Matcher matcher;
 		while (it.hasNext()) {
-			HistoryReference historyReference = it.next().getHistory();
+			HttpFuzzRequestRecord record = it.next();
 			try {
-				HttpMessage msg = historyReference.getHttpMessage();
+				HttpMessage msg = record.getHttpMessage();
 				if (msg != null) {
 					if (msg.getRequestHeader() != null) {
 						matcher = pattern.matcher(msg.getResponseHeader()
@@ -572,7 +573,7 @@ public class HttpFuzzerContentPanel implements FuzzerContentPanel {
 					printer.print(r.getResult().first);
 					printer.print(r.getPayloads().size());
 					printer.print(r.getPayloads());
-					HttpMessage m = ((HttpFuzzRequestRecord) r).getHistory()
+					HttpMessage m = ((HttpFuzzRequestRecord) r)
 							.getHttpMessage();
 					printer.print(m.getRequestHeader().toString());
 					printer.print(m.getRequestBody().toString());
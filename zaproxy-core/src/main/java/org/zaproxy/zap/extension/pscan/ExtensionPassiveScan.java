@@ -39,6 +39,7 @@ import org.parosproxy.paros.extension.ExtensionHook;
 import org.parosproxy.paros.extension.ExtensionLoader;
 import org.parosproxy.paros.extension.SessionChangedListener;
 import org.parosproxy.paros.extension.history.ExtensionHistory;
+import org.parosproxy.paros.model.HistoryReference;
 import org.parosproxy.paros.model.Session;
 import org.parosproxy.paros.view.View;
 import org.zaproxy.zap.ZAP;
@@ -345,15 +346,35 @@ public class ExtensionPassiveScan extends ExtensionAdaptor implements SessionCha
         return 0;
     }
 
+    /**
+     * Gets the number of records not scanned because the queue of the passive scanner was full.
+     * 
+     * @return the number of records skipped
+     */
+    long getRecordsSkipped() {
+        if (passiveScanEnabled) {
+            return this.getPassiveScanThread().getMessagesSkipped();
+        }
+        return 0;
+    }
+
+    List<PassiveScanThread.ScannerStats> getScannerStats() {
+        if (passiveScanEnabled) {
+            return this.getPassiveScanThread().getScannerStats();
+        }
+        return Collections.emptyList();
+    }
+
     private PassiveScanThread getPassiveScanThread() {
         if (pst == null) {
             final ExtensionLoader extensionLoader = Control.getSingleton().getExtensionLoader();
             final ExtensionHistory extHist = (ExtensionHistory) extensionLoader.getExtension(ExtensionHistory.NAME);
             final ExtensionAlert extAlert = (ExtensionAlert) extensionLoader.getExtension(ExtensionAlert.NAME);
 
-            pst = new PassiveScanThread(getPassiveScannerList(), extHist, extAlert);
+            pst = new PassiveScanThread(getPassiveScannerList(), extHist, extAlert, getPassiveScanParam());
 
             pst.start();
+            HistoryReference.addWriteListener(pst);
         }
         return pst;
     }
@@ -379,6 +400,7 @@ public class ExtensionPassiveScan extends ExtensionAdaptor implements SessionCha
 
     private void stopPassiveScanThread() {
         if (this.pst != null) {
+            HistoryReference.removeWriteListener(pst);
             getPassiveScanThread().shutdown();
             this.pst = null;
         }
@@ -19,6 +19,7 @@ package org.zaproxy.zap.extension.pscan;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import net.sf.json.JSONObject;
@@ -40,7 +41,9 @@ public class PassiveScanAPI extends ApiImplementor {
 	private static final String PREFIX = "pscan";
 	
 	private static final String VIEW_RECORDS_TO_SCAN = "recordsToScan";
+	private static final String VIEW_RECORDS_SKIPPED = "recordsSkipped";
 	private static final String VIEW_SCANNERS = "scanners";
+	private static final String VIEW_SCANNER_STATS = "scannerStats";
 
 	private static final String ACTION_SET_ENABLED = "setEnabled";
 	private static final String ACTION_ENABLE_ALL_SCANNERS = "enableAllScanners";
@@ -63,7 +66,9 @@ public class PassiveScanAPI extends ApiImplementor {
 		this.addApiAction(new ApiAction(ACTION_DISABLE_SCANNERS, new String[] {PARAM_IDS}));
 
 		this.addApiView(new ApiView(VIEW_RECORDS_TO_SCAN));
+		this.addApiView(new ApiView(VIEW_RECORDS_SKIPPED));
 		this.addApiView(new ApiView(VIEW_SCANNERS));
+		this.addApiView(new ApiView(VIEW_SCANNER_STATS));
 
 	}
 	
@@ -124,6 +129,9 @@ public class PassiveScanAPI extends ApiImplementor {
 		case VIEW_RECORDS_TO_SCAN:
 			result = new ApiResponseElement(name, String.valueOf(extension.getRecordsToScan()));
 			break;
+		case VIEW_RECORDS_SKIPPED:
+			result = new ApiResponseElement(name, String.valueOf(extension.getRecordsSkipped()));
+			break;
 		case VIEW_SCANNERS:
 			List<PluginPassiveScanner> scanners = extension.getPluginPassiveScanners();
 			
@@ -138,6 +146,19 @@ public class PassiveScanAPI extends ApiImplementor {
 			
 			result = resultList;
 			break;
+		case VIEW_SCANNER_STATS:
+			ApiResponseList statsList = new ApiResponseList(name);
+			for (PassiveScanThread.ScannerStats stats : extension.getScannerStats()) {
+				Map<String, String> map = new HashMap<>();
+				map.put("name", stats.getName());
+				map.put("messagesScanned", String.valueOf(stats.getMessagesScanned()));
+				map.put("totalTime", String.valueOf(stats.getTotalTime()));
+				map.put("averageTime", String.format(Locale.ROOT, "%.3f", Double.valueOf(stats.getAverageTime())));
+				statsList.addItem(new ApiResponseSet("scanner", map));
+			}
+
+			result = statsList;
+			break;
 		default:
 			throw new ApiException(ApiException.Type.BAD_VIEW);
 		}
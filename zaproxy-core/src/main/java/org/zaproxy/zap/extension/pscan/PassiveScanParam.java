@@ -48,9 +48,26 @@ public class PassiveScanParam extends AbstractParam {
     
     private static final String CONFIRM_REMOVE_AUTO_TAG_SCANNER_KEY = PASSIVE_SCANS_BASE_KEY + ".confirmRemoveAutoTagScanner";
 
+    private static final String SCAN_THREADS_KEY = PASSIVE_SCANS_BASE_KEY + ".scanThreads";
+    private static final String MAX_QUEUED_MESSAGES_KEY = PASSIVE_SCANS_BASE_KEY + ".maxQueuedMessages";
+
+    /**
+     * The default number of threads used to passive scan the messages.
+     */
+    public static final int DEFAULT_SCAN_THREADS = 2;
+
+    /**
+     * The default maximum number of messages waiting to be scanned. Further messages are not scanned.
+     */
+    public static final int DEFAULT_MAX_QUEUED_MESSAGES = 50000;
+
     private List<RegexAutoTagScanner> autoTagScanners = new ArrayList<>(0);
     
     private boolean confirmRemoveAutoTagScanner = true;
+
+    private int scanThreads = DEFAULT_SCAN_THREADS;
+
+    private int maxQueuedMessages = DEFAULT_MAX_QUEUED_MESSAGES;
     
     public PassiveScanParam() {
     }
@@ -88,6 +105,21 @@ public class PassiveScanParam extends AbstractParam {
         } catch (ConversionException e) {
             logger.error("Error while loading the confirm remove option: " + e.getMessage(), e);
         }
+
+        try {
+            this.scanThreads = getConfig().getInt(SCAN_THREADS_KEY, DEFAULT_SCAN_THREADS);
+            if (scanThreads <= 0) {
+                scanThreads = DEFAULT_SCAN_THREADS;
+            }
+        } catch (ConversionException e) {
+            logger.error("Error while loading the number of scan threads: " + e.getMessage(), e);
+        }
+
+        try {
+            this.maxQueuedMessages = getConfig().getInt(MAX_QUEUED_MESSAGES_KEY, DEFAULT_MAX_QUEUED_MESSAGES);
+        } catch (ConversionException e) {
+            logger.error("Error while loading the maximum number of queued messages: " + e.getMessage(), e);
+        }
     }
 
     public void setAutoTagScanners(List<RegexAutoTagScanner> scanners) {
@@ -125,4 +157,50 @@ public class PassiveScanParam extends AbstractParam {
         getConfig().setProperty(CONFIRM_REMOVE_AUTO_TAG_SCANNER_KEY, Boolean.valueOf(confirmRemoveAutoTagScanner));
     }
     
+    /**
+     * Gets the number of threads used to passive scan the messages.
+     * 
+     * @return the number of scan threads, always greater than zero
+     */
+    public int getScanThreads() {
+        return scanThreads;
+    }
+
+    /**
+     * Sets the number of threads used to passive scan the messages. The change takes effect when the passive scanner is
+     * (re)started, for example, when a new session is created.
+     * 
+     * @param scanThreads the number of scan threads
+     * @throws IllegalArgumentException if {@code scanThreads} is not greater than zero
+     */
+    public void setScanThreads(int scanThreads) {
+        if (scanThreads <= 0) {
+            throw new IllegalArgumentException("Parameter scanThreads must be greater than zero.");
+        }
+        this.scanThreads = scanThreads;
+        getConfig().setProperty(SCAN_THREADS_KEY, Integer.valueOf(scanThreads));
+    }
+
+    /**
+     * Gets the maximum number of messages waiting to be scanned, the messages written while the queue is full are not
+     * scanned.
+     * 
+     * @return the maximum number of queued messages, zero or negative to use the default
+     * @see #DEFAULT_MAX_QUEUED_MESSAGES
+     */
+    public int getMaxQueuedMessages() {
+        return maxQueuedMessages;
+    }
+
+    /**
+     * Sets the maximum number of messages waiting to be scanned, the messages written while the queue is full are not
+     * scanned.
+     * 
+     * @param maxQueuedMessages the maximum number of queued messages, zero or negative to use the default
+     */
+    public void setMaxQueuedMessages(int maxQueuedMessages) {
+        this.maxQueuedMessages = maxQueuedMessages;
+        getConfig().setProperty(MAX_QUEUED_MESSAGES_KEY, Integer.valueOf(maxQueuedMessages));
+    }
+
 }
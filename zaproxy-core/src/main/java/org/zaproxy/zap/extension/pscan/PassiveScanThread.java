@@ -1,6 +1,21 @@
 package org.zaproxy.zap.extension.pscan;
 
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.htmlparser.jericho.MasonTagTypes;
 import net.htmlparser.jericho.MicrosoftTagTypes;
@@ -11,49 +26,106 @@ import org.apache.log4j.Logger;
 import org.parosproxy.paros.control.Control.Mode;
 import org.parosproxy.paros.core.proxy.ProxyListener;
 import org.parosproxy.paros.core.scanner.Alert;
-import org.parosproxy.paros.db.Database;
-import org.parosproxy.paros.db.TableHistory;
 import org.parosproxy.paros.extension.SessionChangedListener;
 import org.parosproxy.paros.extension.history.ExtensionHistory;
 import org.parosproxy.paros.extension.history.ProxyListenerLog;
 import org.parosproxy.paros.model.HistoryReference;
+import org.parosproxy.paros.model.HistoryReferenceWriteListener;
 import org.parosproxy.paros.model.Session;
-import org.parosproxy.paros.network.HttpMalformedHeaderException;
+import org.parosproxy.paros.network.HtmlSourceCache;
 import org.parosproxy.paros.network.HttpMessage;
 import org.zaproxy.zap.extension.alert.ExtensionAlert;
 
-public class PassiveScanThread extends Thread implements ProxyListener, SessionChangedListener {
+/**
+ * The passive scanner, scans the messages written to the history.
+ * <p>
+ * The messages are received as they are written (see {@link HistoryReferenceWriteListener}), queued and then dispatched
+ * by this thread to a pool of worker threads. Each message is scanned by a single worker, which runs all the enabled
+ * scanners, in order, on the message. A scanner scans only one message at a time.
+ * </p>
+ * <p>
+ * Just the history references are queued, the messages are read when scanned (by the workers, from the records still
+ * pending to be written, if any, or from the database), so the threads writing the messages are not delayed. Up to
+ * {@link PassiveScanParam#getMaxQueuedMessages()} messages wait to be scanned, the messages written while the queue is
+ * full are not scanned.
+ * </p>
+ */
+public class PassiveScanThread extends Thread implements ProxyListener, SessionChangedListener,
+        HistoryReferenceWriteListener {
 
 	private static final Logger logger = Logger.getLogger(PassiveScanThread.class);
 
     //Could be after the last one that saves the HttpMessage, as this ProxyListener doesn't change the HttpMessage.
 	public static final int PROXY_LISTENER_ORDER = ProxyListenerLog.PROXY_LISTENER_ORDER + 1;
-	
+
+	private static final int WORKER_KEEP_ALIVE = 60;
+
 	@SuppressWarnings("unused")
 	private OptionsPassiveScan options = null;
 	private PassiveScannerList scannerList = null;
-	private int currentId = 1;
-	private int lastId = -1;
-	private int mainSleep = 5000;
-	private int postSleep = 200;
 	private volatile boolean shutDown = false;
-	
+
 	private final ExtensionHistory extHist;
 	private final ExtensionAlert extAlert;
+	private final PassiveScanParam passiveScanParam;
+
+	private final BlockingQueue<ScanTask> queue = new LinkedBlockingQueue<>();
+
+	/**
+	 * The number of messages queued or being scanned.
+	 */
+	private final AtomicInteger pendingMessages = new AtomicInteger();
 
-	private TableHistory historyTable = null;
-	private HistoryReference href = null;
+	/**
+	 * The number of messages not scanned because the queue was full.
+	 */
+	private final AtomicLong messagesSkipped = new AtomicLong();
+
+	/**
+	 * Flag that indicates that the queue is full, used to log just when the messages start and stop being skipped.
+	 */
+	private final AtomicBoolean skippingMessages = new AtomicBoolean();
+
+	/**
+	 * The history references being scanned, used to raise the alerts and add the tags.
+	 */
+	private final Map<Integer, HistoryReference> scanningReferences = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, ScannerStats> scannerStats = new ConcurrentHashMap<>();
+
+	private ExecutorService workers;
+	private Semaphore freeWorkers;
 
 	public PassiveScanThread (PassiveScannerList passiveScannerList, ExtensionHistory extHist, ExtensionAlert extensionAlert) {
+		this(passiveScannerList, extHist, extensionAlert, null);
+	}
+
+	/**
+	 * Constructs a {@code PassiveScanThread} with the given scanners and options.
+	 * <p>
+	 * The options are read when the first message is dispatched.
+	 * </p>
+	 *
+	 * @param passiveScannerList the scanners
+	 * @param extHist the history extension, might be {@code null}
+	 * @param extensionAlert the alert extension, must not be {@code null}
+	 * @param passiveScanParam the options, might be {@code null} in which case the default options are used
+	 * @throws IllegalArgumentException if {@code extensionAlert} is {@code null}
+	 */
+	public PassiveScanThread(
+			PassiveScannerList passiveScannerList,
+			ExtensionHistory extHist,
+			ExtensionAlert extensionAlert,
+			PassiveScanParam passiveScanParam) {
 		super("ZAP-PassiveScanner");
 		this.setDaemon(true);
-		
+
 		if (extensionAlert == null) {
 			throw new IllegalArgumentException("Parameter extensionAlert must not be null.");
 		}
-		
+
 		this.scannerList = passiveScannerList;
-		
+
 		MicrosoftTagTypes.register();
 		PHPTagTypes.register();
 		PHPTagTypes.PHP_SHORT.deregister(); // remove PHP short tags otherwise they override processing instructions
@@ -61,113 +133,202 @@ public class PassiveScanThread extends Thread implements ProxyListener, SessionC
 
 		extAlert = extensionAlert;
 		this.extHist = extHist;
+		this.passiveScanParam = passiveScanParam;
 	}
-	
+
 	@Override
 	public void run() {
-		historyTable = Database.getSingleton().getTableHistory();
-		// Get the last id - in case we've just opened an existing session
-		currentId = this.getLastHistoryId();
-		lastId = currentId;
-		
-		while (!shutDown) {
-			try {
-				if (href != null || lastId > currentId ) {
-					currentId ++;
-				} else {
-					// Either just started or there are no new records 
-					try {
-						Thread.sleep(mainSleep);
-						if (shutDown) {
-							return;
-						}
-						lastId = this.getLastHistoryId();
-					} catch (InterruptedException e) {
-						// New URL, but give it a chance to be processed first
-						try {
-							Thread.sleep(postSleep);
-						} catch (InterruptedException e2) {
-							// Ignore
-						}
-					}
-				}
+		try {
+			while (!shutDown) {
+				ScanTask task;
 				try {
-					href = getHistoryReference(currentId);
-					//historyRecord = historyTable.read(currentId);
-				} catch (Exception e) {
-					if (shutDown) {
-						return;
-					}
-					logger.error("Failed to read record " + currentId + " from History table", e);
+					task = queue.take();
+				} catch (InterruptedException e) {
+					continue;
 				}
 
-				if (href != null && 
-						(href.getHistoryType() == HistoryReference.TYPE_PROXIED ||
-						href.getHistoryType() == HistoryReference.TYPE_ZAP_USER ||
-						href.getHistoryType() == HistoryReference.TYPE_SPIDER)) {
-					// Note that scanning TYPE_SCANNER records will result in a loop ;)
-					// Parse the record
-					HttpMessage msg = href.getHttpMessage();
-					String response = msg.getResponseHeader().toString() + msg.getResponseBody().toString();
-					Source src = new Source(response);
-					
-					for (PassiveScanner scanner : scannerList.list()) {
-						try {
-							if (shutDown) {
-								return;
-							}
-							if (scanner.isEnabled()) {
-								scanner.setParent(this);
-								scanner.scanHttpRequestSend(msg, href.getHistoryId());
-								if (msg.isResponseFromTargetHost()) {
-									scanner.scanHttpResponseReceive(msg, href.getHistoryId(), src);
-								}
-							}
-						} catch (Exception e) {
-							if (shutDown) {
-								return;
-							}
-							logger.error("Scanner " + scanner.getName() + 
-									" failed on record " + currentId + " from History table", e);
-						}
-					}
-					
+				try {
+					getFreeWorkers().acquire();
+				} catch (InterruptedException e) {
+					task.discard();
+					continue;
 				}
-			} catch (Exception e) {
+
 				if (shutDown) {
+					getFreeWorkers().release();
+					task.discard();
 					return;
 				}
-				logger.error("Failed on record " + currentId + " from History table", e);
+
+				try {
+					getWorkers().execute(task);
+				} catch (RejectedExecutionException e) {
+					task.discard();
+					getFreeWorkers().release();
+				}
+			}
+		} finally {
+			discardQueuedTasks();
+			if (workers != null) {
+				// The messages being scanned are not interrupted, the workers stop after the current scanner.
+				workers.shutdown();
 			}
 		}
-		
 	}
 
-    private HistoryReference getHistoryReference(final int historyReferenceId) {
-        if (extHist != null) {
-            return extHist.getHistoryReference(historyReferenceId);
-        }
+	private Semaphore getFreeWorkers() {
+		if (freeWorkers == null) {
+			freeWorkers = new Semaphore(getScanThreads());
+		}
+		return freeWorkers;
+	}
 
-        try {
-            return new HistoryReference(historyReferenceId);
-        } catch (HttpMalformedHeaderException | SQLException e) {
-            return null;
-        }
-    }
+	private ExecutorService getWorkers() {
+		if (workers == null) {
+			int scanThreads = getScanThreads();
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(
+					scanThreads,
+					scanThreads,
+					WORKER_KEEP_ALIVE,
+					TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(),
+					new PassiveScanWorkerThreadFactory());
+			pool.allowCoreThreadTimeOut(true);
+			workers = pool;
+		}
+		return workers;
+	}
 
-	private int getLastHistoryId() {
-		return historyTable.lastIndex();
+	private int getScanThreads() {
+		if (passiveScanParam == null) {
+			return PassiveScanParam.DEFAULT_SCAN_THREADS;
+		}
+		return passiveScanParam.getScanThreads();
 	}
-	
-	protected int getRecordsToScan() {
-		return this.getLastHistoryId() - getLastScannedId();
+
+	private int getMaxQueuedMessages() {
+		if (passiveScanParam == null || passiveScanParam.getMaxQueuedMessages() <= 0) {
+			return PassiveScanParam.DEFAULT_MAX_QUEUED_MESSAGES;
+		}
+		return passiveScanParam.getMaxQueuedMessages();
+	}
+
+	@Override
+	public void historyReferenceWritten(HistoryReference historyReference, HttpMessage msg) {
+		if (shutDown || !isScannable(historyReference.getHistoryType())) {
+			return;
+		}
+		if (historyReference.getTags().contains(HistoryReference.TAG_RESPONSE_TRUNCATED)) {
+			// Just the first bytes of the response body are available
+			return;
+		}
+
+		if (pendingMessages.incrementAndGet() > getMaxQueuedMessages()) {
+			pendingMessages.decrementAndGet();
+			long skipped = messagesSkipped.incrementAndGet();
+			if (!skippingMessages.getAndSet(true)) {
+				logger.warn("Passive scan queue is full, skipping the messages written until there is room (skipped so far: "
+						+ skipped + ").");
+			}
+			return;
+		}
+		if (skippingMessages.getAndSet(false)) {
+			logger.info("Passive scan queue has room again, messages skipped so far: " + messagesSkipped.get());
+		}
+
+		queue.add(new ScanTask(historyReference));
+	}
+
+	/**
+	 * Gets the number of messages not scanned because the queue was full.
+	 *
+	 * @return the number of messages skipped
+	 * @see PassiveScanParam#getMaxQueuedMessages()
+	 */
+	long getMessagesSkipped() {
+		return messagesSkipped.get();
+	}
+
+	private static boolean isScannable(int historyType) {
+		// Note that scanning TYPE_SCANNER records will result in a loop ;)
+		return historyType == HistoryReference.TYPE_PROXIED || historyType == HistoryReference.TYPE_ZAP_USER
+				|| historyType == HistoryReference.TYPE_SPIDER;
+	}
+
+	private void scan(HistoryReference href, HttpMessage msg) {
+		Source src = HtmlSourceCache.getResponseSource(msg);
+		int id = href.getHistoryId();
+
+		scanningReferences.put(Integer.valueOf(id), href);
+		try {
+			for (PassiveScanner scanner : scannerList.list()) {
+				if (shutDown) {
+					return;
+				}
+				if (!scanner.isEnabled()) {
+					continue;
+				}
+				try {
+					// Scanners keep state, scan one message at a time.
+					synchronized (scanner) {
+						long start = System.nanoTime();
+						scanner.setParent(this);
+						scanner.scanHttpRequestSend(msg, id);
+						if (msg.isResponseFromTargetHost()) {
+							scanner.scanHttpResponseReceive(msg, id, src);
+						}
+						getScannerStats(scanner.getName()).addScan(System.nanoTime() - start);
+					}
+				} catch (Exception e) {
+					if (shutDown) {
+						return;
+					}
+					logger.error("Scanner " + scanner.getName() + " failed on record " + id + " from History table", e);
+				}
+			}
+		} finally {
+			scanningReferences.remove(Integer.valueOf(id));
+		}
 	}
 
-	private int getLastScannedId() {
-		if (currentId > lastId) {
-			return currentId - 1;
+	private ScannerStats getScannerStats(String scannerName) {
+		ScannerStats stats = scannerStats.get(scannerName);
+		if (stats == null) {
+			stats = new ScannerStats(scannerName);
+			ScannerStats previous = scannerStats.putIfAbsent(scannerName, stats);
+			if (previous != null) {
+				stats = previous;
+			}
 		}
-		return currentId;
+		return stats;
+	}
+
+	/**
+	 * Gets the statistics of the scanners that scanned at least one message.
+	 *
+	 * @return the statistics of the scanners, never {@code null}
+	 */
+	List<ScannerStats> getScannerStats() {
+		List<ScannerStats> stats = new ArrayList<>(scannerStats.values());
+		Collections.sort(stats);
+		return stats;
+	}
+
+	private void discardQueuedTasks() {
+		List<ScanTask> tasks = new ArrayList<>(queue.size());
+		queue.drainTo(tasks);
+		for (ScanTask task : tasks) {
+			task.discard();
+		}
+	}
+
+	/**
+	 * Gets the number of messages that are waiting to be scanned or being scanned.
+	 *
+	 * @return the number of messages still to scan
+	 */
+	protected int getRecordsToScan() {
+		return pendingMessages.get();
 	}
 
 	public void raiseAlert(int id, Alert alert) {
@@ -175,11 +336,13 @@ public class PassiveScanThread extends Thread implements ProxyListener, SessionC
 			return;
 		}
 
-		if (currentId != id) {
-			logger.error("Alert id != currentId! " + id + " " + currentId);
+		HistoryReference href = scanningReferences.get(Integer.valueOf(id));
+		if (href == null) {
+			logger.error("Alert raised for a record not being scanned: " + id);
+			return;
 		}
 		alert.setSourceHistoryId(href.getHistoryId());
-		
+
 		try {
 			href.addAlert(alert);
 			notifyHistoryItemChanged(href);
@@ -196,17 +359,27 @@ public class PassiveScanThread extends Thread implements ProxyListener, SessionC
             extHist.notifyHistoryItemChanged(historyReference);
         }
     }
-	
+
 	public void addTag(int id, String tag) {
 		if (shutDown) {
 			return;
 		}
 
+		HistoryReference href = scanningReferences.get(Integer.valueOf(id));
+		if (href == null) {
+			logger.error("Tag added for a record not being scanned: " + id);
+			return;
+		}
+
 		try {
-			if (! href.getTags().contains(tag)) {
-				href.addTag(tag);
-				notifyHistoryItemChanged(href);
+			synchronized (href) {
+				if (! href.getTags().contains(tag)) {
+					href.addTag(tag);
+				} else {
+					return;
+				}
 			}
+			notifyHistoryItemChanged(href);
 		} catch (Exception e) {
 			logger.error(e.getMessage(), e);
 		}
@@ -216,7 +389,7 @@ public class PassiveScanThread extends Thread implements ProxyListener, SessionC
 	public int getArrangeableListenerOrder() {
 		return PROXY_LISTENER_ORDER;
 	}
-	
+
 	@Override
 	public boolean onHttpRequestSend(HttpMessage msg) {
 		// Ignore
@@ -225,35 +398,137 @@ public class PassiveScanThread extends Thread implements ProxyListener, SessionC
 
 	@Override
 	public boolean onHttpResponseReceive(HttpMessage msg) {
-		// Wakey wakey
-		this.interrupt();
+		// Ignore, the messages are received once written to the history.
 		return true;
 	}
 
 	@Override
 	public void sessionChanged(Session session) {
-		// Reset the currentId
-		historyTable = Database.getSingleton().getTableHistory();
-		href = null;
-		// Get the last id - in case we've just opened an existing session
-		currentId = historyTable.lastIndex();
-		lastId = currentId;
+		// The messages queued belong to the previous session.
+		discardQueuedTasks();
 	}
-	
+
 	@Override
 	public void sessionScopeChanged(Session session) {
 	}
 
 	public void shutdown() {
 		this.shutDown = true;
+		this.interrupt();
 	}
-	
+
 	@Override
 	public void sessionAboutToChange(Session session) {
 	}
-	
+
 	@Override
 	public void sessionModeChanged(Mode mode) {
 		// Ignore
 	}
+
+	private class ScanTask implements Runnable {
+
+		private final HistoryReference historyReference;
+
+		public ScanTask(HistoryReference historyReference) {
+			this.historyReference = historyReference;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (shutDown) {
+					return;
+				}
+				scan(historyReference, historyReference.getHttpMessage());
+			} catch (Exception e) {
+				if (!shutDown) {
+					logger.error("Failed on record " + historyReference.getHistoryId() + " from History table", e);
+				}
+			} finally {
+				discard();
+				freeWorkers.release();
+			}
+		}
+
+		public void discard() {
+			pendingMessages.decrementAndGet();
+		}
+	}
+
+	/**
+	 * The statistics of a scanner, the number of messages scanned and the time spent scanning them.
+	 */
+	static class ScannerStats implements Comparable<ScannerStats> {
+
+		private final String name;
+		private final AtomicLong messagesScanned = new AtomicLong();
+		private final AtomicLong totalTime = new AtomicLong();
+
+		public ScannerStats(String name) {
+			this.name = name;
+		}
+
+		private void addScan(long timeNanos) {
+			messagesScanned.incrementAndGet();
+			totalTime.addAndGet(timeNanos);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getMessagesScanned() {
+			return messagesScanned.get();
+		}
+
+		/**
+		 * Gets the total time spent scanning the messages, in milliseconds.
+		 *
+		 * @return the total time in milliseconds
+		 */
+		public long getTotalTime() {
+			return TimeUnit.NANOSECONDS.toMillis(totalTime.get());
+		}
+
+		/**
+		 * Gets the average time spent scanning a message, in milliseconds.
+		 *
+		 * @return the average time in milliseconds, zero if no message was scanned
+		 */
+		public double getAverageTime() {
+			long count = messagesScanned.get();
+			if (count == 0) {
+				return 0;
+			}
+			return totalTime.get() / (count * 1000000.0);
+		}
+
+		@Override
+		public int compareTo(ScannerStats other) {
+			return name.compareTo(other.name);
+		}
+	}
+
+	private static class PassiveScanWorkerThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger poolNumber = new AtomicInteger(1);
+		private final ThreadGroup group;
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+		private final String namePrefix;
+
+		PassiveScanWorkerThreadFactory() {
+			SecurityManager s = System.getSecurityManager();
+			group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
+			namePrefix = "ZAP-PassiveScanner-" + poolNumber.getAndIncrement() + "-thread-";
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(group, r, namePrefix + threadNumber.getAndIncrement(), 0);
+			t.setDaemon(true);
+			t.setPriority(Thread.NORM_PRIORITY - 1);
+			return t;
+		}
+	}
 }
@@ -24,6 +24,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.log4j.Logger;
 import org.zaproxy.zap.extension.pscan.scanner.RegexAutoTagScanner;
@@ -32,7 +33,8 @@ public class PassiveScannerList {
 
 	private static final Logger logger = Logger.getLogger(PassiveScannerList.class);
 
-	private List<PassiveScanner> passiveScanners = new ArrayList<>();
+	// The scanners are iterated concurrently by the passive scan workers.
+	private volatile List<PassiveScanner> passiveScanners = new CopyOnWriteArrayList<>();
 	private Set<String> scannerNames = new HashSet<>();
 
 	protected boolean add (PassiveScanner scanner) {
@@ -72,7 +74,7 @@ public class PassiveScannerList {
             }
         }
         
-        this.passiveScanners = tempScanners;
+        this.passiveScanners = new CopyOnWriteArrayList<>(tempScanners);
     }
 
 	public PassiveScanner removeScanner(String className) {
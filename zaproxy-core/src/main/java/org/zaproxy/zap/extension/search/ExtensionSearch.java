@@ -33,6 +33,7 @@ import org.parosproxy.paros.control.Control.Mode;
 import org.parosproxy.paros.extension.ExtensionAdaptor;
 import org.parosproxy.paros.extension.ExtensionHook;
 import org.parosproxy.paros.extension.SessionChangedListener;
+import org.parosproxy.paros.model.Model;
 import org.parosproxy.paros.model.Session;
 import org.zaproxy.zap.extension.api.API;
 import org.zaproxy.zap.extension.help.ExtensionHelp;
@@ -57,6 +58,8 @@ public class ExtensionSearch extends ExtensionAdaptor implements SessionChangedL
     private SearchThread searchThread = null;
     private boolean searchJustInScope = false;
 
+    private final SearchIndexer searchIndexer = new SearchIndexer();
+
 	/**
      * 
      */
@@ -86,6 +89,7 @@ public class ExtensionSearch extends ExtensionAdaptor implements SessionChangedL
 	    super.hook(extensionHook);
 	    extensionHook.addSessionListener(this);
 	    extensionHook.addOptionsParamSet(getSearchParam());
+	    Model.getSingleton().getDb().getTableHistory().setSearchPrefilter(searchIndexer);
 	    if (getView() != null) {
 	        extensionHook.getHookView().addOptionPanel(getOptionsPanel());
 	        extensionHook.getHookView().addStatusPanel(getSearchPanel());
@@ -125,6 +129,9 @@ public class ExtensionSearch extends ExtensionAdaptor implements SessionChangedL
 
 	@Override
 	public void sessionChanged(final Session session)  {
+	    // The session might be null (or not the current one), so use the one of the model.
+	    searchIndexer.start(Model.getSingleton().getSession());
+
 	    if (EventQueue.isDispatchThread()) {
 		    sessionChangedEventHandler(session);
 
@@ -192,6 +199,10 @@ public class ExtensionSearch extends ExtensionAdaptor implements SessionChangedL
 	    		}
 	    	}
     		searchThread = new SearchThread(filter, reqType, listenner, inverse, searchJustInScope, baseUrl, start, count, searchAllOccurrences, maxOccurrences);
+    		if (!searchIndexer.isStarted()) {
+    			searchIndexer.start(Model.getSingleton().getSession());
+    		}
+    		searchThread.setSearchIndex(searchIndexer.getIndex());
 	    	searchThread.start();
 	    	
 	    }
@@ -243,12 +254,26 @@ public class ExtensionSearch extends ExtensionAdaptor implements SessionChangedL
 
 	@Override
 	public void sessionAboutToChange(Session session) {
+		searchIndexer.stop(Model.getSingleton().getSession());
 	}
 	
 	@Override
 	public void sessionScopeChanged(Session session) {
 	}
 
+	@Override
+	public void destroy() {
+		searchIndexer.stop(Model.getSingleton().getSession());
+		super.destroy();
+	}
+
+	@Override
+	public void unload() {
+		Model.getSingleton().getDb().getTableHistory().setSearchPrefilter(null);
+		searchIndexer.stop(Model.getSingleton().getSession());
+		super.unload();
+	}
+
 	@Override
 	public String getAuthor() {
 		return Constant.ZAP_TEAM;
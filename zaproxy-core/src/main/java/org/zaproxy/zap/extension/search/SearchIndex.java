@@ -0,0 +1,654 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.parosproxy.paros.network.HttpMessage;
+
+/**
+ * An inverted index of the messages of the history, used to prefilter the messages that might match a search, before the
+ * (exact) regular expression pass.
+ * <p>
+ * The index maps the trigrams (sequences of 3 characters) of the URI, headers and bodies of the messages, case folded, to
+ * the IDs of the messages that contain them. The trigrams are hashed into a fixed number of buckets, so the candidates
+ * returned might include messages that do not contain all the trigrams, but never exclude a message that does.
+ * </p>
+ * <p>
+ * The messages that are not indexed (or that are too big to be indexed) are always candidates.
+ * </p>
+ * <p>
+ * The memory used is bounded, once the index holds {@value #MAX_POSTINGS} message IDs the messages added afterwards are
+ * always candidates.
+ * </p>
+ *
+ * @see #getCandidates(String)
+ */
+class SearchIndex {
+
+    /**
+     * The maximum length of the text of a message that is indexed, longer messages are always candidates.
+     */
+    static final int MAX_TEXT_LENGTH = 512 * 1024;
+
+    /**
+     * The maximum number of message IDs kept in the postings of all buckets (4 bytes each).
+     */
+    static final int MAX_POSTINGS = 8 * 1024 * 1024;
+
+    private static final int MAGIC = 0x5A415053;
+    private static final int FILE_VERSION = 2;
+
+    private static final int BUCKET_BITS = 18;
+    private static final int NUMBER_OF_BUCKETS = 1 << BUCKET_BITS;
+
+    private static final int INITIAL_POSTINGS_SIZE = 4;
+
+    private final long sessionId;
+
+    private final int[][] postings;
+    private final int[] postingsSizes;
+    private int totalPostings;
+
+    private final BitSet indexedIds;
+    private final BitSet alwaysCandidateIds;
+    private int maxIndexedId;
+
+    private final BitSet messageBuckets;
+
+    private int changeCount;
+
+    /**
+     * Constructs an empty {@code SearchIndex} for the session with the given ID.
+     *
+     * @param sessionId the ID of the session
+     */
+    SearchIndex(long sessionId) {
+        this.sessionId = sessionId;
+        this.postings = new int[NUMBER_OF_BUCKETS][];
+        this.postingsSizes = new int[NUMBER_OF_BUCKETS];
+        this.indexedIds = new BitSet();
+        this.alwaysCandidateIds = new BitSet();
+        this.messageBuckets = new BitSet(NUMBER_OF_BUCKETS);
+    }
+
+    /**
+     * Gets the ID of the session whose messages are indexed.
+     *
+     * @return the ID of the session
+     */
+    long getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Tells whether or not the message with the given history ID is already indexed.
+     *
+     * @param historyId the history ID of the message
+     * @return {@code true} if the message is indexed, {@code false} otherwise
+     */
+    synchronized boolean isIndexed(int historyId) {
+        return indexedIds.get(historyId);
+    }
+
+    /**
+     * Gets the highest history ID indexed.
+     *
+     * @return the highest history ID indexed, or zero if none
+     */
+    synchronized int getMaxIndexedId() {
+        return maxIndexedId;
+    }
+
+    /**
+     * Gets the number of messages added to the index, since created or loaded.
+     *
+     * @return the number of messages added
+     */
+    synchronized int getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Indexes the given message, if not already indexed.
+     * <p>
+     * Indexes the same text that is searched by {@link SearchThread}.
+     * </p>
+     *
+     * @param historyId the history ID of the message
+     * @param msg the message
+     */
+    void add(int historyId, HttpMessage msg) {
+        String[] texts = {
+                msg.getRequestHeader().getURI().toString(),
+                msg.getRequestHeader().toString(),
+                msg.getRequestBody().toString(),
+                msg.getResponseHeader().toString(),
+                msg.getResponseBody().toString() };
+        add(historyId, texts);
+    }
+
+    private synchronized void add(int historyId, String[] texts) {
+        if (indexedIds.get(historyId)) {
+            return;
+        }
+        indexedIds.set(historyId);
+        maxIndexedId = Math.max(maxIndexedId, historyId);
+        changeCount++;
+
+        int length = 0;
+        for (String text : texts) {
+            length += text.length();
+        }
+        if (length > MAX_TEXT_LENGTH) {
+            alwaysCandidateIds.set(historyId);
+            return;
+        }
+
+        for (String text : texts) {
+            addBuckets(text, messageBuckets);
+        }
+        if (totalPostings + messageBuckets.cardinality() > MAX_POSTINGS) {
+            alwaysCandidateIds.set(historyId);
+            messageBuckets.clear();
+            return;
+        }
+        for (int bucket = messageBuckets.nextSetBit(0); bucket >= 0; bucket = messageBuckets.nextSetBit(bucket + 1)) {
+            addPosting(bucket, historyId);
+        }
+        messageBuckets.clear();
+    }
+
+    private void addPosting(int bucket, int historyId) {
+        int[] ids = postings[bucket];
+        int size = postingsSizes[bucket];
+        if (ids == null) {
+            ids = new int[INITIAL_POSTINGS_SIZE];
+            postings[bucket] = ids;
+        } else if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size + (size >> 1));
+            postings[bucket] = ids;
+        }
+        ids[size] = historyId;
+        postingsSizes[bucket] = size + 1;
+        totalPostings++;
+    }
+
+    /**
+     * Gets the candidates to match the given regular expression, compiled with {@code Pattern.CASE_INSENSITIVE} (and
+     * without {@code Pattern.UNICODE_CASE}).
+     *
+     * @param regex the regular expression
+     * @return the candidates, or {@code null} if the regular expression has no literals that can be used to prefilter the
+     *         messages, in which case all messages are candidates
+     * @see #getRequiredLiterals(String)
+     */
+    Candidates getCandidates(String regex) {
+        List<String> literals = getRequiredLiterals(regex);
+        if (literals.isEmpty()) {
+            return null;
+        }
+
+        BitSet buckets = new BitSet(NUMBER_OF_BUCKETS);
+        for (String literal : literals) {
+            addBuckets(literal, buckets);
+        }
+
+        synchronized (this) {
+            BitSet matches = null;
+            for (int bucket = buckets.nextSetBit(0); bucket >= 0; bucket = buckets.nextSetBit(bucket + 1)) {
+                BitSet ids = new BitSet();
+                int[] bucketIds = postings[bucket];
+                for (int i = 0; i < postingsSizes[bucket]; i++) {
+                    ids.set(bucketIds[i]);
+                }
+                if (matches == null) {
+                    matches = ids;
+                } else {
+                    matches.and(ids);
+                }
+                if (matches.isEmpty()) {
+                    break;
+                }
+            }
+            matches.or(alwaysCandidateIds);
+            return new Candidates((BitSet) indexedIds.clone(), matches);
+        }
+    }
+
+    /**
+     * Adds the buckets of the trigrams of the given text to the given {@code BitSet}.
+     *
+     * @param text the text whose trigrams will be added
+     * @param buckets where the buckets are added
+     */
+    private static void addBuckets(String text, BitSet buckets) {
+        int length = text.length();
+        if (length < 3) {
+            return;
+        }
+        char c1 = foldCase(text.charAt(0));
+        char c2 = foldCase(text.charAt(1));
+        for (int i = 2; i < length; i++) {
+            char c3 = foldCase(text.charAt(i));
+            buckets.set(bucket(c1, c2, c3));
+            c1 = c2;
+            c2 = c3;
+        }
+    }
+
+    private static int bucket(char c1, char c2, char c3) {
+        long trigram = ((long) c1 << 32) | ((long) c2 << 16) | c3;
+        return (int) ((trigram * 0x9E3779B97F4A7C15L) >>> (64 - BUCKET_BITS));
+    }
+
+    /**
+     * Folds the case of the given character, the same way that a case insensitive (US-ASCII only) regular expression does.
+     *
+     * @param c the character
+     * @return the character in lower case, if an US-ASCII upper case letter, otherwise the same character
+     */
+    private static char foldCase(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        return c;
+    }
+
+    /**
+     * Gets the literals, with at least 3 characters, that a text must contain to match the given regular expression.
+     * <p>
+     * The extraction is conservative, it returns no literals for regular expressions with alternations or inline flags and
+     * it stops at any construct that is not understood (for example, escaped letters or digits, like {@code \x41}).
+     * </p>
+     *
+     * @param regex the regular expression
+     * @return the literals, never {@code null}
+     */
+    static List<String> getRequiredLiterals(String regex) {
+        if (regex.indexOf('|') != -1 || hasInlineFlags(regex)) {
+            return Collections.emptyList();
+        }
+
+        List<String> literals = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int length = regex.length();
+        int i = 0;
+        while (i < length) {
+            char c = regex.charAt(i);
+            switch (c) {
+            case '\\':
+                if (i + 1 >= length) {
+                    return endLiterals(literals, literal);
+                }
+                char escaped = regex.charAt(i + 1);
+                if (escaped == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    String quoted = end == -1 ? regex.substring(i + 2) : regex.substring(i + 2, end);
+                    i = end == -1 ? length : end + 2;
+                    if (quoted.isEmpty()) {
+                        continue;
+                    }
+                    literal.append(quoted, 0, quoted.length() - 1);
+                    i = addLiteral(regex, i, quoted.charAt(quoted.length() - 1), literals, literal);
+                } else if (Character.isLetterOrDigit(escaped)) {
+                    // Character classes, back references, octal/hexadecimal/unicode escapes...
+                    return endLiterals(literals, literal);
+                } else {
+                    i = addLiteral(regex, i + 2, escaped, literals, literal);
+                }
+                break;
+            case '[':
+                endLiteral(literals, literal);
+                i = skipCharacterClass(regex, i);
+                if (i == -1) {
+                    return literals;
+                }
+                i = skipQuantifier(regex, i);
+                break;
+            case '(':
+                endLiteral(literals, literal);
+                i = skipGroup(regex, i);
+                if (i == -1) {
+                    return literals;
+                }
+                i = skipQuantifier(regex, i);
+                break;
+            case '.':
+            case '^':
+            case '$':
+                endLiteral(literals, literal);
+                i = skipQuantifier(regex, i + 1);
+                break;
+            case ')':
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                // Not expected at this point.
+                return endLiterals(literals, literal);
+            default:
+                i = addLiteral(regex, i + 1, c, literals, literal);
+            }
+        }
+        return endLiterals(literals, literal);
+    }
+
+    private static boolean hasInlineFlags(String regex) {
+        int idx = regex.indexOf("(?");
+        while (idx != -1) {
+            if (idx + 2 < regex.length()) {
+                char c = regex.charAt(idx + 2);
+                if (Character.isLetter(c) || c == '-') {
+                    return true;
+                }
+            }
+            idx = regex.indexOf("(?", idx + 2);
+        }
+        return false;
+    }
+
+    /**
+     * Adds the given literal character, unless followed by a quantifier that makes it optional.
+     *
+     * @return the index after the character and its quantifier, if any
+     */
+    private static int addLiteral(String regex, int i, char c, List<String> literals, StringBuilder literal) {
+        if (i < regex.length()) {
+            char next = regex.charAt(i);
+            if (next == '?' || next == '*' || next == '{') {
+                endLiteral(literals, literal);
+                return skipQuantifier(regex, i);
+            }
+            if (next == '+') {
+                literal.append(c);
+                endLiteral(literals, literal);
+                return skipQuantifier(regex, i);
+            }
+        }
+        literal.append(c);
+        return i;
+    }
+
+    private static int skipQuantifier(String regex, int i) {
+        if (i >= regex.length()) {
+            return i;
+        }
+        char c = regex.charAt(i);
+        if (c == '{') {
+            int end = regex.indexOf('}', i);
+            i = end == -1 ? regex.length() : end + 1;
+        } else if (c == '?' || c == '*' || c == '+') {
+            i++;
+        } else {
+            return i;
+        }
+        if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Skips the character class starting at the given index.
+     *
+     * @return the index after the character class, or -1 if not terminated
+     */
+    private static int skipCharacterClass(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+                i++;
+                if (i < regex.length() && regex.charAt(i) == '^') {
+                    i++;
+                }
+                if (i < regex.length() && regex.charAt(i) == ']') {
+                    // Literal, first character of the class.
+                    i++;
+                }
+                continue;
+            }
+            i++;
+            if (c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skips the group starting at the given index.
+     *
+     * @return the index after the group, or -1 if not terminated
+     */
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            switch (c) {
+            case '\\':
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    if (end == -1) {
+                        return -1;
+                    }
+                    i = end + 2;
+                } else {
+                    i += 2;
+                }
+                break;
+            case '[':
+                i = skipCharacterClass(regex, i);
+                if (i == -1) {
+                    return -1;
+                }
+                break;
+            case '(':
+                depth++;
+                i++;
+                break;
+            case ')':
+                depth--;
+                i++;
+                if (depth == 0) {
+                    return i;
+                }
+                break;
+            default:
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private static void endLiteral(List<String> literals, StringBuilder literal) {
+        if (literal.length() >= 3) {
+            literals.add(literal.toString());
+        }
+        literal.setLength(0);
+    }
+
+    private static List<String> endLiterals(List<String> literals, StringBuilder literal) {
+        endLiteral(literals, literal);
+        return literals;
+    }
+
+    /**
+     * Saves the index to the given file.
+     * <p>
+     * The index is written to a temporary file which then replaces the given file, so that the file is never left partially
+     * written.
+     * </p>
+     *
+     * @param file the file where the index is saved
+     * @throws IOException if an error occurred while saving the index
+     */
+    synchronized void save(File file) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(
+                new FileOutputStream(tempFile))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(NUMBER_OF_BUCKETS);
+            out.writeLong(sessionId);
+            writeBitSet(out, indexedIds);
+            writeBitSet(out, alwaysCandidateIds);
+            for (int bucket = 0; bucket < NUMBER_OF_BUCKETS; bucket++) {
+                int size = postingsSizes[bucket];
+                if (size == 0) {
+                    continue;
+                }
+                out.writeInt(bucket);
+                out.writeInt(size);
+                int[] ids = postings[bucket];
+                for (int i = 0; i < size; i++) {
+                    out.writeInt(ids[i]);
+                }
+            }
+            out.writeInt(-1);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeBitSet(DataOutputStream out, BitSet bitSet) throws IOException {
+        long[] words = bitSet.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Loads the index, of the session with the given ID, from the given file.
+     *
+     * @param file the file with the index
+     * @param sessionId the ID of the session
+     * @return the index, or {@code null} if the file is not of an index of the given session
+     * @throws IOException if an error occurred while loading the index
+     */
+    static SearchIndex load(File file, long sessionId) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+                new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != FILE_VERSION || in.readInt() != NUMBER_OF_BUCKETS
+                    || in.readLong() != sessionId) {
+                return null;
+            }
+
+            SearchIndex index = new SearchIndex(sessionId);
+            index.indexedIds.or(readBitSet(in));
+            index.alwaysCandidateIds.or(readBitSet(in));
+            index.maxIndexedId = Math.max(0, index.indexedIds.length() - 1);
+            int bucket;
+            while ((bucket = in.readInt()) != -1) {
+                if (bucket < 0 || bucket >= NUMBER_OF_BUCKETS) {
+                    throw new IOException("Invalid bucket: " + bucket);
+                }
+                int size = in.readInt();
+                if (size < 0) {
+                    throw new IOException("Invalid number of IDs: " + size);
+                }
+                int[] ids = new int[Math.max(size, INITIAL_POSTINGS_SIZE)];
+                for (int i = 0; i < size; i++) {
+                    ids[i] = in.readInt();
+                }
+                index.postings[bucket] = ids;
+                index.postingsSizes[bucket] = size;
+                index.totalPostings += size;
+            }
+            return index;
+        }
+    }
+
+    private static BitSet readBitSet(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid length: " + length);
+        }
+        long[] words = new long[length];
+        for (int i = 0; i < length; i++) {
+            words[i] = in.readLong();
+        }
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * The candidates to match a regular expression.
+     */
+    static class Candidates {
+
+        private final BitSet indexedIds;
+        private final BitSet matchingIds;
+
+        private Candidates(BitSet indexedIds, BitSet matchingIds) {
+            this.indexedIds = indexedIds;
+            this.matchingIds = matchingIds;
+        }
+
+        /**
+         * Tells whether or not the message with the given history ID might match the regular expression, either because it
+         * was not indexed or because it contains all the required literals.
+         *
+         * @param historyId the history ID of the message
+         * @return {@code true} if the message might match, {@code false} otherwise
+         */
+        boolean contains(int historyId) {
+            return !indexedIds.get(historyId) || matchingIds.get(historyId);
+        }
+
+        /**
+         * Gets the history IDs of the messages that do not match the regular expression, that is, the messages indexed
+         * that do not contain all the required literals.
+         *
+         * @return the history IDs of the messages that do not match
+         */
+        BitSet getExcludedIds() {
+            BitSet excludedIds = (BitSet) indexedIds.clone();
+            excludedIds.andNot(matchingIds);
+            return excludedIds;
+        }
+    }
+}
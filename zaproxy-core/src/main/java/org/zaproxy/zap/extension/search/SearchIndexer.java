@@ -0,0 +1,406 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+import org.parosproxy.paros.db.RecordHistory;
+import org.parosproxy.paros.db.TableHistory;
+import org.parosproxy.paros.model.HistoryReference;
+import org.parosproxy.paros.model.HistoryReferenceWriteListener;
+import org.parosproxy.paros.model.Model;
+import org.parosproxy.paros.model.Session;
+import org.parosproxy.paros.network.HttpMalformedHeaderException;
+import org.parosproxy.paros.network.HttpMessage;
+
+/**
+ * Keeps the {@link SearchIndex} of the current session up to date, indexing the messages as they are written to the
+ * history, in a background thread.
+ * <p>
+ * The index is saved next to the session database (with the extension {@value #INDEX_FILE_EXTENSION}) periodically, while
+ * indexing, and when the session changes, and loaded when the session is opened again. The messages not indexed, for
+ * example, because they were written after the index was last saved, are indexed in the background.
+ * </p>
+ * <p>
+ * The indexer is also the prefilter of the messages searched through the {@code TableHistory}.
+ * </p>
+ */
+class SearchIndexer implements HistoryReferenceWriteListener, TableHistory.SearchPrefilter {
+
+    private static final Logger logger = Logger.getLogger(SearchIndexer.class);
+
+    static final String INDEX_FILE_EXTENSION = ".searchindex";
+
+    /**
+     * The history types of the messages that are indexed, the same that are searched by {@link SearchThread}.
+     */
+    static final int[] HISTORY_TYPES = {
+            HistoryReference.TYPE_PROXIED,
+            HistoryReference.TYPE_ZAP_USER,
+            HistoryReference.TYPE_SPIDER };
+
+    private static final int MAX_QUEUED_MESSAGES = 1000;
+
+    private static final long STOP_TIMEOUT_IN_SECS = 10;
+
+    /**
+     * The number of messages indexed after which the index is saved.
+     */
+    private static final int SAVE_INTERVAL_MESSAGES = 1000;
+
+    /**
+     * The time, in milliseconds, after which the index is saved, if changed.
+     */
+    private static final long SAVE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private volatile SearchIndex index;
+
+    /**
+     * The session being indexed, accessed only by the indexer thread.
+     */
+    private Session indexedSession;
+
+    /**
+     * The change count of the index when it was last saved (or loaded), accessed only by the indexer thread.
+     */
+    private int savedChangeCount;
+
+    /**
+     * The time when the index was last saved (or loaded), accessed only by the indexer thread.
+     */
+    private long savedTime;
+
+    private volatile ThreadPoolExecutor executor;
+
+    /**
+     * Flag that indicates that messages were not indexed because the queue was full.
+     */
+    private final AtomicBoolean messagesDiscarded = new AtomicBoolean();
+
+    /**
+     * Gets the index of the current session.
+     *
+     * @return the index, or {@code null} if not yet loaded
+     */
+    SearchIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Tells whether or not the indexer is started.
+     *
+     * @return {@code true} if started, {@code false} otherwise
+     */
+    boolean isStarted() {
+        return executor != null;
+    }
+
+    /**
+     * Starts indexing the messages of the given session.
+     * <p>
+     * The index is reused if already of the given session, otherwise it's loaded from the file, if any. The messages not
+     * yet indexed are indexed in the background.
+     * </p>
+     *
+     * @param session the session
+     */
+    synchronized void start(final Session session) {
+        if (executor != null) {
+            return;
+        }
+
+        executor = new ThreadPoolExecutor(
+                1,
+                1,
+                0,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(MAX_QUEUED_MESSAGES),
+                new SearchIndexerThreadFactory(),
+                new RejectedExecutionHandler() {
+
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        if (!executor.isShutdown()) {
+                            messagesDiscarded.set(true);
+                        }
+                    }
+                });
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                SearchIndex sessionIndex = initIndex(session);
+                indexedSession = session;
+                savedChangeCount = sessionIndex.getChangeCount();
+                savedTime = System.currentTimeMillis();
+                index = sessionIndex;
+                indexMissingMessages(sessionIndex);
+            }
+        });
+        HistoryReference.addWriteListener(this);
+    }
+
+    /**
+     * Gets the index for the given session, the current index if of the same session, otherwise the one loaded from the
+     * file, if any, or a new index.
+     * <p>
+     * An index with messages after the last message of the history is discarded (and its file deleted), as the IDs of
+     * those messages might be reused.
+     * </p>
+     *
+     * @param session the session
+     * @return the index, never {@code null}
+     */
+    private SearchIndex initIndex(Session session) {
+        int lastHistoryId = Model.getSingleton().getDb().getTableHistory().lastIndex();
+
+        SearchIndex sessionIndex = index;
+        if (sessionIndex == null || sessionIndex.getSessionId() != session.getSessionId()) {
+            sessionIndex = loadIndex(session);
+        }
+
+        if (sessionIndex == null || sessionIndex.getMaxIndexedId() > lastHistoryId) {
+            deleteIndexFile(session);
+            return new SearchIndex(session.getSessionId());
+        }
+        return sessionIndex;
+    }
+
+    private static SearchIndex loadIndex(Session session) {
+        File file = getIndexFile(session);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+
+        SearchIndex sessionIndex = null;
+        try {
+            sessionIndex = SearchIndex.load(file, session.getSessionId());
+        } catch (IOException e) {
+            logger.warn("Failed to load the search index: " + e.getMessage(), e);
+        }
+        return sessionIndex;
+    }
+
+    private static void deleteIndexFile(Session session) {
+        File file = getIndexFile(session);
+        if (file != null && file.exists() && !file.delete()) {
+            logger.warn("Failed to delete the search index file: " + file.getAbsolutePath());
+        }
+    }
+
+    private static File getIndexFile(Session session) {
+        String fileName = session.getFileName();
+        if (fileName == null || fileName.isEmpty()) {
+            return null;
+        }
+        return new File(fileName + INDEX_FILE_EXTENSION);
+    }
+
+    /**
+     * Stops indexing the messages of the given session, saving the index next to the session database, if the session was
+     * saved.
+     * <p>
+     * Does not wait for the indexer thread to stop, the index is saved in a new thread once it has.
+     * </p>
+     *
+     * @param session the session
+     */
+    synchronized void stop(Session session) {
+        final ThreadPoolExecutor currentExecutor = executor;
+        if (currentExecutor == null) {
+            return;
+        }
+
+        HistoryReference.removeWriteListener(this);
+        executor = null;
+        currentExecutor.shutdownNow();
+        messagesDiscarded.set(false);
+
+        final SearchIndex sessionIndex = index;
+        final File file = getIndexFile(session);
+        if (sessionIndex == null || sessionIndex.getSessionId() != session.getSessionId() || file == null) {
+            return;
+        }
+        Thread saveThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    if (!currentExecutor.awaitTermination(STOP_TIMEOUT_IN_SECS, TimeUnit.SECONDS)) {
+                        logger.warn("Search indexer did not stop in time.");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                saveIndex(sessionIndex, file);
+            }
+        }, "ZAP-SearchIndexer-Save");
+        saveThread.setPriority(Thread.NORM_PRIORITY - 1);
+        saveThread.start();
+    }
+
+    private static void saveIndex(SearchIndex sessionIndex, File file) {
+        try {
+            sessionIndex.save(file);
+        } catch (IOException e) {
+            logger.warn("Failed to save the search index: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Saves the given index, in the indexer thread, if enough messages were indexed or enough time has passed since it was
+     * last saved.
+     *
+     * @param sessionIndex the index
+     * @param force {@code true} if the index should be saved if changed at all, {@code false} otherwise
+     */
+    private void saveIfNeeded(SearchIndex sessionIndex, boolean force) {
+        int changeCount = sessionIndex.getChangeCount();
+        int changes = changeCount - savedChangeCount;
+        if (changes == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!force && changes < SAVE_INTERVAL_MESSAGES && now - savedTime < SAVE_INTERVAL_MS) {
+            return;
+        }
+        File file = getIndexFile(indexedSession);
+        if (file == null) {
+            return;
+        }
+        saveIndex(sessionIndex, file);
+        savedChangeCount = changeCount;
+        savedTime = now;
+    }
+
+    @Override
+    public BitSet getExcludedHistoryIds(long sessionId, String regex) {
+        SearchIndex sessionIndex = index;
+        if (sessionIndex == null || sessionIndex.getSessionId() != sessionId) {
+            return null;
+        }
+        SearchIndex.Candidates candidates = sessionIndex.getCandidates(regex);
+        if (candidates == null) {
+            return null;
+        }
+        return candidates.getExcludedIds();
+    }
+
+    @Override
+    public void historyReferenceWritten(final HistoryReference historyReference, final HttpMessage msg) {
+        if (!isIndexedType(historyReference.getHistoryType())) {
+            return;
+        }
+
+        ThreadPoolExecutor currentExecutor = executor;
+        if (currentExecutor == null) {
+            return;
+        }
+
+        try {
+            currentExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    SearchIndex sessionIndex = index;
+                    if (sessionIndex == null || sessionIndex.getSessionId() != historyReference.getSessionId()) {
+                        return;
+                    }
+                    sessionIndex.add(historyReference.getHistoryId(), msg);
+
+                    if (messagesDiscarded.getAndSet(false)) {
+                        indexMissingMessages(sessionIndex);
+                    } else {
+                        saveIfNeeded(sessionIndex, false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutdown, the messages not indexed are indexed when the session is opened again.
+        }
+    }
+
+    private static boolean isIndexedType(int historyType) {
+        for (int type : HISTORY_TYPES) {
+            if (type == historyType) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indexes the messages of the session of the given index that were not yet indexed, until interrupted.
+     *
+     * @param sessionIndex the index
+     */
+    private void indexMissingMessages(SearchIndex sessionIndex) {
+        TableHistory tableHistory = Model.getSingleton().getDb().getTableHistory();
+        try {
+            do {
+                List<Integer> historyIds = tableHistory.getHistoryIdsOfHistType(
+                        sessionIndex.getSessionId(),
+                        HISTORY_TYPES);
+                for (Integer historyId : historyIds) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    int id = historyId.intValue();
+                    if (sessionIndex.isIndexed(id)) {
+                        continue;
+                    }
+                    RecordHistory recordHistory = tableHistory.read(id);
+                    if (recordHistory != null) {
+                        sessionIndex.add(id, recordHistory.getHttpMessage());
+                        saveIfNeeded(sessionIndex, false);
+                    }
+                }
+            } while (messagesDiscarded.getAndSet(false));
+            saveIfNeeded(sessionIndex, true);
+        } catch (SQLException | HttpMalformedHeaderException e) {
+            if (!Thread.currentThread().isInterrupted()) {
+                logger.warn("Failed to index the history: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static class SearchIndexerThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "ZAP-SearchIndexer");
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        }
+    }
+}
@@ -46,6 +46,7 @@ public class SearchThread extends Thread {
 	private boolean searchJustInScope = false;
 	private String baseUrl;
 	private PaginationConstraintsChecker pcc;
+	private SearchIndex searchIndex;
 	
     private boolean searchAllOccurrences;
 
@@ -75,6 +76,15 @@ public class SearchThread extends Thread {
 		this.searchAllOccurrences = searchAllOccurrences;
 	}
 
+    /**
+     * Sets the index used to skip the messages that can not match the search.
+     *
+     * @param searchIndex the index, or {@code null} to search all messages
+     */
+    void setSearchIndex(SearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
     public void stopSearch() {
     	this.stopSearch = true;
     }
@@ -113,6 +123,11 @@ public class SearchThread extends Thread {
 
 			List<Integer> list = Model.getSingleton().getDb().getTableHistory().getHistoryIdsOfHistType(session.getSessionId(),
 							HistoryReference.TYPE_PROXIED, HistoryReference.TYPE_ZAP_USER, HistoryReference.TYPE_SPIDER);
+			// The inverse search needs to check all messages
+			SearchIndex.Candidates candidates = null;
+			if (searchIndex != null && !inverse) {
+				candidates = searchIndex.getCandidates(filter);
+			}
 			int last = list.size();
 			int currentRecordId = 0;
 			for (int index=0;index < last;index++){
@@ -120,6 +135,9 @@ public class SearchThread extends Thread {
 					break;
 				}
 			    int historyId = list.get(index).intValue();
+			    if (candidates != null && !candidates.contains(historyId)) {
+			        continue;
+			    }
 			    try {
 			            currentRecordId = index;
 			        	// Create the href to ensure the msg is set up correctly
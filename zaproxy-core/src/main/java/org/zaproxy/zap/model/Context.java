@@ -68,8 +68,13 @@ public class Context {
 
 	private List<String> includeInRegexs = new ArrayList<>();
 	private List<String> excludeFromRegexs = new ArrayList<>();
-	private List<Pattern> includeInPatterns = new ArrayList<>();
-	private List<Pattern> excludeFromPatterns = new ArrayList<>();
+
+	/**
+	 * The matchers of the include and exclude regexs, created when first needed and discarded (set to {@code null}) when the
+	 * regexs change, under the lock of this context.
+	 */
+	private volatile UrlMatcher includeMatcher;
+	private volatile UrlMatcher excludeMatcher;
 
 	/** The authentication method. */
 	private AuthenticationMethod authenticationMethod = null;
@@ -128,12 +133,7 @@ public class Context {
 			// Strip off any parameters
 			url = url.substring(0, url.indexOf("?"));
 		}
-		for (Pattern p : this.includeInPatterns) {
-			if (p.matcher(url).matches()) {
-				return true;
-			}
-		}
-		return false;
+		return getIncludeMatcher().matches(url);
 	}
 
 	public boolean isExcludedFromScope(SiteNode sn) {
@@ -158,12 +158,53 @@ public class Context {
 			// Strip off any parameters
 			url = url.substring(0, url.indexOf("?"));
 		}
-		for (Pattern p : this.excludeFromPatterns) {
-			if (p.matcher(url).matches()) {
-				return true;
+		return getExcludeMatcher().matches(url);
+	}
+
+	/**
+	 * Gets the matcher of the regexs that include URLs in this context.
+	 * <p>
+	 * The matcher is replaced by a new one when the regexs change.
+	 * </p>
+	 * 
+	 * @return the matcher of the include regexs
+	 * @see #getIncludeInContextRegexs()
+	 */
+	public UrlMatcher getIncludeMatcher() {
+		UrlMatcher matcher = includeMatcher;
+		if (matcher == null) {
+			synchronized (this) {
+				matcher = includeMatcher;
+				if (matcher == null) {
+					matcher = new UrlMatcher(includeInRegexs);
+					includeMatcher = matcher;
+				}
 			}
 		}
-		return false;
+		return matcher;
+	}
+
+	/**
+	 * Gets the matcher of the regexs that exclude URLs from this context.
+	 * <p>
+	 * The matcher is replaced by a new one when the regexs change.
+	 * </p>
+	 * 
+	 * @return the matcher of the exclude regexs
+	 * @see #getExcludeFromContextRegexs()
+	 */
+	public UrlMatcher getExcludeMatcher() {
+		UrlMatcher matcher = excludeMatcher;
+		if (matcher == null) {
+			synchronized (this) {
+				matcher = excludeMatcher;
+				if (matcher == null) {
+					matcher = new UrlMatcher(excludeFromRegexs);
+					excludeMatcher = matcher;
+				}
+			}
+		}
+		return matcher;
 	}
 
 	public boolean isInContext(HistoryReference href) {
@@ -263,15 +304,15 @@ public class Context {
 				return;
 			}
 		}
-		includeInRegexs.clear();
-		includeInPatterns.clear();
-		for (String url : includeRegexs) {
-			url = url.trim();
-			if (url.length() > 0) {
-				Pattern p = Pattern.compile(url, Pattern.CASE_INSENSITIVE);
-				includeInRegexs.add(url);
-				includeInPatterns.add(p);
+		synchronized (this) {
+			includeInRegexs.clear();
+			for (String url : includeRegexs) {
+				url = url.trim();
+				if (url.length() > 0) {
+					includeInRegexs.add(url);
+				}
 			}
+			includeMatcher = null;
 		}
 	}
 
@@ -298,9 +339,11 @@ public class Context {
 	}
 
 	public void addIncludeInContextRegex(String includeRegex) {
-		Pattern p = Pattern.compile(includeRegex, Pattern.CASE_INSENSITIVE);
-		includeInPatterns.add(p);
-		includeInRegexs.add(includeRegex);
+		Pattern.compile(includeRegex, Pattern.CASE_INSENSITIVE);
+		synchronized (this) {
+			includeInRegexs.add(includeRegex);
+			includeMatcher = null;
+		}
 	}
 
 	public List<String> getExcludeFromContextRegexs() {
@@ -325,22 +368,24 @@ public class Context {
 			}
 		}
 
-		excludeFromRegexs.clear();
-		excludeFromPatterns.clear();
-		for (String url : excludeRegexs) {
-			url = url.trim();
-			if (url.length() > 0) {
-				Pattern p = Pattern.compile(url, Pattern.CASE_INSENSITIVE);
-				excludeFromPatterns.add(p);
-				excludeFromRegexs.add(url);
+		synchronized (this) {
+			excludeFromRegexs.clear();
+			for (String url : excludeRegexs) {
+				url = url.trim();
+				if (url.length() > 0) {
+					excludeFromRegexs.add(url);
+				}
 			}
+			excludeMatcher = null;
 		}
 	}
 
 	public void addExcludeFromContextRegex(String excludeRegex) {
-		Pattern p = Pattern.compile(excludeRegex, Pattern.CASE_INSENSITIVE);
-		excludeFromPatterns.add(p);
-		excludeFromRegexs.add(excludeRegex);
+		Pattern.compile(excludeRegex, Pattern.CASE_INSENSITIVE);
+		synchronized (this) {
+			excludeFromRegexs.add(excludeRegex);
+			excludeMatcher = null;
+		}
 	}
 
 	public void save() {
@@ -514,9 +559,7 @@ public class Context {
 		newContext.description = this.description;
 		newContext.name = this.name;
 		newContext.includeInRegexs = new ArrayList<>(this.includeInRegexs);
-		newContext.includeInPatterns = new ArrayList<>(this.includeInPatterns);
 		newContext.excludeFromRegexs = new ArrayList<>(this.excludeFromRegexs);
-		newContext.excludeFromPatterns = new ArrayList<>(this.excludeFromPatterns);
 		newContext.inScope = this.inScope;
 		newContext.techSet = new TechSet(this.techSet);
 		newContext.authenticationMethod = this.authenticationMethod.clone();
@@ -0,0 +1,315 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A matcher of URLs against a list of regular expressions, compiled once, to match the URLs faster than matching each
+ * regular expression in turn.
+ * <p>
+ * A URL matches if it matches any of the regular expressions, as with
+ * {@code Pattern.compile(regex, Pattern.CASE_INSENSITIVE).matcher(url).matches()}. The regular expressions that are just a
+ * literal URL (for example, created with {@code Pattern.quote(url)}), optionally followed by {@code .*}, are kept in a prefix
+ * tree, matched in a single pass over the URL. The remaining regular expressions are combined into a single alternation.
+ * </p>
+ * This class is immutable and thread safe.
+ *
+ * @see Context#getIncludeMatcher()
+ * @see Context#getExcludeMatcher()
+ */
+public class UrlMatcher {
+
+	private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+
+	private static final String ANY_SUFFIX = ".*";
+
+	private final List<String> regexs;
+
+	private final PrefixNode prefixTree;
+	private final boolean prefixTreeEmpty;
+
+	private final Pattern combinedPattern;
+	private final List<Pattern> patterns;
+
+	/**
+	 * Constructs a {@code UrlMatcher} with the given regular expressions.
+	 *
+	 * @param regexs the regular expressions, must be valid
+	 * @throws PatternSyntaxException if any of the regular expressions is not valid
+	 */
+	public UrlMatcher(Collection<String> regexs) {
+		this.regexs = Collections.unmodifiableList(new ArrayList<>(regexs));
+		this.prefixTree = new PrefixNode();
+		this.patterns = new ArrayList<>(0);
+
+		boolean literals = false;
+		List<String> combinableRegexs = new ArrayList<>();
+		for (String regex : this.regexs) {
+			if (addLiteral(regex)) {
+				literals = true;
+			} else if (isCombinable(regex)) {
+				combinableRegexs.add(regex);
+			} else {
+				patterns.add(Pattern.compile(regex, Pattern.CASE_INSENSITIVE));
+			}
+		}
+		this.prefixTreeEmpty = !literals;
+		this.combinedPattern = combine(combinableRegexs);
+	}
+
+	/**
+	 * Creates a {@code UrlMatcher} that matches the URLs matched by any of the given matchers.
+	 *
+	 * @param matchers the matchers to merge
+	 * @return the merged matcher
+	 */
+	public static UrlMatcher merge(Collection<UrlMatcher> matchers) {
+		List<String> regexs = new ArrayList<>();
+		for (UrlMatcher matcher : matchers) {
+			regexs.addAll(matcher.regexs);
+		}
+		return new UrlMatcher(regexs);
+	}
+
+	/**
+	 * Gets the regular expressions of this matcher.
+	 *
+	 * @return an unmodifiable list with the regular expressions
+	 */
+	public List<String> getRegexs() {
+		return regexs;
+	}
+
+	/**
+	 * Tells whether or not the given URL matches any of the regular expressions.
+	 *
+	 * @param url the URL to match
+	 * @return {@code true} if the URL matches, {@code false} otherwise (or if the URL is {@code null})
+	 */
+	public boolean matches(String url) {
+		if (url == null) {
+			return false;
+		}
+		if (!prefixTreeEmpty && prefixTree.matches(url)) {
+			return true;
+		}
+		if (combinedPattern != null && combinedPattern.matcher(url).matches()) {
+			return true;
+		}
+		for (Pattern pattern : patterns) {
+			if (pattern.matcher(url).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the given regular expression to the prefix tree, if it's a literal, optionally followed by {@code .*}.
+	 *
+	 * @param regex the regular expression
+	 * @return {@code true} if added, {@code false} if it's not a literal
+	 */
+	private boolean addLiteral(String regex) {
+		StringBuilder literal = new StringBuilder(regex.length());
+		boolean prefix = false;
+		int i = 0;
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				if (i + 1 >= regex.length()) {
+					return false;
+				}
+				char next = regex.charAt(i + 1);
+				if (next == 'Q') {
+					int end = regex.indexOf("\\E", i + 2);
+					if (end == -1) {
+						end = regex.length();
+					}
+					literal.append(regex, i + 2, end);
+					i = end + 2;
+				} else if (Character.isLetterOrDigit(next)) {
+					// A character class, back reference, boundary...
+					return false;
+				} else {
+					literal.append(next);
+					i += 2;
+				}
+			} else if (regex.startsWith(ANY_SUFFIX, i) && i + ANY_SUFFIX.length() == regex.length()) {
+				prefix = true;
+				break;
+			} else if (METACHARACTERS.indexOf(c) != -1) {
+				return false;
+			} else {
+				literal.append(c);
+				i++;
+			}
+		}
+		prefixTree.add(literal, prefix);
+		return true;
+	}
+
+	/**
+	 * Tells whether or not the given regular expression can be combined with others in an alternation, without changing
+	 * its meaning, that is, it has no back references or named groups and no unterminated quotes.
+	 *
+	 * @param regex the regular expression
+	 * @return {@code true} if it can be combined, {@code false} otherwise
+	 */
+	private static boolean isCombinable(String regex) {
+		for (int i = 0; i < regex.length() - 1; i++) {
+			char c = regex.charAt(i);
+			char next = regex.charAt(i + 1);
+			if (c == '\\') {
+				if (Character.isDigit(next) || next == 'k') {
+					return false;
+				}
+				if (next == 'Q' && regex.indexOf("\\E", i + 2) == -1) {
+					return false;
+				}
+				i++;
+			} else if (c == '(' && regex.startsWith("?<", i + 1) && i + 3 < regex.length()
+					&& Character.isLetter(regex.charAt(i + 3))) {
+				return false;
+			} else if (c == '#') {
+				// Might be a comment, if the comments flag is set inline.
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Pattern combine(List<String> regexs) {
+		if (regexs.isEmpty()) {
+			return null;
+		}
+		if (regexs.size() == 1) {
+			return Pattern.compile(regexs.get(0), Pattern.CASE_INSENSITIVE);
+		}
+
+		StringBuilder strBuilder = new StringBuilder();
+		for (String regex : regexs) {
+			if (strBuilder.length() > 0) {
+				strBuilder.append('|');
+			}
+			strBuilder.append("(?:").append(regex).append(')');
+		}
+		try {
+			return Pattern.compile(strBuilder.toString(), Pattern.CASE_INSENSITIVE);
+		} catch (PatternSyntaxException e) {
+			// Should not happen, but match them separately if it does.
+			for (String regex : regexs) {
+				patterns.add(Pattern.compile(regex, Pattern.CASE_INSENSITIVE));
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Converts the given character to lower case, if it's an US-ASCII letter, the same case-insensitive matching done by
+	 * {@code Pattern.CASE_INSENSITIVE}.
+	 */
+	private static char toLowerCase(char c) {
+		if (c >= 'A' && c <= 'Z') {
+			return (char) (c + ('a' - 'A'));
+		}
+		return c;
+	}
+
+	/**
+	 * Tells whether or not the given character is a line terminator, which is not matched by {@code .} (without
+	 * {@code Pattern.DOTALL}).
+	 */
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+
+	/**
+	 * A node of the prefix tree, keyed by the (lower case) characters of the literals.
+	 */
+	private static class PrefixNode {
+
+		private Map<Character, PrefixNode> children;
+
+		/**
+		 * Whether or not a literal ends in this node.
+		 */
+		private boolean exact;
+
+		/**
+		 * Whether or not a literal followed by {@code .*} ends in this node.
+		 */
+		private boolean prefix;
+
+		void add(CharSequence literal, boolean prefix) {
+			PrefixNode node = this;
+			for (int i = 0; i < literal.length(); i++) {
+				Character c = Character.valueOf(toLowerCase(literal.charAt(i)));
+				if (node.children == null) {
+					node.children = new HashMap<>();
+				}
+				PrefixNode child = node.children.get(c);
+				if (child == null) {
+					child = new PrefixNode();
+					node.children.put(c, child);
+				}
+				node = child;
+			}
+			if (prefix) {
+				node.prefix = true;
+			} else {
+				node.exact = true;
+			}
+		}
+
+		boolean matches(String url) {
+			int lastLineTerminator = -1;
+			for (int i = url.length() - 1; i >= 0; i--) {
+				if (isLineTerminator(url.charAt(i))) {
+					lastLineTerminator = i;
+					break;
+				}
+			}
+
+			PrefixNode node = this;
+			for (int i = 0; i < url.length(); i++) {
+				if (node.prefix && lastLineTerminator < i) {
+					return true;
+				}
+				if (node.children == null) {
+					return false;
+				}
+				node = node.children.get(Character.valueOf(toLowerCase(url.charAt(i))));
+				if (node == null) {
+					return false;
+				}
+			}
+			return node.exact || node.prefix;
+		}
+	}
+}
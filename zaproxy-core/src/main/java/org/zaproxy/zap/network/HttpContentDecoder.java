@@ -0,0 +1,42 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ * 
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0 
+ *   
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ */
+package org.zaproxy.zap.network;
+
+import java.io.IOException;
+
+/**
+ * A decoder of HTTP content codings (for example, {@code gzip} or {@code deflate}).
+ * <p>
+ * Implementations must be thread-safe, the same instance is used concurrently by the proxy and other components.
+ * </p>
+ * 
+ * @see HttpContentDecoders#register(String, HttpContentDecoder)
+ */
+public interface HttpContentDecoder {
+
+    /**
+     * Decodes the given content.
+     * 
+     * @param content the encoded content
+     * @param offset the offset of the encoded content in the array
+     * @param length the length of the encoded content
+     * @return the decoded content, never {@code null}
+     * @throws IOException if the content is malformed or truncated
+     */
+    byte[] decode(byte[] content, int offset, int length) throws IOException;
+}
@@ -0,0 +1,416 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ * 
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0 
+ *   
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ */
+package org.zaproxy.zap.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.apache.log4j.Logger;
+import org.parosproxy.paros.network.HttpHeader;
+import org.parosproxy.paros.network.HttpMessage;
+import org.parosproxy.paros.network.HttpResponseHeader;
+
+/**
+ * The registry of {@link HttpContentDecoder}s, by content coding.
+ * <p>
+ * By default it has decoders for {@code gzip} and {@code deflate} codings, which decode the content directly from and to
+ * byte arrays (sized from the length hints available in the content) using pooled {@code Inflater}s. Other codings (for
+ * example, {@code br}) can be added with {@link #register(String, HttpContentDecoder)}.
+ * </p>
+ * <p>
+ * The {@code x-} prefix of the codings (for example, {@code x-gzip}) is ignored.
+ * </p>
+ */
+public final class HttpContentDecoders {
+
+    private static final Logger LOGGER = Logger.getLogger(HttpContentDecoders.class);
+
+    private static final int MAX_POOLED_INFLATERS = 32;
+
+    /**
+     * The maximum size used to pre-allocate the decoded content, the buffer grows as needed beyond it.
+     */
+    private static final int MAX_SIZE_HINT = 1024 * 1024;
+
+    /**
+     * The maximum ratio between the size pre-allocated and the length of the encoded content, to not trust the length hints
+     * present in the content (controlled by the server, or garbage if the content is truncated).
+     */
+    private static final int MAX_SIZE_HINT_RATIO = 4;
+
+    private static final int MIN_BUFFER_SIZE = 1024;
+
+    private static final byte[] DUMMY_BYTE = new byte[1];
+
+    private static final Map<String, HttpContentDecoder> DECODERS = new ConcurrentHashMap<>();
+
+    static {
+        InflaterPool rawInflaters = new InflaterPool(true, MAX_POOLED_INFLATERS);
+        InflaterPool zlibInflaters = new InflaterPool(false, MAX_POOLED_INFLATERS);
+
+        DECODERS.put(HttpHeader.GZIP, new GzipDecoder(rawInflaters));
+        DECODERS.put(HttpHeader.DEFLATE, new DeflateDecoder(rawInflaters, zlibInflaters));
+    }
+
+    private HttpContentDecoders() {
+    }
+
+    /**
+     * Registers the given decoder for the given content coding, replacing the previous one, if any.
+     * 
+     * @param coding the content coding, for example, {@code br}
+     * @param decoder the decoder
+     * @throws IllegalArgumentException if any of the parameters is {@code null} or if the coding is empty
+     */
+    public static void register(String coding, HttpContentDecoder decoder) {
+        if (coding == null || coding.trim().isEmpty()) {
+            throw new IllegalArgumentException("Parameter coding must not be null nor empty.");
+        }
+        if (decoder == null) {
+            throw new IllegalArgumentException("Parameter decoder must not be null.");
+        }
+        DECODERS.put(normaliseCoding(coding), decoder);
+    }
+
+    /**
+     * Unregisters the decoder of the given content coding.
+     * 
+     * @param coding the content coding
+     */
+    public static void unregister(String coding) {
+        if (coding != null) {
+            DECODERS.remove(normaliseCoding(coding));
+        }
+    }
+
+    /**
+     * Gets the decoder for the given content coding.
+     * 
+     * @param coding the content coding, for example, {@code gzip} or {@code x-gzip}
+     * @return the decoder, or {@code null} if there's no decoder for the coding
+     */
+    public static HttpContentDecoder getDecoder(String coding) {
+        if (coding == null) {
+            return null;
+        }
+        return DECODERS.get(normaliseCoding(coding));
+    }
+
+    /**
+     * Decodes the response body of the given message, if it has a (supported) content coding.
+     * <p>
+     * On success the {@code Content-Encoding} header is removed and the {@code Content-Length} header, if present,
+     * updated.
+     * </p>
+     * 
+     * @param msg the message whose response body should be decoded
+     * @return {@code true} if the response body was decoded, {@code false} otherwise
+     * @throws IOException if the response body is malformed or truncated
+     */
+    public static boolean decodeResponseBody(HttpMessage msg) throws IOException {
+        HttpResponseHeader responseHeader = msg.getResponseHeader();
+        String coding = responseHeader.getHeader(HttpHeader.CONTENT_ENCODING);
+        if (coding == null || HttpHeader.IDENTITY.equalsIgnoreCase(coding.trim())) {
+            return false;
+        }
+
+        HttpContentDecoder decoder = getDecoder(coding);
+        if (decoder == null) {
+            LOGGER.warn("Unsupported content encoding method: " + coding);
+            return false;
+        }
+
+        byte[] content = msg.getResponseBody().getBytes();
+        byte[] decoded = decoder.decode(content, 0, content.length);
+
+        msg.setResponseBody(decoded);
+        responseHeader.setHeader(HttpHeader.CONTENT_ENCODING, null);
+        if (responseHeader.getHeader(HttpHeader.CONTENT_LENGTH) != null) {
+            responseHeader.setHeader(HttpHeader.CONTENT_LENGTH, Integer.toString(decoded.length));
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the given content with the decoder of the given content coding.
+     * 
+     * @param coding the content coding
+     * @param content the encoded content
+     * @return the decoded content, or the same content if the coding is {@code null}, {@code identity} or not supported
+     * @throws IOException if the content is malformed or truncated
+     */
+    public static byte[] decode(String coding, byte[] content) throws IOException {
+        HttpContentDecoder decoder = getDecoder(coding);
+        if (decoder == null) {
+            return content;
+        }
+        return decoder.decode(content, 0, content.length);
+    }
+
+    private static String normaliseCoding(String coding) {
+        String normalisedCoding = coding.trim().toLowerCase(Locale.ROOT);
+        if (normalisedCoding.startsWith("x-")) {
+            return normalisedCoding.substring(2);
+        }
+        return normalisedCoding;
+    }
+
+    /**
+     * Inflates the content, starting at the given offset, until the end of the deflate stream.
+     * 
+     * @return the number of bytes of the content consumed
+     */
+    private static int inflate(Inflater inflater, byte[] content, int offset, int length, DecodedContent out)
+            throws IOException {
+        inflater.setInput(content, offset, length);
+        boolean dummyByteUsed = false;
+        try {
+            while (!inflater.finished()) {
+                out.ensureAvailable();
+                int len = inflater.inflate(out.buffer, out.size, out.buffer.length - out.size);
+                if (len == 0) {
+                    if (inflater.needsInput()) {
+                        if (dummyByteUsed) {
+                            throw new EOFException("Unexpected end of compressed content.");
+                        }
+                        // Raw deflate data might require an extra "dummy" byte to finish, see Inflater(boolean).
+                        inflater.setInput(DUMMY_BYTE);
+                        dummyByteUsed = true;
+                        continue;
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new ZipException("Compressed content requires a preset dictionary.");
+                    }
+                }
+                out.size += len;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+        if (dummyByteUsed) {
+            return length;
+        }
+        return length - inflater.getRemaining();
+    }
+
+    private static int sizeHint(int hint, int encodedLength) {
+        int maxHint = (int) Math.min(MAX_SIZE_HINT, (long) encodedLength * MAX_SIZE_HINT_RATIO);
+        if (hint <= 0 || hint > maxHint) {
+            hint = maxHint;
+        }
+        return Math.max(MIN_BUFFER_SIZE, hint);
+    }
+
+    /**
+     * The decoded content, a growable byte array.
+     */
+    private static class DecodedContent {
+
+        private byte[] buffer;
+        private int size;
+
+        DecodedContent(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void ensureAvailable() {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(MIN_BUFFER_SIZE, buffer.length * 2));
+            }
+        }
+
+        byte[] toByteArray() {
+            if (size == buffer.length) {
+                return buffer;
+            }
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    /**
+     * Decoder of {@code gzip} content coding, supports multiple members. The trailing bytes that are not a member are
+     * ignored.
+     */
+    private static class GzipDecoder implements HttpContentDecoder {
+
+        private static final int FHCRC = 2;
+        private static final int FEXTRA = 4;
+        private static final int FNAME = 8;
+        private static final int FCOMMENT = 16;
+
+        private static final int TRAILER_LENGTH = 8;
+
+        private final InflaterPool inflaters;
+
+        GzipDecoder(InflaterPool inflaters) {
+            this.inflaters = inflaters;
+        }
+
+        @Override
+        public byte[] decode(byte[] content, int offset, int length) throws IOException {
+            int end = offset + length;
+            // The last 4 bytes have the size of the (last member) uncompressed content.
+            int isize = length >= 4 ? readInt(content, end - 4) : -1;
+            DecodedContent out = new DecodedContent(sizeHint(isize, length));
+
+            Inflater inflater = inflaters.acquire();
+            try {
+                int pos = readHeader(content, offset, end);
+                while (true) {
+                    int memberStart = out.size;
+                    pos += inflate(inflater, content, pos, end - pos, out);
+                    pos = readTrailer(content, pos, end, out, memberStart);
+                    inflater.reset();
+                    if (pos >= end) {
+                        break;
+                    }
+                    try {
+                        pos = readHeader(content, pos, end);
+                    } catch (IOException e) {
+                        // Not another member, ignore the trailing bytes (as GZIPInputStream does).
+                        break;
+                    }
+                }
+            } finally {
+                inflaters.release(inflater);
+            }
+            return out.toByteArray();
+        }
+
+        private static int readHeader(byte[] content, int pos, int end) throws IOException {
+            if (end - pos < 10) {
+                throw new EOFException("Unexpected end of GZIP header.");
+            }
+            if (content[pos] != (byte) 0x1f || content[pos + 1] != (byte) 0x8b) {
+                throw new ZipException("Not in GZIP format.");
+            }
+            if (content[pos + 2] != 8) {
+                throw new ZipException("Unsupported GZIP compression method.");
+            }
+            int flags = content[pos + 3] & 0xff;
+            // Skip MTIME, XFL and OS
+            int current = pos + 10;
+            if ((flags & FEXTRA) != 0) {
+                checkAvailable(current, 2, end);
+                int xlen = (content[current] & 0xff) | ((content[current + 1] & 0xff) << 8);
+                current += 2 + xlen;
+            }
+            if ((flags & FNAME) != 0) {
+                current = skipZeroTerminated(content, current, end);
+            }
+            if ((flags & FCOMMENT) != 0) {
+                current = skipZeroTerminated(content, current, end);
+            }
+            if ((flags & FHCRC) != 0) {
+                current += 2;
+            }
+            checkAvailable(current, 0, end);
+            return current;
+        }
+
+        private static int readTrailer(byte[] content, int pos, int end, DecodedContent out, int memberStart)
+                throws IOException {
+            checkAvailable(pos, TRAILER_LENGTH, end);
+            CRC32 crc = new CRC32();
+            crc.update(out.buffer, memberStart, out.size - memberStart);
+            if (readInt(content, pos) != (int) crc.getValue()) {
+                throw new ZipException("Corrupt GZIP trailer, CRC mismatch.");
+            }
+            if (readInt(content, pos + 4) != out.size - memberStart) {
+                throw new ZipException("Corrupt GZIP trailer, size mismatch.");
+            }
+            return pos + TRAILER_LENGTH;
+        }
+
+        private static int skipZeroTerminated(byte[] content, int pos, int end) throws IOException {
+            int current = pos;
+            while (current < end && content[current] != 0) {
+                current++;
+            }
+            checkAvailable(current, 1, end);
+            return current + 1;
+        }
+
+        private static void checkAvailable(int pos, int required, int end) throws EOFException {
+            if (pos + required > end) {
+                throw new EOFException("Unexpected end of GZIP content.");
+            }
+        }
+
+        private static int readInt(byte[] content, int pos) {
+            return (content[pos] & 0xff) | ((content[pos + 1] & 0xff) << 8) | ((content[pos + 2] & 0xff) << 16)
+                    | ((content[pos + 3] & 0xff) << 24);
+        }
+    }
+
+    /**
+     * Decoder of {@code deflate} content coding, supports both ZLIB wrapped and raw deflate data (as sent by some
+     * servers).
+     */
+    private static class DeflateDecoder implements HttpContentDecoder {
+
+        private final InflaterPool rawInflaters;
+        private final InflaterPool zlibInflaters;
+
+        DeflateDecoder(InflaterPool rawInflaters, InflaterPool zlibInflaters) {
+            this.rawInflaters = rawInflaters;
+            this.zlibInflaters = zlibInflaters;
+        }
+
+        @Override
+        public byte[] decode(byte[] content, int offset, int length) throws IOException {
+            if (isZlibWrapped(content, offset, length)) {
+                try {
+                    return decode(zlibInflaters, content, offset, length);
+                } catch (ZipException e) {
+                    // Raw deflate data that just looks like ZLIB wrapped, try again.
+                }
+            }
+            return decode(rawInflaters, content, offset, length);
+        }
+
+        private static byte[] decode(InflaterPool pool, byte[] content, int offset, int length) throws IOException {
+            DecodedContent out = new DecodedContent(sizeHint(-1, length));
+
+            Inflater inflater = pool.acquire();
+            try {
+                inflate(inflater, content, offset, length, out);
+            } finally {
+                pool.release(inflater);
+            }
+            return out.toByteArray();
+        }
+
+        private static boolean isZlibWrapped(byte[] content, int offset, int length) {
+            if (length < 2) {
+                return false;
+            }
+            int cmf = content[offset] & 0xff;
+            int flg = content[offset + 1] & 0xff;
+            return (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        }
+    }
+}
@@ -37,6 +37,16 @@ public class HttpRequestBody extends HttpBody {
 		super(data);
 	}
 
+	/**
+	 * Constructs a {@code HttpRequestBody} with the same contents as the given body, sharing its bytes until one of the bodies is
+	 * changed.
+	 * 
+	 * @param body the body to copy
+	 */
+	public HttpRequestBody(HttpRequestBody body) {
+		super(body);
+	}
+
 	// Construct a HTTP POST Body from the variables in postParams
 	public void setFormParams(TreeSet<HtmlParameter> postParams) {
 		if (postParams.isEmpty()) {
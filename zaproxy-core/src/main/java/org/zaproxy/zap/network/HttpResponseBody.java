@@ -45,6 +45,16 @@ public class HttpResponseBody extends HttpBody {
 		super(data);
 	}
 
+	/**
+	 * Constructs a {@code HttpResponseBody} with the same contents as the given body, sharing its bytes until one of the bodies is
+	 * changed.
+	 * 
+	 * @param body the body to copy
+	 */
+	public HttpResponseBody(HttpResponseBody body) {
+		super(body);
+	}
+
 	@Override
 	public String createCachedString(String charset) {
 		String result = null;
@@ -0,0 +1,54 @@
+/*
+ * OWASP Zed Attack Proxy (ZAP) and its related class files.
+ * 
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0 
+ *   
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ */
+
+package org.zaproxy.zap.network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.parosproxy.paros.network.HttpMessage;
+
+/**
+ * A handler that decides whether or not the body of a response should be streamed, as it is read from the server, instead
+ * of being fully read into the response body of the message.
+ * 
+ * @see org.parosproxy.paros.network.HttpSender#sendAndReceive(HttpMessage, HttpResponseStreamHandler)
+ */
+public interface HttpResponseStreamHandler {
+
+    /**
+     * Notifies the handler that the response header was received, before reading the response body.
+     * <p>
+     * If the returned stream is not {@code null} the response body is written to it as it is read, while only the first
+     * {@link #getMaxBufferedBodySize()} bytes are kept in the response body of the message. If {@code null} the response
+     * body is fully read into the message, as usual.
+     * </p>
+     * 
+     * @param msg the message with the request and the response header, never {@code null}
+     * @return the stream to which the response body should be written, or {@code null} if it should not be streamed
+     * @throws IOException if an error occurred while preparing the stream (for example, writing the response header)
+     */
+    OutputStream onResponseHeaderReceived(HttpMessage msg) throws IOException;
+
+    /**
+     * Gets the maximum number of bytes of a streamed response body that are kept in the message.
+     * 
+     * @return the maximum number of bytes kept, zero or a negative value to not keep any
+     */
+    int getMaxBufferedBodySize();
+}
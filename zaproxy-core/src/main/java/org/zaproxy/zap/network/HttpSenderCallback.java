@@ -0,0 +1,48 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import java.io.IOException;
+
+import org.parosproxy.paros.network.HttpMessage;
+
+/**
+ * A callback notified when a message sent asynchronously completes.
+ * <p>
+ * The methods are called by the thread that sent the message, not the one that requested the send.
+ * </p>
+ *
+ * @see org.parosproxy.paros.network.HttpSender#sendAsync(HttpMessage, boolean, HttpSenderCallback)
+ */
+public interface HttpSenderCallback {
+
+    /**
+     * Called when the response of the given message was received.
+     *
+     * @param msg the message, with the request and response
+     */
+    void responseReceived(HttpMessage msg);
+
+    /**
+     * Called when an error occurred while sending the request or reading the response of the given message.
+     *
+     * @param msg the message whose send failed
+     * @param e the cause of the failure
+     */
+    void sendFailed(HttpMessage msg, IOException e);
+}
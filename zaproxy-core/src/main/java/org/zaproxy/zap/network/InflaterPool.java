@@ -0,0 +1,69 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ * 
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0 
+ *   
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ */
+package org.zaproxy.zap.network;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Inflater;
+
+/**
+ * A bounded pool of {@code Inflater}s, to avoid the creation (and native allocation) of an {@code Inflater} per decoded
+ * content.
+ */
+class InflaterPool {
+
+    private final boolean nowrap;
+    private final BlockingQueue<Inflater> inflaters;
+
+    /**
+     * Constructs an {@code InflaterPool}.
+     * 
+     * @param nowrap {@code true} if the inflaters should decode raw deflate data, {@code false} for ZLIB wrapped data
+     * @param maxSize the maximum number of idle inflaters kept in the pool
+     */
+    InflaterPool(boolean nowrap, int maxSize) {
+        this.nowrap = nowrap;
+        this.inflaters = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    /**
+     * Gets an inflater from the pool, or a new one if the pool is empty.
+     * 
+     * @return the inflater, never {@code null}
+     * @see #release(Inflater)
+     */
+    Inflater acquire() {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            return new Inflater(nowrap);
+        }
+        return inflater;
+    }
+
+    /**
+     * Returns the given inflater to the pool. The inflater is reset or, if the pool is full, ended.
+     * 
+     * @param inflater the inflater to return
+     */
+    void release(Inflater inflater) {
+        inflater.reset();
+        if (!inflaters.offer(inflater)) {
+            inflater.end();
+        }
+    }
+}
@@ -17,6 +17,7 @@
  */
 package org.zaproxy.zap.spider;
 
+import java.io.IOException;
 import java.net.CookieManager;
 import java.util.ArrayList;
 import java.util.LinkedList;
@@ -107,6 +108,18 @@ public class Spider {
 	/** The total count of all the submitted tasks. */
 	private AtomicInteger tasksTotalCount;
 
+	/**
+	 * The tasks spilled to disk, because there were more pending tasks than the maximum allowed in memory. Created when
+	 * first needed.
+	 * 
+	 * <p>
+	 * Volatile to check, without locking, whether or not there might be spilled tasks.
+	 * </p>
+	 * 
+	 * @see SpiderParam#getMaxTasksInMemory()
+	 */
+	private volatile SpiderTaskSpillQueue spilledTasks;
+
 	/** The cookie manager. */
 	private CookieManager cookieManager;
 	
@@ -381,6 +394,13 @@ public class Spider {
 			return;
 		}
 		this.tasksTotalCount.incrementAndGet();
+		if (spillTask(task)) {
+			return;
+		}
+		execute(task);
+	}
+
+	private void execute(SpiderTask task) {
 		try {
 			this.threadPool.execute(task);
 		} catch (RejectedExecutionException e) {
@@ -391,6 +411,80 @@ public class Spider {
 		}
 	}
 
+	/**
+	 * Gets the number of tasks submitted, not yet finished, that are kept in memory (that is, not spilled to disk).
+	 * 
+	 * @return the number of pending tasks in memory
+	 */
+	private int getPendingTasksInMemory() {
+		int spilled = spilledTasks != null ? spilledTasks.size() : 0;
+		return tasksTotalCount.get() - tasksDoneCount.get() - spilled;
+	}
+
+	/**
+	 * Spills the given task to disk, if there are more pending tasks in memory than the maximum allowed.
+	 * 
+	 * @param task the task submitted
+	 * @return {@code true} if the task was spilled, {@code false} if it should be executed
+	 */
+	private boolean spillTask(SpiderTask task) {
+		int maxTasksInMemory = spiderParam.getMaxTasksInMemory();
+		if (maxTasksInMemory <= 0 || getPendingTasksInMemory() <= maxTasksInMemory) {
+			return false;
+		}
+
+		try {
+			if (spilledTasks == null) {
+				spilledTasks = new SpiderTaskSpillQueue();
+			}
+			spilledTasks.add(task);
+			return true;
+		} catch (IOException e) {
+			log.warn("Failed to spill the task to disk, keeping it in memory: " + e.getMessage(), e);
+			return false;
+		}
+	}
+
+	/**
+	 * Executes the tasks spilled to disk, once the pending tasks in memory drop to half of the maximum allowed.
+	 */
+	private synchronized void executeSpilledTasks() {
+		if (spilledTasks == null || spilledTasks.size() == 0 || isStopped()) {
+			return;
+		}
+
+		int maxTasksInMemory = Math.max(1, spiderParam.getMaxTasksInMemory());
+		int pendingTasks = getPendingTasksInMemory();
+		if (pendingTasks > maxTasksInMemory / 2) {
+			return;
+		}
+
+		try {
+			SpiderTask task;
+			while (pendingTasks < maxTasksInMemory && (task = spilledTasks.poll(this)) != null) {
+				execute(task);
+				pendingTasks++;
+			}
+		} catch (IOException e) {
+			int lost = spilledTasks.size();
+			log.error("Failed to read the spilled tasks, discarding " + lost + " tasks: " + e.getMessage(), e);
+			spilledTasks.close();
+			spilledTasks = null;
+			// Count them as done, for the spider to complete.
+			tasksDoneCount.addAndGet(lost);
+		}
+	}
+
+	/**
+	 * Discards the tasks spilled to disk, if any.
+	 */
+	private synchronized void discardSpilledTasks() {
+		if (spilledTasks != null) {
+			spilledTasks.close();
+			spilledTasks = null;
+		}
+	}
+
 	/* SPIDER PROCESS maintenance - pause, resume, shutdown, etc. */
 
 	/**
@@ -458,6 +552,7 @@ public class Spider {
 			this.getHttpSender().shutdown();
 			httpSender = null;
 		}
+		discardSpilledTasks();
 
 		// Notify the controller to clean up memory
 		controller.reset();
@@ -477,6 +572,7 @@ public class Spider {
 			this.getHttpSender().shutdown();
 			httpSender = null;
 		}
+		discardSpilledTasks();
 
 		// Notify the controller to clean up memory
 		controller.reset();
@@ -574,6 +670,12 @@ public class Spider {
 	 * SpiderTask.
 	 */
 	protected void postTaskExecution() {
+		// Refill the pending tasks, before this one is counted as done. No need to lock if no task was spilled, always the
+		// case if the tasks in memory are not limited (maxTasksInMemory <= 0).
+		if (spilledTasks != null) {
+			executeSpilledTasks();
+		}
+
 		int done = this.tasksDoneCount.incrementAndGet();
 		int total = this.tasksTotalCount.get();
 
@@ -17,14 +17,9 @@
  */
 package org.zaproxy.zap.spider;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import net.htmlparser.jericho.Config;
 
@@ -70,10 +65,10 @@ public class SpiderController implements SpiderParserListener {
 	private Spider spider;
 
 	/** The resources visited using GET method. */
-	private Set<String> visitedGet;
+	private volatile VisitedUrlSet visitedGet;
 
-	/** The resources visited using POST method. */
-	private Map<String, ArrayList<String>> visitedPost;
+	/** The resources visited using POST method, the URI with the request body. */
+	private volatile VisitedUrlSet visitedPost;
 
 	/** The Constant log. */
 	private static final Logger log = Logger.getLogger(SpiderController.class);
@@ -88,8 +83,7 @@ public class SpiderController implements SpiderParserListener {
 		this.spider = spider;
 		this.fetchFilters = new LinkedList<>();
 		this.parseFilters = new LinkedList<>();
-		this.visitedGet = new HashSet<>();
-		this.visitedPost = new HashMap<String, ArrayList<String>>();
+		createVisitedSets();
 
 		prepareDefaultParsers();
 		for (SpiderParser parser : customParsers) {
@@ -168,13 +162,9 @@ public class SpiderController implements SpiderParserListener {
 		} catch (URIException e) {
 			return;
 		}
-		synchronized (visitedGet) {
-			if (visitedGet.contains(visitedURI)) {
-				log.debug("URI already visited: " + visitedURI);
-				return;
-			} else {
-				visitedGet.add(visitedURI);
-			}
+		if (!visitedGet.add(visitedURI)) {
+			log.debug("URI already visited: " + visitedURI);
+			return;
 		}
 		// Create and submit the new task
 		SpiderTask task = new SpiderTask(spider, uri, 0, method);
@@ -225,8 +215,18 @@ public class SpiderController implements SpiderParserListener {
 	 * Clears the previous process.
 	 */
 	public void reset() {
-		visitedGet.clear();
-		visitedPost.clear();
+		createVisitedSets();
+	}
+
+	/**
+	 * Creates the sets of visited resources, compact or exact as set in the options, discarding the previous ones.
+	 * 
+	 * @see SpiderParam#isCompactVisitedUrls()
+	 */
+	private void createVisitedSets() {
+		boolean compact = spider.getSpiderParam().isCompactVisitedUrls();
+		this.visitedGet = VisitedUrlSet.create(compact);
+		this.visitedPost = VisitedUrlSet.create(compact);
 	}
 
 	@Override
@@ -251,13 +251,9 @@ public class SpiderController implements SpiderParserListener {
 		} catch (URIException e) {
 			return;
 		}
-		synchronized (visitedGet) {
-			if (visitedGet.contains(visitedURI)) {
-				// log.debug("URI already visited: " + visitedURI);
-				return;
-			} else {
-				visitedGet.add(visitedURI);
-			}
+		if (!visitedGet.add(visitedURI)) {
+			// log.debug("URI already visited: " + visitedURI);
+			return;
 		}
 
 		// Check if any of the filters disallows this uri
@@ -294,20 +290,10 @@ public class SpiderController implements SpiderParserListener {
 		log.info("New POST resource found: " + uri);
 
 		// Check if the uri was processed already
-		synchronized (visitedPost) {
-      if(arrayKeyValueExists(uri, requestBody)) {
-				log.debug("URI already visited: " + uri);
-				return;
-			} else {
-        if(visitedPost.containsKey(uri)) {
-          visitedPost.get(uri).add(requestBody);
-        }
-        else {
-          ArrayList<String> l = new ArrayList<String>();
-          l.add(requestBody);
-				  visitedPost.put(uri, l);
-        }
-			}
+		// Prefixed with the length of the uri, to not mix the uri and the request body
+		if (!visitedPost.add(uri.length() + ":" + uri + requestBody)) {
+			log.debug("URI already visited: " + uri);
+			return;
 		}
 
 		// Create the uri
@@ -334,26 +320,6 @@ public class SpiderController implements SpiderParserListener {
 
 	}
 
-  /**
-   * Checks whether the value exists in an ArrayList of certain key.
-   *
-   * @param key the string of the uri
-   * @param value the request body of the uri
-   * @return true or false depending whether the uri and request body have already been processed
-   */
-  private boolean arrayKeyValueExists(String key, String value) {
-    if (visitedPost.containsKey(key)) {
-      for(String s : visitedPost.get(key)) {
-        if(s.equals(value)) {
-          return true;
-        }
-      }
-    }
-
-    return false;
-
-  }
-
 	/**
 	 * Creates the {@link URI} starting from the uri string. First it tries to convert it into a
 	 * String considering it's already encoded and, if it fails, tries to create it considering it's
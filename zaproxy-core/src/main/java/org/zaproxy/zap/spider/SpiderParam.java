@@ -71,6 +71,12 @@ public class SpiderParam extends AbstractParam {
 	/** The Constant SPIDER_HANDLE_ODATA_PARAMETERS. */
 	private static final String SPIDER_HANDLE_ODATA_PARAMETERS = "spider.handleODataParameters";
 
+	/** The Constant SPIDER_MAX_TASKS_IN_MEMORY. */
+	private static final String SPIDER_MAX_TASKS_IN_MEMORY = "spider.maxTasksInMemory";
+
+	/** The Constant SPIDER_COMPACT_VISITED_URLS. */
+	private static final String SPIDER_COMPACT_VISITED_URLS = "spider.compactVisitedUrls";
+
     private static final String DOMAIN_ALWAYS_IN_SCOPE_KEY = "spider.domainsAlwaysInScope";
     private static final String ALL_DOMAINS_ALWAYS_IN_SCOPE_KEY = DOMAIN_ALWAYS_IN_SCOPE_KEY + ".domainAlwaysInScope";
     private static final String DOMAIN_ALWAYS_IN_SCOPE_VALUE_KEY = "name";
@@ -134,6 +140,13 @@ public class SpiderParam extends AbstractParam {
 	private HandleParametersOption handleParametersVisited = HandleParametersOption.USE_ALL;
 	/** Defines if we take care of OData specific parameters during the visit in order to identify known URL **/
 	private boolean handleODataParametersVisited = false;
+	/**
+	 * The maximum number of pending tasks kept in memory, the others are spilled to disk. Zero (or negative) means no
+	 * limit.
+	 */
+	private int maxTasksInMemory = 0;
+	/** Whether the visited URLs are kept as fingerprints, instead of the URLs. */
+	private boolean compactVisitedUrls = true;
 
     private List<DomainAlwaysInScopeMatcher> domainsAlwaysInScope = new ArrayList<>(0);
     private List<DomainAlwaysInScopeMatcher> domainsAlwaysInScopeEnabled = new ArrayList<>(0);
@@ -237,6 +250,18 @@ public class SpiderParam extends AbstractParam {
 			log.error("Error while parsing config file: " + e.getMessage(), e);
 		}
 
+		try {
+			this.maxTasksInMemory = getConfig().getInt(SPIDER_MAX_TASKS_IN_MEMORY, 0);
+		} catch (ConversionException e) {
+			log.error("Error while parsing config file: " + e.getMessage(), e);
+		}
+
+		try {
+			this.compactVisitedUrls = getConfig().getBoolean(SPIDER_COMPACT_VISITED_URLS, true);
+		} catch (ConversionException e) {
+			log.error("Error while parsing config file: " + e.getMessage(), e);
+		}
+
 		loadDomainsAlwaysInScope();
 		try {
 		    this.confirmRemoveDomainAlwaysInScope = getConfig().getBoolean(CONFIRM_REMOVE_DOMAIN_ALWAYS_IN_SCOPE, true);
@@ -639,6 +664,49 @@ public class SpiderParam extends AbstractParam {
 		this.handleODataParametersVisited = handleODataParametersVisited;
 		getConfig().setProperty(SPIDER_HANDLE_ODATA_PARAMETERS, Boolean.toString(handleODataParametersVisited));
 	}
+
+	/**
+	 * Gets the maximum number of pending tasks (URIs found but not yet fetched) kept in memory. The tasks above the
+	 * maximum are spilled to a temporary file, and read back as the pending tasks are processed.
+	 * 
+	 * @return the maximum number of tasks in memory, zero (or negative) if there's no limit
+	 */
+	public int getMaxTasksInMemory() {
+		return maxTasksInMemory;
+	}
+
+	/**
+	 * Sets the maximum number of pending tasks (URIs found but not yet fetched) kept in memory.
+	 * 
+	 * @param maxTasksInMemory the maximum number of tasks in memory, zero (or negative) for no limit
+	 */
+	public void setMaxTasksInMemory(int maxTasksInMemory) {
+		this.maxTasksInMemory = maxTasksInMemory;
+		getConfig().setProperty(SPIDER_MAX_TASKS_IN_MEMORY, Integer.toString(maxTasksInMemory));
+	}
+
+	/**
+	 * Tells whether or not the URLs visited are kept as (128-bit) fingerprints, instead of the URLs, to use less memory.
+	 * <p>
+	 * There's a negligible chance of two different URLs having the same fingerprint, in which case the second one is not
+	 * visited.
+	 * </p>
+	 * 
+	 * @return {@code true} if the visited URLs are kept as fingerprints, {@code false} otherwise
+	 */
+	public boolean isCompactVisitedUrls() {
+		return compactVisitedUrls;
+	}
+
+	/**
+	 * Sets whether or not the URLs visited are kept as (128-bit) fingerprints, instead of the URLs, to use less memory.
+	 * 
+	 * @param compactVisitedUrls {@code true} if the visited URLs should be kept as fingerprints, {@code false} otherwise
+	 */
+	public void setCompactVisitedUrls(boolean compactVisitedUrls) {
+		this.compactVisitedUrls = compactVisitedUrls;
+		getConfig().setProperty(SPIDER_COMPACT_VISITED_URLS, Boolean.toString(compactVisitedUrls));
+	}
 	
 	
     /**
@@ -18,7 +18,6 @@
 package org.zaproxy.zap.spider;
 
 import java.io.IOException;
-import java.sql.SQLException;
 import java.util.List;
 
 import net.htmlparser.jericho.Source;
@@ -27,9 +26,8 @@ import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.URI;
 import org.apache.commons.httpclient.URIException;
 import org.apache.log4j.Logger;
-import org.parosproxy.paros.model.HistoryReference;
+import org.parosproxy.paros.network.HtmlSourceCache;
 import org.parosproxy.paros.network.HttpHeader;
-import org.parosproxy.paros.network.HttpMalformedHeaderException;
 import org.parosproxy.paros.network.HttpMessage;
 import org.parosproxy.paros.network.HttpRequestHeader;
 import org.zaproxy.zap.spider.filters.ParseFilter;
@@ -37,17 +35,24 @@ import org.zaproxy.zap.spider.parser.SpiderParser;
 
 /**
  * The SpiderTask representing a spidering task performed during the Spidering process.
+ * <p>
+ * The task keeps just the data needed to build the request (URI, method and body), the request message is created only
+ * when the resource is fetched.
+ * </p>
  */
 public class SpiderTask implements Runnable {
 
 	/** The parent spider. */
 	private Spider parent;
 
-	/**
-	 * The history reference to the database record where the request message has been partially filled in.
-	 * Cannot be null.
-	 */
-	private HistoryReference reference;
+	/** The (escaped) URI of the resource. */
+	private final String uri;
+
+	/** The HTTP method used to fetch the resource. */
+	private final String method;
+
+	/** The body of the request, might be {@code null}. */
+	private final String requestBody;
 
 	/** The depth of crawling where the uri was found. */
 	private int depth;
@@ -86,30 +91,47 @@ public class SpiderTask implements Runnable {
 	 * 
 	 */
 	public SpiderTask(Spider parent, URI uri, int depth, String method, String requestBody) {
-		super();
-		this.parent = parent;
-		this.depth = depth;
+		this(parent, uri.getEscapedURI(), depth, method, requestBody);
 
 		// Log the new task
 		if (log.isDebugEnabled()) {
 			log.debug("New task submitted for uri: " + uri);
 		}
+	}
 
-		// Create a new HttpMessage that will be used for the request and persist it in the database using
-		// HistoryReference
-		try {
-			HttpMessage msg = new HttpMessage(new HttpRequestHeader(method, uri, HttpHeader.HTTP11));
-			if (requestBody != null) {
-				msg.getRequestHeader().setContentLength(requestBody.length());
-				msg.setRequestBody(requestBody);
-			}
-			this.reference = new HistoryReference(parent.getModel().getSession(), HistoryReference.TYPE_SPIDER_TASK,
-					msg);
-		} catch (HttpMalformedHeaderException e) {
-			log.error("Error while building HttpMessage for uri: " + uri, e);
-		} catch (SQLException e) {
-			log.error("Error while persisting HttpMessage for uri: " + uri, e);
-		}
+	/**
+	 * Instantiates a spider task with the given (escaped) URI, for example, when read back from the spilled tasks.
+	 * 
+	 * @param parent the spider controlling the crawling process
+	 * @param uri the escaped uri that this task should process
+	 * @param depth the depth where this uri is located in the spidering process
+	 * @param method the HTTP method that should be used to fetch the resource
+	 * @param requestBody the body of the request, might be {@code null}
+	 * @see SpiderTaskSpillQueue
+	 */
+	SpiderTask(Spider parent, String uri, int depth, String method, String requestBody) {
+		super();
+		this.parent = parent;
+		this.uri = uri;
+		this.depth = depth;
+		this.method = method;
+		this.requestBody = requestBody;
+	}
+
+	String getUri() {
+		return uri;
+	}
+
+	String getMethod() {
+		return method;
+	}
+
+	int getDepth() {
+		return depth;
+	}
+
+	String getRequestBody() {
+		return requestBody;
 	}
 
 	@Override
@@ -117,11 +139,7 @@ public class SpiderTask implements Runnable {
 
 		// Log the task start
 		if (log.isDebugEnabled()) {
-			try {
-				log.debug("Spider Task Started. Processing uri at depth " + depth
-						+ " using already constructed message:  " + reference.getURI());
-			} catch (Exception e1) { // Ignore it
-			}
+			log.debug("Spider Task Started. Processing uri at depth " + depth + ": " + uri);
 		}
 
 		// Check if the should stop
@@ -130,7 +148,7 @@ public class SpiderTask implements Runnable {
 			parent.postTaskExecution();
 			return;
 		}
-		if (reference == null) {
+		if (uri == null) {
 			log.warn("Null URI. Skipping crawling task: " + this);
 			parent.postTaskExecution();
 			return;
@@ -202,7 +220,7 @@ public class SpiderTask implements Runnable {
 		List<SpiderParser> parsers = parent.getController().getParsers();
 
 		// Prepare the Jericho source
-		Source source = new Source(message.getResponseBody().toString());
+		Source source = HtmlSourceCache.getResponseBodySource(message);
 		
 		// Get the full path of the file
 		String path = null;
@@ -230,17 +248,14 @@ public class SpiderTask implements Runnable {
 	 * @return the response http message
 	 * @throws HttpException the http exception
 	 * @throws IOException Signals that an I/O exception has occurred.
-	 * @throws SQLException
 	 */
-	private HttpMessage fetchResource() throws HttpException, IOException, SQLException {
+	private HttpMessage fetchResource() throws HttpException, IOException {
 
-		// Build fetch the request message from the database
-		HttpMessage msg;
-		try {
-			msg = reference.getHttpMessage();
-		} finally {
-			// Remove the history reference from the database, as it's not used anymore
-			reference.delete();
+		// Build the request message
+		HttpMessage msg = new HttpMessage(new HttpRequestHeader(method, new URI(uri, true), HttpHeader.HTTP11));
+		if (requestBody != null) {
+			msg.getRequestHeader().setContentLength(requestBody.length());
+			msg.setRequestBody(requestBody);
 		}
 
 		msg.getRequestHeader().setHeader(HttpHeader.IF_MODIFIED_SINCE, null);
@@ -0,0 +1,166 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.spider;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.log4j.Logger;
+import org.zaproxy.zap.utils.OwnerOnlyFiles;
+
+/**
+ * A first-in-first-out queue of spider tasks, kept in a temporary file, used to spill the pending tasks that exceed the
+ * maximum number of tasks in memory.
+ * <p>
+ * Only the data of the tasks is saved (URI, method, depth and request body), the tasks are recreated when polled. The
+ * file can be accessed just by its owner, the request bodies might contain sensitive data.
+ * </p>
+ *
+ * @see SpiderParam#getMaxTasksInMemory()
+ */
+class SpiderTaskSpillQueue implements Closeable {
+
+	private static final Logger log = Logger.getLogger(SpiderTaskSpillQueue.class);
+
+	private final File file;
+	private final RandomAccessFile data;
+
+	private long readPosition;
+	private long writePosition;
+	private int size;
+
+	/**
+	 * Constructs a {@code SpiderTaskSpillQueue}, creating its temporary file.
+	 *
+	 * @throws IOException if an error occurred while creating the file
+	 */
+	SpiderTaskSpillQueue() throws IOException {
+		this.file = OwnerOnlyFiles.createTempFile("zap-spider-tasks", ".tmp");
+		this.file.deleteOnExit();
+		this.data = new RandomAccessFile(file, "rw");
+	}
+
+	/**
+	 * Adds the given task to the end of the queue.
+	 *
+	 * @param task the task to add
+	 * @throws IOException if an error occurred while writing the task
+	 */
+	synchronized void add(SpiderTask task) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(task.getDepth());
+			writeString(out, task.getUri());
+			writeString(out, task.getMethod());
+			writeString(out, task.getRequestBody());
+		}
+
+		data.seek(writePosition);
+		data.writeInt(bytes.size());
+		data.write(bytes.toByteArray());
+		writePosition = data.getFilePointer();
+		size++;
+	}
+
+	/**
+	 * Removes the task at the head of the queue.
+	 *
+	 * @param parent the spider of the task
+	 * @return the task, or {@code null} if the queue is empty
+	 * @throws IOException if an error occurred while reading the task
+	 */
+	synchronized SpiderTask poll(Spider parent) throws IOException {
+		if (size == 0) {
+			return null;
+		}
+
+		data.seek(readPosition);
+		byte[] bytes = new byte[data.readInt()];
+		data.readFully(bytes);
+		readPosition = data.getFilePointer();
+		size--;
+		if (size == 0) {
+			// Reclaim the disk space, once all the tasks were read.
+			readPosition = 0;
+			writePosition = 0;
+			data.setLength(0);
+		}
+
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			int depth = in.readInt();
+			String uri = readString(in);
+			String method = readString(in);
+			String requestBody = readString(in);
+			return new SpiderTask(parent, uri, depth, method, requestBody);
+		}
+	}
+
+	/**
+	 * Gets the number of tasks in the queue.
+	 *
+	 * @return the number of tasks
+	 */
+	synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Closes and deletes the temporary file, discarding the tasks in the queue.
+	 */
+	@Override
+	public synchronized void close() {
+		size = 0;
+		try {
+			data.close();
+		} catch (IOException e) {
+			log.debug("Failed to close the spilled tasks file: " + e.getMessage());
+		}
+		if (!file.delete()) {
+			log.debug("Failed to delete the spilled tasks file: " + file.getAbsolutePath());
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == -1) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.spider;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The set of the URLs (or requests) already visited by the spider, safe to be used concurrently by the threads of the
+ * spider.
+ *
+ * @see #create(boolean)
+ * @see SpiderParam#isCompactVisitedUrls()
+ */
+abstract class VisitedUrlSet {
+
+	/**
+	 * Creates a {@code VisitedUrlSet}.
+	 * <p>
+	 * The compact set keeps a 128-bit fingerprint (MD5) of each URL, instead of the URL, which uses a fraction of the
+	 * memory, with a negligible chance of two different URLs having the same fingerprint (in which case the second URL
+	 * would not be visited). The exact set keeps the URLs.
+	 * </p>
+	 *
+	 * @param compact {@code true} if the URLs should be kept as fingerprints, {@code false} to keep the URLs
+	 * @return the new set
+	 */
+	static VisitedUrlSet create(boolean compact) {
+		if (compact) {
+			return new FingerprintVisitedUrlSet();
+		}
+		return new ExactVisitedUrlSet();
+	}
+
+	/**
+	 * Adds the given URL to the set, if not already visited.
+	 *
+	 * @param url the URL
+	 * @return {@code true} if the URL was added, {@code false} if it was already visited
+	 */
+	abstract boolean add(String url);
+
+	/**
+	 * Gets the number of URLs in the set.
+	 *
+	 * @return the number of URLs
+	 */
+	abstract int size();
+
+	/**
+	 * A set that keeps the URLs.
+	 */
+	private static class ExactVisitedUrlSet extends VisitedUrlSet {
+
+		private final Set<String> urls = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+		@Override
+		boolean add(String url) {
+			return urls.add(url);
+		}
+
+		@Override
+		int size() {
+			return urls.size();
+		}
+	}
+
+	/**
+	 * A set that keeps 128-bit fingerprints of the URLs, in open addressing hash tables of {@code long}s (two per
+	 * fingerprint), split in segments with their own lock to reduce the contention between threads.
+	 */
+	private static class FingerprintVisitedUrlSet extends VisitedUrlSet {
+
+		private static final int SEGMENTS = 32;
+
+		private static final ThreadLocal<MessageDigest> MD5 = new ThreadLocal<MessageDigest>() {
+
+			@Override
+			protected MessageDigest initialValue() {
+				try {
+					return MessageDigest.getInstance("MD5");
+				} catch (NoSuchAlgorithmException e) {
+					// MD5 is required to be supported by all Java platforms.
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+
+		private final Segment[] segments;
+
+		FingerprintVisitedUrlSet() {
+			segments = new Segment[SEGMENTS];
+			for (int i = 0; i < segments.length; i++) {
+				segments[i] = new Segment();
+			}
+		}
+
+		@Override
+		boolean add(String url) {
+			byte[] digest = MD5.get().digest(url.getBytes(StandardCharsets.UTF_8));
+			long high = toLong(digest, 0);
+			long low = toLong(digest, 8);
+			return segments[(int) (high >>> 59)].add(high, low);
+		}
+
+		@Override
+		int size() {
+			int size = 0;
+			for (Segment segment : segments) {
+				size += segment.size();
+			}
+			return size;
+		}
+
+		private static long toLong(byte[] bytes, int offset) {
+			long value = 0;
+			for (int i = offset; i < offset + 8; i++) {
+				value = (value << 8) | (bytes[i] & 0xFF);
+			}
+			return value;
+		}
+
+		/**
+		 * An open addressing hash table (with linear probing) of fingerprints, the two {@code long}s of each fingerprint
+		 * are kept in consecutive positions, all zeros marks an empty slot.
+		 */
+		private static class Segment {
+
+			private static final int INITIAL_CAPACITY = 256;
+
+			private long[] table = new long[INITIAL_CAPACITY * 2];
+			private int size;
+			private boolean containsZero;
+
+			synchronized boolean add(long high, long low) {
+				if (high == 0 && low == 0) {
+					if (containsZero) {
+						return false;
+					}
+					containsZero = true;
+					size++;
+					return true;
+				}
+
+				if (!insert(table, high, low)) {
+					return false;
+				}
+				size++;
+				// Keep the load factor at most 0.75.
+				if (size * 4L > (table.length / 2) * 3L) {
+					resize();
+				}
+				return true;
+			}
+
+			synchronized int size() {
+				return size;
+			}
+
+			private void resize() {
+				long[] newTable = new long[table.length * 2];
+				for (int i = 0; i < table.length; i += 2) {
+					if (table[i] != 0 || table[i + 1] != 0) {
+						insert(newTable, table[i], table[i + 1]);
+					}
+				}
+				table = newTable;
+			}
+
+			private static boolean insert(long[] table, long high, long low) {
+				int mask = table.length / 2 - 1;
+				int slot = (int) low & mask;
+				while (true) {
+					int i = slot * 2;
+					if (table[i] == 0 && table[i + 1] == 0) {
+						table[i] = high;
+						table[i + 1] = low;
+						return true;
+					}
+					if (table[i] == high && table[i + 1] == low) {
+						return false;
+					}
+					slot = (slot + 1) & mask;
+				}
+			}
+		}
+	}
+}
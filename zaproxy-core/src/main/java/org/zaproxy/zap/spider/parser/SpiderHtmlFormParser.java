@@ -35,6 +35,7 @@ import net.htmlparser.jericho.HTMLElementName;
 import net.htmlparser.jericho.Source;
 
 import org.parosproxy.paros.network.HtmlParameter;
+import org.parosproxy.paros.network.HtmlSourceCache;
 import org.parosproxy.paros.network.HtmlParameter.Type;
 import org.parosproxy.paros.network.HttpMessage;
 import org.zaproxy.zap.spider.SpiderParam;
@@ -78,7 +79,7 @@ public class SpiderHtmlFormParser extends SpiderParser {
 
 		// Prepare the source, if not provided
 		if (source == null) {
-			source = new Source(message.getResponseBody().toString());
+			source = HtmlSourceCache.getResponseBodySource(message);
 		}
 
 		// Get the context (base url)
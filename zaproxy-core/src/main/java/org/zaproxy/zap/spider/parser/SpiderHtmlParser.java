@@ -27,6 +27,7 @@ import net.htmlparser.jericho.Source;
 import net.htmlparser.jericho.StartTag;
 import net.htmlparser.jericho.StartTagType;
 
+import org.parosproxy.paros.network.HtmlSourceCache;
 import org.parosproxy.paros.network.HttpMessage;
 import org.zaproxy.zap.spider.SpiderParam;
 
@@ -61,7 +62,7 @@ public class SpiderHtmlParser extends SpiderParser {
 
 		// Prepare the source, if not provided
 		if (source == null) {
-			source = new Source(message.getResponseBody().toString());
+			source = HtmlSourceCache.getResponseBodySource(message);
 		}
 
 		// Get the context (base url)
@@ -0,0 +1,117 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2015 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+/**
+ * Utility methods to create files and directories that can be accessed just by its owner, for example, to keep private keys
+ * or the contents of the messages.
+ * <p>
+ * In file systems with POSIX permissions the permissions are set when the files are created, otherwise the files are
+ * created and then restricted to the owner, if possible.
+ * </p>
+ */
+public final class OwnerOnlyFiles {
+
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    private OwnerOnlyFiles() {
+    }
+
+    /**
+     * Creates a new, empty, file that can be read and written just by its owner.
+     *
+     * @param file the file to create
+     * @throws java.nio.file.FileAlreadyExistsException if the file already exists
+     * @throws IOException if an error occurred while creating the file
+     */
+    public static void createFile(File file) throws IOException {
+        if (POSIX) {
+            Files.createFile(file.toPath(), permissions("rw-------"));
+        } else {
+            Files.createFile(file.toPath());
+            restrict(file);
+        }
+    }
+
+    /**
+     * Creates a new, empty, file in the temporary directory that can be read and written just by its owner.
+     *
+     * @param prefix the prefix of the name of the file
+     * @param suffix the suffix of the name of the file
+     * @return the file created
+     * @throws IOException if an error occurred while creating the file
+     * @see File#createTempFile(String, String)
+     */
+    public static File createTempFile(String prefix, String suffix) throws IOException {
+        if (POSIX) {
+            return Files.createTempFile(prefix, suffix, permissions("rw-------")).toFile();
+        }
+        File file = Files.createTempFile(prefix, suffix).toFile();
+        restrict(file);
+        return file;
+    }
+
+    /**
+     * Creates the given directory, and its nonexistent parents, that can be accessed just by its owner. The directories
+     * that already exist are not changed.
+     *
+     * @param directory the directory to create
+     * @throws IOException if an error occurred while creating the directories
+     */
+    public static void createDirectories(File directory) throws IOException {
+        if (POSIX) {
+            Files.createDirectories(directory.toPath(), permissions("rwx------"));
+            return;
+        }
+        File existing = directory;
+        while (existing != null && !existing.exists()) {
+            existing = existing.getParentFile();
+        }
+        Files.createDirectories(directory.toPath());
+        for (File dir = directory; dir != null && !dir.equals(existing); dir = dir.getParentFile()) {
+            restrict(dir);
+        }
+    }
+
+    private static FileAttribute<Set<PosixFilePermission>> permissions(String permissions) {
+        return PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(permissions));
+    }
+
+    private static void restrict(File file) {
+        // Best effort, the permissions might not be supported by the file system.
+        file.setReadable(false, false);
+        file.setReadable(true, true);
+        file.setWritable(false, false);
+        file.setWritable(true, true);
+        if (file.isDirectory()) {
+            file.setExecutable(false, false);
+            file.setExecutable(true, true);
+        }
+    }
+}